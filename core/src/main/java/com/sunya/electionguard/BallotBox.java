@@ -8,7 +8,9 @@ import com.sunya.electionguard.publish.CloseableIterableAdapter;
 import com.sunya.electionguard.publish.ElectionContext;
 
 import javax.annotation.Nullable;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Optional;
 
@@ -36,6 +38,18 @@ public class BallotBox {
     this.store = new DataStore();
   }
 
+  /**
+   * A BallotBox that doesnt keep the ballots it accepts, but passes each one to sink, eg to append to a file.
+   * Only the ballot ids are kept, to reject duplicates, so the get methods return no ballots.
+   * @param existingIds the ids of ballots already accepted, eg before a restart.
+   */
+  public BallotBox(Manifest election, ElectionContext context, java.util.function.Consumer<SubmittedBallot> sink,
+                   Iterable<String> existingIds) {
+    this.metadata = new InternalManifest(election);
+    this.context = context;
+    this.store = new StreamingDataStore(sink, existingIds);
+  }
+
   /** Cast a specific encrypted CiphertextBallot. */
   public Optional<SubmittedBallot> cast(CiphertextBallot ballot) {
     return accept_ballot(ballot, State.CAST);
@@ -57,9 +71,10 @@ public class BallotBox {
     }
 
     if (store.containsKey(ballot.object_id())) {
-      SubmittedBallot existingBallot = store.get(ballot.object_id()).orElseThrow(IllegalStateException::new);
+      // a StreamingDataStore knows the id but not the ballot
+      Optional<SubmittedBallot> existingBallot = store.get(ballot.object_id());
       logger.atWarning().log("error accepting ballot, %s already exists with state: %s",
-          ballot.object_id(), existingBallot.state);
+          ballot.object_id(), existingBallot.map(b -> b.state.toString()).orElse("already accepted"));
       return Optional.empty();
     }
 
@@ -156,4 +171,38 @@ public class BallotBox {
     }
 
   }
+
+  /** A DataStore that passes the ballots to a sink, and keeps only their ids. */
+  static class StreamingDataStore extends DataStore {
+    private final java.util.function.Consumer<SubmittedBallot> sink;
+    private final HashSet<String> ids = new HashSet<>();
+
+    StreamingDataStore(java.util.function.Consumer<SubmittedBallot> sink, Iterable<String> existingIds) {
+      this.sink = sink;
+      existingIds.forEach(ids::add);
+    }
+
+    @Override
+    boolean containsKey(String key) {
+      return ids.contains(key);
+    }
+
+    @Override
+    @Nullable
+    SubmittedBallot put(String key, @Nullable SubmittedBallot value) {
+      Preconditions.checkArgument(ids.add(key), "duplicate ballot %s", key);
+      sink.accept(value);
+      return null;
+    }
+
+    @Override
+    Optional<SubmittedBallot> get(String key) {
+      return Optional.empty();
+    }
+
+    @Override
+    public Iterator<SubmittedBallot> iterator() {
+      return Collections.emptyIterator();
+    }
+  }
 }
@@ -0,0 +1,49 @@
+package com.sunya.electionguard;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.concurrent.Immutable;
+import java.math.BigInteger;
+
+/**
+ * Barrett reduction x mod m for a fixed modulus m, replacing the long division in BigInteger.mod
+ * with two multiplications and a shift, which BigInteger does much faster for 4096 bit numbers.
+ * Valid for 0 <= x < 2^(2k), where k = bitLength(m), which covers the product of any two elements in [0, m).
+ * Other values fall back to BigInteger.mod.
+ * @see <a href="https://cacr.uwaterloo.ca/hac/about/chap14.pdf">Handbook of Applied Cryptography, Algorithm 14.42</a>
+ */
+@Immutable
+public class BarrettReducer {
+  final BigInteger modulus;
+  private final int k; // bitLength of modulus
+  private final BigInteger mu; // floor(2^(2k) / m)
+
+  public BarrettReducer(BigInteger modulus) {
+    Preconditions.checkArgument(modulus.signum() > 0);
+    this.modulus = modulus;
+    this.k = modulus.bitLength();
+    this.mu = BigInteger.ONE.shiftLeft(2 * k).divide(modulus);
+  }
+
+  /** Compute x mod m. */
+  public BigInteger reduce(BigInteger x) {
+    if (x.signum() < 0 || x.bitLength() > 2 * k) {
+      return x.mod(modulus);
+    }
+    if (x.bitLength() < k) {
+      return x; // already less than m
+    }
+    BigInteger q = x.shiftRight(k - 1).multiply(mu).shiftRight(k + 1);
+    BigInteger r = x.subtract(q.multiply(modulus));
+    // the estimated quotient is at most 2 too small
+    while (r.compareTo(modulus) >= 0) {
+      r = r.subtract(modulus);
+    }
+    return r;
+  }
+
+  /** Compute a * b mod m. */
+  public BigInteger multiply(BigInteger a, BigInteger b) {
+    return reduce(a.multiply(b));
+  }
+}
@@ -104,16 +104,16 @@ public class ChaumPedersen {
       ElementModQ v0 = this.proof0.response;
       ElementModQ v1 = this.proof1.response;
 
-      boolean test4A = alpha.is_valid_residue() && beta.is_valid_residue() && a0.is_valid_residue() &&
-                        b0.is_valid_residue() & a1.is_valid_residue() && b1.is_valid_residue();
+      boolean test4A = is_valid_residues(List.of(alpha, beta, a0, b0, a1, b1));
       boolean test4C = c0.is_in_bounds() && c1.is_in_bounds() && v0.is_in_bounds() && v1.is_in_bounds();
 
       boolean test4B = c.equals(Hash.hash_elems(qbar, alpha, beta, a0, b0, a1, b1));
       boolean test4D = add_q(c0, c1).equals(c);
-      boolean test4E = g_pow_p(v0).equals(mult_p(a0, pow_p(alpha, c0)));
-      boolean test4F = g_pow_p(v1).equals(mult_p(a1, pow_p(alpha, c1)));
-      boolean test4G = pow_p(k, v0).equals(mult_p(b0, pow_p(beta, c0)));
-      boolean test4H = mult_p(g_pow_p(c1), pow_p(k, v1)).equals(mult_p(b1, pow_p(beta, c1)));
+      boolean test4E = g_pow_p(v0).equals(multi_pow_p(new ElementModP[] {a0, alpha}, new ElementMod[] {ONE_MOD_Q, c0}));
+      boolean test4F = g_pow_p(v1).equals(multi_pow_p(new ElementModP[] {a1, alpha}, new ElementMod[] {ONE_MOD_Q, c1}));
+      boolean test4G = pow_p(k, v0).equals(multi_pow_p(new ElementModP[] {b0, beta}, new ElementMod[] {ONE_MOD_Q, c0}));
+      boolean test4H = multi_pow_p(new ElementModP[] {getPrimes().generatorP, k}, new ElementMod[] {c1, v1})
+              .equals(multi_pow_p(new ElementModP[] {b1, beta}, new ElementMod[] {ONE_MOD_Q, c1}));
 
       boolean success = test4A && test4B && test4C && test4D && test4E && test4F && test4G && test4H;
 
@@ -170,12 +170,13 @@ public class ChaumPedersen {
       // LOOK 2.0 change from python 1.0, no longer check the hash
       boolean consistent_c = add_q(c0, c1).equals(c); // && c.equals(Hash.hash_elems(qbar, alpha, beta, a0, b0, a1, b1));
 
-      boolean consistent_gv0 = g_pow_p(v0).equals(mult_p(a0, pow_p(alpha, c0)));
-      boolean consistent_gv1 = g_pow_p(v1).equals(mult_p(a1, pow_p(alpha, c1)));
-      boolean consistent_kv0 = pow_p(k, v0).equals(mult_p(b0, pow_p(beta, c0)));
+      boolean consistent_gv0 = g_pow_p(v0).equals(multi_pow_p(new ElementModP[] {a0, alpha}, new ElementMod[] {ONE_MOD_Q, c0}));
+      boolean consistent_gv1 = g_pow_p(v1).equals(multi_pow_p(new ElementModP[] {a1, alpha}, new ElementMod[] {ONE_MOD_Q, c1}));
+      boolean consistent_kv0 = pow_p(k, v0).equals(multi_pow_p(new ElementModP[] {b0, beta}, new ElementMod[] {ONE_MOD_Q, c0}));
 
       // consistent_gc1kv1 = mult_p(g_pow_p(c1), pow_p(k, v1)) == mult_p(b1, pow_p(beta, c1))
-      boolean consistent_gc1kv1 = mult_p(g_pow_p(c1), pow_p(k, v1)).equals(mult_p(b1, pow_p(beta, c1)));
+      boolean consistent_gc1kv1 = multi_pow_p(new ElementModP[] {getPrimes().generatorP, k}, new ElementMod[] {c1, v1})
+              .equals(multi_pow_p(new ElementModP[] {b1, beta}, new ElementMod[] {ONE_MOD_Q, c1}));
 
       boolean success = (in_bounds_alpha && in_bounds_beta && in_bounds_a0 && in_bounds_b0 && in_bounds_a1 &&
               in_bounds_b1 && in_bounds_c0 && in_bounds_c1 && in_bounds_v0 && in_bounds_v1 && consistent_c &&
@@ -278,9 +279,10 @@ public class ChaumPedersen {
       //    val a = (g powP r) * (gx powP negC)
       //    val b = (h powP r) * (hx powP negC)
       ElementModQ negC = Group.negate_q(this.challenge);
-      Group.g_pow_p(this.response);
-      ElementModP a = Group.mult_p(Group.g_pow_p(this.response), Group.pow_p(ciphertext.pad(), negC));
-      ElementModP b = Group.mult_p(Group.pow_p(publicKey, this.response), Group.pow_p(ciphertext.data(), negC));
+      ElementModP a = Group.multi_pow_p(new ElementModP[] {getPrimes().generatorP, ciphertext.pad()},
+              new ElementMod[] {this.response, negC});
+      ElementModP b = Group.multi_pow_p(new ElementModP[] {publicKey, ciphertext.data()},
+              new ElementMod[] {this.response, negC});
       return new ChaumPedersenProof(a, b, this.challenge, this.response);
     }
 
@@ -737,27 +739,39 @@ public class ChaumPedersen {
           ElementModP k,
           ElementModQ seed,
           ElementModQ extendedHash) {
+    return make_constant_chaum_pedersen(message, constant, r, ConstantCommitment.create(k, seed), extendedHash);
+  }
+
+  /**
+   * The part of a ConstantChaumPedersenProof that does not depend on the message: the random u, and the
+   * commitments a = g^u and b = K^u. These are the only exponentiations in making the proof.
+   */
+  record ConstantCommitment(ElementModQ u, ElementModP a, ElementModP b) {
+    /** Pick the random number u from the seed, as make_constant_chaum_pedersen() does. */
+    static ConstantCommitment create(ElementModP k, ElementModQ seed) {
+      ElementModQ u = new Nonces(seed, "constant-chaum-pedersen-proof").get(0);
+      return new ConstantCommitment(u, g_pow_p(u), pow_p(k, u));  // 𝑔^𝑢𝑖 mod 𝑝, 𝐴^𝑢𝑖 mod 𝑝
+    }
+  }
+
+  /** Same as make_constant_chaum_pedersen(), with the commitments already computed, eg by PreparedBallots. */
+  static ConstantChaumPedersenProof make_constant_chaum_pedersen(
+          ElGamal.Ciphertext message,
+          int constant,
+          ElementModQ r,
+          ConstantCommitment commitment,
+          ElementModQ extendedHash) {
 
     ElementModP alpha = message.pad();
     ElementModP beta = message.data();
 
-    // Pick one random number in Q.
-    ElementModQ u = new Nonces(seed, "constant-chaum-pedersen-proof").get(0);
-    ElementModP a = g_pow_p(u);  // 𝑔^𝑢𝑖 mod 𝑝
-    ElementModP b = pow_p(k, u);  // 𝐴^𝑢𝑖 mod 𝑝
+    ElementModQ u = commitment.u();
+    ElementModP a = commitment.a();
+    ElementModP b = commitment.b();
     ElementModQ c = Hash.hash_elems(extendedHash, alpha, beta, a, b); // sha256(𝑄', A, B, a, b)
     ElementModQ v = a_plus_bc_q(u, c, r);
 
-    ConstantChaumPedersenProof result =  new ConstantChaumPedersenProof(a, b, c, v, constant);
-    /* ElGamal.Ciphertext message, ElementModP publicKey, ElementModQ extendedHash
-    // if (!result.is_valid(message, k, extendedHash)) {
-    //  throw new IllegalStateException("make_constant_chaum_pedersen");
-    // }
-    System.out.printf("***ConstantChaumPedersenProof result = %s%n", result);
-    System.out.printf("    message = %s%n", message);
-    System.out.printf("    extendedHash = %s%n", extendedHash);
-    System.out.printf("    publicKey = %s%n", k.toShortString()); */
-    return result;
+    return new ConstantChaumPedersenProof(a, b, c, v, constant);
   }
 
   /////////////////////////////////////////////////////////////////////
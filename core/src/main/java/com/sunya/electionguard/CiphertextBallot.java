@@ -13,6 +13,7 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static com.sunya.electionguard.Group.ZERO_MOD_Q;
 import static com.sunya.electionguard.Group.add_q;
@@ -251,6 +252,15 @@ public class CiphertextBallot implements Hash.CryptoHashCheckable {
           Group.ElementModQ seed_hash,
           Group.ElementModP elgamal_public_key,
           Group.ElementModQ crypto_extended_base_hash) {
+    return is_valid_encryption(seed_hash, elgamal_public_key, crypto_extended_base_hash, false);
+  }
+
+  /** Same as is_valid_encryption(), optionally checking the proofs of the contests in parallel, on the common ForkJoinPool. */
+  public boolean is_valid_encryption(
+          Group.ElementModQ seed_hash,
+          Group.ElementModP elgamal_public_key,
+          Group.ElementModQ crypto_extended_base_hash,
+          boolean parallel) {
 
     if (!seed_hash.equals(this.manifestHash)) { // manifestHash is unnormalized
       seed_hash.equals(this.manifestHash);
@@ -266,18 +276,22 @@ public class CiphertextBallot implements Hash.CryptoHashCheckable {
       // return false;
     }
 
-    // Check the proofs on the ballot
-    boolean valid = true;
-    for (Contest contest : this.contests) {
-      for (Selection selection : contest.selections) {
-        if (!selection.is_placeholder_selection) {
-          valid &= selection.is_valid_encryption(this.ballotId + " " + contest.contestId,
-                  selection.selectionHash, elgamal_public_key, crypto_extended_base_hash);
-        }
-      }
-      valid &= contest.is_valid_encryption(this.ballotId , contest.contestHash, elgamal_public_key, crypto_extended_base_hash);
-    }
-    return valid;
+    // Check the proofs on the ballot; all of them, so that every failure is logged
+    Stream<Contest> contestStream = parallel ? this.contests.parallelStream() : this.contests.stream();
+    return contestStream
+            .map(contest -> is_valid_contest(contest, elgamal_public_key, crypto_extended_base_hash, parallel))
+            .reduce(true, Boolean::logicalAnd);
+  }
+
+  private boolean is_valid_contest(Contest contest, Group.ElementModP elgamal_public_key,
+                                   Group.ElementModQ crypto_extended_base_hash, boolean parallel) {
+    Stream<Selection> selectionStream = parallel ? contest.selections.parallelStream() : contest.selections.stream();
+    boolean valid = selectionStream
+            .filter(selection -> !selection.is_placeholder_selection)
+            .map(selection -> selection.is_valid_encryption(this.ballotId + " " + contest.contestId,
+                    selection.selectionHash, elgamal_public_key, crypto_extended_base_hash))
+            .reduce(true, Boolean::logicalAnd);
+    return valid & contest.is_valid_encryption(this.ballotId , contest.contestHash, elgamal_public_key, crypto_extended_base_hash);
   }
 
   @Override
@@ -564,6 +578,37 @@ public class CiphertextBallot implements Hash.CryptoHashCheckable {
               proof); // Optional
     }
 
+    /**
+     * Same as create(), with the part of the proof that does not depend on the votes already computed,
+     * eg by PreparedBallots. The commitment must be made from proof_seed, to get the same proof as create().
+     */
+    static Contest create(
+            String contestId,
+            int sequence_order,
+            Group.ElementModQ contestHash,
+            List<Selection> ballot_selections,
+            ChaumPedersen.ConstantCommitment commitment,
+            Group.ElementModQ crypto_extended_base_hash,
+            int number_elected,
+            Optional<Group.ElementModQ> nonce) {
+
+      Group.ElementModQ crypto_hash = ciphertext_ballot_context_crypto_hash(contestId, ballot_selections, contestHash);
+      ElGamal.Ciphertext contest_total = ciphertext_ballot_elgamal_accumulate(ballot_selections);
+      Optional<Group.ElementModQ> aggregate = ciphertext_ballot_contest_aggregate_nonce(contestId, ballot_selections);
+
+      Optional<ChaumPedersen.ConstantChaumPedersenProof> proof = aggregate.map(ag ->
+              ChaumPedersen.make_constant_chaum_pedersen(
+                      contest_total,
+                      number_elected,
+                      ag,
+                      commitment,
+                      crypto_extended_base_hash
+              )
+      );
+
+      return new Contest(contestId, sequence_order, contestHash, ballot_selections, crypto_hash, nonce, proof);
+    }
+
     /////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     public final String contestId;
     public final int sequenceOrder;
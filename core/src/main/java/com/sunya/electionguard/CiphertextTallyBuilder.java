@@ -1,48 +1,65 @@
 package com.sunya.electionguard;
 
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
+import com.google.common.base.Preconditions;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sunya.electionguard.publish.CloseableIterable;
+import com.sunya.electionguard.publish.CloseableIterator;
 import com.sunya.electionguard.publish.ElectionContext;
 
-import javax.annotation.concurrent.Immutable;
-import java.util.HashMap;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static com.sunya.electionguard.BallotBox.State;
 
-import static com.sunya.electionguard.Group.ElementModQ;
-import static com.sunya.electionguard.Group.ONE_MOD_P;
-import static com.sunya.electionguard.InternalManifest.ContestWithPlaceholders;
-
 
 /**
  * A mutable builder of CiphertextTally.
- * Note that we cant tally, save results, then start another process and continue.
- * LOOK could get rid of the parallelization stuff until we get clear what is needed.
+ * To tally, save results, then continue in another process, save a TallyCheckpoint and use resume().
+ * To tally shards of the ballots in separate processes, merge() their PartialTally's.
+ * <p>
+ * The accumulation is kept in arrays indexed by TallyIndex selection ordinal, so accumulating a ballot
+ * and merging tallies don't hash selection ids; it is converted to the map based CiphertextTally only by build().
  */
 public class CiphertextTallyBuilder {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  private static final int CHUNK_SIZE = 16;
 
   private final String object_id;
   private final InternalManifest manifest;
   private final ElectionContext context;
+  private final TallyIndex index;
+  private final BarrettReducer reducer;
 
   /** Local cache of ballots id's that have already been cast. */
   private final Set<String> cast_ballot_ids;
+  private final List<String> cast_ballot_id_list; // the same ids, in the order they are added
   private final Set<String> spoiled_ballot_ids;
 
-  /** An encrypted representation of each contest and selection for all the cast ballots. */
-  final Map<String, Contest> contests; // Map(CONTEST_ID, CiphertextTallyContest)
+  /**
+   * The encrypted accumulation of each selection for all the cast ballots, indexed by TallyIndex selection ordinal.
+   * Null if no ballot has been accumulated into the selection yet, ie an encryption of zero.
+   */
+  private final BigInteger[] pads;
+  private final BigInteger[] datas;
 
   /**
    * Constructor
@@ -54,348 +71,361 @@ public class CiphertextTallyBuilder {
     this.object_id = object_id;
     this.manifest = manifest;
     this.context = context;
+    this.index = new TallyIndex(manifest.manifest);
+    this.reducer = Group.getPrimes().getReducerP();
     this.cast_ballot_ids = new HashSet<>();
+    this.cast_ballot_id_list = new ArrayList<>();
     this.spoiled_ballot_ids = new HashSet<>(); // LOOK since we skip spoiled ballots, not really needed to track them.
-    this.contests = build_contests(this.manifest);
+    this.pads = new BigInteger[index.nselections()];
+    this.datas = new BigInteger[index.nselections()];
   }
 
-  /** Build the object graph for the tally from the InternalManifest. */
-  private Map<String, Contest> build_contests(InternalManifest manifest) {
-    Map<String, Contest> cast_collection = new HashMap<>();
-    for (ContestWithPlaceholders contestp : manifest.contests.values()) {
-      Manifest.ContestDescription contest = contestp.contest;
-      // build a collection of valid selections for the contest description, ignoring the Placeholder Selections.
-      Map<String, Selection> contest_selections = new HashMap<>();
-      for (Manifest.SelectionDescription selection : contest.selections()) {
-        contest_selections.put(selection.selectionId(),
-                new Selection(selection.selectionId(), selection.sequenceOrder(), selection.cryptoHash()));
-      }
-      cast_collection.put(contest.contestId(), new Contest(contest.contestId(), contest.sequenceOrder(), contest.cryptoHash(), contest_selections));
+  // multiply (pad, data) into the accumulation of selection ordinal idx
+  private static void accumulate(BigInteger[] pads, BigInteger[] datas, int idx, BigInteger pad, BigInteger data,
+                                 BarrettReducer reducer) {
+    if (pads[idx] == null) {
+      pads[idx] = pad;
+      datas[idx] = data;
+    } else {
+      pads[idx] = reducer.multiply(pads[idx], pad);
+      datas[idx] = reducer.multiply(datas[idx], data);
     }
-    return cast_collection;
   }
 
   /**
-   * Append a collection of Ballots to the tally, parallelized over these ballots, for each selection.
+   * Append a collection of Ballots to the tally, parallelized over these ballots.
+   * The ballots are read once, and if ballotsIterable is a CloseableIterable, its iterator is closed.
+   * Each worker thread multiplies the ballots it takes into its own partial product for each selection,
+   * and the partial products are merged into the tally at the end, so memory use is
+   * O(selections * threads) plus the ballot ids, no matter how many ballots there are.
+   * @return the number of ballots added.
    */
   public int batch_append(Iterable<SubmittedBallot> ballotsIterable) {
-    // Map(SELECTION_ID, Map(BALLOT_ID, Ciphertext)
-    Map<String, Map<String, ElGamal.Ciphertext>> cast_ballot_selections = new HashMap<>();
-
-    // Find all the ballots for each selection.
-    AtomicInteger count = new AtomicInteger();
-    for (SubmittedBallot ballot : ballotsIterable) {
-      if (ballot.state == State.CAST && !cast_ballot_ids.contains(ballot.object_id()) &&
-                      BallotValidations.ballot_is_valid_for_election(ballot, this.manifest, this.context)) {
-        // collect the selections so they can be accumulated in parallel
-        for (CiphertextBallot.Contest contest : ballot.contests) {
-          for (CiphertextBallot.Selection selection : contest.selections) {
-            Map<String, ElGamal.Ciphertext> map2 = cast_ballot_selections.computeIfAbsent(selection.object_id(), map1 -> new HashMap<>());
-            map2.put(ballot.object_id(), selection.ciphertext());
-          }
-        }
-        this.cast_ballot_ids.add(ballot.object_id());
-        count.incrementAndGet();
+    if (ballotsIterable instanceof CloseableIterable<SubmittedBallot> closeable) {
+      try (CloseableIterator<SubmittedBallot> ballots = closeable.iterator()) {
+        return batch_append(ballots);
       }
     }
-
-    // heres where the tallies are actually accumulated, in parellel over the selections
-    boolean ok = this.execute_accumulate(cast_ballot_selections);
-    return ok ? count.get() : 0;
+    return batch_append(ballotsIterable.iterator());
   }
 
-  /** Append a ballot to the tally. Potentially parellizable over this ballot's selections. */
-  public boolean append(SubmittedBallot ballot) {
-    if (ballot.state == State.UNKNOWN) {
-      logger.atWarning().log("append cannot add %s with invalid state", ballot.object_id());
-      return false;
+  private int batch_append(Iterator<SubmittedBallot> ballots) {
+    int nworkers = Math.max(1, Runtime.getRuntime().availableProcessors());
+    // The workers block on the queue, so they get daemon threads of their own, rather than the shared Scheduler,
+    // where they could wait behind other tasks while this thread waits for them.
+    ListeningExecutorService service = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(nworkers,
+            new ThreadFactoryBuilder().setNameFormat("batch_append-%d").setDaemon(true).build()));
+    try {
+      return batch_append(ballots, service, nworkers);
+    } finally {
+      service.shutdownNow();
     }
+  }
 
-    if (this.cast_ballot_ids.contains(ballot.object_id()) || this.spoiled_ballot_ids.contains(ballot.object_id())) {
-      logger.atWarning().log("append cannot add %s, already tallied", ballot.object_id());
-      return false;
+  private int batch_append(Iterator<SubmittedBallot> ballots, ListeningExecutorService service, int nworkers) {
+    BlockingQueue<List<SubmittedBallot>> queue = new ArrayBlockingQueue<>(2 * nworkers);
+    List<ListenableFuture<Partial>> futures = new ArrayList<>();
+    for (int i = 0; i < nworkers; i++) {
+      futures.add(service.submit(new AccumulateWorker(queue, this.index)));
     }
-
-    if (!BallotValidations.ballot_is_valid_for_election(ballot, this.manifest, this.context)) {
-      return false;
+    ListenableFuture<List<Partial>> results = Futures.allAsList(futures);
+
+    // read and check the ballots on this thread, the workers do the multiplications.
+    // The ids are added to the tally only if all the workers succeed.
+    Set<String> added = new LinkedHashSet<>();
+    List<SubmittedBallot> chunk = new ArrayList<>(CHUNK_SIZE);
+    try {
+      while (ballots.hasNext()) {
+        SubmittedBallot ballot = ballots.next();
+        if (ballot.state == State.CAST && !cast_ballot_ids.contains(ballot.object_id()) &&
+                !added.contains(ballot.object_id()) &&
+                BallotValidations.ballot_is_valid_for_election(ballot, this.manifest, this.context)) {
+          added.add(ballot.object_id());
+          chunk.add(ballot);
+          if (chunk.size() == CHUNK_SIZE) {
+            if (!put(queue, chunk, results)) {
+              break; // a worker failed, results.get() will throw
+            }
+            chunk = new ArrayList<>(CHUNK_SIZE);
+          }
+        }
+      }
+      if (!chunk.isEmpty()) {
+        put(queue, chunk, results);
+      }
+    } finally {
+      finish(queue, nworkers, results);
     }
 
-    if (ballot.state == State.CAST) {
-      return this.add_cast(ballot);
+    List<Partial> partials;
+    try {
+      partials = results.get();
+    } catch (InterruptedException | ExecutionException e) {
+      logger.atWarning().withCause(e).log("batch_append failed %s", e.getMessage());
+      throw new RuntimeException(e);
     }
 
-    if (ballot.state == State.SPOILED) {
-      this.spoiled_ballot_ids.add(ballot.object_id());
-
-      return true;
+    for (Partial partial : partials) {
+      for (int idx = 0; idx < this.pads.length; idx++) {
+        if (partial.pads[idx] != null) {
+          accumulate(this.pads, this.datas, idx, partial.pads[idx], partial.datas[idx], this.reducer);
+        }
+      }
     }
-
-    logger.atWarning().log("append cannot add %s", ballot);
-    return false;
+    this.cast_ballot_ids.addAll(added);
+    this.cast_ballot_id_list.addAll(added);
+    return added.size();
   }
 
-  /** Add a single cast ballot to the tally. Potentially parellizable over this ballot's selections. */
-  private boolean add_cast(SubmittedBallot ballot) {
-    // iterate through the contests and elgamal add
-    for (CiphertextBallot.Contest contest : ballot.contests) {
-      // This should never happen since the ballot is validated against the election metadata
-      // but it's possible the local dictionary was modified so we double check.
-      if (!this.contests.containsKey(contest.contestId)) {
-        logger.atWarning().log("add cast missing contest in valid set %s", contest.contestId);
-        return false;
+  // dont block forever if the workers have failed; return false if they have
+  private static boolean put(BlockingQueue<List<SubmittedBallot>> queue, List<SubmittedBallot> chunk,
+                             ListenableFuture<?> workers) {
+    try {
+      while (!queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+        if (workers.isDone()) {
+          return false;
+        }
       }
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
 
-      Contest use_contest = this.contests.get(contest.contestId);
-      // Potentially parellizable over this ballot's selections.
-      if (!use_contest.accumulate_contest(contest.selections)) {
-        return false;
+  // an empty chunk tells a worker that there are no more ballots. If interrupted, cancel the workers instead.
+  // This doesn't throw, so that if reading the ballots failed, that is the exception that is reported.
+  private static void finish(BlockingQueue<List<SubmittedBallot>> queue, int nworkers, ListenableFuture<?> workers) {
+    try {
+      for (int i = 0; i < nworkers; i++) {
+        while (!queue.offer(List.of(), 100, TimeUnit.MILLISECONDS)) {
+          if (workers.isDone()) {
+            return;
+          }
+        }
       }
-      this.contests.put(contest.contestId, use_contest);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      workers.cancel(true);
     }
-    this.cast_ballot_ids.add(ballot.object_id());
-    return true;
   }
 
-  @Immutable
-  private static class AccumOverBallotsTuple {
-    final String selection_id;
-    final ElGamal.Ciphertext ciphertext; // accumulation over ballots
+  /** One worker's product of the ballots it has seen, indexed by selection; null if it has seen none. */
+  private static class Partial {
+    final BigInteger[] pads;
+    final BigInteger[] datas;
 
-    public AccumOverBallotsTuple(String selection_id, ElGamal.Ciphertext ciphertext) {
-      this.selection_id = selection_id;
-      this.ciphertext = ciphertext;
+    Partial(int nselections) {
+      this.pads = new BigInteger[nselections];
+      this.datas = new BigInteger[nselections];
     }
   }
 
-  //// Allow _accumulate to be run in parallel
-  @Immutable
-  static class RunAccumulateOverBallots implements Callable<AccumOverBallotsTuple> {
-    final String selection_id;
-    final ImmutableMap<String, ElGamal.Ciphertext> ballot_selections; // Map(BALLOT_ID, Ciphertext)
-
-    public RunAccumulateOverBallots(String selection_id, Map<String, ElGamal.Ciphertext> ballot_selections) {
-      this.selection_id = selection_id;
-      this.ballot_selections = ImmutableMap.copyOf(ballot_selections);
+  //// Allow the ballots to be accumulated in parallel
+  private static class AccumulateWorker implements Callable<Partial> {
+    final BlockingQueue<List<SubmittedBallot>> queue;
+    final TallyIndex index; // immutable
+    final Partial partial;
+    final BarrettReducer reducer = Group.getPrimes().getReducerP();
+
+    AccumulateWorker(BlockingQueue<List<SubmittedBallot>> queue, TallyIndex index) {
+      this.queue = queue;
+      this.index = index;
+      this.partial = new Partial(index.nselections());
     }
 
     @Override
-    public AccumOverBallotsTuple call() {
-      // ok to do this is parallel , all state is local to this class
-      ElGamal.Ciphertext ciphertext = ElGamal.elgamal_add(Iterables.toArray(ballot_selections.values(), ElGamal.Ciphertext.class));
-      return new AccumOverBallotsTuple(selection_id, ciphertext);
+    public Partial call() throws InterruptedException {
+      // ok to do this is parallel, all mutable state is local to this worker
+      List<SubmittedBallot> chunk;
+      while (!(chunk = queue.take()).isEmpty()) {
+        for (SubmittedBallot ballot : chunk) {
+          accumulate(ballot);
+        }
+      }
+      return partial;
     }
-  }
 
-  /**
-   * Called from batch_append(), process each inner map in parallel.
-   *
-   * @param ciphertext_selections_by_selection_id For each selection, the set of ballots for that selection.
-   *                                              Map(SELECTION_ID, Map(BALLOT_ID, Ciphertext)
-   * @return always return true.
-   */
-  private boolean execute_accumulate(
-          Map<String, Map<String, ElGamal.Ciphertext>> ciphertext_selections_by_selection_id) {
-
-    List<RunAccumulateOverBallots> tasks =
-            ciphertext_selections_by_selection_id.entrySet().stream()
-                    .map(entry -> new RunAccumulateOverBallots(entry.getKey(), entry.getValue()))
-                    .toList();
-
-    Scheduler<AccumOverBallotsTuple> scheduler = new Scheduler<>();
-    // This line is the only parallel processing
-    List<AccumOverBallotsTuple> result_set = scheduler.schedule(tasks, true);
-
-    // Turn result_set into a Map(SELECTION_ID, Ciphertext)
-    Map<String, ElGamal.Ciphertext> result_dict = result_set.stream()
-            .collect(Collectors.toMap(t -> t.selection_id, t -> t.ciphertext));
-
-    for (Contest contest : this.contests.values()) {
-      for (Map.Entry<String, Selection> entry2 : contest.selections.entrySet()) {
-        String selection_id = entry2.getKey();
-        Selection selection = entry2.getValue();
-        if (result_dict.containsKey(selection_id)) {
-          selection.elgamal_accumulate(result_dict.get(selection_id));
+    private void accumulate(SubmittedBallot ballot) {
+      for (CiphertextBallot.Contest contest : ballot.contests) {
+        int contestIdx = index.contestOrdinal(contest.contestId);
+        if (contestIdx == TallyIndex.NOT_FOUND) {
+          continue;
+        }
+        List<CiphertextBallot.Selection> selections = contest.selections;
+        for (int position = 0; position < selections.size(); position++) {
+          CiphertextBallot.Selection selection = selections.get(position);
+          int idx = index.selectionOrdinal(contestIdx, position, selection.object_id()); // placeholders are not tallied
+          if (idx != TallyIndex.NOT_FOUND) {
+            ElGamal.Ciphertext ciphertext = selection.ciphertext();
+            CiphertextTallyBuilder.accumulate(partial.pads, partial.datas, idx,
+                    ciphertext.pad().getBigInt(), ciphertext.data().getBigInt(), reducer);
+          }
         }
       }
     }
-
-    return true; // always true
   }
 
-  /** Build the immutable CiphertextTally. */
-  public CiphertextTally build() {
-    return new CiphertextTally(
-            this.object_id,
-            this.contests.entrySet().stream().collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue().build())));
+  /**
+   * Continue an unfinished accumulation, starting from the checkpoint's tally and cast ballot ids.
+   * Call before any ballots are appended.
+   */
+  public void resume(TallyCheckpoint checkpoint) {
+    Preconditions.checkState(this.cast_ballot_ids.isEmpty() && this.spoiled_ballot_ids.isEmpty(),
+            "resume must be called before any ballots are appended");
+    merge(checkpoint.tally(), checkpoint.castBallotIds());
   }
 
-  ///////////////////////////////////////////////////////////////////////////////////////////////////////////
-
   /**
-   * The Contest to be tallied for a specific Manifest.ContestDescription.
-   * The object_id is the Manifest.ContestDescription.object_id.
+   * Multiply the tally of some other ballots into this tally, eg the partial tally of one shard of the ballots.
+   * @param tally accumulation over the other ballots, must have the contests and selections of the manifest.
+   * @param castBallotIds the ids of the other ballots, which must not already be in this tally.
+   * @throws IllegalArgumentException if one of the ballots is already in this tally. Unlike append(), which
+   *    skips a ballot that is already in the tally, the other tally can't be merged without it.
    */
-  static class Contest {
-    public final String object_id;
-    public final int sequence_order;
-
-    /** The ContestDescription hash. */
-    final ElementModQ description_hash;
-
-    /** A collection of CiphertextTallySelection mapped by SelectionDescription.object_id. */
-    final Map<String, Selection> selections; // Map(SELECTION_ID, CiphertextTallySelection)
-
-    public Contest(String object_id, int sequence_order, ElementModQ description_hash, Map<String, Selection> selections) {
-      this.object_id = object_id;
-      this.sequence_order = sequence_order;
-      this.description_hash = description_hash;
-      this.selections = selections;
+  public void merge(CiphertextTally tally, Collection<String> castBallotIds) {
+    for (String id : castBallotIds) {
+      Preconditions.checkArgument(!this.cast_ballot_ids.contains(id), "ballot %s is already in the tally", id);
     }
-
-    /** Accumulate the contest selections of an individual ballot into this tally. Potentially parellizable over selections.*/
-    private boolean accumulate_contest(List<CiphertextBallot.Selection> contest_selections) {
-      if (contest_selections.isEmpty()) {
-        logger.atWarning().log("accumulate cannot add missing selections for contest %s", this.object_id);
-        return false;
+    // map the tally onto ordinals and check it against the manifest before changing anything
+    BigInteger[] otherPads = new BigInteger[this.pads.length];
+    BigInteger[] otherDatas = new BigInteger[this.datas.length];
+    for (CiphertextTally.Contest contest : tally.contests.values()) {
+      int contestIdx = index.contestOrdinal(contest.object_id());
+      Preconditions.checkArgument(contestIdx != TallyIndex.NOT_FOUND &&
+                      index.contest(contestIdx).cryptoHash().equals(contest.contestDescriptionHash),
+              "tally contest %s does not match the manifest", contest.object_id());
+      for (CiphertextTally.Selection selection : contest.selections.values()) {
+        int idx = index.selectionOrdinal(contestIdx, selection.object_id());
+        Preconditions.checkArgument(idx != TallyIndex.NOT_FOUND &&
+                        index.selection(idx).cryptoHash().equals(selection.description_hash()),
+                "tally selection %s does not match the manifest", selection.object_id());
+        otherPads[idx] = selection.ciphertext().pad().getBigInt();
+        otherDatas[idx] = selection.ciphertext().data().getBigInt();
       }
-
-      // Validate the input data by comparing the selection id's provided
-      // to the valid selection id's for this tally contest
-      Set<String> selection_ids = contest_selections.stream()
-              .filter(s -> !s.is_placeholder_selection)
-              .map(s -> s.object_id())
-              .collect(Collectors.toSet());
-
-      // if (any(set(this.tally_selections).difference(selection_ids))) {
-      // Set<String> have = this.tally_selections.keySet();
-      // if (!selection_ids.stream().anyMatch(id -> have.contains(id))) {
-      if (!selection_ids.equals(this.selections.keySet())) {
-        logger.atWarning().log("accumulate cannot add mismatched selections for contest %s", this.object_id);
-        return false;
+    }
+    for (int idx = 0; idx < this.pads.length; idx++) {
+      if (otherPads[idx] != null) {
+        accumulate(this.pads, this.datas, idx, otherPads[idx], otherDatas[idx], this.reducer);
       }
+    }
+    this.cast_ballot_ids.addAll(castBallotIds);
+    this.cast_ballot_id_list.addAll(castBallotIds);
+  }
 
-      // Accumulate the tally selections in parallel tasks
-      List<RunAccumulateSelections> tasks =
-              this.selections.entrySet().stream()
-                      .map(entry -> new RunAccumulateSelections(entry.getKey(), entry.getValue(), contest_selections))
-                      .toList();
+  /** The ids of the cast ballots tallied so far. */
+  public Set<String> castBallotIds() {
+    return Collections.unmodifiableSet(this.cast_ballot_ids);
+  }
 
-      Scheduler<AccumSelectionsTuple> scheduler = new Scheduler<>();
-      // this line is the only parallel processing
-      List<AccumSelectionsTuple> results = scheduler.schedule(tasks, true);
+  /**
+   * The ids of the cast ballots tallied so far, in the order they were added. This is a view, not a copy,
+   * so it grows as ballots are added, and the ids added since an earlier size n are the ones after n.
+   */
+  public List<String> castBallotIdList() {
+    return Collections.unmodifiableList(this.cast_ballot_id_list);
+  }
 
-      for (AccumSelectionsTuple tuple : results) {
-        if (tuple.ciphertext == null) {
-          return false;
-        } else {
-          Selection selection = this.selections.get(tuple.selection_id);
-          selection.ciphertext_accumulate = tuple.ciphertext;
-        }
-      }
-      return true;
+  /** Append a ballot to the tally. */
+  public boolean append(SubmittedBallot ballot) {
+    if (ballot.state == State.UNKNOWN) {
+      logger.atWarning().log("append cannot add %s with invalid state", ballot.object_id());
+      return false;
     }
 
-    public String object_id() {
-      return object_id;
+    if (this.cast_ballot_ids.contains(ballot.object_id()) || this.spoiled_ballot_ids.contains(ballot.object_id())) {
+      logger.atWarning().log("append cannot add %s, already tallied", ballot.object_id());
+      return false;
     }
 
-    public int sequence_order() {
-      return sequence_order;
+    if (!BallotValidations.ballot_is_valid_for_election(ballot, this.manifest, this.context)) {
+      return false;
     }
 
-    @Immutable
-    private static class AccumSelectionsTuple {
-      final String selection_id;
-      final ElGamal.Ciphertext ciphertext;
-
-      public AccumSelectionsTuple(String selection_id, ElGamal.Ciphertext ciphertext) {
-        this.selection_id = selection_id;
-        this.ciphertext = ciphertext;
-      }
+    if (ballot.state == State.CAST) {
+      return this.add_cast(ballot);
     }
 
-    @Immutable
-    static class RunAccumulateSelections implements Callable<AccumSelectionsTuple> {
-      final String selection_id;
-      final int sequence_order;
-      final Selection selection_tally;
-      final ImmutableList<CiphertextBallot.Selection> contest_selections;
-
-      public RunAccumulateSelections(String id, Selection selection_tally, List<CiphertextBallot.Selection> contest_selections) {
-        this.selection_id = id;
-        this.sequence_order = selection_tally.sequence_order();
-        this.selection_tally = selection_tally;
-        this.contest_selections = ImmutableList.copyOf(contest_selections);
-      }
-
-      @Override
-      public AccumSelectionsTuple call() {
-        Optional<CiphertextBallot.Selection> use_selection = contest_selections.stream()
-                .filter(s -> selection_id.equals(s.object_id())).findFirst();
-
-        // a selection on the ballot that is required was not found
-        // this should never happen when using the `CiphertextTally`, but sanity check anyway
-        if (use_selection.isEmpty()) {
-          logger.atWarning().log("add cannot accumulate for missing selection %s ", selection_id);
-          throw new RuntimeException("cant happen");
-        }
+    if (ballot.state == State.SPOILED) {
+      this.spoiled_ballot_ids.add(ballot.object_id());
 
-        ElGamal.Ciphertext ciphertext = selection_tally.elgamal_accumulate(use_selection.get().ciphertext());
-        return new AccumSelectionsTuple(selection_id, ciphertext);
-      }
+      return true;
     }
 
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) return true;
-      if (o == null || getClass() != o.getClass()) return false;
-      if (!super.equals(o)) return false;
-      Contest that = (Contest) o;
-      return description_hash.equals(that.description_hash) &&
-              selections.equals(that.selections);
-    }
+    logger.atWarning().log("append cannot add %s", ballot);
+    return false;
+  }
 
-    @Override
-    public int hashCode() {
-      return Objects.hash(super.hashCode(), description_hash, selections);
+  /** Add a single cast ballot to the tally. The ballot is checked completely before anything is accumulated. */
+  private boolean add_cast(SubmittedBallot ballot) {
+    int[][] ordinals = new int[ballot.contests.size()][];
+    for (int i = 0; i < ballot.contests.size(); i++) {
+      CiphertextBallot.Contest contest = ballot.contests.get(i);
+      // This should never happen since the ballot is validated against the election metadata
+      // but it's possible the local dictionary was modified so we double check.
+      int contestIdx = index.contestOrdinal(contest.contestId);
+      if (contestIdx == TallyIndex.NOT_FOUND) {
+        logger.atWarning().log("add cast missing contest in valid set %s", contest.contestId);
+        return false;
+      }
+      ordinals[i] = selection_ordinals(contestIdx, contest);
+      if (ordinals[i] == null) {
+        return false;
+      }
     }
 
-    CiphertextTally.Contest build() {
-      // String object_id, ElementModQ description_hash, Map<String, CiphertextTallySelection> tally_selections
-      return new CiphertextTally.Contest(
-              this.object_id, this.sequence_order, this.description_hash,
-              this.selections.entrySet().stream().collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue().build())));
+    for (int i = 0; i < ballot.contests.size(); i++) {
+      List<CiphertextBallot.Selection> selections = ballot.contests.get(i).selections;
+      for (int position = 0; position < selections.size(); position++) {
+        int idx = ordinals[i][position];
+        if (idx != TallyIndex.NOT_FOUND) {
+          ElGamal.Ciphertext ciphertext = selections.get(position).ciphertext();
+          accumulate(this.pads, this.datas, idx, ciphertext.pad().getBigInt(), ciphertext.data().getBigInt(), this.reducer);
+        }
+      }
     }
+    this.cast_ballot_ids.add(ballot.object_id());
+    this.cast_ballot_id_list.add(ballot.object_id());
+    return true;
   }
 
   /**
-   * The Selection to be tallied for a specific Manifest.SelectionDescription.
-   * The object_id is the Manifest.SelectionDescription.object_id.
+   * The ordinal of each of the contest's selections on the ballot, NOT_FOUND for placeholders.
+   * Null if the non-placeholder selections are not exactly the selections of the contest description.
    */
-  static class Selection extends CiphertextSelection {
-    private ElGamal.Ciphertext ciphertext_accumulate = new ElGamal.Ciphertext(ONE_MOD_P, ONE_MOD_P);
-
-    public Selection(String selectionDescriptionId, int sequence_order, ElementModQ description_hash) {
-      super(selectionDescriptionId, sequence_order, description_hash, new ElGamal.Ciphertext(ONE_MOD_P, ONE_MOD_P), false);
+  private int[] selection_ordinals(int contestIdx, CiphertextBallot.Contest contest) {
+    List<CiphertextBallot.Selection> selections = contest.selections;
+    if (selections.isEmpty()) {
+      logger.atWarning().log("accumulate cannot add missing selections for contest %s", contest.contestId);
+      return null;
     }
-
-    @Override
-    public ElGamal.Ciphertext ciphertext() {
-      return ciphertext_accumulate;
+    int[] result = new int[selections.size()];
+    BitSet seen = new BitSet(index.nselections());
+    int count = 0;
+    for (int position = 0; position < selections.size(); position++) {
+      CiphertextBallot.Selection selection = selections.get(position);
+      result[position] = TallyIndex.NOT_FOUND;
+      if (selection.is_placeholder_selection) {
+        continue;
+      }
+      int idx = index.selectionOrdinal(contestIdx, position, selection.object_id());
+      if (idx == TallyIndex.NOT_FOUND || seen.get(idx)) {
+        logger.atWarning().log("accumulate cannot add mismatched selections for contest %s", contest.contestId);
+        return null;
+      }
+      seen.set(idx);
+      result[position] = idx;
+      count++;
     }
-
-    /**
-     * Homomorphically add the specified value to the accumulation.
-     * Note that this method may be called by multiple threads.
-     */
-    private synchronized ElGamal.Ciphertext elgamal_accumulate(ElGamal.Ciphertext elgamal_ciphertext) {
-      this.ciphertext_accumulate = ElGamal.elgamal_add(this.ciphertext_accumulate, elgamal_ciphertext);
-      return this.ciphertext_accumulate;
+    if (count != index.nselections(contestIdx)) {
+      logger.atWarning().log("accumulate cannot add mismatched selections for contest %s", contest.contestId);
+      return null;
     }
+    return result;
+  }
 
-    CiphertextTally.Selection build() {
-      return new CiphertextTally.Selection(
-              this.object_id(), this.sequence_order(), this.description_hash(), this.ciphertext_accumulate);
-    }
+  /** Build the immutable CiphertextTally. */
+  public CiphertextTally build() {
+    return index.toCiphertextTally(this.object_id, this.pads, this.datas);
   }
 }
@@ -62,7 +62,7 @@ public class CompactSubmittedBallot {
 
     List<CiphertextBallot.Contest> contests =
             Encrypt.encrypt_ballot_contests(
-                    plaintext_ballot, internal_manifest, context, nonce_seed).orElseThrow();
+                    plaintext_ballot, internal_manifest, context, nonce_seed, true, false).orElseThrow();
 
     return SubmittedBallot.create(
             plaintext_ballot.object_id(),
@@ -1,51 +1,230 @@
 package com.sunya.electionguard;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.google.common.base.Preconditions;
 
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 
 import static com.sunya.electionguard.Group.*;
 
 /**
- * Computes the discrete log (base g, mod p) of the given element, with internal caching of results.
- * Should run efficiently when called multiple times when the exponent is at most in the single-digit millions.
- * Performance will degrade if it's much larger.
+ * Computes the discrete log (base g, mod p) of the given element, for exponents in [0, max].
+ * Uses baby-step giant-step: a table of base^j for j in [0, m) is built once, then
+ * x = i * m + j is found with at most max / m giant steps, each one multiplication by base^-m.
+ * The table is keyed by a 64 bit fingerprint of the element (its low 64 bits) in an open-addressing map,
+ * and every match is confirmed with an exponentiation, so a fingerprint collision can't give a wrong answer.
+ * <p>
+ * Instances are immutable and may be used concurrently. The static discrete_log uses a shared instance
+ * for the generator, built on first use, or read from a memory-mapped precomputation file, see Precomputed.
  */
+@Immutable
 public class Dlog {
-  private static int max = 1000; // max vote count - TODO should be settable
-  private static final Cache<BigInteger, Integer> cache = CacheBuilder.newBuilder().build();
-  static {
-    cache.put(BigInteger.ONE, 0);
-  }
-  private static BigInteger dlog_max_elem = BigInteger.ONE;
-  private static int dlog_max_exp = 0;
+  /** Default maximum exponent, eg the maximum vote count of a tally. */
+  public static final int DEFAULT_MAX = 1_000_000;
+  /** Default number of baby steps, a tradeoff between table build time and giant steps per lookup. */
+  public static final int DEFAULT_BABY_STEPS = 1 << 12;
+
+  private static int max = DEFAULT_MAX;
+  private static volatile Dlog generatorDlog;
 
-  public static void setMax(int max) {
+  /** Set the maximum exponent of discrete_log. */
+  public static synchronized void setMax(int max) {
+    Preconditions.checkArgument(max >= 0);
     Dlog.max = max;
+    generatorDlog = null;
   }
 
+  /**
+   * Discrete log base g of elem.
+   * @throws RuntimeException if the log is not in [0, max].
+   */
   public static Integer discrete_log(ElementModP elem) {
-    Integer result = cache.getIfPresent(elem.elem);
-    if (result != null) {
-      // System.out.printf("Got a hit on %d%n", result);
-      return result;
+    Integer result = generatorDlog().log(elem);
+    if (result == null) {
+      throw new RuntimeException(String.format("Discrete_log exceeds max %d%n", max));
     }
-    return discrete_log_internal(elem.elem);
+    return result;
+  }
+
+  /** Use this instance for discrete_log, eg one read from a precomputation file. Its base must be the generator. */
+  static synchronized void setGeneratorDlog(Dlog dlog) {
+    Preconditions.checkArgument(dlog.base.equals(getPrimes().generatorP));
+    Dlog.max = dlog.maxExponent;
+    generatorDlog = dlog;
   }
 
-  // store all integer values up to dlog_max_elem, which increases as needed.
-  private static synchronized Integer discrete_log_internal(BigInteger e) {
-    BigInteger G = getPrimes().generator;
-    while (!e.equals(dlog_max_elem)) {
-      dlog_max_exp = dlog_max_exp + 1;
-      if (dlog_max_exp > max) {
-        throw new RuntimeException(String.format("Discrete_log_internal exceeds max %d%n", dlog_max_exp));
+  private static Dlog generatorDlog() {
+    Dlog result = generatorDlog;
+    if (result == null || !result.base.equals(getPrimes().generatorP)) {
+      synchronized (Dlog.class) {
+        result = generatorDlog;
+        if (result == null || !result.base.equals(getPrimes().generatorP)) {
+          result = new Dlog(getPrimes().generatorP, max);
+          generatorDlog = result;
+        }
       }
-      dlog_max_elem = mult_pi(G, dlog_max_elem);
-      cache.put(dlog_max_elem, dlog_max_exp);
     }
-    return cache.getIfPresent(dlog_max_elem);
+    return result;
   }
 
+  ////////////////////////////////////////////////////////////////////////////////
+  private static final int EMPTY = -1;
+  private static final int MAX_BABY_STEPS = 1 << 24;
+
+  private final ElementModP base;
+  private final int maxExponent;
+  private final int babySteps; // m
+  private final BigInteger giantStep; // base^-m mod p
+  private final BarrettReducer reducer;
+  // open addressing with linear probing, keys[i] is the fingerprint of base^values[i]
+  private final LongBuffer keys;
+  private final IntBuffer values;
+  private final int mask;
+
+  /** Discrete logs base `base` in [0, max], with the default number of baby steps. */
+  public Dlog(ElementModP base, int max) {
+    this(base, max, defaultBabySteps(max));
+  }
+
+  /**
+   * Discrete logs base `base` in [0, max].
+   * @param babySteps number of entries in the table, at most max + 1.
+   */
+  public Dlog(ElementModP base, int max, int babySteps) {
+    Preconditions.checkArgument(max >= 0);
+    Preconditions.checkArgument(babySteps > 0 && babySteps <= max + 1L, "babySteps must be in [1, max + 1]");
+    Preconditions.checkArgument(babySteps <= MAX_BABY_STEPS, "babySteps must be at most %s", MAX_BABY_STEPS);
+    this.base = base;
+    this.maxExponent = max;
+    this.babySteps = babySteps;
+    this.reducer = getPrimes().getReducerP();
+
+    int capacity = Integer.highestOneBit(babySteps) << 2; // load factor at most 1/2
+    this.keys = LongBuffer.allocate(capacity);
+    this.values = IntBuffer.allocate(capacity);
+    this.mask = capacity - 1;
+    for (int i = 0; i < capacity; i++) {
+      this.values.put(i, EMPTY);
+    }
+
+    BigInteger power = BigInteger.ONE;
+    for (int j = 0; j < babySteps; j++) {
+      put(power.longValue(), j);
+      power = reducer.multiply(power, base.elem);
+    }
+    // power = base^m
+    this.giantStep = power.modInverse(getPrimes().largePrime);
+  }
+
+  /**
+   * Use a table that was written by write, usually memory-mapped.
+   * @param mapped positioned at the start of what write wrote. Not modified.
+   * @throws IllegalArgumentException if the table is truncated or not valid.
+   */
+  Dlog(ElementModP base, ByteBuffer mapped) {
+    ByteBuffer in = mapped.slice();
+    Preconditions.checkArgument(in.remaining() >= 16, "dlog table too short");
+    this.base = base;
+    this.maxExponent = in.getInt();
+    this.babySteps = in.getInt();
+    int capacity = in.getInt();
+    int giantLength = in.getInt();
+    Preconditions.checkArgument(maxExponent >= 0 && babySteps > 0 && babySteps <= MAX_BABY_STEPS, "bad dlog table");
+    Preconditions.checkArgument(Integer.bitCount(capacity) == 1 && capacity > babySteps, "bad dlog table");
+    Preconditions.checkArgument(giantLength > 0 && in.remaining() >= giantLength + capacity * 12L, "dlog table too short");
+    byte[] giant = new byte[giantLength];
+    in.get(giant);
+    this.giantStep = new BigInteger(1, giant);
+    this.reducer = getPrimes().getReducerP();
+    this.mask = capacity - 1;
+    this.keys = in.slice().limit(capacity * 8).asLongBuffer();
+    in.position(in.position() + capacity * 8);
+    this.values = in.slice().limit(capacity * 4).asIntBuffer();
+  }
+
+  /** Size in bytes of what write writes. */
+  long serializedSize() {
+    return 16L + giantStep.toByteArray().length + this.keys.capacity() * 12L;
+  }
+
+  /** Write the table, to be read back by Dlog(base, mapped). */
+  void write(ByteBuffer out) {
+    byte[] giant = giantStep.toByteArray();
+    out.putInt(maxExponent);
+    out.putInt(babySteps);
+    out.putInt(keys.capacity());
+    out.putInt(giant.length);
+    out.put(giant);
+    for (int i = 0; i < keys.capacity(); i++) {
+      out.putLong(keys.get(i));
+    }
+    for (int i = 0; i < values.capacity(); i++) {
+      out.putInt(values.get(i));
+    }
+  }
+
+  // the first, ie smallest, j wins if two entries share a fingerprint
+  private void put(long key, int value) {
+    int slot = slot(key);
+    while (values.get(slot) != EMPTY) {
+      if (keys.get(slot) == key) {
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys.put(slot, key);
+    values.put(slot, value);
+  }
+
+  private int get(long key) {
+    int slot = slot(key);
+    int value;
+    while ((value = values.get(slot)) != EMPTY) {
+      if (keys.get(slot) == key) {
+        return value;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return EMPTY;
+  }
+
+  private int slot(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+
+  /** The discrete log of elem, or null if it is not in [0, max]. */
+  @Nullable
+  public Integer log(ElementModP elem) {
+    BigInteger gamma = elem.elem;
+    int ngiant = maxExponent / babySteps;
+    for (int i = 0; i <= ngiant; i++) {
+      int j = get(gamma.longValue());
+      if (j != EMPTY) {
+        long x = (long) i * babySteps + j;
+        if (x <= maxExponent && pow_p(base, int_to_q_unchecked(BigInteger.valueOf(x))).equals(elem)) {
+          return (int) x;
+        }
+      }
+      gamma = reducer.multiply(gamma, giantStep);
+    }
+    return null;
+  }
+
+  public int getMax() {
+    return maxExponent;
+  }
+
+  ElementModP getBase() {
+    return base;
+  }
+
+  private static int defaultBabySteps(int max) {
+    int sqrt = (int) Math.ceil(Math.sqrt(max + 1.0));
+    return (int) Math.min(max + 1L, Math.max(sqrt, DEFAULT_BABY_STEPS));
+  }
 }
@@ -110,6 +110,13 @@ public class ElectionConstants {
   public final int sizeP; // nbytes of P
   public final int sizeQ; // nbytes of Q
 
+  /** Barrett reduction mod p. */
+  private final transient BarrettReducer reducerP;
+  /** Fixed-base table for g^e mod p, built on first use. */
+  private transient volatile PowRadix generatorPowRadix;
+  /** If the cofactor is 2 times a large prime, computed on first use. */
+  private transient volatile Boolean cofactorIsTwiceLargePrime;
+
   public ElectionConstants(@Nullable String name, BigInteger largePrime, BigInteger smallPrime, BigInteger cofactor,
                            BigInteger generator, int sizeP, int sizeQ) {
     this.largePrime = Preconditions.checkNotNull(largePrime);
@@ -117,6 +124,7 @@ public class ElectionConstants {
     this.cofactor = Preconditions.checkNotNull(cofactor);
     this.generator = Preconditions.checkNotNull(generator);
     this.generatorP = Group.int_to_p_unchecked(generator);
+    this.reducerP = new BarrettReducer(largePrime);
     this.name = name != null ? name : getPrimeOptionType().name();
     this.sizeP = sizeP;
     this.sizeQ = sizeQ;
@@ -129,6 +137,7 @@ public class ElectionConstants {
     this.cofactor = Preconditions.checkNotNull(cofactor);
     this.generator = Preconditions.checkNotNull(generator);
     this.generatorP = Group.int_to_p_unchecked(generator);
+    this.reducerP = new BarrettReducer(largePrime);
     PrimeOption primeOption = getPrimeOptionType();
     if (primeOption == null) {
       throw new IllegalStateException();
@@ -139,6 +148,48 @@ public class ElectionConstants {
     this.sizeQ = ec.sizeQ;
   }
 
+  /** Fast reduction mod p, used for all products mod p. */
+  public BarrettReducer getReducerP() {
+    return reducerP;
+  }
+
+  /** The precomputed table for exponentiation with the generator as base. Built once, on first use. */
+  public PowRadix getGeneratorPowRadix() {
+    PowRadix result = generatorPowRadix;
+    if (result == null) {
+      synchronized (this) {
+        result = generatorPowRadix;
+        if (result == null) {
+          result = new PowRadix(generator, largePrime, smallPrime.bitLength(), PowRadix.PowRadixOption.HIGH_MEMORY_USE);
+          generatorPowRadix = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /** Use this table for the generator, eg one read from a precomputation file. */
+  void setGeneratorPowRadix(PowRadix table) {
+    Preconditions.checkArgument(table.base.equals(generator) && table.modulus.equals(largePrime));
+    synchronized (this) {
+      generatorPowRadix = table;
+    }
+  }
+
+  /**
+   * If R = 2 * s, with s a prime larger than 2^64 and not equal to Q.
+   * Then Z_p^* has no subgroups of small order other than {1, -1}, which Group.is_valid_residues relies on.
+   */
+  public boolean isCofactorTwiceLargePrime() {
+    Boolean result = cofactorIsTwiceLargePrime;
+    if (result == null) {
+      BigInteger half = cofactor.shiftRight(1);
+      result = !cofactor.testBit(0) && half.bitLength() > 64 && !half.equals(smallPrime) && half.isProbablePrime(50);
+      cofactorIsTwiceLargePrime = result;
+    }
+    return result;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -167,15 +167,12 @@ public class ElectionPolynomial {
    * @param coefficient_commitments Commitments for coefficients of polynomial (K_ij)
    */
   public static ElementModP compute_gPcoordinate(BigInteger coordinate, List<ElementModP> coefficient_commitments) {
-    ElementModP result = Group.ONE_MOD_P;
-    int count = 0;
-    for (ElementModP commitment : coefficient_commitments) {
-      ElementModP exponent = Group.int_to_p_unchecked(Group.pow_pi(coordinate, BigInteger.valueOf(count)));
-      ElementModP factor = Group.pow_p(commitment, exponent);
-      result = Group.mult_p(result, factor);
-      count++;
+    ElementModP[] bases = coefficient_commitments.toArray(new ElementModP[0]);
+    ElementModP[] exponents = new ElementModP[bases.length];
+    for (int count = 0; count < bases.length; count++) {
+      exponents[count] = Group.int_to_p_unchecked(Group.pow_pi(coordinate, BigInteger.valueOf(count)));
     }
-    return result;
+    return Group.multi_pow_p(bases, exponents);
   }
 
 }
@@ -10,6 +10,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.sunya.electionguard.Group.*;
 import static com.sunya.electionguard.InternalManifest.ContestWithPlaceholders;
@@ -111,23 +112,76 @@ public class Encrypt {
   public static class EncryptionMediator {
     private final InternalManifest internalManifest;
     private final ElectionContext context;
+    private final boolean parallel;
+    private final VerificationPolicy verification;
     private ElementModQ encryption_seed;
 
     public EncryptionMediator(InternalManifest internalManifest, ElectionContext context,
                               EncryptionDevice encryption_device) {
+      this(internalManifest, context, encryption_device, false, VerificationPolicy.sync());
+    }
+
+    public EncryptionMediator(InternalManifest internalManifest, ElectionContext context,
+                              EncryptionDevice encryption_device, boolean parallel) {
+      this(internalManifest, context, encryption_device, parallel, VerificationPolicy.sync());
+    }
+
+    /**
+     * @param parallel encrypt the contests and selections of each ballot in parallel, for a lower latency per ballot.
+     *                 Leave false when encrypting many ballots in parallel.
+     * @param verification when to check the proofs of the encrypted ballots. The caller closes it.
+     */
+    public EncryptionMediator(InternalManifest internalManifest, ElectionContext context,
+                              EncryptionDevice encryption_device, boolean parallel, VerificationPolicy verification) {
       this.internalManifest = internalManifest;
+      this.parallel = parallel;
+      this.verification = Preconditions.checkNotNull(verification);
       this.context = context;
       // LOOK does not follow validation spec 6.A, which calls for crypto_base_hash.
       //   Ok to use device hash see Issue #272. Spec should be updated.
       this.encryption_seed = encryption_device.get_hash();
+      // K is the base of an exponentiation in every encryption and proof
+      PowRadixCache.register(context.electionPublicKey());
     }
 
     /** Encrypt the plaintext ballot using the joint public key K. */
-    public Optional<CiphertextBallot> encrypt(PlaintextBallot ballot) {
-      Optional<CiphertextBallot> encrypted_ballot =
-              encrypt_ballot(ballot, this.internalManifest, this.context, this.encryption_seed, Optional.empty(), true);
-      encrypted_ballot.ifPresent(ciphertextBallot -> this.encryption_seed = ciphertextBallot.code);
-      return encrypted_ballot;
+    public synchronized Optional<CiphertextBallot> encrypt(PlaintextBallot ballot) {
+      Optional<CiphertextBallot> encrypted_ballot = encryptUnchained(ballot);
+      return encrypted_ballot.map(this::chain);
+    }
+
+    /**
+     * Encrypt the plaintext ballot, without chaining its code to the previous ballot, see chain().
+     * This is the expensive part of encrypt(), and may be called for several ballots in parallel.
+     */
+    public Optional<CiphertextBallot> encryptUnchained(PlaintextBallot ballot) {
+      return encrypt_ballot(ballot, this.internalManifest, this.context, UNCHAINED_SEED, Optional.empty(),
+              verification.verifyWhileEncrypting(), this.parallel)
+              .filter(encrypted -> verification.accept(encrypted, this::isValid));
+    }
+
+    private boolean isValid(CiphertextBallot encrypted) {
+      return encrypted.is_valid_encryption(this.internalManifest.manifest.cryptoHash(),
+              this.context.electionPublicKey(), this.context.extendedHash(), this.parallel);
+    }
+
+    public VerificationPolicy verification() {
+      return verification;
+    }
+
+    /**
+     * Chain a ballot from encryptUnchained() to the previous ballot, giving it its code_seed, timestamp and code.
+     * Call in the order the ballots are to be chained. encryptUnchained() then chain() gives the same ballot as encrypt().
+     */
+    public synchronized CiphertextBallot chain(CiphertextBallot unchained) {
+      CiphertextBallot chained = chain_ballot(unchained, this.encryption_seed);
+      this.encryption_seed = chained.code;
+      return chained;
+    }
+
+    /** Continue the chain of ballot codes from a ballot encrypted earlier, eg before a restart. */
+    public void continueChainFrom(ElementModQ code) {
+      this.encryption_seed = Preconditions.checkNotNull(code);
     }
   }
 
@@ -270,6 +324,23 @@ public class Encrypt {
           ElementModQ crypto_extended_base_hash,
           ElementModQ nonce_seed,
           boolean should_verify_proofs /* default true */) {
+    return encrypt_contest(where, contest, contestp, jointPublicKey, crypto_extended_base_hash, nonce_seed,
+            should_verify_proofs, false);
+  }
+
+  /**
+   * Same as encrypt_contest(), optionally encrypting the selections in parallel on the common ForkJoinPool.
+   * The selections are in manifest order, followed by the placeholders, as when sequential.
+   */
+  public static Optional<CiphertextBallot.Contest> encrypt_contest(
+          String where,
+          PlaintextBallot.Contest contest,
+          ContestWithPlaceholders contestp,
+          ElementModP jointPublicKey,
+          ElementModQ crypto_extended_base_hash,
+          ElementModQ nonce_seed,
+          boolean should_verify_proofs,
+          boolean parallel) {
 
     Manifest.ContestDescription contest_description = contestp.contest;
     // Validate Input
@@ -293,16 +364,15 @@ public class Encrypt {
     ElementModQ contest_nonce = nonce_sequence.get(contest_description.sequenceOrder());
     ElementModQ chaum_pedersen_nonce = nonce_sequence.get(0);
 
+    // First decide the plaintext of every selection, which is cheap, then encrypt them, which is not.
     int selection_count = 0;
-    List<CiphertextBallot.Selection> encrypted_selections = new ArrayList<>();
+    List<SelectionToEncrypt> selections = new ArrayList<>();
     // LOOK this will fail if there are duplicate selection_id's
     Map<String, PlaintextBallot.Selection> plaintext_selections = contest.selections.stream().collect(Collectors.toMap(s -> s.selectionId, s -> s));
 
     // LOOK only iterate on selections that match the manifest. If there are selections contests on the ballot,
     //   they are silently ignored.
     for (Manifest.SelectionDescription description : contest_description.selections()) {
-        Optional<CiphertextBallot.Selection> encrypted_selection;
-
         // Find the actual selection matching the contest description.
         // If there is not one, an explicit false is entered instead and the selection_count is not incremented.
         // This allows ballots to contain only the yes votes, if so desired.
@@ -311,32 +381,11 @@ public class Encrypt {
           // track the selection count so we can append the
           // appropriate number of true placeholder votes
           selection_count += plaintext_selection.vote;
-          encrypted_selection = encrypt_selection(
-                  where + " " + contest.contestId,
-                  plaintext_selection,
-                  description,
-                  jointPublicKey,
-                  crypto_extended_base_hash,
-                  contest_nonce,
-                  false,
-                  true);
+          selections.add(new SelectionToEncrypt(plaintext_selection, description, false));
         } else {
           // No selection was made for this possible value so we explicitly set it to false
-          encrypted_selection = encrypt_selection(
-                  where + " " + contest.contestId,
-                  selection_from(description, false, false),
-                  description,
-                  jointPublicKey,
-                  crypto_extended_base_hash,
-                  contest_nonce,
-                  false,
-                  true);
-        }
-
-        if (encrypted_selection.isEmpty()) {
-          return Optional.empty(); // log will have happened earlier
+          selections.add(new SelectionToEncrypt(selection_from(description, false, false), description, false));
         }
-        encrypted_selections.add(encrypted_selection.get());
     }
 
     // Handle Placeholder selections. After we loop through all of the real selections on the ballot,
@@ -352,20 +401,25 @@ public class Encrypt {
         select_placeholder = true;
         selection_count += 1;
       }
+      selections.add(new SelectionToEncrypt(selection_from(placeholder, true, select_placeholder), placeholder, true));
+    }
 
-      Optional<CiphertextBallot.Selection> encrypted_selection = encrypt_selection(
-              where + " " + contest.contestId,
-
-              selection_from(placeholder, true, select_placeholder),
-         placeholder,
-         jointPublicKey,
-         crypto_extended_base_hash,
-         contest_nonce, true, true);
-      if (encrypted_selection.isEmpty()) {
-        return Optional.empty(); // log will have happened earlier
-      }
-      encrypted_selections.add(encrypted_selection.get());
+    Stream<SelectionToEncrypt> selectionStream = parallel ? selections.parallelStream() : selections.stream();
+    List<Optional<CiphertextBallot.Selection>> encrypted = selectionStream
+            .map(selection -> encrypt_selection(
+                    where + " " + contest.contestId,
+                    selection.plaintext(),
+                    selection.description(),
+                    jointPublicKey,
+                    crypto_extended_base_hash,
+                    contest_nonce,
+                    selection.is_placeholder(),
+                    should_verify_proofs))
+            .toList();
+    if (encrypted.stream().anyMatch(Optional::isEmpty)) {
+      return Optional.empty(); // log will have happened earlier
     }
+    List<CiphertextBallot.Selection> encrypted_selections = encrypted.stream().map(Optional::get).toList();
 
     // TODO: ISSUE #33: support other cases such as cumulative voting (individual selections being an encryption of > 1)
     if (selection_count < contest_description.votesAllowed()) {
@@ -401,6 +455,10 @@ public class Encrypt {
     }
   }
 
+  private record SelectionToEncrypt(PlaintextBallot.Selection plaintext,
+                                    Manifest.SelectionDescription description,
+                                    boolean is_placeholder) {}
+
   // TODO: ISSUE #57: add the device hash to the function interface so it can be propagated with the ballot.
   //  also propagate the seed hash so that the ballot tracking id's can be regenerated
   //  by traversing the collection of ballots encrypted by a specific device
@@ -430,6 +488,23 @@ public class Encrypt {
           ElementModQ encryption_seed,
           Optional<ElementModQ> nonce,
           boolean should_verify_proofs)  {
+    return encrypt_ballot(ballot, internal_manifest, context, encryption_seed, nonce, should_verify_proofs, false);
+  }
+
+  /**
+   * Same as encrypt_ballot(), optionally encrypting the contests and their selections, and checking their proofs,
+   * in parallel on the common ForkJoinPool. This lowers the latency of encrypting a single long ballot on a
+   * multi-core machine, eg a kiosk; it does not increase the throughput when encrypting many ballots.
+   * The result is the same as when sequential, with the contests in manifest order.
+   */
+  public static Optional<CiphertextBallot> encrypt_ballot(
+          PlaintextBallot ballot,
+          InternalManifest internal_manifest,
+          ElectionContext context,
+          ElementModQ encryption_seed,
+          Optional<ElementModQ> nonce,
+          boolean should_verify_proofs,
+          boolean parallel)  {
 
     // Determine the relevant range of contests for this ballot style
     Optional<Manifest.BallotStyle> style = internal_manifest.get_ballot_style(ballot.ballotStyleId);
@@ -453,7 +528,7 @@ public class Encrypt {
     ElementModQ ballotNonce = Hash.hash_elems(internal_manifest.manifest.cryptoHash(), ballot.object_id(), random_master_nonce);
 
     Optional<List<CiphertextBallot.Contest>> encrypted_contests = encrypt_ballot_contests(
-            ballot, internal_manifest, context, ballotNonce);
+            ballot, internal_manifest, context, ballotNonce, should_verify_proofs, parallel);
     if (encrypted_contests.isEmpty()) {
       return Optional.empty();
     }
@@ -474,50 +549,77 @@ public class Encrypt {
     }
 
     // Verify the proofs
-    if (encrypted_ballot.is_valid_encryption(internal_manifest.manifest.cryptoHash(), context.electionPublicKey(), context.extendedHash())) {
+    if (encrypted_ballot.is_valid_encryption(internal_manifest.manifest.cryptoHash(), context.electionPublicKey(), context.extendedHash(), parallel)) {
       return Optional.of(encrypted_ballot);
     } else {
       return Optional.empty(); // log error will have happened earlier
     }
   }
 
-  /** Encrypt contests from a plaintext ballot with a specific style. */
+  // the code_seed of a ballot that is not chained yet; its code is replaced by chain_ballot()
+  static final ElementModQ UNCHAINED_SEED = Group.ZERO_MOD_Q;
+
+  /**
+   * Chain an encrypted ballot to the previous ballot: set its code_seed, and compute its timestamp and code.
+   * Nothing else depends on the code_seed, so the contests, proofs and crypto_hash are unchanged.
+   * @param encryption_seed the code of the previous ballot, or the starting hash from the device.
+   */
+  public static CiphertextBallot chain_ballot(CiphertextBallot ballot, ElementModQ encryption_seed) {
+    return CiphertextBallot.create(
+            ballot.ballotId,
+            ballot.ballotStyleId,
+            ballot.manifestHash,
+            encryption_seed,
+            ballot.contests,
+            ballot.nonce,
+            Optional.empty(),
+            Optional.empty());
+  }
+
+  /**
+   * Encrypt contests from a plaintext ballot with a specific style, optionally in parallel.
+   * should_verify_proofs is passed on to encrypt_contest() and encrypt_selection().
+   */
   static Optional<List<CiphertextBallot.Contest>> encrypt_ballot_contests(
           PlaintextBallot ballot,
           InternalManifest description,
           ElectionContext context,
-          ElementModQ nonce_seed) {
+          ElementModQ nonce_seed,
+          boolean should_verify_proofs,
+          boolean parallel) {
 
-    List<CiphertextBallot.Contest> encrypted_contests = new ArrayList<>();
     // LOOK this will fail if there are duplicate contest_id's
     Map<String, PlaintextBallot.Contest> plaintext_contests = ballot.contests.stream()
             .collect(Collectors.toMap(c -> c.contestId, c -> c));
 
     // LOOK only iterate on contests that match the manifest. If there are miscoded contests on the ballot,
     //   they are silently ignored.
-    for (ContestWithPlaceholders contestp : description.get_contests_for_style(ballot.ballotStyleId)) {
-      Manifest.ContestDescription contestm = contestp.contest;
-      PlaintextBallot.Contest use_contest = plaintext_contests.get(contestm.contestId());
-
-      // no selections provided for the contest, so create a blank contest
-      if (use_contest == null) {
-        use_contest = contest_from(contestm);
-      }
-
-      Optional<CiphertextBallot.Contest> encrypted_contest = encrypt_contest(
-              ballot.object_id(),
-              use_contest,
-              contestp,
-              context.electionPublicKey(),
-              context.extendedHash(),
-              nonce_seed, true);
-
-      if (encrypted_contest.isEmpty()) {
-        return Optional.empty();  //log will have happened earlier
-      }
-      encrypted_contests.add(encrypted_contest.get());
+    List<ContestWithPlaceholders> contests = description.get_contests_for_style(ballot.ballotStyleId);
+    Stream<ContestWithPlaceholders> contestStream = parallel ? contests.parallelStream() : contests.stream();
+    List<Optional<CiphertextBallot.Contest>> encrypted_contests = contestStream
+            .map(contestp -> {
+              Manifest.ContestDescription contestm = contestp.contest;
+              PlaintextBallot.Contest use_contest = plaintext_contests.get(contestm.contestId());
+
+              // no selections provided for the contest, so create a blank contest
+              if (use_contest == null) {
+                use_contest = contest_from(contestm);
+              }
+
+              return encrypt_contest(
+                      ballot.object_id(),
+                      use_contest,
+                      contestp,
+                      context.electionPublicKey(),
+                      context.extendedHash(),
+                      nonce_seed, should_verify_proofs, parallel);
+            })
+            .toList();
+
+    if (encrypted_contests.stream().anyMatch(Optional::isEmpty)) {
+      return Optional.empty();  //log will have happened earlier
     }
-    return Optional.of(encrypted_contests);
+    return Optional.of(encrypted_contests.stream().map(Optional::get).toList());
   }
 
 }
@@ -1,11 +1,14 @@
 package com.sunya.electionguard;
 
+import at.favre.lib.bytes.Bytes;
 import com.google.common.collect.Iterables;
 
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -34,6 +37,10 @@ public class Hash {
    * using SHA256. Allowed element types are `ElementModP`, `ElementModQ`,
    * `str`, or `int`, anything implementing `CryptoHashable`, and lists
    * or optionals of any of those types.
+   * <p>
+   * The hash is of the string "|" + e1 + "|" + e2 + "|" ... in UTF-8, where elements are in upper case hex,
+   * and a nested list is replaced by the hex of its own hash. The bytes are streamed into a reused
+   * per-thread digest, without building the string.
    *
    * @param a Zero or more elements of any of the accepted types.
    * @return A cryptographic hash of these elements, concatenated.
@@ -41,55 +48,166 @@ public class Hash {
    */
   public static Group.ElementModQ hash_elems(Object... a) {
     // System.out.printf("elements: %s%n%n", Arrays.toString(a));
+    EncoderStack stack = encoders.get();
+    Encoder encoder = stack.push();
+    try {
+      encoder.write('|');
+
+      if (a.length == 0) {
+        encoder.write("null|");
+      }
 
-    StringBuilder hashAll = new StringBuilder();
-    hashAll.append("|");
+      for (Object x : a) {
+        // unwrap Optional, following python
+        if (x instanceof Optional) {
+          Optional xO = (Optional) x;
+          x = (xO.isPresent()) ? xO.get() : null;
+        }
 
-    if (a.length == 0) {
-      String hash_me = "null|";
-      hashAll.append(hash_me);
+        if (x == null) {
+          encoder.write("null");
+        } else if (x instanceof Group.ElementMod) {
+          encoder.writeHex(((Group.ElementMod) x).canonicalBytes());
+        } else if (x instanceof CryptoHashable) {
+          encoder.writeHex(((CryptoHashable) x).cryptoHash().canonicalBytes());
+        } else if (x instanceof CryptoHashableString) {
+          encoder.write(((CryptoHashableString) x).cryptoHashString());
+        } else if (x instanceof String) {
+          // strings are iterable, so it 's important to handle them before list-like types
+          encoder.write((String) x);
+        } else if (x instanceof Iterable) {
+          // The simplest way to deal with lists, tuples, and such are to crunch them recursively.
+          Object[] asArray = Iterables.toArray((Iterable) x, Object.class);
+          if (asArray.length == 0) {
+            encoder.write("null");
+          } else {
+            encoder.writeHex(hash_elems(asArray).canonicalBytes());
+          }
+        } else {
+          encoder.write(x.toString());
+        }
+        encoder.write('|');
+      }
+      if (debug) {
+        System.out.printf("  hashAll: %s%n", encoder.debugString());
+      }
+      BigInteger bi = new BigInteger(1, encoder.digest());
+      BigInteger bim = bi.mod(Group.getPrimes().smallPrime);
+      return Group.int_to_q_unchecked(bim);
+    } finally {
+      stack.pop();
     }
+  }
 
-    for (Object x : a) {
-      // unwrap Optional, following python
-      if (x instanceof Optional) {
-        Optional xO = (Optional) x;
-        x = (xO.isPresent()) ? xO.get() : null;
+  private static final ThreadLocal<EncoderStack> encoders = ThreadLocal.withInitial(EncoderStack::new);
+
+  /** One encoder for each level of nested lists, so a nested hash doesn't disturb the enclosing one. */
+  private static class EncoderStack {
+    private final List<Encoder> encoders = new ArrayList<>();
+    private int depth = 0;
+
+    Encoder push() {
+      if (depth == encoders.size()) {
+        encoders.add(new Encoder());
       }
+      Encoder encoder = encoders.get(depth++);
+      encoder.reset();
+      return encoder;
+    }
 
-      String hash_me;
-      if (x == null) {
-        hash_me = "null";
-      } else if (x instanceof Group.ElementMod) {
-        hash_me = ((Group.ElementMod)x).base16();
-      } else if (x instanceof CryptoHashable) {
-        hash_me = ((CryptoHashable)x).cryptoHash().base16();
-      } else if (x instanceof CryptoHashableString) {
-        hash_me = ((CryptoHashableString)x).cryptoHashString();
-      } else if (x instanceof String) {
-          // strings are iterable, so it 's important to handle them before list-like types
-        hash_me = (String) x;
-      } else if (x instanceof Iterable) {
-          // The simplest way to deal with lists, tuples, and such are to crunch them recursively.
-        Object[] asArray = Iterables.toArray((Iterable) x, Object.class);
-        hash_me = (asArray.length == 0) ? "null" : hash_elems(asArray).base16();
-      } else {
-        hash_me = x.toString();
+    void pop() {
+      depth--;
+    }
+  }
+
+  /** Writes the UTF-8 bytes of the hash string into a SHA-256 digest, through a small buffer. */
+  private static class Encoder {
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private final MessageDigest digest;
+    private final byte[] buffer = new byte[1024];
+    private int pos = 0;
+    private final StringBuilder debugString = new StringBuilder();
+
+    Encoder() {
+      try {
+        this.digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException(e);
       }
-      hash_me += "|";
-      hashAll.append(hash_me);
     }
-    if (debug) {
-      System.out.printf("  hashAll: %s%n", hashAll);
+
+    void reset() {
+      digest.reset();
+      pos = 0;
+      debugString.setLength(0);
     }
-    try {
-      MessageDigest digest = MessageDigest.getInstance("SHA-256");
-      digest.update(hashAll.toString().getBytes(StandardCharsets.UTF_8));
-      BigInteger bi = new BigInteger(1, digest.digest());
-      BigInteger bim = bi.mod(Group.getPrimes().smallPrime);
-      return Group.int_to_q_unchecked(bim);
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException(e);
+
+    void write(char c) {
+      // only called with ascii
+      if (pos == buffer.length) {
+        flush();
+      }
+      buffer[pos++] = (byte) c;
+      if (debug) {
+        debugString.append(c);
+      }
+    }
+
+    void write(String s) {
+      int n = s.length();
+      for (int i = 0; i < n; i++) {
+        if (s.charAt(i) >= 0x80) {
+          flush();
+          digest.update(s.getBytes(StandardCharsets.UTF_8));
+          if (debug) {
+            debugString.append(s);
+          }
+          return;
+        }
+      }
+      for (int i = 0; i < n; i++) {
+        if (pos == buffer.length) {
+          flush();
+        }
+        buffer[pos++] = (byte) s.charAt(i);
+      }
+      if (debug) {
+        debugString.append(s);
+      }
+    }
+
+    /** Upper case hex of the bytes, same as Bytes.encodeHex(true). */
+    void writeHex(byte[] bytes) {
+      int i = 0;
+      while (i < bytes.length) {
+        if (pos + 2 > buffer.length) {
+          flush();
+        }
+        int end = Math.min(bytes.length, i + (buffer.length - pos) / 2);
+        for (; i < end; i++) {
+          int b = bytes[i];
+          buffer[pos++] = HEX[(b >> 4) & 0xf];
+          buffer[pos++] = HEX[b & 0xf];
+        }
+      }
+      if (debug) {
+        debugString.append(Bytes.wrap(bytes).encodeHex(true));
+      }
+    }
+
+    byte[] digest() {
+      flush();
+      return digest.digest();
+    }
+
+    String debugString() {
+      return debugString.toString();
+    }
+
+    private void flush() {
+      digest.update(buffer, 0, pos);
+      pos = 0;
     }
   }
 
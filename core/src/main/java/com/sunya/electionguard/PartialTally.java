@@ -0,0 +1,42 @@
+package com.sunya.electionguard;
+
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+
+/**
+ * The accumulation over one shard of the submitted ballots. Multiplying the partial tallies of all the shards
+ * gives the tally of all the ballots, see CiphertextTallyBuilder.merge().
+ * @param tally the accumulation over the cast ballots in this shard.
+ * @param castBallotIds the ids of the cast ballots in this shard.
+ * @param shard this shard, in [1, nshards].
+ * @param nshards the number of shards the submitted ballots are split into.
+ * @param ballotsFileLength the length of the submitted ballots file that was read.
+ * @param ballotsCount the number of ballot records in that file, in all the shards.
+ */
+public record PartialTally(
+        CiphertextTally tally,
+        List<String> castBallotIds,
+        int shard,
+        int nshards,
+        long ballotsFileLength,
+        long ballotsCount) {
+
+  public PartialTally {
+    Preconditions.checkNotNull(tally);
+    Preconditions.checkArgument(nshards > 0 && shard > 0 && shard <= nshards, "bad shard %s/%s", shard, nshards);
+    Preconditions.checkArgument(ballotsFileLength >= 0 && ballotsCount >= 0);
+    castBallotIds = List.copyOf(castBallotIds);
+  }
+
+  @Override
+  public String toString() {
+    return "PartialTally{" +
+            "tally=" + tally.object_id() +
+            ", ncastBallots=" + castBallotIds.size() +
+            ", shard=" + shard + "/" + nshards +
+            ", ballotsFileLength=" + ballotsFileLength +
+            ", ballotsCount=" + ballotsCount +
+            '}';
+  }
+}
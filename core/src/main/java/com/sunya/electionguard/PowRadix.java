@@ -0,0 +1,200 @@
+package com.sunya.electionguard;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-base exponentiation, base^e mod p, using a precomputed table of base^(j * 2^(k*i)).
+ * The exponent is split into k-bit digits, so base^e is the product of one table entry per digit:
+ * no squarings, and at most ceil(maxExponentBits / k) multiplications.
+ * Exponents that are negative or wider than the table fall back to BigInteger.modPow.
+ * The table is either built in memory, or read from a memory-mapped precomputation file, see Precomputed.
+ * The entries of a mapped table are decoded the first time they are used, and then kept.
+ * Ported from the PowRadix class in electionguard-kotlin-multiplatform.
+ */
+@Immutable
+public class PowRadix {
+
+  /** Tradeoff between table size and speed. Table has ceil(bits/k) * 2^k entries. */
+  public enum PowRadixOption {
+    /** 4 bit digits: for 256 bit exponents, 64 rows of 16 entries, 512K for a 4096 bit modulus. */
+    LOW_MEMORY_USE(4),
+    /** 8 bit digits: for 256 bit exponents, 32 rows of 256 entries, 4M for a 4096 bit modulus. */
+    HIGH_MEMORY_USE(8),
+    /** 12 bit digits: for 256 bit exponents, 22 rows of 4096 entries, 45M for a 4096 bit modulus. */
+    EXTREME_MEMORY_USE(12);
+
+    public final int numBits;
+
+    PowRadixOption(int numBits) {
+      this.numBits = numBits;
+    }
+  }
+
+  final BigInteger base;
+  final BigInteger modulus;
+  private final BarrettReducer reducer;
+  final int numBits; // k, bits per digit
+  final int maxExponentBits;
+  final int numRows;
+  @Nullable
+  final BigInteger[][] table; // table[row][digit] = base^(digit * 2^(k*row)) mod modulus
+  @Nullable
+  private final ByteBuffer mapped; // else the table entries as fixed-width unsigned big-endian, row major
+  private final int entrySize; // bytes per entry in mapped
+  @Nullable
+  private final AtomicReferenceArray<BigInteger> decoded; // the entries of mapped, decoded when first used
+
+  /**
+   * Build the table for the given base.
+   * @param base the fixed base.
+   * @param modulus the modulus, usually P.
+   * @param maxExponentBits exponents up to this many bits use the table, usually bitLength(Q).
+   * @param option size of the table.
+   */
+  public PowRadix(BigInteger base, BigInteger modulus, int maxExponentBits, PowRadixOption option) {
+    Preconditions.checkArgument(base.signum() > 0 && base.compareTo(modulus) < 0, "base must be in [1, modulus)");
+    Preconditions.checkArgument(maxExponentBits > 0);
+    this.base = base;
+    this.modulus = modulus;
+    this.reducer = new BarrettReducer(modulus);
+    this.numBits = option.numBits;
+    this.maxExponentBits = maxExponentBits;
+    this.mapped = null;
+    this.entrySize = 0;
+    this.decoded = null;
+
+    this.numRows = (maxExponentBits + numBits - 1) / numBits;
+    int rowSize = 1 << numBits;
+    this.table = new BigInteger[numRows][rowSize];
+
+    BigInteger rowBase = base; // base^(2^(k*row))
+    for (int row = 0; row < numRows; row++) {
+      BigInteger[] entries = this.table[row];
+      entries[0] = BigInteger.ONE;
+      entries[1] = rowBase;
+      for (int digit = 2; digit < rowSize; digit++) {
+        entries[digit] = reducer.multiply(entries[digit - 1], rowBase);
+      }
+      rowBase = reducer.multiply(entries[rowSize - 1], rowBase);
+    }
+  }
+
+  /**
+   * Use a table that was written by writeTable, usually memory-mapped.
+   * @param mapped the table entries, positioned at the start of the table. Not modified.
+   * @param entrySize bytes per entry, must be the size of the modulus.
+   */
+  PowRadix(BigInteger base, BigInteger modulus, int maxExponentBits, int numBits, ByteBuffer mapped, int entrySize) {
+    Preconditions.checkArgument(base.signum() > 0 && base.compareTo(modulus) < 0, "base must be in [1, modulus)");
+    Preconditions.checkArgument(maxExponentBits > 0, "bad maxExponentBits %s", maxExponentBits);
+    Preconditions.checkArgument(isValidNumBits(numBits), "bad numBits %s", numBits);
+    Preconditions.checkArgument(entrySize == (modulus.bitLength() + 7) / 8,
+            "entrySize %s doesnt match the modulus", entrySize);
+    this.base = base;
+    this.modulus = modulus;
+    this.reducer = new BarrettReducer(modulus);
+    this.numBits = numBits;
+    this.maxExponentBits = maxExponentBits;
+    this.numRows = (maxExponentBits + numBits - 1) / numBits;
+    this.table = null;
+    this.mapped = mapped.slice();
+    this.entrySize = entrySize;
+    Preconditions.checkArgument(this.mapped.remaining() >= tableSize(numRows, numBits, entrySize), "mapped table too small");
+    this.decoded = new AtomicReferenceArray<>(numRows * (1 << numBits));
+  }
+
+  /** If numBits is the digit size of one of the PowRadixOptions. */
+  static boolean isValidNumBits(int numBits) {
+    for (PowRadixOption option : PowRadixOption.values()) {
+      if (option.numBits == numBits) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Size in bytes of the table written by writeTable. */
+  static long tableSize(int numRows, int numBits, int entrySize) {
+    return (long) numRows * (1 << numBits) * entrySize;
+  }
+
+  /** Write the table entries as fixed-width unsigned big-endian, row major. */
+  void writeTable(ByteBuffer out, int entrySize) {
+    for (int row = 0; row < numRows; row++) {
+      for (int digit = 0; digit < (1 << numBits); digit++) {
+        byte[] bytes = entry(row, digit).toByteArray();
+        int skip = (bytes[0] == 0) ? 1 : 0; // sign byte
+        int len = bytes.length - skip;
+        Preconditions.checkArgument(len <= entrySize);
+        for (int i = len; i < entrySize; i++) {
+          out.put((byte) 0);
+        }
+        out.put(bytes, skip, len);
+      }
+    }
+  }
+
+  private BigInteger entry(int row, int digit) {
+    if (table != null) {
+      return table[row][digit];
+    }
+    // Decode each entry once. Two threads may both decode the same entry, which is harmless.
+    int index = row * (1 << numBits) + digit;
+    BigInteger result = decoded.get(index);
+    if (result == null) {
+      byte[] bytes = new byte[entrySize];
+      mapped.get(index * entrySize, bytes);
+      result = new BigInteger(1, bytes);
+      decoded.set(index, result);
+    }
+    return result;
+  }
+
+  /** Compute base^e mod modulus. */
+  public BigInteger pow(BigInteger e) {
+    if (e.signum() < 0 || e.bitLength() > this.maxExponentBits) {
+      return base.modPow(e, modulus);
+    }
+    // big-endian, possibly with a leading sign byte, which is harmless since it is zero
+    byte[] bytes = e.toByteArray();
+    BigInteger result = null;
+    for (int row = 0; row < this.numRows; row++) {
+      int digit = digit(bytes, row * this.numBits, this.numBits);
+      if (digit != 0) {
+        BigInteger factor = entry(row, digit);
+        result = (result == null) ? factor : reducer.multiply(result, factor);
+      }
+    }
+    return (result == null) ? BigInteger.ONE : result;
+  }
+
+  /** Number of rows in the table. */
+  public int numRows() {
+    return this.numRows;
+  }
+
+  /** Approximate size of the table in bytes. */
+  public long sizeInBytes() {
+    long entrySize = (modulus.bitLength() + 7) / 8;
+    return this.numRows * (1L << this.numBits) * entrySize;
+  }
+
+  // Extract the nbits starting at bitOffset (counting from the least significant bit) of the big-endian bytes.
+  static int digit(byte[] bytes, int bitOffset, int nbits) {
+    int result = 0;
+    for (int bit = nbits - 1; bit >= 0; bit--) {
+      int bitIndex = bitOffset + bit;
+      int byteIndex = bytes.length - 1 - (bitIndex >>> 3);
+      int value = (byteIndex < 0) ? 0 : (bytes[byteIndex] >>> (bitIndex & 7)) & 1;
+      result = (result << 1) | value;
+    }
+    return result;
+  }
+
+}
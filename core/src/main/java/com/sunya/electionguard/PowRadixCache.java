@@ -0,0 +1,68 @@
+package com.sunya.electionguard;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.flogger.FluentLogger;
+
+import javax.annotation.Nullable;
+import java.math.BigInteger;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A bounded cache of PowRadix tables for bases that stay fixed for the whole election,
+ * such as the joint election key K and the guardian public keys.
+ * Once a base is registered, Group.pow_p uses its table for all exponentiations with that base.
+ * Least recently used tables are evicted when the total table size exceeds the limit.
+ */
+public class PowRadixCache {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  private static final long MAX_TOTAL_BYTES = 256L * 1024 * 1024;
+
+  private static final Cache<BigInteger, PowRadix> cache = CacheBuilder.newBuilder()
+          .maximumWeight(MAX_TOTAL_BYTES)
+          .weigher((BigInteger base, PowRadix table) -> (int) Math.min(Integer.MAX_VALUE, table.sizeInBytes()))
+          .build();
+
+  private PowRadixCache() {}
+
+  /** Register a base that will be used for many exponentiations. Null is ignored. */
+  public static void register(@Nullable Group.ElementModP base) {
+    register(base, PowRadix.PowRadixOption.HIGH_MEMORY_USE);
+  }
+
+  /** Register a base that will be used for many exponentiations, with the given table size. */
+  public static void register(@Nullable Group.ElementModP base, PowRadix.PowRadixOption option) {
+    if (base == null) {
+      return;
+    }
+    ElectionConstants primes = Group.getPrimes();
+    BigInteger key = base.getBigInt();
+    if (key.equals(primes.generator) || !Group.between(BigInteger.TWO, key, primes.largePrime)) {
+      return; // generator has its own table; nothing to gain for 0 or 1
+    }
+    if (get(key) != null) {
+      return;
+    }
+    cache.invalidate(key); // may be left over from different primes
+    try {
+      cache.get(key, () -> new PowRadix(key, primes.largePrime, primes.smallPrime.bitLength(), option));
+    } catch (ExecutionException e) {
+      logger.atWarning().withCause(e).log("PowRadixCache failed to register %s", base.toShortString());
+    }
+  }
+
+  /** The table for this base, if registered for the current primes, else null. */
+  @Nullable
+  static PowRadix get(BigInteger base) {
+    PowRadix table = cache.getIfPresent(base);
+    if (table != null && table.modulus.equals(Group.getPrimes().largePrime)) {
+      return table;
+    }
+    return null;
+  }
+
+  /** Remove all tables. */
+  public static void clear() {
+    cache.invalidateAll();
+  }
+}
@@ -0,0 +1,184 @@
+package com.sunya.electionguard;
+
+import com.google.common.base.Preconditions;
+import com.google.common.flogger.FluentLogger;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A file of precomputed tables for the current primes: the PowRadix table for the generator,
+ * and the Dlog baby steps. The file is written once, see RunPrecompute, then memory-mapped read-only
+ * by each process that uses it, so that processes share the tables through the page cache
+ * instead of each building its own.
+ * <p>
+ * The file starts with a fingerprint of (P, Q, R, G), and is ignored if that doesn't match the current primes.
+ * The PowRadix entries are used without being checked against modPow, so the header also has a digest of them,
+ * and the file is ignored if they have been damaged.
+ * Layout, big-endian:
+ * <pre>
+ *   magic "EGPRECMP", int version,
+ *   32 byte SHA-256 fingerprint of the primes,
+ *   int entrySize, int numBits, int maxExponentBits,
+ *   32 byte SHA-256 digest of the PowRadix table entries,
+ *   PowRadix table entries,
+ *   Dlog table
+ * </pre>
+ */
+public class Precomputed {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  private static final byte[] MAGIC = "EGPRECMP".getBytes(StandardCharsets.US_ASCII);
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = MAGIC.length + 4 + 32 + 12 + 32;
+
+  private Precomputed() {}
+
+  /**
+   * Build the tables for the current primes and write them to filename, replacing it atomically.
+   * @param option size of the generator table.
+   * @param dlogMax maximum exponent of the discrete log table.
+   */
+  public static void write(String filename, PowRadix.PowRadixOption option, int dlogMax) throws IOException {
+    ElectionConstants primes = Group.getPrimes();
+    int entrySize = (primes.largePrime.bitLength() + 7) / 8;
+    int maxExponentBits = primes.smallPrime.bitLength();
+    PowRadix table = new PowRadix(primes.generator, primes.largePrime, maxExponentBits, option);
+    Dlog dlog = new Dlog(primes.generatorP, dlogMax);
+
+    long tableSize = PowRadix.tableSize(table.numRows(), option.numBits, entrySize);
+    long size = HEADER_SIZE + tableSize + dlog.serializedSize();
+    Preconditions.checkArgument(size < Integer.MAX_VALUE, "precomputed tables too large: %s bytes", size);
+
+    Path path = Path.of(filename);
+    Path parent = path.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        out.put(MAGIC);
+        out.putInt(VERSION);
+        out.put(fingerprint(primes));
+        out.putInt(entrySize);
+        out.putInt(option.numBits);
+        out.putInt(maxExponentBits);
+        int digestPos = out.position();
+        out.position(digestPos + 32);
+        table.writeTable(out, entrySize);
+        out.put(digestPos, digest(out.slice(HEADER_SIZE, (int) tableSize)));
+        dlog.write(out);
+        Preconditions.checkState(out.position() == size);
+        out.force();
+      }
+      if (Files.getFileStore(temp).supportsFileAttributeView(PosixFileAttributeView.class)) {
+        // readable by the other processes that share it
+        Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-r--r--"));
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Memory-map filename and use its tables for the generator exponentiation and Dlog.discrete_log.
+   * @return true if the tables were used, false if the file doesn't match the current primes, or is not valid.
+   */
+  public static boolean load(String filename) throws IOException {
+    ElectionConstants primes = Group.getPrimes();
+    MappedByteBuffer in;
+    try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+      // the mapping stays valid after the channel is closed
+      in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    byte[] magic = new byte[MAGIC.length];
+    byte[] fingerprint = new byte[32];
+    if (in.remaining() < HEADER_SIZE) {
+      logger.atWarning().log("Precomputed file %s is too short", filename);
+      return false;
+    }
+    in.get(magic);
+    int version = in.getInt();
+    in.get(fingerprint);
+    if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+      logger.atWarning().log("Precomputed file %s has unknown format", filename);
+      return false;
+    }
+    if (!Arrays.equals(fingerprint, fingerprint(primes))) {
+      logger.atWarning().log("Precomputed file %s is for different primes than %s", filename, primes.name);
+      return false;
+    }
+    int entrySize = in.getInt();
+    int numBits = in.getInt();
+    int maxExponentBits = in.getInt();
+    if (entrySize != (primes.largePrime.bitLength() + 7) / 8 || !PowRadix.isValidNumBits(numBits)
+            || maxExponentBits != primes.smallPrime.bitLength()) {
+      logger.atWarning().log("Precomputed file %s has a bad header: entrySize %d numBits %d maxExponentBits %d",
+              filename, entrySize, numBits, maxExponentBits);
+      return false;
+    }
+    long tableSize = PowRadix.tableSize((maxExponentBits + numBits - 1) / numBits, numBits, entrySize);
+    byte[] tableDigest = new byte[32];
+    in.get(tableDigest);
+    if (in.remaining() < tableSize) {
+      logger.atWarning().log("Precomputed file %s is too short", filename);
+      return false;
+    }
+    if (!Arrays.equals(tableDigest, digest(in.slice(in.position(), (int) tableSize)))) {
+      logger.atWarning().log("Precomputed file %s has a damaged generator table", filename);
+      return false;
+    }
+
+    PowRadix table = new PowRadix(primes.generator, primes.largePrime, maxExponentBits, numBits, in, entrySize);
+    in.position(in.position() + (int) tableSize);
+    Dlog dlog;
+    try {
+      dlog = new Dlog(primes.generatorP, in);
+    } catch (IllegalArgumentException e) {
+      logger.atWarning().log("Precomputed file %s has a bad dlog table: %s", filename, e.getMessage());
+      return false;
+    }
+
+    primes.setGeneratorPowRadix(table);
+    Dlog.setGeneratorDlog(dlog);
+    logger.atInfo().log("Using precomputed tables from %s, dlog max %d", filename, dlog.getMax());
+    return true;
+  }
+
+  private static byte[] digest(ByteBuffer section) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(section);
+      return digest.digest();
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  static byte[] fingerprint(ElectionConstants primes) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      for (BigInteger value : new BigInteger[] {primes.largePrime, primes.smallPrime, primes.cofactor, primes.generator}) {
+        byte[] bytes = value.toByteArray();
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+      }
+      return digest.digest();
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,258 @@
+package com.sunya.electionguard;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.flogger.FluentLogger;
+import com.sunya.electionguard.publish.ElectionContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static com.sunya.electionguard.Group.ElementModQ;
+import static com.sunya.electionguard.Group.rand_q;
+import static com.sunya.electionguard.InternalManifest.ContestWithPlaceholders;
+
+/**
+ * Two phase encryption of ballots, to take the exponentiations out of the time between the voter casting
+ * and getting the ballot code.
+ * <p>
+ * All the nonces of a ballot are derived from the manifest hash, the ballot id and the master nonce,
+ * none of which depend on the votes. So prepare() encrypts every selection of the ballot style, with its proof,
+ * both as a 0 and as a 1, and the commitments of each contest proof. finalizeBallot() then just picks the
+ * selections that match the votes, and finishes the contest proofs, which only takes hashes and
+ * multiplications. The result is the same as Encrypt.encrypt_ballot() with the same master nonce.
+ * <p>
+ * The prepared ballots are kept in a bounded store, least recently prepared are evicted first.
+ * A prepared ballot holds twice the ciphertexts and proofs of an encrypted ballot, so size the store accordingly.
+ * Each prepared ballot is used at most once, since its nonces must not encrypt two different sets of votes.
+ * Thread-safe.
+ */
+public class PreparedBallots {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final InternalManifest internalManifest;
+  private final ElectionContext context;
+  private final Cache<String, Prepared> store;
+
+  /**
+   * @param maxPrepared maximum number of prepared ballots to keep.
+   */
+  public PreparedBallots(InternalManifest internalManifest, ElectionContext context, int maxPrepared) {
+    this.internalManifest = internalManifest;
+    this.context = context;
+    this.store = CacheBuilder.newBuilder().maximumSize(maxPrepared).build();
+    PowRadixCache.register(context.electionPublicKey());
+  }
+
+  /**
+   * Do the expensive part of encrypting the ballot with this id and style, before the votes are known.
+   * Replaces any ballot with the same id that was prepared earlier.
+   * @return false if the ballot style does not exist, or a selection could not be encrypted.
+   */
+  public boolean prepare(String ballotId, String ballotStyleId) {
+    if (internalManifest.get_ballot_style(ballotStyleId).isEmpty()) {
+      logger.atWarning().log("Ballot Style '%s' does not exist in election", ballotStyleId);
+      return false;
+    }
+    ElementModQ masterNonce = rand_q();
+    ElementModQ ballotNonce = Hash.hash_elems(internalManifest.manifest.cryptoHash(), ballotId, masterNonce);
+
+    List<PreparedContest> contests = new ArrayList<>();
+    for (ContestWithPlaceholders contestp : internalManifest.get_contests_for_style(ballotStyleId)) {
+      Optional<PreparedContest> contest = prepareContest(ballotId, contestp, ballotNonce);
+      if (contest.isEmpty()) {
+        return false; // log will have happened earlier
+      }
+      contests.add(contest.get());
+    }
+    store.put(ballotId, new Prepared(ballotStyleId, masterNonce, contests));
+    return true;
+  }
+
+  /** If a ballot with this id has been prepared, and not yet finalized or evicted. */
+  public boolean isPrepared(String ballotId) {
+    return store.getIfPresent(ballotId) != null;
+  }
+
+  /** The number of prepared ballots in the store. */
+  public long size() {
+    return store.size();
+  }
+
+  /**
+   * Finish encrypting a ballot that was prepared, and remove it from the store.
+   * If it was not prepared, or was prepared for another style, it is encrypted from scratch.
+   * The ballot is not chained; use EncryptionMediator.chain() to give it its code.
+   * The selection proofs were checked in prepare(); should_verify_proofs checks all the proofs again.
+   * @return empty if the ballot is not valid.
+   */
+  public Optional<CiphertextBallot> finalizeBallot(PlaintextBallot ballot, boolean should_verify_proofs) {
+    Prepared prepared = store.asMap().remove(ballot.object_id());
+    if (prepared == null || !prepared.ballotStyleId().equals(ballot.ballotStyleId)) {
+      logger.atInfo().log("Ballot '%s' was not prepared for style '%s', encrypt it now", ballot.object_id(), ballot.ballotStyleId);
+      return Encrypt.encrypt_ballot(ballot, internalManifest, context, Encrypt.UNCHAINED_SEED, Optional.empty(), should_verify_proofs);
+    }
+
+    // LOOK this will fail if there are duplicate contest_id's
+    Map<String, PlaintextBallot.Contest> plaintext_contests = ballot.contests.stream()
+            .collect(Collectors.toMap(c -> c.contestId, c -> c));
+
+    List<CiphertextBallot.Contest> encrypted_contests = new ArrayList<>();
+    for (PreparedContest preparedContest : prepared.contests()) {
+      Manifest.ContestDescription contestm = preparedContest.contestp().contest;
+      PlaintextBallot.Contest use_contest = plaintext_contests.get(contestm.contestId());
+      // no selections provided for the contest, so create a blank contest
+      if (use_contest == null) {
+        use_contest = Encrypt.contest_from(contestm);
+      }
+      Optional<CiphertextBallot.Contest> encrypted_contest = finalizeContest(use_contest, preparedContest);
+      if (encrypted_contest.isEmpty()) {
+        return Optional.empty(); // log will have happened earlier
+      }
+      encrypted_contests.add(encrypted_contest.get());
+    }
+
+    CiphertextBallot encrypted_ballot = CiphertextBallot.create(
+            ballot.object_id(),
+            ballot.ballotStyleId,
+            internalManifest.manifest.cryptoHash(),
+            Encrypt.UNCHAINED_SEED,
+            encrypted_contests,
+            Optional.of(prepared.masterNonce()),
+            Optional.empty(),
+            Optional.empty());
+
+    if (should_verify_proofs && !encrypted_ballot.is_valid_encryption(
+            internalManifest.manifest.cryptoHash(), context.electionPublicKey(), context.extendedHash())) {
+      return Optional.empty();
+    }
+    return Optional.of(encrypted_ballot);
+  }
+
+  // The same nonces as Encrypt.encrypt_contest() and Encrypt.encrypt_selection().
+  private Optional<PreparedContest> prepareContest(String ballotId, ContestWithPlaceholders contestp, ElementModQ ballotNonce) {
+    Manifest.ContestDescription contest_description = contestp.contest;
+    if (!contest_description.is_valid()) {
+      logger.atWarning().log("invalid input contest_description: %s", contest_description);
+      return Optional.empty();
+    }
+    Nonces nonce_sequence = new Nonces(contest_description.cryptoHash(), ballotNonce);
+    ElementModQ contest_nonce = nonce_sequence.get(contest_description.sequenceOrder());
+    ElementModQ chaum_pedersen_nonce = nonce_sequence.get(0);
+
+    List<PreparedSelection> selections = new ArrayList<>();
+    for (Manifest.SelectionDescription description : contest_description.selections()) {
+      Optional<PreparedSelection> selection = prepareSelection(ballotId, description, contest_nonce, false);
+      if (selection.isEmpty()) {
+        return Optional.empty();
+      }
+      selections.add(selection.get());
+    }
+    List<PreparedSelection> placeholders = new ArrayList<>();
+    for (Manifest.SelectionDescription placeholder : contestp.placeholder_selections) {
+      Optional<PreparedSelection> selection = prepareSelection(ballotId, placeholder, contest_nonce, true);
+      if (selection.isEmpty()) {
+        return Optional.empty();
+      }
+      placeholders.add(selection.get());
+    }
+
+    ChaumPedersen.ConstantCommitment commitment =
+            ChaumPedersen.ConstantCommitment.create(context.electionPublicKey(), chaum_pedersen_nonce);
+    return Optional.of(new PreparedContest(contestp, contest_nonce, commitment, selections, placeholders));
+  }
+
+  private Optional<PreparedSelection> prepareSelection(String ballotId, Manifest.SelectionDescription description,
+                                                       ElementModQ contest_nonce, boolean is_placeholder) {
+    Optional<CiphertextBallot.Selection> zero = Encrypt.encrypt_selection(ballotId,
+            Encrypt.selection_from(description, is_placeholder, false), description,
+            context.electionPublicKey(), context.extendedHash(), contest_nonce, is_placeholder, true);
+    Optional<CiphertextBallot.Selection> one = Encrypt.encrypt_selection(ballotId,
+            Encrypt.selection_from(description, is_placeholder, true), description,
+            context.electionPublicKey(), context.extendedHash(), contest_nonce, is_placeholder, true);
+    if (zero.isEmpty() || one.isEmpty()) {
+      return Optional.empty(); // log will have happened earlier
+    }
+    return Optional.of(new PreparedSelection(zero.get(), one.get()));
+  }
+
+  // Pick the prepared selections, as Encrypt.encrypt_contest() fills in the selections and placeholders.
+  private Optional<CiphertextBallot.Contest> finalizeContest(PlaintextBallot.Contest contest, PreparedContest prepared) {
+    Manifest.ContestDescription contest_description = prepared.contestp().contest;
+    if (!contest.is_valid(
+            contest_description.contestId(),
+            contest_description.selections().size(),
+            contest_description.numberElected(),
+            contest_description.votesAllowed())) {
+      logger.atWarning().log("invalid input contest: %s", contest);
+      return Optional.empty();
+    }
+
+    // LOOK this will fail if there are duplicate selection_id's
+    Map<String, PlaintextBallot.Selection> plaintext_selections = contest.selections.stream()
+            .collect(Collectors.toMap(s -> s.selectionId, s -> s));
+
+    int selection_count = 0;
+    List<CiphertextBallot.Selection> encrypted_selections = new ArrayList<>();
+    for (int i = 0; i < contest_description.selections().size(); i++) {
+      Manifest.SelectionDescription description = contest_description.selections().get(i);
+      PlaintextBallot.Selection plaintext_selection = plaintext_selections.get(description.selectionId());
+      int vote = 0;
+      if (plaintext_selection != null) {
+        if (!plaintext_selection.is_valid(description.selectionId())) {
+          return Optional.empty();
+        }
+        vote = plaintext_selection.vote;
+      }
+      selection_count += vote;
+      encrypted_selections.add(prepared.selections().get(i).get(vote));
+    }
+
+    for (PreparedSelection placeholder : prepared.placeholders()) {
+      int vote = 0;
+      if (selection_count < contest_description.numberElected()) {
+        vote = 1;
+        selection_count += 1;
+      }
+      encrypted_selections.add(placeholder.get(vote));
+    }
+
+    // TODO: ISSUE #33: support other cases such as cumulative voting (individual selections being an encryption of > 1)
+    if (selection_count < contest_description.votesAllowed()) {
+      logger.atWarning().log("mismatching selection count: only n-of-m style elections are currently supported");
+    }
+
+    CiphertextBallot.Contest encrypted_contest = CiphertextBallot.Contest.create(
+            contest.contestId,
+            contest.sequenceOrder,
+            contest_description.cryptoHash(),
+            encrypted_selections,
+            prepared.commitment(),
+            context.extendedHash(),
+            contest_description.numberElected(),
+            Optional.of(prepared.contest_nonce()));
+
+    if (encrypted_contest.proof.isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.of(encrypted_contest);
+  }
+
+  private record Prepared(String ballotStyleId, ElementModQ masterNonce, List<PreparedContest> contests) {}
+
+  private record PreparedContest(ContestWithPlaceholders contestp,
+                                 ElementModQ contest_nonce,
+                                 ChaumPedersen.ConstantCommitment commitment,
+                                 List<PreparedSelection> selections,
+                                 List<PreparedSelection> placeholders) {}
+
+  /** A selection encrypted as a 0 and as a 1, with the same nonce. */
+  private record PreparedSelection(CiphertextBallot.Selection zero, CiphertextBallot.Selection one) {
+    CiphertextBallot.Selection get(int vote) {
+      return vote == 0 ? zero : one;
+    }
+  }
+}
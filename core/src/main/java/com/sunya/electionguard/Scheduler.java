@@ -13,7 +13,7 @@ import java.util.concurrent.*;
 /** A scheduler for concurrent task execution. */
 public class Scheduler<T> {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
-  private final static int DEFAULT_NTHREADS = 11;
+  final static int DEFAULT_NTHREADS = 11;
   // LOOK probably want to inject this
   private final static ListeningExecutorService service = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(DEFAULT_NTHREADS));
 
@@ -24,13 +24,7 @@ public class Scheduler<T> {
    * @return the unordered list of results of type T.
    */
   public List<T> schedule(List<? extends Callable<T>> tasks, boolean with_shared_resources) {
-    List<ListenableFuture<? extends T>> futures = new ArrayList<>();
-    for (Callable<T> task : tasks) {
-      futures.add(service.submit(task));
-    }
-
-    // ListenableFuture<? extends V>... futures
-    ListenableFuture<List<T>> results = Futures.allAsList(futures);
+    ListenableFuture<List<T>> results = submit(tasks);
     try {
       return results.get();
     } catch (InterruptedException | ExecutionException e) {
@@ -39,6 +33,21 @@ public class Scheduler<T> {
     }
   }
 
+  /**
+   * Schedule tasks concurrently, dont wait for results.
+   *
+   * @param tasks: the callable task to execute
+   * @return the future unordered list of results of type T, which fails if any task fails.
+   */
+  public ListenableFuture<List<T>> submit(List<? extends Callable<T>> tasks) {
+    List<ListenableFuture<? extends T>> futures = new ArrayList<>();
+    for (Callable<T> task : tasks) {
+      futures.add(service.submit(task));
+    }
+    // ListenableFuture<? extends V>... futures
+    return Futures.allAsList(futures);
+  }
+
   // LOOK make sure to call this, or the process may hang.
   public static void shutdown() {
     service.shutdown();
@@ -57,7 +57,7 @@ public class SchnorrProof extends Proof {
 
     // Changed validation spec 2.A. see issue #278
     boolean valid_2A = this.challenge.equals(Hash.hash_elems(k, h));
-    boolean valid_2B = g_pow_p(u).equals(Group.mult_p(h, Group.pow_p(k, this.challenge)));
+    boolean valid_2B = g_pow_p(u).equals(Group.multi_pow_p(new ElementModP[] {h, k}, new ElementMod[] {ONE_MOD_Q, this.challenge}));
 
     boolean success = valid_public_key && in_bounds_h && in_bounds_u && valid_2A && valid_2B;
     if (!success) {
@@ -72,8 +72,9 @@ public class SchnorrProof extends Proof {
 
   public boolean isValidVer2(ElementModP publicKey) {
     ElementModQ u = this.response;
-    ElementModP gPowU = Group.g_pow_p(u);
-    ElementModP h = Group.div_p(gPowU, Group.pow_p(publicKey, challenge));
+    // h = g^u / K^c = g^u * K^(q-c), which holds when K is a valid residue, else the proof fails anyway
+    ElementModP h = Group.multi_pow_p(new ElementModP[] {Group.getPrimes().generatorP, publicKey},
+            new ElementMod[] {u, Group.negate_q(challenge)});
 
     boolean valid_public_key = publicKey.is_valid_residue();
     boolean in_bounds_h = h.is_in_bounds();
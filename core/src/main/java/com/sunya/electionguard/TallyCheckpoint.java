@@ -0,0 +1,45 @@
+package com.sunya.electionguard;
+
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+
+/**
+ * The state of an unfinished tally accumulation, so that it can be continued in another process.
+ * @param tally the accumulation over the cast ballots tallied so far.
+ * @param castBallotIds the ids of the cast ballots tallied so far, in the order they were tallied. Not copied, so that
+ *                      a checkpoint of a long tally can use CiphertextTallyBuilder.castBallotIdList(), and writing it
+ *                      costs only the ids added since the previous checkpoint. Don't add to the tally while writing it.
+ * @param ballotsOffset the byte offset in the submitted ballots file of the first ballot not yet read.
+ * @param ballotsIndex the number of ballots in the submitted ballots file before ballotsOffset.
+ * @param lastBallotOffset the byte offset of the ballot record that ends at ballotsOffset, if ballotsOffset > 0.
+ * @param lastBallotId the id of that ballot, so that resuming can check it reads the same ballots file.
+ */
+public record TallyCheckpoint(
+        CiphertextTally tally,
+        List<String> castBallotIds,
+        long ballotsOffset,
+        long ballotsIndex,
+        long lastBallotOffset,
+        String lastBallotId) {
+
+  public TallyCheckpoint {
+    Preconditions.checkNotNull(tally);
+    Preconditions.checkArgument(ballotsOffset >= 0);
+    Preconditions.checkArgument(ballotsIndex >= 0);
+    Preconditions.checkArgument(lastBallotOffset >= 0 && lastBallotOffset <= ballotsOffset);
+    Preconditions.checkNotNull(lastBallotId);
+    Preconditions.checkNotNull(castBallotIds);
+  }
+
+  @Override
+  public String toString() {
+    return "TallyCheckpoint{" +
+            "tally=" + tally.object_id() +
+            ", ncastBallots=" + castBallotIds.size() +
+            ", ballotsOffset=" + ballotsOffset +
+            ", ballotsIndex=" + ballotsIndex +
+            ", lastBallotId=" + lastBallotId +
+            '}';
+  }
+}
@@ -0,0 +1,133 @@
+package com.sunya.electionguard;
+
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.concurrent.Immutable;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns each contest and each (non-placeholder) selection of a Manifest a dense ordinal, in manifest order,
+ * so that a tally can be kept in arrays indexed by selection ordinal instead of maps keyed by id.
+ * The selections of a contest have consecutive ordinals.
+ * <p>
+ * Encrypted ballots list a contest's selections in manifest order, so selectionOrdinal() first checks the
+ * selection at the same position, and only falls back to a hash lookup if that doesn't match.
+ */
+@Immutable
+public class TallyIndex {
+  public static final int NOT_FOUND = -1;
+
+  private final ImmutableMap<String, Integer> contestOrdinals;
+  private final Manifest.ContestDescription[] contests;
+  private final int[] firstSelection; // firstSelection[c] is the ordinal of contest c's first selection
+  private final Manifest.SelectionDescription[] selections;
+  private final int[] selectionContest; // selectionContest[s] is the ordinal of selection s's contest
+  private final ImmutableMap<String, Integer>[] selectionOrdinals; // by contest ordinal
+
+  @SuppressWarnings("unchecked")
+  public TallyIndex(Manifest manifest) {
+    List<Manifest.ContestDescription> contestList = manifest.contests();
+    this.contests = contestList.toArray(new Manifest.ContestDescription[0]);
+    this.firstSelection = new int[contests.length + 1];
+    this.selectionOrdinals = new ImmutableMap[contests.length];
+
+    Map<String, Integer> contestMap = new HashMap<>();
+    List<Manifest.SelectionDescription> selectionList = new ArrayList<>();
+    List<Integer> selectionContestList = new ArrayList<>();
+    for (int c = 0; c < contests.length; c++) {
+      contestMap.put(contests[c].contestId(), c);
+      firstSelection[c] = selectionList.size();
+      ImmutableMap.Builder<String, Integer> selectionMap = ImmutableMap.builder();
+      for (Manifest.SelectionDescription selection : contests[c].selections()) {
+        selectionMap.put(selection.selectionId(), selectionList.size());
+        selectionList.add(selection);
+        selectionContestList.add(c);
+      }
+      this.selectionOrdinals[c] = selectionMap.build();
+    }
+    firstSelection[contests.length] = selectionList.size();
+
+    this.contestOrdinals = ImmutableMap.copyOf(contestMap);
+    this.selections = selectionList.toArray(new Manifest.SelectionDescription[0]);
+    this.selectionContest = selectionContestList.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /** The number of contests. */
+  public int ncontests() {
+    return contests.length;
+  }
+
+  /** The number of selections, not including placeholders. */
+  public int nselections() {
+    return selections.length;
+  }
+
+  /** The ordinal of the contest, or NOT_FOUND. */
+  public int contestOrdinal(String contestId) {
+    return contestOrdinals.getOrDefault(contestId, NOT_FOUND);
+  }
+
+  /** The number of selections in the contest, not including placeholders. */
+  public int nselections(int contestOrdinal) {
+    return firstSelection[contestOrdinal + 1] - firstSelection[contestOrdinal];
+  }
+
+  /**
+   * The ordinal of the contest's selection, or NOT_FOUND, eg for a placeholder.
+   * @param position where the selection is in the ballot's list of the contest's selections, a hint only.
+   */
+  public int selectionOrdinal(int contestOrdinal, int position, String selectionId) {
+    if (position < nselections(contestOrdinal)) {
+      int ordinal = firstSelection[contestOrdinal] + position;
+      if (selections[ordinal].selectionId().equals(selectionId)) {
+        return ordinal;
+      }
+    }
+    return selectionOrdinals[contestOrdinal].getOrDefault(selectionId, NOT_FOUND);
+  }
+
+  /** The ordinal of the contest's selection, or NOT_FOUND. */
+  public int selectionOrdinal(int contestOrdinal, String selectionId) {
+    return selectionOrdinals[contestOrdinal].getOrDefault(selectionId, NOT_FOUND);
+  }
+
+  public Manifest.ContestDescription contest(int contestOrdinal) {
+    return contests[contestOrdinal];
+  }
+
+  public Manifest.SelectionDescription selection(int selectionOrdinal) {
+    return selections[selectionOrdinal];
+  }
+
+  /** The ordinal of the selection's contest. */
+  public int contestOf(int selectionOrdinal) {
+    return selectionContest[selectionOrdinal];
+  }
+
+  /**
+   * Convert a tally in arrays indexed by selection ordinal into a CiphertextTally.
+   * @param pads the accumulated pads, null for a selection with no ballots, ie an encryption of zero.
+   * @param datas the accumulated datas, null for a selection with no ballots.
+   */
+  public CiphertextTally toCiphertextTally(String tallyId, BigInteger[] pads, BigInteger[] datas) {
+    Map<String, CiphertextTally.Contest> result = new HashMap<>();
+    for (int c = 0; c < contests.length; c++) {
+      Manifest.ContestDescription contest = contests[c];
+      Map<String, CiphertextTally.Selection> contestSelections = new HashMap<>();
+      for (int s = firstSelection[c]; s < firstSelection[c + 1]; s++) {
+        Manifest.SelectionDescription selection = selections[s];
+        ElGamal.Ciphertext ciphertext = (pads[s] == null) ? new ElGamal.Ciphertext(Group.ONE_MOD_P, Group.ONE_MOD_P) :
+                new ElGamal.Ciphertext(Group.int_to_p_unchecked(pads[s]), Group.int_to_p_unchecked(datas[s]));
+        contestSelections.put(selection.selectionId(), new CiphertextTally.Selection(
+                selection.selectionId(), selection.sequenceOrder(), selection.cryptoHash(), ciphertext));
+      }
+      result.put(contest.contestId(), new CiphertextTally.Contest(
+              contest.contestId(), contest.sequenceOrder(), contest.cryptoHash(), contestSelections));
+    }
+    return new CiphertextTally(tallyId, result);
+  }
+}
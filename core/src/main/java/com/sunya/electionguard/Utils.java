@@ -42,6 +42,116 @@ class Utils {
     return val == 0 ? "false" : "true";
   }
 
+  /**
+   * The Jacobi symbol (a/n) for odd positive n, which for prime n is the Legendre symbol:
+   * 1 if a is a nonzero square mod n, -1 if a is not a square, 0 if n divides a.
+   * Binary algorithm on int arrays, updated in place; costs much less than a modPow.
+   */
+  static int jacobi(BigInteger a, BigInteger n) {
+    Preconditions.checkArgument(n.signum() > 0 && n.testBit(0), "jacobi requires odd positive n");
+    int[] x = toLittleEndianInts(a.mod(n));
+    int[] y = toLittleEndianInts(n);
+    int xlen = magnitudeLength(x, x.length);
+    int ylen = magnitudeLength(y, y.length);
+    int result = 1;
+    while (xlen > 0) {
+      // (2/y) = -1 iff y = 3 or 5 mod 8
+      int twos = lowestSetBit(x);
+      if (twos > 0) {
+        xlen = shiftRight(x, xlen, twos);
+        int ymod8 = y[0] & 7;
+        if ((twos & 1) == 1 && (ymod8 == 3 || ymod8 == 5)) {
+          result = -result;
+        }
+      }
+      // both odd: (x/y) = (y/x), unless x = y = 3 mod 4
+      int cmp = compareMagnitude(x, xlen, y, ylen);
+      if (cmp == 0) {
+        break;
+      }
+      if (cmp < 0) {
+        int[] temp = x;
+        x = y;
+        y = temp;
+        int templen = xlen;
+        xlen = ylen;
+        ylen = templen;
+        if ((x[0] & 3) == 3 && (y[0] & 3) == 3) {
+          result = -result;
+        }
+      }
+      // (x/y) = ((x-y)/y)
+      xlen = subtractInPlace(x, xlen, y, ylen);
+    }
+    return (ylen == 1 && y[0] == 1) ? result : 0;
+  }
+
+  private static int[] toLittleEndianInts(BigInteger value) {
+    int nints = Math.max(1, (value.bitLength() + 31) / 32);
+    int[] result = new int[nints];
+    byte[] bytes = value.toByteArray(); // big-endian
+    for (int i = 0; i < bytes.length && i < 4 * nints; i++) {
+      result[i / 4] |= (bytes[bytes.length - 1 - i] & 0xFF) << (8 * (i % 4));
+    }
+    return result;
+  }
+
+  // number of ints, ignoring leading zeros
+  private static int magnitudeLength(int[] x, int len) {
+    while (len > 0 && x[len - 1] == 0) {
+      len--;
+    }
+    return len;
+  }
+
+  private static int lowestSetBit(int[] x) {
+    int i = 0;
+    while (x[i] == 0) {
+      i++;
+    }
+    return 32 * i + Integer.numberOfTrailingZeros(x[i]);
+  }
+
+  private static int shiftRight(int[] x, int len, int nbits) {
+    int words = nbits >>> 5;
+    int bits = nbits & 31;
+    if (bits == 0) {
+      System.arraycopy(x, words, x, 0, len - words);
+    } else {
+      for (int i = 0; i < len - words - 1; i++) {
+        x[i] = (x[i + words] >>> bits) | (x[i + words + 1] << (32 - bits));
+      }
+      x[len - words - 1] = x[len - 1] >>> bits;
+    }
+    for (int i = len - words; i < len; i++) {
+      x[i] = 0;
+    }
+    return magnitudeLength(x, len - words);
+  }
+
+  private static int compareMagnitude(int[] x, int xlen, int[] y, int ylen) {
+    if (xlen != ylen) {
+      return xlen < ylen ? -1 : 1;
+    }
+    for (int i = xlen - 1; i >= 0; i--) {
+      if (x[i] != y[i]) {
+        return Integer.compareUnsigned(x[i], y[i]);
+      }
+    }
+    return 0;
+  }
+
+  // x = x - y, requires x >= y
+  private static int subtractInPlace(int[] x, int xlen, int[] y, int ylen) {
+    long borrow = 0;
+    for (int i = 0; i < xlen; i++) {
+      long diff = (x[i] & 0xFFFFFFFFL) - (i < ylen ? (y[i] & 0xFFFFFFFFL) : 0) - borrow;
+      x[i] = (int) diff;
+      borrow = (diff >>> 63);
+    }
+    return magnitudeLength(x, xlen);
+  }
+
   /** Return a random BigInteger in the range [0, n). */
   static BigInteger randbelow(BigInteger exclusive_upper_bound) {
     Preconditions.checkArgument(BigInteger.ZERO.compareTo(exclusive_upper_bound) <= 0);
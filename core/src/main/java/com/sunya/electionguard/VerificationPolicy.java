@@ -0,0 +1,233 @@
+package com.sunya.electionguard;
+
+import com.google.common.base.Preconditions;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * When the proofs of a freshly encrypted ballot are checked, see EncryptionMediator.
+ * <ul>
+ *   <li>SYNC: every proof is checked while encrypting, and again on the whole ballot, before it is returned.
+ *   This is the default, and roughly doubles the cost of encryption.</li>
+ *   <li>ASYNC: the ballot is returned without checking; a background pool then checks the whole ballot.
+ *   A ballot that fails is logged, quarantined, and passed to the onFailure listener. The pool's backlog is bounded:
+ *   when it is full, the ballot is checked on the encrypting thread instead, which slows encryption down to the
+ *   pace of the checks.</li>
+ *   <li>SAMPLED: a random fraction of the ballots are checked before they are returned; a ballot that fails is
+ *   not returned.</li>
+ * </ul>
+ * Counts the ballots checked, skipped and failed, and the time spent checking. Thread-safe.
+ */
+public class VerificationPolicy implements Closeable {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  public enum Mode {SYNC, ASYNC, SAMPLED}
+
+  /** The default number of ballots per ASYNC thread that may wait to be checked. */
+  static final int BACKLOG_PER_THREAD = 64;
+
+  /** Check every proof before returning the ballot. */
+  public static VerificationPolicy sync() {
+    return new VerificationPolicy(Mode.SYNC, 1.0, 0, 0, null);
+  }
+
+  /**
+   * Check the ballots on a background pool of nthreads.
+   * @param onFailure called on a background thread with each ballot that fails, may be null.
+   */
+  public static VerificationPolicy async(int nthreads, @Nullable Consumer<CiphertextBallot> onFailure) {
+    return async(nthreads, BACKLOG_PER_THREAD * Math.max(1, nthreads), onFailure);
+  }
+
+  /**
+   * Check the ballots on a background pool of nthreads, with at most maxBacklog ballots waiting to be checked.
+   * @param onFailure called on a background thread with each ballot that fails, may be null.
+   */
+  public static VerificationPolicy async(int nthreads, int maxBacklog, @Nullable Consumer<CiphertextBallot> onFailure) {
+    return new VerificationPolicy(Mode.ASYNC, 1.0, nthreads, maxBacklog, onFailure);
+  }
+
+  /** Check this fraction of the ballots, between 0 and 1, before returning them. */
+  public static VerificationPolicy sampled(double fraction) {
+    return new VerificationPolicy(Mode.SAMPLED, fraction, 0, 0, null);
+  }
+
+  private final Mode mode;
+  private final double fraction;
+  @Nullable private final ExecutorService pool;
+  @Nullable private final Consumer<CiphertextBallot> onFailure;
+  private final Set<String> quarantined = ConcurrentHashMap.newKeySet();
+
+  private final LongAdder ballots = new LongAdder();
+  private final LongAdder verified = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder pending = new LongAdder();
+  private final LongAdder inline = new LongAdder();
+  private final LongAdder nanos = new LongAdder();
+
+  private VerificationPolicy(Mode mode, double fraction, int nthreads, int maxBacklog,
+                             @Nullable Consumer<CiphertextBallot> onFailure) {
+    Preconditions.checkArgument(0.0 <= fraction && fraction <= 1.0, "fraction must be between 0 and 1: %s", fraction);
+    Preconditions.checkArgument(mode != Mode.ASYNC || maxBacklog > 0, "maxBacklog must be positive: %s", maxBacklog);
+    this.mode = mode;
+    this.fraction = fraction;
+    this.onFailure = onFailure;
+    if (mode == Mode.ASYNC) {
+      // when the backlog is full, or after close(), the ballot is checked on the calling thread, so none are dropped
+      int n = Math.max(1, nthreads);
+      this.pool = new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(maxBacklog),
+              new ThreadFactoryBuilder().setNameFormat("verify-%d").setDaemon(true).build(),
+              (task, executor) -> {
+                inline.increment();
+                task.run();
+              });
+    } else {
+      this.pool = null;
+    }
+  }
+
+  public Mode mode() {
+    return mode;
+  }
+
+  /** If the proofs are checked while encrypting; otherwise encrypt without checking, then call accept(). */
+  public boolean verifyWhileEncrypting() {
+    return mode == Mode.SYNC;
+  }
+
+  /**
+   * Apply the policy to a ballot that was just encrypted.
+   * @param verifier checks all the proofs of the ballot.
+   * @return false if the ballot was checked now and failed.
+   */
+  public boolean accept(CiphertextBallot ballot, Predicate<CiphertextBallot> verifier) {
+    ballots.increment();
+    switch (mode) {
+      case SYNC -> verified.increment(); // done by encrypt_ballot
+      case SAMPLED -> {
+        if (fraction > 0.0 && ThreadLocalRandom.current().nextDouble() < fraction) {
+          return verify(ballot, verifier);
+        }
+      }
+      case ASYNC -> {
+        pending.increment();
+        pool.execute(() -> {
+          try {
+            if (!verify(ballot, verifier)) {
+              quarantined.add(ballot.object_id());
+              if (onFailure != null) {
+                onFailure.accept(ballot);
+              }
+            }
+          } finally {
+            pending.decrement();
+          }
+        });
+      }
+    }
+    return true;
+  }
+
+  private boolean verify(CiphertextBallot ballot, Predicate<CiphertextBallot> verifier) {
+    long start = System.nanoTime();
+    boolean ok;
+    try {
+      ok = verifier.test(ballot);
+    } catch (RuntimeException e) {
+      logger.atSevere().withCause(e).log("Exception verifying ballot %s", ballot.object_id());
+      ok = false;
+    }
+    nanos.add(System.nanoTime() - start);
+    verified.increment();
+    if (!ok) {
+      failed.increment();
+      logger.atSevere().log("Ballot %s FAILED verification of its proofs (%s)", ballot.object_id(), mode);
+    }
+    return ok;
+  }
+
+  /** Wait for the ballots still being checked in the background. */
+  public boolean awaitPending(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (pending.sum() > 0) {
+      if (System.nanoTime() > deadline) {
+        return false;
+      }
+      Thread.sleep(10);
+    }
+    return true;
+  }
+
+  /** Waits for the ballots still being checked, then stops the background pool. */
+  @Override
+  public void close() {
+    if (pool != null) {
+      pool.shutdown();
+      try {
+        if (!pool.awaitTermination(1, TimeUnit.HOURS)) {
+          logger.atWarning().log("%d ballots were not verified", pending.sum());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /** The ids of the ballots that failed the background check. */
+  public Set<String> quarantined() {
+    return Set.copyOf(quarantined);
+  }
+
+  /** The number of ballots the policy was applied to. */
+  public long ballots() {
+    return ballots.sum();
+  }
+
+  /** The number of ballots checked, including the ones that failed. */
+  public long verified() {
+    return verified.sum();
+  }
+
+  /** The number of ballots that were not checked. */
+  public long skipped() {
+    return ballots() - verified() - pending();
+  }
+
+  public long failed() {
+    return failed.sum();
+  }
+
+  /** The number of ASYNC ballots checked on the encrypting thread, because the background backlog was full. */
+  public long inline() {
+    return inline.sum();
+  }
+
+  /** The number of ballots waiting to be checked in the background. */
+  public long pending() {
+    return pending.sum();
+  }
+
+  /** The time spent checking outside of encryption, in nanoseconds. */
+  public long nanos() {
+    return nanos.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("verification %s: %d ballots, %d verified, %d skipped, %d failed, %d pending, %d inline, %d msecs",
+            mode, ballots(), verified(), skipped(), failed(), pending(), inline(), TimeUnit.NANOSECONDS.toMillis(nanos()));
+  }
+}
@@ -7,6 +7,7 @@ import com.google.common.flogger.FluentLogger;
 import com.sunya.electionguard.BallotBox;
 import com.sunya.electionguard.ElGamal;
 import com.sunya.electionguard.Group;
+import com.sunya.electionguard.Precomputed;
 import com.sunya.electionguard.protoconvert.CommonConvert;
 import electionguard.protogen.CommonRpcProto;
 import electionguard.protogen.DecryptingProto;
@@ -38,6 +39,10 @@ public class DecryptingRemoteTrustee extends DecryptingTrusteeServiceGrpc.Decryp
     @Parameter(names = {"-serverPort"}, order = 3, description = "The DecryptingRemote server port")
     int serverPort = 17711;
 
+    @Parameter(names = {"-precompute"}, order = 4,
+            description = "File of precomputed tables, written by RunPrecompute")
+    String precomputeFile;
+
     @Parameter(names = {"-h", "--help"}, order = 9, description = "Display this help and exit", help = true)
     boolean help = false;
 
@@ -107,6 +112,10 @@ public class DecryptingRemoteTrustee extends DecryptingTrusteeServiceGrpc.Decryp
         System.out.printf("    registered with DecryptingRemote %n");
       }
 
+      // after registering, which may set the primes
+      if (cmdLine.precomputeFile != null && !Precomputed.load(cmdLine.precomputeFile)) {
+        System.out.printf("*** Precomputed tables in %s were not used, see the log%n", cmdLine.precomputeFile);
+      }
       trustee.start(port);
       trustee.blockUntilShutdown();
       System.exit(0);
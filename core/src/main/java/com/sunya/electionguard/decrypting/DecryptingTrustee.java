@@ -14,10 +14,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
-import static com.sunya.electionguard.Group.ONE_MOD_P;
 import static com.sunya.electionguard.Group.ONE_MOD_Q;
-import static com.sunya.electionguard.Group.mult_p;
-import static com.sunya.electionguard.Group.pow_p;
+import static com.sunya.electionguard.Group.multi_pow_p;
 import static com.sunya.electionguard.Group.rand_q;
 
 /**
@@ -179,13 +177,13 @@ public record DecryptingTrustee(
 
     // compute the recovery public key, corresponding to the secret share Pi(l)
     // K_ij^(l^j) for j in 0..k-1.  K_ij is coefficients[j].public_key
-    Group.ElementModP result = ONE_MOD_P;
+    Group.ElementModP[] commitments = otherCommitments.toArray(new Group.ElementModP[0]);
+    Group.ElementModQ[] exponents = new Group.ElementModQ[commitments.length];
     Group.ElementModQ exponent = ONE_MOD_Q;
-    for (Group.ElementModP commitment : otherCommitments) {
-      result = mult_p(result, pow_p(commitment, exponent));
+    for (int j = 0; j < commitments.length; j++) {
+      exponents[j] = exponent;
       exponent = Group.mult_q(exponent, xcoordQ);
     }
-
-    return result;
+    return multi_pow_p(commitments, exponents);
   }
 }
@@ -415,17 +415,18 @@ public class RemoteDecryptions {
         compensated_selection_shares.put(available_guardian_id, compensated_contest.selections().get(selection.object_id()));
       }
 
-      List<Group.ElementModP> share_pow_p = new ArrayList<>();
+      int nshares = compensated_selection_shares.size();
+      Group.ElementModP[] share_values = new Group.ElementModP[nshares];
+      Group.ElementModQ[] coefficients = new Group.ElementModQ[nshares];
+      int count = 0;
       for (Map.Entry<String, CiphertextCompensatedDecryptionSelection> entry5 : compensated_selection_shares.entrySet()) {
-        String available_guardian_id = entry5.getKey();
-        CiphertextCompensatedDecryptionSelection share = entry5.getValue();
-        Group.ElementModQ c = lagrange_coefficients.get(available_guardian_id);
-        Group.ElementModP p = Group.pow_p(share.share(), c);
-        share_pow_p.add(p);
+        share_values[count] = entry5.getValue().share();
+        coefficients[count] = lagrange_coefficients.get(entry5.getKey());
+        count++;
       }
 
       // product M_il^w_l
-      Group.ElementModP reconstructed_share = Group.mult_p(share_pow_p);
+      Group.ElementModP reconstructed_share = Group.multi_pow_p(share_values, coefficients);
 
       selections.put(selection.object_id(), DecryptionShare.create_ciphertext_decryption_selection(
               selection.object_id(),
@@ -14,6 +14,7 @@ import com.sunya.electionguard.ElectionConstants;
 import com.sunya.electionguard.Group;
 import com.sunya.electionguard.InternalManifest;
 import com.sunya.electionguard.PlaintextTally;
+import com.sunya.electionguard.Precomputed;
 import com.sunya.electionguard.Scheduler;
 import com.sunya.electionguard.input.CiphertextTallyInputValidation;
 import com.sunya.electionguard.input.ManifestInputValidation;
@@ -74,6 +75,10 @@ public class RunDecryptingMediator {
     @Parameter(names = {"-decryptSpoiled"}, order = 3, description = "Decrypt the spoiled ballots")
     boolean decryptSpoiled = false;
 
+    @Parameter(names = {"-precompute"}, order = 4,
+            description = "File of precomputed tables, written by RunPrecompute")
+    String precomputeFile;
+
     @Parameter(names = {"-h", "--help"}, order = 9, description = "Display this help and exit", help = true)
     boolean help = false;
 
@@ -119,6 +124,10 @@ public class RunDecryptingMediator {
         System.exit(1);
       }
 
+      if (cmdLine.precomputeFile != null && !Precomputed.load(cmdLine.precomputeFile)) {
+        System.out.printf("*** Precomputed tables in %s were not used, see the log%n", cmdLine.precomputeFile);
+      }
+
       // check that outputDir exists and can be written to
       Publisher publisher = new Publisher(cmdLine.outputDir, Publisher.Mode.createNew);
       if (!publisher.validateOutputDir(errors)) {
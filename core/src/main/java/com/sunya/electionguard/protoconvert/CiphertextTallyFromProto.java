@@ -1,7 +1,10 @@
 package com.sunya.electionguard.protoconvert;
 
 import com.sunya.electionguard.CiphertextTally;
+import com.sunya.electionguard.PartialTally;
+import com.sunya.electionguard.TallyCheckpoint;
 
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -17,6 +20,37 @@ public class CiphertextTallyFromProto {
             tally.getTallyId(), contests);
   }
 
+  public static TallyCheckpoint importTallyCheckpoint(CiphertextTallyProto.TallyCheckpoint checkpoint) {
+    return new TallyCheckpoint(
+            importCiphertextTally(checkpoint.getTally()),
+            checkpoint.getCastBallotIdsList(),
+            checkpoint.getBallotsOffset(),
+            checkpoint.getBallotsIndex(),
+            checkpoint.getLastBallotOffset(),
+            checkpoint.getLastBallotId());
+  }
+
+  /** The checkpoint, with the cast ballot ids read from the checkpoint ids file. */
+  public static TallyCheckpoint importTallyCheckpoint(CiphertextTallyProto.TallyCheckpoint checkpoint, List<String> castBallotIds) {
+    return new TallyCheckpoint(
+            importCiphertextTally(checkpoint.getTally()),
+            castBallotIds,
+            checkpoint.getBallotsOffset(),
+            checkpoint.getBallotsIndex(),
+            checkpoint.getLastBallotOffset(),
+            checkpoint.getLastBallotId());
+  }
+
+  public static PartialTally importPartialTally(CiphertextTallyProto.PartialTally partial) {
+    return new PartialTally(
+            importCiphertextTally(partial.getTally()),
+            partial.getCastBallotIdsList(),
+            partial.getShard(),
+            partial.getNshards(),
+            partial.getBallotsFileLength(),
+            partial.getBallotsCount());
+  }
+
   static CiphertextTally.Contest convertContest(CiphertextTallyProto.CiphertextTallyContest proto) {
     Map<String, CiphertextTally.Selection> selections = proto.getSelectionsList().stream()
             .collect(Collectors.toMap(t -> t.getSelectionId(), t -> convertSelection(t)));
@@ -1,7 +1,10 @@
 package com.sunya.electionguard.protoconvert;
 
 import com.sunya.electionguard.CiphertextTally;
+import com.sunya.electionguard.PartialTally;
+import com.sunya.electionguard.TallyCheckpoint;
 
+import java.util.List;
 import java.util.Map;
 
 import static com.sunya.electionguard.protoconvert.CommonConvert.publishCiphertext;
@@ -19,6 +22,45 @@ public class CiphertextTallyToProto {
     return builder.build();
   }
 
+  public static CiphertextTallyProto.TallyCheckpoint publishTallyCheckpoint(TallyCheckpoint checkpoint) {
+    CiphertextTallyProto.TallyCheckpoint.Builder builder = CiphertextTallyProto.TallyCheckpoint.newBuilder();
+    builder.setTally(publishCiphertextTally(checkpoint.tally()));
+    builder.addAllCastBallotIds(checkpoint.castBallotIds());
+    builder.setBallotsOffset(checkpoint.ballotsOffset());
+    builder.setBallotsIndex(checkpoint.ballotsIndex());
+    builder.setLastBallotOffset(checkpoint.lastBallotOffset());
+    builder.setLastBallotId(checkpoint.lastBallotId());
+    return builder.build();
+  }
+
+  /** The checkpoint without its ids, which are the first castBallotIdsSize bytes of the checkpoint ids file. */
+  public static CiphertextTallyProto.TallyCheckpoint publishTallyCheckpoint(TallyCheckpoint checkpoint, long castBallotIdsSize) {
+    CiphertextTallyProto.TallyCheckpoint.Builder builder = CiphertextTallyProto.TallyCheckpoint.newBuilder();
+    builder.setTally(publishCiphertextTally(checkpoint.tally()));
+    List<String> ids = checkpoint.castBallotIds();
+    builder.setNcastBallotIds(ids.size());
+    builder.setCastBallotIdsSize(castBallotIdsSize);
+    if (!ids.isEmpty()) {
+      builder.setLastCastBallotId(ids.get(ids.size() - 1));
+    }
+    builder.setBallotsOffset(checkpoint.ballotsOffset());
+    builder.setBallotsIndex(checkpoint.ballotsIndex());
+    builder.setLastBallotOffset(checkpoint.lastBallotOffset());
+    builder.setLastBallotId(checkpoint.lastBallotId());
+    return builder.build();
+  }
+
+  public static CiphertextTallyProto.PartialTally publishPartialTally(PartialTally partial) {
+    CiphertextTallyProto.PartialTally.Builder builder = CiphertextTallyProto.PartialTally.newBuilder();
+    builder.setTally(publishCiphertextTally(partial.tally()));
+    builder.addAllCastBallotIds(partial.castBallotIds());
+    builder.setShard(partial.shard());
+    builder.setNshards(partial.nshards());
+    builder.setBallotsFileLength(partial.ballotsFileLength());
+    builder.setBallotsCount(partial.ballotsCount());
+    return builder.build();
+  }
+
   static CiphertextTallyProto.CiphertextTallyContest convertContest(CiphertextTally.Contest contest) {
     CiphertextTallyProto.CiphertextTallyContest.Builder builder = CiphertextTallyProto.CiphertextTallyContest.newBuilder();
     builder.setContestId(contest.object_id());
@@ -1,6 +1,7 @@
 package com.sunya.electionguard.protoconvert;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import com.sunya.electionguard.ChaumPedersen;
 import com.sunya.electionguard.ElGamal;
 import com.sunya.electionguard.Group;
@@ -8,6 +9,7 @@ import com.sunya.electionguard.SchnorrProof;
 
 import javax.annotation.Nullable;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.function.Function;
 
@@ -118,28 +120,37 @@ public class CommonConvert {
 
   /////////////////////////////////////////////////////////////////////////////////////////
   // to proto
+  // The values wrap the bytes of the elements without copying them, so the only copy is into the output stream.
+  // This relies on the elements, and UInt256, not modifying their bytes.
+
+  // an empty value reads as a missing element, so zero is written as a single zero byte
+  private static final ByteString ZERO_VALUE = ByteString.copyFrom(new byte[1]);
+
+  private static ByteString wrapValue(ByteBuffer canonical) {
+    return canonical.hasRemaining() ? UnsafeByteOperations.unsafeWrap(canonical) : ZERO_VALUE;
+  }
 
   public static CommonProto.UInt256 publishUInt256(UInt256 modQ) {
     CommonProto.UInt256.Builder builder = CommonProto.UInt256.newBuilder();
-    builder.setValue(ByteString.copyFrom(modQ.toBytes().array()));
+    builder.setValue(UnsafeByteOperations.unsafeWrap(modQ.val()));
     return builder.build();
   }
 
   public static CommonProto.UInt256 publishUInt256fromQ(Group.ElementModQ modQ) {
     CommonProto.UInt256.Builder builder = CommonProto.UInt256.newBuilder();
-    builder.setValue(ByteString.copyFrom(modQ.getBigInt().toByteArray()));
+    builder.setValue(wrapValue(modQ.byteBuffer()));
     return builder.build();
   }
 
   public static CommonProto.ElementModQ publishElementModQ(Group.ElementModQ modQ) {
     CommonProto.ElementModQ.Builder builder = CommonProto.ElementModQ.newBuilder();
-    builder.setValue(ByteString.copyFrom(modQ.getBigInt().toByteArray()));
+    builder.setValue(wrapValue(modQ.byteBuffer()));
     return builder.build();
   }
 
   public static CommonProto.ElementModP publishElementModP(Group.ElementModP modP) {
     CommonProto.ElementModP.Builder builder = CommonProto.ElementModP.newBuilder();
-    builder.setValue(ByteString.copyFrom(modP.getBigInt().toByteArray()));
+    builder.setValue(wrapValue(modP.byteBuffer()));
     return builder.build();
   }
 
@@ -153,7 +164,7 @@ public class CommonConvert {
   public static CommonProto.HashedElGamalCiphertext publishHashedCiphertext(HashedElGamalCiphertext ciphertext) {
     CommonProto.HashedElGamalCiphertext.Builder builder = CommonProto.HashedElGamalCiphertext.newBuilder();
     builder.setC0(publishElementModP(ciphertext.c0()));
-    builder.setC1(ByteString.copyFrom(ciphertext.c1()));
+    builder.setC1(UnsafeByteOperations.unsafeWrap(ciphertext.c1()));
     builder.setC2(publishUInt256(ciphertext.c2()));
     builder.setNumBytes(ciphertext.numBytes());
     return builder.build();
@@ -4,8 +4,12 @@ import com.sunya.electionguard.BallotBox;
 import com.sunya.electionguard.ChaumPedersen;
 import com.sunya.electionguard.SubmittedBallot;
 import com.sunya.electionguard.CiphertextBallot;
+import com.sunya.electionguard.Group;
+import com.sunya.electionguard.publish.SubmittedBallotIndex;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import static com.sunya.electionguard.protoconvert.CommonConvert.convertList;
@@ -37,6 +41,98 @@ public class SubmittedBallotFromProto {
             convertBallotState(ballot.getState()));
   }
 
+  /** Translate the projection without proofs and extended data. Those are empty in the result. */
+  public static SubmittedBallot translateFromProto(CiphertextBallotProto.SubmittedBallotCiphertexts ballot) {
+    return new SubmittedBallot(
+            ballot.getBallotId(),
+            ballot.getBallotStyleId(),
+            CommonConvert.importUInt256toQ(ballot.getManifestHash()),
+            CommonConvert.importUInt256toQ(ballot.getCodeSeed()),
+            convertList(ballot.getContestsList(), SubmittedBallotFromProto::convertContestCiphertexts),
+            CommonConvert.importUInt256toQ(ballot.getCode()),
+            ballot.getTimestamp(),
+            CommonConvert.importUInt256toQ(ballot.getCryptoHash()),
+            convertBallotState(ballot.getState()));
+  }
+
+  /** Translate the projection without contests. The result has no contests. */
+  public static SubmittedBallot translateFromProto(CiphertextBallotProto.SubmittedBallotCodes ballot) {
+    return new SubmittedBallot(
+            ballot.getBallotId(),
+            ballot.getBallotStyleId(),
+            CommonConvert.importUInt256toQ(ballot.getManifestHash()),
+            CommonConvert.importUInt256toQ(ballot.getCodeSeed()),
+            List.of(),
+            CommonConvert.importUInt256toQ(ballot.getCode()),
+            ballot.getTimestamp(),
+            CommonConvert.importUInt256toQ(ballot.getCryptoHash()),
+            convertBallotState(ballot.getState()));
+  }
+
+  /**
+   * Translate, optionally checking that all the ElementModP values of the ballot are valid residues.
+   * The values of the whole ballot are checked together with Group.is_valid_residues.
+   * @throws IllegalArgumentException if checkResidues and any of the values is not a valid residue.
+   */
+  public static SubmittedBallot translateFromProto(CiphertextBallotProto.SubmittedBallot ballot, boolean checkResidues) {
+    SubmittedBallot result = translateFromProto(ballot);
+    if (checkResidues) {
+      List<Group.ElementModP> invalid = Group.invalid_residues(residues(result));
+      if (!invalid.isEmpty()) {
+        throw new IllegalArgumentException(String.format("Ballot %s has %d values that are not valid residues",
+                result.object_id(), invalid.size()));
+      }
+    }
+    return result;
+  }
+
+  // the ciphertexts and the version 1 proof commitments
+  private static List<Group.ElementModP> residues(SubmittedBallot ballot) {
+    List<Group.ElementModP> result = new ArrayList<>();
+    for (CiphertextBallot.Contest contest : ballot.contests) {
+      for (CiphertextBallot.Selection selection : contest.selections) {
+        result.add(selection.ciphertext().pad());
+        result.add(selection.ciphertext().data());
+        selection.proof.ifPresent(proof -> {
+          addIfPresent(result, proof.proof0.pad);
+          addIfPresent(result, proof.proof0.data);
+          addIfPresent(result, proof.proof1.pad);
+          addIfPresent(result, proof.proof1.data);
+        });
+      }
+      contest.proof.ifPresent(proof -> {
+        addIfPresent(result, proof.pad);
+        addIfPresent(result, proof.data);
+      });
+    }
+    return result;
+  }
+
+  private static void addIfPresent(List<Group.ElementModP> result, @Nullable Group.ElementModP elem) {
+    if (elem != null) {
+      result.add(elem);
+    }
+  }
+
+  public static SubmittedBallotIndex.Entry importIndexEntry(CiphertextBallotProto.SubmittedBallotIndexEntry entry) {
+    return new SubmittedBallotIndex.Entry(
+            entry.getOffset(),
+            entry.getLength(),
+            entry.getBallotId(),
+            convertBallotState(entry.getState()),
+            CommonConvert.importUInt256toQ(entry.getCode()));
+  }
+
+  /** The index entry of a ballot record that was read at offset, with the given length. */
+  public static SubmittedBallotIndex.Entry importIndexEntry(CiphertextBallotProto.SubmittedBallotCodes ballot, long offset, int length) {
+    return new SubmittedBallotIndex.Entry(
+            offset,
+            length,
+            ballot.getBallotId(),
+            convertBallotState(ballot.getState()),
+            CommonConvert.importUInt256toQ(ballot.getCode()));
+  }
+
   static BallotBox.State convertBallotState(CiphertextBallotProto.SubmittedBallot.BallotState type) {
     return BallotBox.State.valueOf(type.name());
   }
@@ -65,6 +161,30 @@ public class SubmittedBallotFromProto {
             Optional.ofNullable(CommonConvert.importHashedCiphertext(selection.getExtendedData())));
   }
 
+  static CiphertextBallot.Contest convertContestCiphertexts(CiphertextBallotProto.CiphertextBallotContestCiphertexts contest) {
+    return new CiphertextBallot.Contest(
+            contest.getContestId(),
+            contest.getSequenceOrder(),
+            CommonConvert.importUInt256toQ(contest.getContestHash()),
+            convertList(contest.getSelectionsList(), SubmittedBallotFromProto::convertSelectionCiphertexts),
+            CommonConvert.importUInt256toQ(contest.getCryptoHash()),
+            Optional.empty(),
+            Optional.empty());
+  }
+
+  static CiphertextBallot.Selection convertSelectionCiphertexts(CiphertextBallotProto.CiphertextBallotSelectionCiphertexts selection) {
+    return new CiphertextBallot.Selection(
+            selection.getSelectionId(),
+            selection.getSequenceOrder(),
+            CommonConvert.importUInt256toQ(selection.getSelectionHash()),
+            CommonConvert.importCiphertext(selection.getCiphertext()),
+            CommonConvert.importUInt256toQ(selection.getCryptoHash()),
+            selection.getIsPlaceholderSelection(),
+            Optional.empty(),
+            Optional.empty(),
+            Optional.empty());
+  }
+
   @Nullable
   static ChaumPedersen.ConstantChaumPedersenProof convertConstantProof(@Nullable CiphertextBallotProto.ConstantChaumPedersenProof proof) {
     if (proof == null) {
@@ -4,6 +4,7 @@ import com.sunya.electionguard.BallotBox;
 import com.sunya.electionguard.ChaumPedersen;
 import com.sunya.electionguard.SubmittedBallot;
 import com.sunya.electionguard.CiphertextBallot;
+import com.sunya.electionguard.publish.SubmittedBallotIndex;
 
 import static com.sunya.electionguard.protoconvert.CommonConvert.publishChaumPedersenProof;
 import static com.sunya.electionguard.protoconvert.CommonConvert.publishCiphertext;
@@ -29,6 +30,28 @@ public class SubmittedBallotToProto {
     return builder.build();
   }
 
+  /** The entry of the index sidecar for a ballot record that was written at offset, with the given length. */
+  public static CiphertextBallotProto.SubmittedBallotIndexEntry publishIndexEntry(
+          CiphertextBallotProto.SubmittedBallot ballotProto, long offset, int length) {
+    return CiphertextBallotProto.SubmittedBallotIndexEntry.newBuilder()
+            .setOffset(offset)
+            .setLength(length)
+            .setBallotId(ballotProto.getBallotId())
+            .setState(ballotProto.getState())
+            .setCode(ballotProto.getCode())
+            .build();
+  }
+
+  public static CiphertextBallotProto.SubmittedBallotIndexEntry publishIndexEntry(SubmittedBallotIndex.Entry entry) {
+    return CiphertextBallotProto.SubmittedBallotIndexEntry.newBuilder()
+            .setOffset(entry.offset())
+            .setLength(entry.length())
+            .setBallotId(entry.ballotId())
+            .setState(convertBallotState(entry.state()))
+            .setCode(CommonConvert.publishUInt256fromQ(entry.code()))
+            .build();
+  }
+
   static CiphertextBallotProto.SubmittedBallot.BallotState convertBallotState(BallotBox.State type) {
     return CiphertextBallotProto.SubmittedBallot.BallotState.valueOf(type.name());
   }
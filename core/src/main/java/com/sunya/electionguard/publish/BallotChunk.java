@@ -0,0 +1,194 @@
+package com.sunya.electionguard.publish;
+
+import com.google.common.io.CountingOutputStream;
+import com.sunya.electionguard.SubmittedBallot;
+import com.sunya.electionguard.protoconvert.SubmittedBallotFromProto;
+import com.sunya.electionguard.protoconvert.SubmittedBallotToProto;
+import electionguard.protogen.CiphertextBallotProto;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A ballot chunk file, one part of the encrypted ballots, which can be written, checked and read
+ * independently of the other chunks. Layout, big-endian:
+ * <pre>
+ *   header: magic "EGBCHUNK", int version, int chunk number
+ *   records: each ballot as a varint length and a SubmittedBallot message, as written by writeDelimitedTo
+ *   footer: long byte length of the records, int number of records, int CRC32C of the records, magic "EGBCHEND"
+ * </pre>
+ */
+class BallotChunk {
+  private static final byte[] MAGIC = "EGBCHUNK".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] END_MAGIC = "EGBCHEND".getBytes(StandardCharsets.US_ASCII);
+  private static final int VERSION = 1;
+  static final int HEADER_SIZE = MAGIC.length + 8;
+  static final int FOOTER_SIZE = 16 + END_MAGIC.length;
+
+  private BallotChunk() {}
+
+  /** The footer of a chunk that has been checked. */
+  record Footer(int chunk, long recordsLength, int count, int crc) {}
+
+  /** Write the chunk to a temp file and rename it, so readers never see a partly written chunk. */
+  static void write(Path dest, int chunk, List<SubmittedBallot> ballots) throws IOException {
+    Path temp = Files.createTempFile(dest.toAbsolutePath().getParent(), dest.getFileName().toString(), ".tmp");
+    try {
+      try (FileOutputStream fileOut = new FileOutputStream(temp.toFile())) {
+        BufferedOutputStream buffered = new BufferedOutputStream(fileOut, DelimitedReader.DEFAULT_BUFFER_SIZE);
+        DataOutputStream out = new DataOutputStream(buffered);
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(chunk);
+
+        CRC32C crc = new CRC32C();
+        CountingOutputStream records = new CountingOutputStream(new CheckedOutputStream(buffered, crc));
+        for (SubmittedBallot ballot : ballots) {
+          SubmittedBallotToProto.translateToProto(ballot).writeDelimitedTo(records);
+        }
+
+        out.writeLong(records.getCount());
+        out.writeInt(ballots.size());
+        out.writeInt((int) crc.getValue());
+        out.write(END_MAGIC);
+        out.flush();
+        fileOut.getFD().sync();
+      }
+      Files.move(temp, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Check the chunk's header, footer and checksum, and that the chunk number in the header is the one in the file name.
+   * @throws IOException describing what is wrong with the chunk.
+   */
+  static Footer check(Path path, ReadCounter counter) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_SIZE + FOOTER_SIZE) {
+        throw new IOException(String.format("chunk %s is too short, %d bytes", path, size));
+      }
+      ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+      byte[] magic = new byte[MAGIC.length];
+      header.get(magic);
+      int version = header.getInt();
+      int chunk = header.getInt();
+      if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+        throw new IOException(String.format("chunk %s has a bad header", path));
+      }
+      if (chunk != chunkNumber(path)) {
+        throw new IOException(String.format("chunk %s has chunk number %d in its header", path, chunk));
+      }
+
+      ByteBuffer footer = readFully(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+      long recordsLength = footer.getLong();
+      int count = footer.getInt();
+      int crc = footer.getInt();
+      byte[] endMagic = new byte[END_MAGIC.length];
+      footer.get(endMagic);
+      if (!Arrays.equals(endMagic, END_MAGIC)) {
+        throw new IOException(String.format("chunk %s has a bad footer, it may be truncated", path));
+      }
+      if (recordsLength != size - HEADER_SIZE - FOOTER_SIZE) {
+        throw new IOException(String.format("chunk %s has %d bytes of records, footer says %d",
+                path, size - HEADER_SIZE - FOOTER_SIZE, recordsLength));
+      }
+
+      CRC32C checksum = new CRC32C();
+      ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(DelimitedReader.DEFAULT_BUFFER_SIZE, Math.max(1, recordsLength)));
+      long position = HEADER_SIZE;
+      long end = HEADER_SIZE + recordsLength;
+      while (position < end) {
+        buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+        int nread = channel.read(buffer, position);
+        if (nread < 0) {
+          throw new IOException(String.format("chunk %s ended early", path));
+        }
+        counter.addBytes(nread);
+        position += nread;
+        buffer.flip();
+        checksum.update(buffer);
+      }
+      if ((int) checksum.getValue() != crc) {
+        throw new IOException(String.format("chunk %s has a bad checksum", path));
+      }
+      return new Footer(chunk, recordsLength, count, crc);
+    }
+  }
+
+  // the chunk number in the file name, as written by ElectionRecordPath.submittedBallotChunkPath, or -1
+  private static int chunkNumber(Path path) {
+    String name = path.getFileName().toString();
+    if (!name.startsWith(ElectionRecordPath.SUBMITTED_BALLOT_CHUNK_PREFIX) ||
+            !name.endsWith(ElectionRecordPath.SUBMITTED_BALLOT_CHUNK_SUFFIX)) {
+      return -1;
+    }
+    try {
+      return Integer.parseInt(name.substring(ElectionRecordPath.SUBMITTED_BALLOT_CHUNK_PREFIX.length(),
+              name.length() - ElectionRecordPath.SUBMITTED_BALLOT_CHUNK_SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static ByteBuffer readFully(FileChannel channel, long position, int size) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("unexpected end of file");
+      }
+    }
+    return buffer.flip();
+  }
+
+  /**
+   * Read the ballots of a chunk that has been checked, giving the ones that pass filter to sink.
+   * The ballots are held until the whole chunk has been read, so if reading fails part way, none are given to sink.
+   * @return the number of ballots given to sink.
+   */
+  static int read(Path path, Footer footer, Predicate<CiphertextBallotProto.SubmittedBallot> filter,
+                  java.util.function.Consumer<SubmittedBallot> sink, ReadCounter counter) throws IOException {
+    int bufferSize = (int) Math.min(DelimitedReader.DEFAULT_BUFFER_SIZE, Math.max(1, footer.recordsLength()));
+    List<SubmittedBallot> result = new ArrayList<>(footer.count());
+    try (DelimitedReader reader = new DelimitedReader(path.toString(), HEADER_SIZE, counter, bufferSize)) {
+      for (int i = 0; i < footer.count(); i++) {
+        long start = System.nanoTime();
+        int size = reader.nextSize();
+        if (size < 0) {
+          throw new IOException(String.format("chunk %s has %d records, footer says %d", path, i, footer.count()));
+        }
+        CiphertextBallotProto.SubmittedBallot ballotProto = reader.parse(CiphertextBallotProto.SubmittedBallot.parser(), size);
+        if (filter.test(ballotProto)) {
+          try {
+            result.add(SubmittedBallotFromProto.translateFromProto(ballotProto));
+          } catch (RuntimeException e) {
+            throw new IOException(String.format("chunk %s record %d is not a valid ballot: %s", path, i, e.getMessage()), e);
+          }
+        }
+        counter.addNanos(System.nanoTime() - start);
+      }
+      if (reader.position() != HEADER_SIZE + footer.recordsLength()) {
+        throw new IOException(String.format("chunk %s records do not fill %d bytes", path, footer.recordsLength()));
+      }
+    }
+    result.forEach(sink);
+    return result.size();
+  }
+}
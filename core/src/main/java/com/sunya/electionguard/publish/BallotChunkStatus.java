@@ -0,0 +1,17 @@
+package com.sunya.electionguard.publish;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+
+/**
+ * The outcome of reading one ballot chunk file.
+ * @param path the chunk file.
+ * @param nballots the number of ballots read from it, 0 if it is not valid.
+ * @param error what is wrong with the chunk, or null if it is valid.
+ */
+public record BallotChunkStatus(Path path, int nballots, @Nullable String error) {
+
+  public boolean isValid() {
+    return error == null;
+  }
+}
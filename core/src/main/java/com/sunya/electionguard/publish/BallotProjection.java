@@ -0,0 +1,64 @@
+package com.sunya.electionguard.publish;
+
+import com.sunya.electionguard.BallotBox;
+import com.sunya.electionguard.SubmittedBallot;
+import com.sunya.electionguard.protoconvert.SubmittedBallotFromProto;
+import electionguard.protogen.CiphertextBallotProto;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+
+/**
+ * How much of each SubmittedBallot to decode when reading the encrypted ballots.
+ * The fields that a projection leaves out are skipped over in the file without being decoded,
+ * and are empty in the ballots it returns.
+ */
+public enum BallotProjection {
+  /** The whole ballot. */
+  FULL,
+  /** The ballot without the proofs and extended data of its contests and selections. Enough to validate and tally it. */
+  CIPHERTEXTS,
+  /** The ballot without its contests. Enough to check its code and the chaining of the codes. */
+  CODES,
+  /**
+   * The whole ballot, checking that all its ElementModP values are valid residues, in one batch per ballot.
+   * Reading a ballot that fails throws IllegalArgumentException.
+   */
+  FULL_CHECKED;
+
+  /**
+   * Parse the next record of reader as this projection.
+   * @param size the size of the record, returned by reader.nextSize().
+   * @param state if not null, only return the ballot if its in this state.
+   * @return the ballot, or null if its not in state.
+   */
+  @Nullable
+  SubmittedBallot parse(DelimitedReader reader, int size, @Nullable BallotBox.State state) throws IOException {
+    switch (this) {
+      case CIPHERTEXTS: {
+        CiphertextBallotProto.SubmittedBallotCiphertexts proto =
+                reader.parse(CiphertextBallotProto.SubmittedBallotCiphertexts.parser(), size, true);
+        return inState(proto.getState(), state) ? SubmittedBallotFromProto.translateFromProto(proto) : null;
+      }
+      case CODES: {
+        CiphertextBallotProto.SubmittedBallotCodes proto =
+                reader.parse(CiphertextBallotProto.SubmittedBallotCodes.parser(), size, true);
+        return inState(proto.getState(), state) ? SubmittedBallotFromProto.translateFromProto(proto) : null;
+      }
+      case FULL_CHECKED: {
+        CiphertextBallotProto.SubmittedBallot proto =
+                reader.parse(CiphertextBallotProto.SubmittedBallot.parser(), size);
+        return inState(proto.getState(), state) ? SubmittedBallotFromProto.translateFromProto(proto, true) : null;
+      }
+      default: {
+        CiphertextBallotProto.SubmittedBallot proto =
+                reader.parse(CiphertextBallotProto.SubmittedBallot.parser(), size);
+        return inState(proto.getState(), state) ? SubmittedBallotFromProto.translateFromProto(proto) : null;
+      }
+    }
+  }
+
+  private static boolean inState(CiphertextBallotProto.SubmittedBallot.BallotState have, @Nullable BallotBox.State want) {
+    return want == null || have.name().equals(want.name());
+  }
+}
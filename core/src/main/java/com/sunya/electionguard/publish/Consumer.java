@@ -1,8 +1,11 @@
 package com.sunya.electionguard.publish;
 
 import com.google.common.collect.AbstractIterator;
+import com.google.common.flogger.FluentLogger;
+import com.google.protobuf.CodedInputStream;
 import com.sunya.electionguard.*;
 import com.sunya.electionguard.json.JsonConsumer;
+import com.sunya.electionguard.protoconvert.CiphertextTallyFromProto;
 import com.sunya.electionguard.protoconvert.ElectionConfigConvert;
 import com.sunya.electionguard.protoconvert.ElectionInitializedConvert;
 import com.sunya.electionguard.protoconvert.ElectionResultsConvert;
@@ -10,11 +13,27 @@ import com.sunya.electionguard.protoconvert.SubmittedBallotFromProto;
 import com.sunya.electionguard.protoconvert.PlaintextBallotFromProto;
 import com.sunya.electionguard.protoconvert.PlaintextTallyFromProto;
 
+import javax.annotation.Nullable;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Formatter;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongPredicate;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import electionguard.protogen.*;
 
@@ -22,12 +41,21 @@ import electionguard.protogen.*;
 /** Helper class for consumers of published election records in protobuf.
  * Use JsonConsumer for Json files. */
 public class Consumer {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
   public final ElectionRecordPath path;
+  private final ReadCounter readCounter = new ReadCounter();
+  private SubmittedBallotIndex ballotIndex; // lazy
 
   public Consumer(String topDir) throws IOException {
     path = new ElectionRecordPath(topDir);
   }
 
+  /** Counts what this Consumer's ballot and tally iterators have read. */
+  public ReadCounter readCounter() {
+    return readCounter;
+  }
+
   public boolean isValidElectionRecord(Formatter error) {
     if (!Files.exists(path.topDirPath())) {
       error.format("%s does not exist", path.getTopDir());
@@ -70,6 +98,59 @@ public class Consumer {
     return ElectionResultsConvert.importTallyResult(proto);
   }
 
+  /** The checkpoint of an unfinished tally accumulation, if there is one. */
+  public Optional<TallyCheckpoint> readTallyCheckpoint() throws IOException {
+    return readTallyCheckpoint(path.tallyCheckpointPath(), path.tallyCheckpointIdsPath());
+  }
+
+  /** The checkpoint of an unfinished tally accumulation of one shard of the ballots, if there is one. */
+  public Optional<TallyCheckpoint> readTallyCheckpoint(int shard, int nshards) throws IOException {
+    return readTallyCheckpoint(path.tallyCheckpointPath(shard, nshards), path.tallyCheckpointIdsPath(shard, nshards));
+  }
+
+  private Optional<TallyCheckpoint> readTallyCheckpoint(Path checkpointPath, Path idsPath) throws IOException {
+    if (!Files.exists(checkpointPath)) {
+      return Optional.empty();
+    }
+    CiphertextTallyProto.TallyCheckpoint proto;
+    try (FileInputStream inp = new FileInputStream(checkpointPath.toString())) {
+      proto = CiphertextTallyProto.TallyCheckpoint.parseFrom(inp);
+    }
+    int ncast = proto.getNcastBallotIds();
+    if (ncast == 0) { // older checkpoints have the ids in the checkpoint itself
+      return Optional.of(CiphertextTallyFromProto.importTallyCheckpoint(proto));
+    }
+
+    // the ids file may be longer than the checkpoint, if a later checkpoint was not finished
+    List<String> ids = new ArrayList<>(ncast);
+    try (FileInputStream inp = new FileInputStream(idsPath.toString())) {
+      CodedInputStream coded = CodedInputStream.newInstance(inp);
+      for (int i = 0; i < ncast; i++) {
+        coded.resetSizeCounter();
+        ids.add(coded.readStringRequireUtf8());
+      }
+    }
+    if (!ids.get(ncast - 1).equals(proto.getLastCastBallotId())) {
+      throw new IOException(String.format("tally checkpoint ids in %s do not match checkpoint %s", idsPath, checkpointPath));
+    }
+    return Optional.of(CiphertextTallyFromProto.importTallyCheckpoint(proto, ids));
+  }
+
+  /** All the partial tallies in the top directory, in order of their shard. */
+  public List<PartialTally> readPartialTallies() throws IOException {
+    List<PartialTally> result = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(path.topDirPath(),
+            ElectionRecordPath.PARTIAL_TALLY_PREFIX + "*" + ElectionRecordPath.PROTO_SUFFIX)) {
+      for (Path file : files) {
+        try (FileInputStream inp = new FileInputStream(file.toString())) {
+          result.add(CiphertextTallyFromProto.importPartialTally(CiphertextTallyProto.PartialTally.parseFrom(inp)));
+        }
+      }
+    }
+    result.sort(Comparator.comparingInt(PartialTally::shard));
+    return result;
+  }
+
   public electionguard.ballot.DecryptionResult readDecryptionResult() throws IOException {
     ElectionRecordProto.DecryptionResult proto;
     try (FileInputStream inp = new FileInputStream(path.decryptionResultPath().toString())) {
@@ -80,37 +161,281 @@ public class Consumer {
 
   // all submitted ballots cast or spoiled
   public CloseableIterable<SubmittedBallot> iterateSubmittedBallots() {
+    return iterateSubmittedBallots(BallotProjection.FULL);
+  }
+
+  /** All submitted ballots cast or spoiled, decoding only the parts of each ballot in the projection. */
+  public CloseableIterable<SubmittedBallot> iterateSubmittedBallots(BallotProjection projection) {
     if (Files.exists(path.submittedBallotPath())) {
       return () -> new SubmittedBallotIterator(path.submittedBallotPath().toString(),
-              b -> true);
+              null, projection, 0, 0, index -> true, readCounter);
     } else {
       return CloseableIterableAdapter.empty();
     }
   }
 
+  /**
+   * All submitted ballots cast or spoiled, starting at a byte offset in the submitted ballots file.
+   * @param startOffset 0, or an offset returned by SubmittedBallotIterator.offset() on the same file.
+   */
+  public SubmittedBallotIterator iterateSubmittedBallots(long startOffset) {
+    return iterateSubmittedBallots(startOffset, 0, index -> true);
+  }
+
+  /**
+   * The submitted ballots cast or spoiled whose index in the submitted ballots file passes recordFilter,
+   * starting at a byte offset in the file. The other ballots are skipped without being parsed.
+   * @param startOffset 0, or an offset returned by SubmittedBallotIterator.offset() on the same file.
+   * @param startIndex the index of the ballot at startOffset, ie 0 or the matching SubmittedBallotIterator.index().
+   * @param recordFilter is given the index of each ballot in the file.
+   */
+  public SubmittedBallotIterator iterateSubmittedBallots(long startOffset, long startIndex, LongPredicate recordFilter) {
+    return iterateSubmittedBallots(startOffset, startIndex, recordFilter, BallotProjection.FULL);
+  }
+
+  /**
+   * Same as iterateSubmittedBallots(startOffset, startIndex, recordFilter), decoding only the parts of each ballot
+   * in the projection.
+   */
+  public SubmittedBallotIterator iterateSubmittedBallots(long startOffset, long startIndex, LongPredicate recordFilter,
+                                                         BallotProjection projection) {
+    boolean exists = Files.exists(path.submittedBallotPath());
+    return new SubmittedBallotIterator(exists ? path.submittedBallotPath().toString() : null,
+            null, projection, startOffset, startIndex, recordFilter, readCounter);
+  }
+
   // all submitted ballots cast only
   public CloseableIterable<SubmittedBallot> iterateCastBallots() {
-    if (Files.exists(path.submittedBallotPath())) {
-      return () -> new SubmittedBallotIterator(path.submittedBallotPath().toString(),
-              b -> b.getState() == CiphertextBallotProto.SubmittedBallot.BallotState.CAST);
-    } else {
-      return CloseableIterableAdapter.empty();
-    }
+    return iterateBallotsInState(BallotBox.State.CAST, BallotProjection.FULL);
+  }
+
+  /** All submitted ballots cast only, decoding only the parts of each ballot in the projection. */
+  public CloseableIterable<SubmittedBallot> iterateCastBallots(BallotProjection projection) {
+    return iterateBallotsInState(BallotBox.State.CAST, projection);
   }
 
   // all submitted ballots spoiled only
   public CloseableIterable<SubmittedBallot> iterateSpoiledBallots() {
-    if (Files.exists(path.submittedBallotPath())) {
-      return () -> new SubmittedBallotIterator(path.submittedBallotPath().toString(),
-              b -> b.getState() == CiphertextBallotProto.SubmittedBallot.BallotState.SPOILED);
-    } else {
+    return iterateBallotsInState(BallotBox.State.SPOILED, BallotProjection.FULL);
+  }
+
+  // if there is an index sidecar, the ballots in other states are skipped without being parsed
+  private CloseableIterable<SubmittedBallot> iterateBallotsInState(BallotBox.State state, BallotProjection projection) {
+    if (!Files.exists(path.submittedBallotPath())) {
       return CloseableIterableAdapter.empty();
     }
+    return () -> {
+      Optional<SubmittedBallotIndex> index;
+      try {
+        index = readSubmittedBallotIndexSidecar();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      LongPredicate recordFilter = index.isPresent() ?
+              i -> index.get().get((int) i).state() == state : i -> true;
+      return new SubmittedBallotIterator(path.submittedBallotPath().toString(),
+              state, projection, 0, 0, recordFilter, readCounter);
+    };
+  }
+
+  /**
+   * The index of the submitted ballots file, from the sidecar written by Publisher.writeSubmittedBallots.
+   * If there's no sidecar, or it doesn't match the ballots file, the index is made by reading the ballots file.
+   */
+  public synchronized SubmittedBallotIndex readSubmittedBallotIndex() throws IOException {
+    Optional<SubmittedBallotIndex> sidecar = readSubmittedBallotIndexSidecar();
+    if (sidecar.isPresent()) {
+      return sidecar.get();
+    }
+    return scanSubmittedBallotIndex();
+  }
+
+  // make the index by reading the ballots file
+  private synchronized SubmittedBallotIndex scanSubmittedBallotIndex() throws IOException {
+    List<SubmittedBallotIndex.Entry> entries = new ArrayList<>();
+    if (Files.exists(path.submittedBallotPath())) {
+      try (DelimitedReader reader = new DelimitedReader(path.submittedBallotPath().toString(), 0, readCounter)) {
+        long offset = reader.position();
+        int size;
+        while ((size = reader.nextSize()) >= 0) {
+          CiphertextBallotProto.SubmittedBallotCodes ballotProto =
+                  reader.parse(CiphertextBallotProto.SubmittedBallotCodes.parser(), size, true);
+          entries.add(SubmittedBallotFromProto.importIndexEntry(ballotProto, offset, (int) (reader.position() - offset)));
+          offset = reader.position();
+        }
+      }
+    }
+    this.ballotIndex = new SubmittedBallotIndex(entries);
+    return this.ballotIndex;
+  }
+
+  // the index already read, or else the index sidecar if it exists and matches the ballots file
+  private synchronized Optional<SubmittedBallotIndex> readSubmittedBallotIndexSidecar() throws IOException {
+    if (this.ballotIndex != null) {
+      return Optional.of(this.ballotIndex);
+    }
+    if (!Files.exists(path.submittedBallotIndexPath()) || !Files.exists(path.submittedBallotPath())) {
+      return Optional.empty();
+    }
+    List<SubmittedBallotIndex.Entry> entries = new ArrayList<>();
+    try (DelimitedReader reader = new DelimitedReader(path.submittedBallotIndexPath().toString(), 0, new ReadCounter())) {
+      int size;
+      while ((size = reader.nextSize()) >= 0) {
+        entries.add(SubmittedBallotFromProto.importIndexEntry(
+                reader.parse(CiphertextBallotProto.SubmittedBallotIndexEntry.parser(), size)));
+      }
+    }
+    SubmittedBallotIndex index = new SubmittedBallotIndex(entries);
+    // a ballots file rewritten with the same length is caught by checking its first and last records
+    if (index.fileLength() != Files.size(path.submittedBallotPath()) ||
+            (index.size() > 0 && (!matchesBallotsFile(index.get(0)) || !matchesBallotsFile(index.get(index.size() - 1))))) {
+      return Optional.empty(); // stale
+    }
+    this.ballotIndex = index;
+    return Optional.of(index);
+  }
+
+  // does the record at the entry's offset in the ballots file have the entry's length, id, state and code
+  private boolean matchesBallotsFile(SubmittedBallotIndex.Entry entry) throws IOException {
+    Optional<CiphertextBallotProto.SubmittedBallotCodes> ballotProto = readBallotCodes(entry.offset(), entry.end());
+    return ballotProto.isPresent() &&
+            entry.equals(SubmittedBallotFromProto.importIndexEntry(ballotProto.get(), entry.offset(), entry.length()));
+  }
+
+  /** Is the record in [offset, end) of the submitted ballots file the ballot with this id? */
+  public boolean isSubmittedBallotRecord(long offset, long end, String ballotId) throws IOException {
+    Optional<CiphertextBallotProto.SubmittedBallotCodes> ballotProto = readBallotCodes(offset, end);
+    return ballotProto.isPresent() && ballotProto.get().getBallotId().equals(ballotId);
+  }
+
+  // the record in [offset, end) of the ballots file, if there is exactly one record there
+  private Optional<CiphertextBallotProto.SubmittedBallotCodes> readBallotCodes(long offset, long end) throws IOException {
+    if (end <= offset || end - offset > Integer.MAX_VALUE || !Files.exists(path.submittedBallotPath())) {
+      return Optional.empty();
+    }
+    try (DelimitedReader reader = new DelimitedReader(path.submittedBallotPath().toString(),
+            offset, new ReadCounter(), (int) (end - offset))) {
+      int size = reader.nextSize();
+      if (size < 0 || reader.position() + size != end) {
+        return Optional.empty();
+      }
+      return Optional.of(reader.parse(CiphertextBallotProto.SubmittedBallotCodes.parser(), size, true));
+    } catch (IOException | RuntimeException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Read the submitted ballot with this id, using the submitted ballot index to go directly to it.
+   * If the ballot there has a different id, the index is stale: it is made again by reading the ballots file.
+   */
+  public Optional<SubmittedBallot> readSubmittedBallot(String ballotId) throws IOException {
+    Optional<SubmittedBallotIndex.Entry> entry = readSubmittedBallotIndex().find(ballotId);
+    if (entry.isEmpty()) {
+      return Optional.empty();
+    }
+    try {
+      SubmittedBallot ballot = readSubmittedBallot(entry.get());
+      if (ballot.object_id().equals(ballotId)) {
+        return Optional.of(ballot);
+      }
+    } catch (IOException | RuntimeException e) {
+      // a stale index may point into the middle of a record
+    }
+    logger.atWarning().log("submitted ballot index of %s is stale, reading the ballots file", path.submittedBallotPath());
+    entry = scanSubmittedBallotIndex().find(ballotId);
+    return entry.isEmpty() ? Optional.empty() : Optional.of(readSubmittedBallot(entry.get()));
+  }
+
+  private SubmittedBallot readSubmittedBallot(SubmittedBallotIndex.Entry entry) throws IOException {
+    long start = System.nanoTime();
+    try (DelimitedReader reader = new DelimitedReader(path.submittedBallotPath().toString(),
+            entry.offset(), readCounter, entry.length())) {
+      int size = reader.nextSize();
+      return SubmittedBallotFromProto.translateFromProto(
+              reader.parse(CiphertextBallotProto.SubmittedBallot.parser(), size));
+    } finally {
+      readCounter.addNanos(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * The submitted ballots, or only those in the given state, in file order. Ballots in other states are
+   * skipped without being parsed. The stream's Spliterator splits the file into ranges of the submitted ballot
+   * index, so use parallel() to read and process the ranges in parallel.
+   * Close the stream when done, eg with try-with-resources, to close the file.
+   * @param state CAST or SPOILED, or null for all ballots.
+   */
+  public Stream<SubmittedBallot> streamSubmittedBallots(@Nullable BallotBox.State state) throws IOException {
+    if (!Files.exists(path.submittedBallotPath())) {
+      return Stream.empty();
+    }
+    SubmittedBallotIndex index = readSubmittedBallotIndex();
+    FileChannel channel = FileChannel.open(path.submittedBallotPath(), StandardOpenOption.READ);
+    return StreamSupport.stream(new SubmittedBallotSpliterator(channel, index, state, readCounter), false)
+            .onClose(() -> {
+              try {
+                channel.close();
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            });
+  }
+
+  /** The ballot chunk files, in chunk order. Empty if there are none. */
+  public List<Path> submittedBallotChunks() throws IOException {
+    List<Path> result = new ArrayList<>();
+    if (Files.isDirectory(path.submittedBallotChunkDir())) {
+      String glob = ElectionRecordPath.SUBMITTED_BALLOT_CHUNK_PREFIX + "*" + ElectionRecordPath.SUBMITTED_BALLOT_CHUNK_SUFFIX;
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(path.submittedBallotChunkDir(), glob)) {
+        stream.forEach(result::add);
+      }
+    }
+    result.sort(Comparator.comparing(Path::getFileName)); // chunk numbers are zero padded
+    return result;
+  }
+
+  /**
+   * Read the ballot chunk files in parallel, giving the ballots to sink, in no particular order.
+   * Each chunk's checksum is verified before any of its ballots are given to sink. A chunk that is not valid
+   * gives no ballots; it is reported in its status, and the other chunks are still read.
+   * @param state CAST or SPOILED, or null for all ballots.
+   * @param sink is called concurrently from several threads.
+   * @return the status of each chunk, in chunk order.
+   */
+  public List<BallotChunkStatus> readSubmittedBallotChunks(@Nullable BallotBox.State state,
+                                                           java.util.function.Consumer<SubmittedBallot> sink) throws IOException {
+    Predicate<CiphertextBallotProto.SubmittedBallot> filter = (state == null) ? b -> true :
+            b -> b.getState().name().equals(state.name());
+    List<Callable<BallotChunkStatus>> tasks = new ArrayList<>();
+    for (Path chunk : submittedBallotChunks()) {
+      tasks.add(() -> {
+        BallotChunk.Footer footer;
+        try {
+          footer = BallotChunk.check(chunk, readCounter);
+        } catch (IOException e) {
+          return new BallotChunkStatus(chunk, 0, e.getMessage());
+        }
+        try {
+          return new BallotChunkStatus(chunk, BallotChunk.read(chunk, footer, filter, sink, readCounter), null);
+        } catch (IOException e) {
+          return new BallotChunkStatus(chunk, 0, e.getMessage());
+        }
+      });
+    }
+    try {
+      return new Scheduler<BallotChunkStatus>().submit(tasks).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
   }
 
   public CloseableIterable<PlaintextTally> iterateSpoiledBallotTallies() {
     if (Files.exists(path.spoiledBallotPath())) {
-      return () -> new PlaintextTallyIterator(path.spoiledBallotPath().toString());
+      return () -> new PlaintextTallyIterator(path.spoiledBallotPath().toString(), readCounter);
     } else {
       return CloseableIterableAdapter.empty();
     }
@@ -118,7 +443,7 @@ public class Consumer {
 
   public CloseableIterable<PlaintextBallot> iterateInputBallots(String ballotDir, Predicate<PlaintextBallot> filter) {
     if (Files.exists(path.inputBallotsFilePath(ballotDir))) {
-      return () -> new PlaintextBallotIterator(path.inputBallotsFilePath(ballotDir).toString(), filter);
+      return () -> new PlaintextBallotIterator(path.inputBallotsFilePath(ballotDir).toString(), filter, readCounter);
     } else {
       System.out.printf("Does not exist %s%n", path.inputBallotsFilePath(ballotDir).toAbsolutePath());
       return CloseableIterableAdapter.empty();
@@ -126,40 +451,130 @@ public class Consumer {
   }
 
   // These create iterators, so that we never have to read in all ballots at once.
-  // Making them Closeable makes sure that the FileInputStream gets closed.
+  // Making them Closeable makes sure that the file gets closed.
+  // They read through a DelimitedReader, and add to the Consumer's ReadCounter.
 
-  private static class SubmittedBallotIterator extends AbstractIterator<SubmittedBallot>
-                                     implements CloseableIterator<SubmittedBallot> {
-    private final String filename;
-    private final Predicate<CiphertextBallotProto.SubmittedBallot> filter;
-    private FileInputStream input;
-    SubmittedBallotIterator(String filename, Predicate<CiphertextBallotProto.SubmittedBallot> filter) {
+  /**
+   * Iterates over the submitted ballots in a file, keeping track of its byte offset and ballot index in the file,
+   * so that another iterator can later continue where this one stopped.
+   */
+  public static class SubmittedBallotIterator implements CloseableIterator<SubmittedBallot> {
+    @Nullable private final String filename;
+    @Nullable private final BallotBox.State state;
+    private final BallotProjection projection;
+    private final LongPredicate recordFilter;
+    private final long startOffset;
+    private final ReadCounter counter;
+    private DelimitedReader input;
+    private boolean finished;
+    private SubmittedBallot next;
+    private long nextOffset;
+    private long nextIndex;
+    private long offset;
+    private long index;
+    private long nextStart;
+    private long lastOffset;
+    private String lastBallotId = "";
+
+    SubmittedBallotIterator(@Nullable String filename, @Nullable BallotBox.State state, BallotProjection projection,
+                            long startOffset, long startIndex, LongPredicate recordFilter, ReadCounter counter) {
       this.filename = filename;
-      this.filter = filter;
+      this.state = state;
+      this.projection = projection;
+      this.recordFilter = recordFilter;
+      this.startOffset = startOffset;
+      this.counter = counter;
+      this.offset = startOffset;
+      this.index = startIndex;
+      this.nextIndex = startIndex;
+      this.finished = (filename == null);
+    }
+
+    /**
+     * The byte offset in the file just past the last ballot returned by next(), or the start offset.
+     * Once hasNext() has returned false, the length of the file.
+     */
+    public long offset() {
+      return offset;
+    }
+
+    /** The number of ballot records in the file before offset(). */
+    public long index() {
+      return index;
+    }
+
+    /**
+     * The byte offset in the file of the record of the last ballot returned by next(). The record ends at offset(),
+     * until hasNext() has returned false.
+     */
+    public long lastOffset() {
+      return lastOffset;
+    }
+
+    /** The id of the last ballot returned by next(), or empty. */
+    public String lastBallotId() {
+      return lastBallotId;
     }
 
     @Override
-    protected SubmittedBallot computeNext() {
+    public boolean hasNext() {
+      if (next != null) {
+        return true;
+      }
+      if (finished) {
+        return false;
+      }
+      long start = System.nanoTime();
       try {
         if (input == null) {
-          this.input = new FileInputStream(filename);
+          this.input = new DelimitedReader(filename, startOffset, counter);
         }
         while (true) {
-          CiphertextBallotProto.SubmittedBallot ballotProto = CiphertextBallotProto.SubmittedBallot.parseDelimitedFrom(input);
-          if (ballotProto == null) {
-            input.close();
-            return endOfData();
+          long recordStart = input.position();
+          int size = input.nextSize();
+          if (size < 0) {
+            // past any records at the end that were not returned
+            this.offset = input.position();
+            this.index = nextIndex;
+            close();
+            finished = true;
+            return false;
           }
-          if (!filter.test(ballotProto)) {
-            continue; // skip it
+          long recordIndex = nextIndex++;
+          if (!recordFilter.test(recordIndex)) {
+            input.skip(size); // without parsing it
+            continue;
+          }
+          SubmittedBallot ballot = projection.parse(input, size, state);
+          if (ballot == null) {
+            continue; // not in state
           }
-          return SubmittedBallotFromProto.translateFromProto(ballotProto);
+          this.nextStart = recordStart;
+          this.nextOffset = input.position();
+          this.next = ballot;
+          return true;
         }
       } catch (IOException e) {
         throw new RuntimeException(e);
+      } finally {
+        counter.addNanos(System.nanoTime() - start);
       }
     }
 
+    @Override
+    public SubmittedBallot next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      SubmittedBallot result = this.next;
+      this.next = null;
+      this.offset = this.nextOffset;
+      this.index = this.nextIndex;
+      this.lastOffset = this.nextStart;
+      this.lastBallotId = result.object_id();
+      return result;
+    }
+
     @Override
     public void close() {
       if (input != null) {
@@ -177,25 +592,29 @@ public class Consumer {
           implements CloseableIterator<PlaintextBallot> {
     private final String filename;
     private final Predicate<PlaintextBallot> filter;
-    private FileInputStream input;
+    private final ReadCounter counter;
+    private DelimitedReader input;
 
-    PlaintextBallotIterator(String filename, Predicate<PlaintextBallot> filter) {
+    PlaintextBallotIterator(String filename, Predicate<PlaintextBallot> filter, ReadCounter counter) {
       this.filename = filename;
       this.filter = filter;
+      this.counter = counter;
     }
 
     @Override
     protected PlaintextBallot computeNext() {
+      long start = System.nanoTime();
       try {
         if (input == null) {
-          this.input = new FileInputStream(filename);
+          this.input = new DelimitedReader(filename, 0, counter);
         }
         while (true) {
-          PlaintextBallotProto.PlaintextBallot ballotProto = PlaintextBallotProto.PlaintextBallot.parseDelimitedFrom(input);
-          if (ballotProto == null) {
-            input.close();
+          int size = input.nextSize();
+          if (size < 0) {
+            close();
             return endOfData();
           }
+          PlaintextBallotProto.PlaintextBallot ballotProto = input.parse(PlaintextBallotProto.PlaintextBallot.parser(), size);
           PlaintextBallot ballot = PlaintextBallotFromProto.translateFromProto(ballotProto);
           if (!filter.test(ballot)) {
             continue; // skip it
@@ -204,6 +623,8 @@ public class Consumer {
         }
       } catch (IOException e) {
         throw new RuntimeException(e);
+      } finally {
+        counter.addNanos(System.nanoTime() - start);
       }
     }
 
@@ -223,26 +644,32 @@ public class Consumer {
   private static class PlaintextTallyIterator extends AbstractIterator<PlaintextTally>
           implements CloseableIterator<PlaintextTally> {
     private final String filename;
-    private FileInputStream input;
+    private final ReadCounter counter;
+    private DelimitedReader input;
 
-    PlaintextTallyIterator(String filename) {
+    PlaintextTallyIterator(String filename, ReadCounter counter) {
       this.filename = filename;
+      this.counter = counter;
     }
 
     @Override
     protected PlaintextTally computeNext() {
+      long start = System.nanoTime();
       try {
         if (input == null) {
-          this.input = new FileInputStream(filename);
+          this.input = new DelimitedReader(filename, 0, counter);
         }
-        PlaintextTallyProto.PlaintextTally tallyProto = PlaintextTallyProto.PlaintextTally.parseDelimitedFrom(input);
-        if (tallyProto == null) {
-          input.close();
+        int size = input.nextSize();
+        if (size < 0) {
+          close();
           return endOfData();
         }
+        PlaintextTallyProto.PlaintextTally tallyProto = input.parse(PlaintextTallyProto.PlaintextTally.parser(), size);
         return PlaintextTallyFromProto.importPlaintextTally(tallyProto);
       } catch (IOException e) {
         throw new RuntimeException(e);
+      } finally {
+        counter.addNanos(System.nanoTime() - start);
       }
     }
 
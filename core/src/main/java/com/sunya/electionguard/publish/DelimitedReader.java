@@ -0,0 +1,158 @@
+package com.sunya.electionguard.publish;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Parser;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file of length delimited protobuf messages, as written by writeDelimitedTo.
+ * The file is read through one large, reused buffer, instead of the many small reads that parseDelimitedFrom
+ * makes on an unbuffered FileInputStream, and a message that is in the buffer is parsed from it without copying.
+ * Not thread-safe.
+ */
+class DelimitedReader implements Closeable {
+  static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+  private final FileChannel channel;
+  private final boolean ownsChannel;
+  private final ReadCounter counter;
+  private ByteBuffer buffer; // the unread bytes are buffer[position, limit)
+  private long bufferOffset; // the file offset of buffer[0]
+  private long readOffset; // the file offset of the next read into the buffer
+
+  DelimitedReader(String filename, long startOffset, ReadCounter counter) throws IOException {
+    this(filename, startOffset, counter, DEFAULT_BUFFER_SIZE);
+  }
+
+  DelimitedReader(String filename, long startOffset, ReadCounter counter, int bufferSize) throws IOException {
+    this(FileChannel.open(Path.of(filename), StandardOpenOption.READ), true, startOffset, counter, bufferSize);
+  }
+
+  /**
+   * Read from a channel that may be shared with other readers, which is not closed by close().
+   * Reads are positional, so readers on other threads may use the same channel.
+   */
+  DelimitedReader(FileChannel channel, long startOffset, ReadCounter counter, int bufferSize) {
+    this(channel, false, startOffset, counter, bufferSize);
+  }
+
+  private DelimitedReader(FileChannel channel, boolean ownsChannel, long startOffset, ReadCounter counter, int bufferSize) {
+    this.channel = channel;
+    this.ownsChannel = ownsChannel;
+    this.counter = counter;
+    this.buffer = ByteBuffer.allocateDirect(bufferSize).limit(0);
+    this.bufferOffset = startOffset;
+    this.readOffset = startOffset;
+  }
+
+  /** The file offset of the next unread byte. */
+  long position() {
+    return bufferOffset + buffer.position();
+  }
+
+  /** Read the size of the next message, or return -1 at the end of the file. */
+  int nextSize() throws IOException {
+    if (!fill(1)) {
+      return -1;
+    }
+    fill(5); // the longest varint32; the file may end sooner
+    int result = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      if (!buffer.hasRemaining()) {
+        throw new EOFException("truncated message size at " + position());
+      }
+      byte b = buffer.get();
+      result |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        if (result < 0) {
+          break;
+        }
+        return result;
+      }
+    }
+    throw new InvalidProtocolBufferException("bad message size at " + position());
+  }
+
+  /** Skip over the next message, of the size returned by nextSize(), or over several messages. */
+  void skip(long size) throws IOException {
+    if (size <= buffer.remaining()) {
+      buffer.position(buffer.position() + (int) size);
+    } else {
+      long target = position() + size;
+      if (target > channel.size()) {
+        throw new EOFException("truncated message at " + position());
+      }
+      bufferOffset = target;
+      readOffset = target;
+      buffer.clear().limit(0);
+    }
+  }
+
+  /** Parse the next message, of the size returned by nextSize(). */
+  <T> T parse(Parser<T> parser, int size) throws IOException {
+    return parse(parser, size, false);
+  }
+
+  /**
+   * Parse the next message, of the size returned by nextSize().
+   * @param discardUnknownFields skip over fields that the message type doesnt have, instead of keeping them
+   *   as unknown fields. Use this to parse a record as a projection of the message that was written.
+   */
+  <T> T parse(Parser<T> parser, int size, boolean discardUnknownFields) throws IOException {
+    if (!fill(size)) {
+      throw new EOFException("truncated message at " + position());
+    }
+    ByteBuffer message = buffer.slice(buffer.position(), size);
+    T result;
+    if (discardUnknownFields) {
+      CodedInputStream input = CodedInputStream.newInstance(message);
+      input.discardUnknownFields();
+      result = parser.parseFrom(input);
+    } else {
+      result = parser.parseFrom(message);
+    }
+    buffer.position(buffer.position() + size);
+    counter.addRecord();
+    return result;
+  }
+
+  /** Make sure the buffer has at least n unread bytes, growing it if needed. False if the file ends first. */
+  private boolean fill(int n) throws IOException {
+    if (buffer.remaining() >= n) {
+      return true;
+    }
+    bufferOffset += buffer.position();
+    if (n > buffer.capacity()) {
+      ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(n, 2 * buffer.capacity()));
+      bigger.put(buffer);
+      buffer = bigger;
+    } else {
+      buffer.compact();
+    }
+    while (buffer.position() < n) {
+      int nread = channel.read(buffer, readOffset);
+      if (nread < 0) {
+        break;
+      }
+      readOffset += nread;
+      counter.addBytes(nread);
+    }
+    buffer.flip();
+    return buffer.remaining() >= n;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (ownsChannel) {
+      channel.close();
+    }
+  }
+}
@@ -18,6 +18,10 @@ public interface ElectionRecord extends ElectionContext {
   Manifest manifest();
   List<electionguard.ballot.Guardian> guardians();
   Iterable<SubmittedBallot> submittedBallots(); // All ballots, not just cast! // may be empty
+  /** All ballots, decoding only the parts of each ballot in the projection if the record supports it. */
+  default Iterable<SubmittedBallot> submittedBallots(BallotProjection projection) {
+    return submittedBallots();
+  }
   @Nullable CiphertextTally ciphertextTally();
   @Nullable PlaintextTally decryptedTally();
   Iterable<PlaintextTally> spoiledBallotTallies(); // may be empty
@@ -156,6 +156,11 @@ public class ElectionRecordFromProto implements ElectionRecord {
     return this.consumer == null ? emptyList() : consumer.iterateSubmittedBallots();
   }
 
+  @Override
+  public Iterable<SubmittedBallot> submittedBallots(BallotProjection projection) {
+    return this.consumer == null ? emptyList() : consumer.iterateSubmittedBallots(projection);
+  }
+
   @Override
   public Iterable<PlaintextTally> spoiledBallotTallies() {
     return this.consumer == null ? emptyList() : consumer.iterateSpoiledBallotTallies();
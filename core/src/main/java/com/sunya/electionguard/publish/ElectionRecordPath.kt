@@ -12,8 +12,16 @@ data class ElectionRecordPath(val topDir : String) {
         const val ELECTION_CONFIG_FILE_NAME = "electionConfig" + PROTO_SUFFIX
         const val ELECTION_INITIALIZED_FILE_NAME = "electionInitialized" + PROTO_SUFFIX
         const val TALLY_RESULT_NAME = "tallyResult" + PROTO_SUFFIX
+        const val TALLY_CHECKPOINT_PREFIX = "tallyCheckpoint"
+        const val TALLY_CHECKPOINT_NAME = TALLY_CHECKPOINT_PREFIX + PROTO_SUFFIX
+        const val TALLY_CHECKPOINT_IDS = "-ids"
+        const val PARTIAL_TALLY_PREFIX = "partialTally-"
         const val DECRYPTION_RESULT_NAME = "decryptionResult" + PROTO_SUFFIX
         const val SUBMITTED_BALLOT_PROTO = "encryptedBallots" + PROTO_SUFFIX
+        const val SUBMITTED_BALLOT_INDEX = "encryptedBallotsIndex" + PROTO_SUFFIX
+        const val SUBMITTED_BALLOT_CHUNK_DIR = "encryptedBallots"
+        const val SUBMITTED_BALLOT_CHUNK_PREFIX = "chunk-"
+        const val SUBMITTED_BALLOT_CHUNK_SUFFIX = ".chunk"
         const val SPOILED_BALLOT_FILE = "spoiledBallotsTally" + PROTO_SUFFIX
 
         const val INPUT_BALLOTS_FILE = "inputBallots" + PROTO_SUFFIX
@@ -34,6 +42,28 @@ data class ElectionRecordPath(val topDir : String) {
         return Path.of("$topDir/$TALLY_RESULT_NAME")
     }
 
+    fun tallyCheckpointPath(): Path {
+        return Path.of("$topDir/$TALLY_CHECKPOINT_NAME")
+    }
+
+    // each shard has its own checkpoint, so shards can share a directory
+    fun tallyCheckpointPath(shard: Int, nshards: Int): Path {
+        return Path.of("$topDir/$TALLY_CHECKPOINT_PREFIX-$shard-of-$nshards$PROTO_SUFFIX")
+    }
+
+    // the cast ballot ids of the checkpoint, appended to at each checkpoint
+    fun tallyCheckpointIdsPath(): Path {
+        return Path.of("$topDir/$TALLY_CHECKPOINT_PREFIX$TALLY_CHECKPOINT_IDS$PROTO_SUFFIX")
+    }
+
+    fun tallyCheckpointIdsPath(shard: Int, nshards: Int): Path {
+        return Path.of("$topDir/$TALLY_CHECKPOINT_PREFIX-$shard-of-$nshards$TALLY_CHECKPOINT_IDS$PROTO_SUFFIX")
+    }
+
+    fun partialTallyPath(shard: Int, nshards: Int): Path {
+        return Path.of("$topDir/$PARTIAL_TALLY_PREFIX$shard-of-$nshards$PROTO_SUFFIX")
+    }
+
     fun decryptionResultPath(): Path {
         return Path.of("$topDir/$DECRYPTION_RESULT_NAME")
     }
@@ -42,6 +72,20 @@ data class ElectionRecordPath(val topDir : String) {
         return Path.of("$topDir/$SUBMITTED_BALLOT_PROTO")
     }
 
+    fun submittedBallotIndexPath(): Path {
+        return Path.of("$topDir/$SUBMITTED_BALLOT_INDEX")
+    }
+
+    // the directory of ballot chunk files, an alternative to the single submittedBallotPath() file
+    fun submittedBallotChunkDir(): Path {
+        return Path.of("$topDir/$SUBMITTED_BALLOT_CHUNK_DIR")
+    }
+
+    fun submittedBallotChunkPath(chunk: Int): Path {
+        val name = String.format("%s%06d%s", SUBMITTED_BALLOT_CHUNK_PREFIX, chunk, SUBMITTED_BALLOT_CHUNK_SUFFIX)
+        return submittedBallotChunkDir().resolve(name)
+    }
+
     fun spoiledBallotPath(): Path {
         return Path.of("$topDir/$SPOILED_BALLOT_FILE")
     }
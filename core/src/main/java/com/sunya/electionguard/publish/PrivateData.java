@@ -11,7 +11,6 @@ import electionguard.protogen.PlaintextBallotProto;
 import electionguard.protogen.TrusteeProto;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -160,13 +159,10 @@ public class PrivateData {
     File dir = fileOrDirPath.toFile();
     if (dir.getAbsolutePath().endsWith("protobuf")) {
       // multiple input ballots in a protobuf
-      try (FileInputStream input = new FileInputStream(dir.getAbsolutePath())) {
-      while (true) {
-          PlaintextBallotProto.PlaintextBallot ballotProto = PlaintextBallotProto.PlaintextBallot.parseDelimitedFrom(input);
-          if (ballotProto == null) {
-            input.close();
-            break;
-          }
+      try (DelimitedReader input = new DelimitedReader(dir.getAbsolutePath(), 0, new ReadCounter())) {
+        int size;
+        while ((size = input.nextSize()) >= 0) {
+          PlaintextBallotProto.PlaintextBallot ballotProto = input.parse(PlaintextBallotProto.PlaintextBallot.parser(), size);
           result.add(PlaintextBallotFromProto.translateFromProto(ballotProto));
         }
       }
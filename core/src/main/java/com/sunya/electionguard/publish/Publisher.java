@@ -1,7 +1,17 @@
 package com.sunya.electionguard.publish;
 
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import com.sunya.electionguard.PartialTally;
 import com.sunya.electionguard.PlaintextTally;
+import com.sunya.electionguard.Scheduler;
 import com.sunya.electionguard.SubmittedBallot;
+import com.sunya.electionguard.TallyCheckpoint;
+import com.sunya.electionguard.protoconvert.CiphertextTallyToProto;
 import com.sunya.electionguard.protoconvert.ElectionConfigConvert;
 import com.sunya.electionguard.protoconvert.ElectionInitializedConvert;
 import com.sunya.electionguard.protoconvert.ElectionResultsConvert;
@@ -9,15 +19,26 @@ import com.sunya.electionguard.protoconvert.PlaintextTallyToProto;
 import com.sunya.electionguard.protoconvert.SubmittedBallotToProto;
 import electionguard.ballot.*;
 import electionguard.protogen.CiphertextBallotProto;
+import electionguard.protogen.CiphertextTallyProto;
 import electionguard.protogen.ElectionRecordProto;
 import electionguard.protogen.PlaintextTallyProto;
 
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Formatter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Publishes the Manifest Record to Json or protobuf files.
@@ -109,13 +130,87 @@ public class Publisher {
     }
   }
 
+  /**
+   * Write the ballots, and the index sidecar with the offset, id, state and code of each ballot,
+   * see Consumer.readSubmittedBallotIndex().
+   */
   public void writeSubmittedBallots(Iterable<SubmittedBallot> ballots) throws IOException {
-    try (FileOutputStream out = new FileOutputStream(path.submittedBallotPath().toFile())) {
+    // One CodedOutputStream for the whole file, instead of writeDelimitedTo making a small one for each ballot,
+    // so each ballot is serialized straight into one large buffer.
+    try (FileOutputStream fileOut = new FileOutputStream(path.submittedBallotPath().toFile());
+         FileOutputStream indexOut = new FileOutputStream(path.submittedBallotIndexPath().toFile())) {
+      CodedOutputStream out = CodedOutputStream.newInstance(fileOut, DelimitedReader.DEFAULT_BUFFER_SIZE);
+      long offset = 0;
       for (SubmittedBallot ballot : ballots) {
         CiphertextBallotProto.SubmittedBallot ballotProto = SubmittedBallotToProto.translateToProto(ballot);
-        ballotProto.writeDelimitedTo(out);
+        int size = ballotProto.getSerializedSize();
+        int length = CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+        out.writeUInt32NoTag(size);
+        ballotProto.writeTo(out);
+        SubmittedBallotToProto.publishIndexEntry(ballotProto, offset, length).writeDelimitedTo(indexOut);
+        offset += length;
       }
+      out.flush();
+    }
+  }
+
+  /**
+   * Open a writer that appends ballots to the submitted ballots file and its index sidecar as they are accepted,
+   * syncing them to disk in groups of groupCount ballots, or every groupMillis.
+   * @param resume append to an existing file, after cutting off a record left incomplete by a crash,
+   *    see SubmittedBallotWriter. Otherwise an existing file is replaced, like writeSubmittedBallots.
+   */
+  public SubmittedBallotWriter openSubmittedBallotWriter(int groupCount, long groupMillis, boolean resume) throws IOException {
+    if (this.createPublisherMode == Publisher.Mode.readonly) {
+      throw new UnsupportedOperationException("Trying to write to readonly election record");
     }
+    return new SubmittedBallotWriter(path, groupCount, groupMillis, resume);
+  }
+
+  /**
+   * Write the ballots as chunk files of ballotsPerChunk ballots each, numbered from firstChunk,
+   * instead of one submittedBallotPath() file. The chunks are serialized and written in parallel.
+   * @return the number of chunks written.
+   */
+  public int writeSubmittedBallotChunks(Iterable<SubmittedBallot> ballots, int ballotsPerChunk, int firstChunk) throws IOException {
+    Preconditions.checkArgument(ballotsPerChunk > 0);
+    int maxPending = Math.max(1, Runtime.getRuntime().availableProcessors());
+    Deque<ListenableFuture<List<Boolean>>> pending = new ArrayDeque<>();
+    Scheduler<Boolean> scheduler = new Scheduler<>();
+    int nchunks = 0;
+    try {
+      Iterator<List<SubmittedBallot>> chunks = Iterators.partition(ballots.iterator(), ballotsPerChunk);
+      while (chunks.hasNext()) {
+        if (pending.size() >= maxPending) {
+          pending.removeFirst().get(); // limits the ballots held in memory
+        }
+        List<SubmittedBallot> chunk = chunks.next();
+        int chunkNumber = firstChunk + nchunks++;
+        pending.addLast(scheduler.submit(List.of(() -> {
+          writeSubmittedBallotChunk(chunkNumber, chunk);
+          return true;
+        })));
+      }
+      for (ListenableFuture<List<Boolean>> future : pending) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new RuntimeException(e.getCause());
+    }
+    return nchunks;
+  }
+
+  /**
+   * Write one ballot chunk file, replacing it atomically.
+   * Separate processes may write chunks with different numbers into the same election record.
+   */
+  public void writeSubmittedBallotChunk(int chunk, List<SubmittedBallot> ballots) throws IOException {
+    Files.createDirectories(path.submittedBallotChunkDir());
+    BallotChunk.write(path.submittedBallotChunkPath(chunk), chunk, ballots);
   }
 
   public void writeTallyResult(TallyResult tally) throws IOException {
@@ -125,6 +220,89 @@ public class Publisher {
     }
   }
 
+  /**
+   * Write the checkpoint of an unfinished tally accumulation. The file is replaced atomically,
+   * so there is always a complete checkpoint, either the previous one or this one.
+   * The cast ballot ids go into a separate ids file, which only has the ids that are not in the previous
+   * checkpoint appended to it, so the checkpoints of a long accumulation don't rewrite all the ids each time.
+   * The ids of a checkpoint must start with the ids of the previous checkpoint, in the same order.
+   */
+  public void writeTallyCheckpoint(TallyCheckpoint checkpoint) throws IOException {
+    writeTallyCheckpoint(checkpoint, path.tallyCheckpointPath(), path.tallyCheckpointIdsPath());
+  }
+
+  /** Write the checkpoint of an unfinished tally accumulation of one shard of the ballots. */
+  public void writeTallyCheckpoint(TallyCheckpoint checkpoint, int shard, int nshards) throws IOException {
+    writeTallyCheckpoint(checkpoint, path.tallyCheckpointPath(shard, nshards), path.tallyCheckpointIdsPath(shard, nshards));
+  }
+
+  private void writeTallyCheckpoint(TallyCheckpoint checkpoint, Path checkpointPath, Path idsPath) throws IOException {
+    List<String> ids = checkpoint.castBallotIds();
+
+    // continue from the previous checkpoint if its ids are the start of these ids, else rewrite them all.
+    // until the new checkpoint replaces it, the previous checkpoint only uses the bytes it had before.
+    // so only the ids after the previous checkpoint are looked at, ids is usually a view of a long list.
+    int nprev = 0;
+    long prevSize = 0;
+    if (Files.exists(checkpointPath) && Files.exists(idsPath)) {
+      CiphertextTallyProto.TallyCheckpoint prev;
+      try (FileInputStream inp = new FileInputStream(checkpointPath.toFile())) {
+        prev = CiphertextTallyProto.TallyCheckpoint.parseFrom(inp);
+      }
+      int n = prev.getNcastBallotIds();
+      if (n > 0 && n <= ids.size() && ids.get(n - 1).equals(prev.getLastCastBallotId()) &&
+              Files.size(idsPath) >= prev.getCastBallotIdsSize()) {
+        nprev = n;
+        prevSize = prev.getCastBallotIdsSize();
+      }
+    }
+
+    long idsSize;
+    try (FileChannel channel = FileChannel.open(idsPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      channel.truncate(prevSize);
+      channel.position(prevSize);
+      OutputStream out = Channels.newOutputStream(channel);
+      CodedOutputStream coded = CodedOutputStream.newInstance(out);
+      for (String id : ids.subList(nprev, ids.size())) {
+        coded.writeStringNoTag(id);
+      }
+      coded.flush();
+      channel.force(false);
+      idsSize = channel.position();
+    }
+    writeAtomically(CiphertextTallyToProto.publishTallyCheckpoint(checkpoint, idsSize), checkpointPath);
+  }
+
+  /** Remove the tally checkpoint, once the tally is finished. */
+  public void deleteTallyCheckpoint() throws IOException {
+    Files.deleteIfExists(path.tallyCheckpointPath());
+    Files.deleteIfExists(path.tallyCheckpointIdsPath());
+  }
+
+  /** Remove the tally checkpoint of one shard of the ballots, once its partial tally is finished. */
+  public void deleteTallyCheckpoint(int shard, int nshards) throws IOException {
+    Files.deleteIfExists(path.tallyCheckpointPath(shard, nshards));
+    Files.deleteIfExists(path.tallyCheckpointIdsPath(shard, nshards));
+  }
+
+  public void writePartialTally(PartialTally partial) throws IOException {
+    writeAtomically(CiphertextTallyToProto.publishPartialTally(partial), path.partialTallyPath(partial.shard(), partial.nshards()));
+  }
+
+  // write to a temp file and rename, so that readers never see a partly written file
+  private void writeAtomically(MessageLite proto, Path dest) throws IOException {
+    Path temp = Files.createTempFile(electionRecordDir, dest.getFileName().toString(), ".tmp");
+    try {
+      try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+        proto.writeTo(out);
+        out.getFD().sync();
+      }
+      Files.move(temp, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
   public void writeDecryptionResults(DecryptionResult dresult) throws IOException {
     ElectionRecordProto.DecryptionResult proto = ElectionResultsConvert.publishDecryptionResult(dresult);
     try (FileOutputStream out = new FileOutputStream(path.decryptionResultPath().toFile())) {
@@ -152,5 +330,9 @@ public class Publisher {
     }
     System.out.printf("Copy AcceptedBallots from %s to %s%n", source, dest);
     Files.copy(source, dest, StandardCopyOption.COPY_ATTRIBUTES);
+    Path sourceIndex = new ElectionRecordPath(inputDir).submittedBallotIndexPath();
+    if (Files.exists(sourceIndex)) {
+      Files.copy(sourceIndex, path.submittedBallotIndexPath(), StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING);
+    }
   }
 }
\ No newline at end of file
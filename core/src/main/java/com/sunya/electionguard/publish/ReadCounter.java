@@ -0,0 +1,57 @@
+package com.sunya.electionguard.publish;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the bytes and records read by Consumer's iterators, and the time the iterators spent
+ * reading and parsing them. Thread-safe, so iterators running concurrently may share one.
+ */
+public class ReadCounter {
+  private final LongAdder bytes = new LongAdder();
+  private final LongAdder records = new LongAdder();
+  private final LongAdder nanos = new LongAdder();
+
+  void addBytes(long n) {
+    bytes.add(n);
+  }
+
+  void addRecord() {
+    records.increment();
+  }
+
+  void addNanos(long n) {
+    nanos.add(n);
+  }
+
+  /** The number of bytes read from the files. */
+  public long bytes() {
+    return bytes.sum();
+  }
+
+  /** The number of records parsed; skipped records are not counted. */
+  public long records() {
+    return records.sum();
+  }
+
+  /** The time spent reading and parsing, in nanoseconds. */
+  public long nanos() {
+    return nanos.sum();
+  }
+
+  public double megabytesPerSecond() {
+    long nanos = nanos();
+    return nanos == 0 ? 0.0 : bytes() * 1.0e3 / nanos;
+  }
+
+  public double recordsPerSecond() {
+    long nanos = nanos();
+    return nanos == 0 ? 0.0 : records() * 1.0e9 / nanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("read %d records, %d bytes in %d msecs: %.1f MB/sec, %.1f records/sec",
+            records(), bytes(), TimeUnit.NANOSECONDS.toMillis(nanos()), megabytesPerSecond(), recordsPerSecond());
+  }
+}
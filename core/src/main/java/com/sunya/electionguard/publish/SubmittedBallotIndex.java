@@ -0,0 +1,81 @@
+package com.sunya.electionguard.publish;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.sunya.electionguard.BallotBox;
+import com.sunya.electionguard.Group;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The index of an encrypted ballots file: where each ballot's record is in the file, with its id, state and code,
+ * in file order. Written next to the ballots file by Publisher.writeSubmittedBallots, read by Consumer.
+ */
+@Immutable
+public class SubmittedBallotIndex {
+
+  /** One ballot's record in the ballots file. */
+  public record Entry(
+          long offset, // of the start of the record, ie its length prefix
+          int length, // of the record, including the length prefix
+          String ballotId,
+          BallotBox.State state,
+          Group.ElementModQ code) {
+
+    public Entry {
+      Preconditions.checkArgument(offset >= 0);
+      Preconditions.checkArgument(length > 0);
+      Preconditions.checkNotNull(ballotId);
+      Preconditions.checkNotNull(state);
+      Preconditions.checkNotNull(code);
+    }
+
+    /** The offset just past the end of the record. */
+    public long end() {
+      return offset + length;
+    }
+  }
+
+  private final ImmutableList<Entry> entries;
+  private final Map<String, Integer> byBallotId;
+
+  public SubmittedBallotIndex(List<Entry> entries) {
+    this.entries = ImmutableList.copyOf(entries);
+    this.byBallotId = new HashMap<>();
+    long end = 0;
+    for (int i = 0; i < this.entries.size(); i++) {
+      Entry entry = this.entries.get(i);
+      Preconditions.checkArgument(entry.offset() == end, "index entry %s does not follow the previous one", i);
+      end = entry.end();
+      this.byBallotId.putIfAbsent(entry.ballotId(), i);
+    }
+  }
+
+  /** The number of ballots. */
+  public int size() {
+    return entries.size();
+  }
+
+  public Entry get(int index) {
+    return entries.get(index);
+  }
+
+  public List<Entry> entries() {
+    return entries;
+  }
+
+  /** The entry of the ballot with this id, if any. If more than one ballot has the id, the first one. */
+  public Optional<Entry> find(String ballotId) {
+    Integer index = byBallotId.get(ballotId);
+    return index == null ? Optional.empty() : Optional.of(entries.get(index));
+  }
+
+  /** The length of the ballots file that this indexes. */
+  public long fileLength() {
+    return entries.isEmpty() ? 0 : entries.get(entries.size() - 1).end();
+  }
+}
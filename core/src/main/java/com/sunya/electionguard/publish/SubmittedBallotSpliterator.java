@@ -0,0 +1,108 @@
+package com.sunya.electionguard.publish;
+
+import com.sunya.electionguard.BallotBox;
+import com.sunya.electionguard.SubmittedBallot;
+import com.sunya.electionguard.protoconvert.SubmittedBallotFromProto;
+import electionguard.protogen.CiphertextBallotProto;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Splits the ballots of an encrypted ballots file into ranges of its index, so they can be read in parallel.
+ * Each range is read sequentially through its own DelimitedReader, all sharing the same FileChannel.
+ * Ballots not in the wanted state are skipped using the index, without being parsed.
+ */
+class SubmittedBallotSpliterator implements Spliterator<SubmittedBallot> {
+  private final FileChannel channel;
+  private final SubmittedBallotIndex index;
+  @Nullable private final BallotBox.State state;
+  private final ReadCounter counter;
+  private final int end; // exclusive
+  private int next;
+  private DelimitedReader reader;
+
+  SubmittedBallotSpliterator(FileChannel channel, SubmittedBallotIndex index, @Nullable BallotBox.State state,
+                             ReadCounter counter) {
+    this(channel, index, state, counter, 0, index.size());
+  }
+
+  private SubmittedBallotSpliterator(FileChannel channel, SubmittedBallotIndex index, @Nullable BallotBox.State state,
+                                     ReadCounter counter, int start, int end) {
+    this.channel = channel;
+    this.index = index;
+    this.state = state;
+    this.counter = counter;
+    this.next = start;
+    this.end = end;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super SubmittedBallot> action) {
+    SubmittedBallot ballot = readNext();
+    if (ballot == null) {
+      return false;
+    }
+    action.accept(ballot);
+    return true;
+  }
+
+  @Nullable
+  private SubmittedBallot readNext() {
+    long start = System.nanoTime();
+    try {
+      while (next < end) {
+        SubmittedBallotIndex.Entry entry = index.get(next++);
+        if (state != null && entry.state() != state) {
+          continue;
+        }
+        if (reader == null) {
+          // dont buffer past the end of this range
+          long rangeLength = index.get(end - 1).end() - entry.offset();
+          int bufferSize = (int) Math.min(DelimitedReader.DEFAULT_BUFFER_SIZE, rangeLength);
+          reader = new DelimitedReader(channel, entry.offset(), counter, bufferSize);
+        } else if (reader.position() < entry.offset()) {
+          reader.skip(entry.offset() - reader.position());
+        }
+        int size = reader.nextSize();
+        CiphertextBallotProto.SubmittedBallot ballotProto = reader.parse(CiphertextBallotProto.SubmittedBallot.parser(), size);
+        if (!ballotProto.getBallotId().equals(entry.ballotId())) {
+          throw new IllegalStateException(String.format("ballot index entry %d is %s, but the ballot is %s",
+                  next - 1, entry.ballotId(), ballotProto.getBallotId()));
+        }
+        return SubmittedBallotFromProto.translateFromProto(ballotProto);
+      }
+      return null;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      counter.addNanos(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  @Nullable
+  public Spliterator<SubmittedBallot> trySplit() {
+    if (reader != null || end - next < 2) {
+      return null; // dont split a range that has started reading
+    }
+    int mid = (next + end) >>> 1;
+    SubmittedBallotSpliterator prefix = new SubmittedBallotSpliterator(channel, index, state, counter, next, mid);
+    this.next = mid;
+    return prefix;
+  }
+
+  @Override
+  public long estimateSize() {
+    return end - next;
+  }
+
+  @Override
+  public int characteristics() {
+    // with a state filter, estimateSize is only an upper bound
+    return ORDERED | NONNULL | IMMUTABLE | (state == null ? SIZED | SUBSIZED : 0);
+  }
+}
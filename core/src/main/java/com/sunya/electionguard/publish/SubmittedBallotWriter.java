@@ -0,0 +1,473 @@
+package com.sunya.electionguard.publish;
+
+import com.google.common.base.Preconditions;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.CodedOutputStream;
+import com.sunya.electionguard.BallotBox;
+import com.sunya.electionguard.Group;
+import com.sunya.electionguard.SubmittedBallot;
+import com.sunya.electionguard.protoconvert.SubmittedBallotFromProto;
+import com.sunya.electionguard.protoconvert.SubmittedBallotToProto;
+import electionguard.protogen.CiphertextBallotProto;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends submitted ballots to the encrypted ballots file and its index sidecar as they are accepted,
+ * instead of writing them all at the end with Publisher.writeSubmittedBallots.
+ * <p>
+ * Ballots are serialized on the writer's worker threads, and written in the order they were appended by a single writer
+ * thread. The files are synced to disk in groups: after groupCount ballots, or groupMillis after the first unsynced
+ * ballot, whichever comes first. A crash loses at most the ballots of the last group. Once sync() or close() returns,
+ * all the ballots appended before it are on disk. whenDurable() tells when a ballot is on disk without waiting for it,
+ * and requestSync() ends the current group early.
+ * <p>
+ * If resuming, an existing ballots file is appended to. A record left partly written at its end by a crash is cut off
+ * first, see recover(). Otherwise an existing ballots file and its sidecar are replaced.
+ * At most MAX_PENDING ballots are held in memory, append() blocks when the writer falls behind.
+ * Append from one thread only.
+ */
+public class SubmittedBallotWriter implements Closeable {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  static final int MAX_PENDING = 1000;
+
+  // a serialized ballot record, with what its index entry needs
+  private record Encoded(byte[] record, String ballotId, BallotBox.State state, Group.ElementModQ code) {}
+
+  // queue markers, compared by identity: sync now, or sync and stop
+  private static final ListenableFuture<List<Encoded>> SYNC = Futures.immediateFuture(List.of());
+  private static final ListenableFuture<List<Encoded>> CLOSE = Futures.immediateFuture(List.of());
+
+  private final int groupCount;
+  private final long groupNanos;
+  private final SubmittedBallotIndex recovered;
+  private final BlockingQueue<ListenableFuture<List<Encoded>>> queue = new ArrayBlockingQueue<>(MAX_PENDING);
+  private final ListeningExecutorService workers;
+  private final Thread writerThread;
+
+  // used only by the appending thread
+  private long appended;
+  private boolean closed;
+
+  // used only by the writer thread
+  private final FileOutputStream ballotsFile;
+  private final BufferedOutputStream ballotsOut;
+  private final FileOutputStream indexFile;
+  private final BufferedOutputStream indexOut;
+  private long offset;
+  private long written;
+
+  // shared, guarded by this
+  private long durable;
+  private Throwable failure;
+  private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(Comparator.comparingLong(Waiter::count));
+
+  // a whenDurable() future, completed once count ballots are on disk
+  private record Waiter(long count, SettableFuture<Void> future) {}
+
+  SubmittedBallotWriter(ElectionRecordPath path, int groupCount, long groupMillis, boolean resume) throws IOException {
+    Preconditions.checkArgument(groupCount > 0);
+    Preconditions.checkArgument(groupMillis > 0);
+    this.groupCount = groupCount;
+    this.groupNanos = TimeUnit.MILLISECONDS.toNanos(groupMillis);
+    if (resume) {
+      this.recovered = recover(path);
+    } else {
+      Files.deleteIfExists(path.submittedBallotPath());
+      Files.deleteIfExists(path.submittedBallotIndexPath());
+      this.recovered = new SubmittedBallotIndex(List.of());
+    }
+    this.offset = recovered.fileLength();
+
+    this.ballotsFile = new FileOutputStream(path.submittedBallotPath().toFile(), true);
+    this.ballotsOut = new BufferedOutputStream(ballotsFile, DelimitedReader.DEFAULT_BUFFER_SIZE);
+    this.indexFile = new FileOutputStream(path.submittedBallotIndexPath().toFile(), true);
+    this.indexOut = new BufferedOutputStream(indexFile);
+    // daemon threads of its own, so that it doesnt need Scheduler.shutdown()
+    int nworkers = Math.max(2, Runtime.getRuntime().availableProcessors() / 4);
+    this.workers = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(nworkers,
+            new ThreadFactoryBuilder().setNameFormat("SubmittedBallotWriter-%d").setDaemon(true).build()));
+    this.writerThread = new Thread(this::writeLoop, "SubmittedBallotWriter");
+    this.writerThread.start();
+  }
+
+  /** The index of the ballots that were already in the file when the writer was opened to resume, else empty. */
+  public SubmittedBallotIndex recovered() {
+    return recovered;
+  }
+
+  /** The number of ballots appended since the writer was opened. */
+  public long appended() {
+    return appended;
+  }
+
+  /** The number of ballots appended since the writer was opened that are on disk. */
+  public synchronized long durable() {
+    return durable;
+  }
+
+  /**
+   * A future that completes when the first count ballots appended since the writer was opened are on disk,
+   * eg count = appended() just after appending a ballot. It fails if the writer fails first.
+   * It is completed on the writer thread: listeners must not append to this writer, so give them an executor.
+   */
+  public ListenableFuture<Void> whenDurable(long count) {
+    synchronized (this) {
+      if (failure != null) {
+        return Futures.immediateFailedFuture(new IOException("SubmittedBallotWriter failed", failure));
+      }
+      if (durable >= count) {
+        return Futures.immediateVoidFuture();
+      }
+      Waiter waiter = new Waiter(count, SettableFuture.create());
+      waiters.add(waiter);
+      return waiter.future();
+    }
+  }
+
+  /** Sync the ballots appended so far as soon as they are written, without waiting for them. */
+  public void requestSync() throws IOException {
+    Preconditions.checkState(!closed, "SubmittedBallotWriter is closed");
+    checkFailure();
+    put(SYNC);
+  }
+
+  /** Queue the ballot to be written. Blocks if MAX_PENDING ballots are waiting to be written. */
+  public void append(SubmittedBallot ballot) throws IOException {
+    Preconditions.checkState(!closed, "SubmittedBallotWriter is closed");
+    checkFailure();
+    put(workers.submit(() -> List.of(encode(ballot))));
+    appended++;
+  }
+
+  /** Wait until all the ballots appended so far are on disk. */
+  public void sync() throws IOException {
+    Preconditions.checkState(!closed, "SubmittedBallotWriter is closed");
+    long target = appended;
+    put(SYNC);
+    awaitDurable(target);
+  }
+
+  /** Write and sync the ballots appended so far, and close the files. */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      put(CLOSE);
+    } finally {
+      workers.shutdown();
+      try {
+        writerThread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted closing SubmittedBallotWriter");
+      }
+    }
+    checkFailure();
+  }
+
+  private void put(ListenableFuture<List<Encoded>> item) throws IOException {
+    try {
+      while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+        checkFailure(); // dont wait forever on a writer thread that has stopped
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted appending to SubmittedBallotWriter");
+    }
+  }
+
+  private synchronized void awaitDurable(long target) throws IOException {
+    try {
+      while (durable < target && failure == null) {
+        wait();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted syncing SubmittedBallotWriter");
+    }
+    checkFailure();
+  }
+
+  private synchronized void checkFailure() throws IOException {
+    if (failure != null) {
+      throw new IOException("SubmittedBallotWriter failed", failure);
+    }
+  }
+
+  // serialize on a worker thread, as writeDelimitedTo would write it
+  private static Encoded encode(SubmittedBallot ballot) throws IOException {
+    CiphertextBallotProto.SubmittedBallot proto = SubmittedBallotToProto.translateToProto(ballot);
+    int size = proto.getSerializedSize();
+    byte[] record = new byte[CodedOutputStream.computeUInt32SizeNoTag(size) + size];
+    CodedOutputStream out = CodedOutputStream.newInstance(record);
+    out.writeUInt32NoTag(size);
+    proto.writeTo(out);
+    out.checkNoSpaceLeft();
+    return new Encoded(record, ballot.object_id(), ballot.state, ballot.code);
+  }
+
+  private void writeLoop() {
+    try {
+      int unsynced = 0;
+      long groupStart = 0;
+      while (true) {
+        ListenableFuture<List<Encoded>> item;
+        if (unsynced == 0) {
+          item = queue.take();
+        } else {
+          long remaining = groupNanos - (System.nanoTime() - groupStart);
+          item = queue.poll(Math.max(0, remaining), TimeUnit.NANOSECONDS); // null if the group time is up
+        }
+        if (item != null && item != SYNC && item != CLOSE) {
+          if (unsynced == 0) {
+            groupStart = System.nanoTime();
+          }
+          write(item.get().get(0));
+          unsynced++;
+        }
+        // under constant load poll() always has an item, so the group time is checked here too
+        if (unsynced > 0 && (item == null || item == SYNC || item == CLOSE || unsynced >= groupCount ||
+                System.nanoTime() - groupStart >= groupNanos)) {
+          syncFiles();
+          unsynced = 0;
+        }
+        if (item == CLOSE) {
+          break;
+        }
+      }
+    } catch (Throwable t) {
+      Throwable cause = (t instanceof ExecutionException) ? t.getCause() : t;
+      logger.atSevere().withCause(cause).log("SubmittedBallotWriter failed after %d ballots", written);
+      setFailure(cause);
+    } finally {
+      try {
+        ballotsFile.close();
+        indexFile.close();
+      } catch (IOException e) {
+        setFailure(e);
+      }
+    }
+  }
+
+  private void write(Encoded encoded) throws IOException {
+    ballotsOut.write(encoded.record());
+    SubmittedBallotIndex.Entry entry = new SubmittedBallotIndex.Entry(
+            offset, encoded.record().length, encoded.ballotId(), encoded.state(), encoded.code());
+    SubmittedBallotToProto.publishIndexEntry(entry).writeDelimitedTo(indexOut);
+    offset += encoded.record().length;
+    written++;
+  }
+
+  // the ballots before the index, so that the index doesnt get ahead of the ballots
+  private void syncFiles() throws IOException {
+    ballotsOut.flush();
+    ballotsFile.getFD().sync();
+    indexOut.flush();
+    indexFile.getFD().sync();
+    List<SettableFuture<Void>> done = new ArrayList<>();
+    synchronized (this) {
+      durable = written;
+      notifyAll();
+      while (!waiters.isEmpty() && waiters.peek().count() <= durable) {
+        done.add(waiters.poll().future());
+      }
+    }
+    done.forEach(future -> future.set(null)); // outside the lock, since listeners may run here
+  }
+
+  private void setFailure(Throwable t) {
+    List<SettableFuture<Void>> failed = new ArrayList<>();
+    synchronized (this) {
+      if (failure == null) {
+        failure = t;
+      }
+      notifyAll();
+      waiters.forEach(waiter -> failed.add(waiter.future()));
+      waiters.clear();
+    }
+    IOException e = new IOException("SubmittedBallotWriter failed", t);
+    failed.forEach(future -> future.setException(e));
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Make the ballots file and its index sidecar agree after a crash. Cuts off an incomplete record at
+   * the end of the ballots file. Then makes the sidecar index exactly the complete records. Entries of the sidecar
+   * that match the ballots file are kept, and the records after them are read to make their entries.
+   * <p>
+   * Only the last record can be partly written by a crash: one whose size is cut off, or which extends to or past the
+   * end of the file, or a zero filled tail. An unreadable record with more data after it means the file is damaged
+   * some other way, and it is left alone.
+   * @return the index of the complete records.
+   * @throws IOException if there is an unreadable record that is not at the end of the ballots file.
+   */
+  static SubmittedBallotIndex recover(ElectionRecordPath path) throws IOException {
+    Path ballotsPath = path.submittedBallotPath();
+    Path indexPath = path.submittedBallotIndexPath();
+    if (!Files.exists(ballotsPath)) {
+      Files.deleteIfExists(indexPath);
+      return new SubmittedBallotIndex(List.of());
+    }
+    ReadCounter counter = new ReadCounter();
+    List<SubmittedBallotIndex.Entry> entries = new ArrayList<>();
+    List<Long> indexEnds = new ArrayList<>(); // the sidecar length after each of its entries
+
+    try (FileChannel ballots = FileChannel.open(ballotsPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      long fileLength = ballots.size();
+      if (Files.exists(indexPath)) {
+        readSidecar(indexPath, fileLength, entries, indexEnds, counter);
+        // the sidecar is synced after the ballots, but check that the last record it has is complete
+        while (!entries.isEmpty()) {
+          SubmittedBallotIndex.Entry last = entries.get(entries.size() - 1);
+          List<SubmittedBallotIndex.Entry> reread = new ArrayList<>();
+          readRecords(ballots, last.offset(), last.end(), reread, counter);
+          if (reread.size() == 1 && reread.get(0).equals(last)) {
+            break;
+          }
+          entries.remove(entries.size() - 1);
+          indexEnds.remove(indexEnds.size() - 1);
+        }
+      }
+      int fromSidecar = entries.size();
+      long validLength = readRecords(ballots, entries.isEmpty() ? 0 : entries.get(entries.size() - 1).end(),
+              fileLength, entries, counter);
+
+      if (validLength < fileLength) {
+        if (!isTornTail(ballots, validLength, fileLength)) {
+          throw new IOException(String.format("%s: unreadable ballot record at offset %d is followed by more data,"
+                  + " the file is damaged and was not changed", ballotsPath, validLength));
+        }
+        logger.atWarning().log("%s: cut off %d bytes of an incomplete ballot record at offset %d",
+                ballotsPath, fileLength - validLength, validLength);
+        ballots.truncate(validLength);
+        ballots.force(true);
+      }
+
+      try (FileChannel index = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+        long indexLength = indexEnds.isEmpty() ? 0 : indexEnds.get(indexEnds.size() - 1);
+        if (index.size() != indexLength || entries.size() > fromSidecar) {
+          index.truncate(indexLength);
+          index.position(indexLength);
+          BufferedOutputStream out = new BufferedOutputStream(Channels.newOutputStream(index));
+          for (SubmittedBallotIndex.Entry entry : entries.subList(fromSidecar, entries.size())) {
+            SubmittedBallotToProto.publishIndexEntry(entry).writeDelimitedTo(out);
+          }
+          out.flush();
+          index.force(true);
+        }
+      }
+    }
+    return new SubmittedBallotIndex(entries);
+  }
+
+  // the entries of the sidecar, up to the first that is unreadable or doesnt fit the ballots file
+  private static void readSidecar(Path indexPath, long fileLength, List<SubmittedBallotIndex.Entry> entries,
+                                  List<Long> indexEnds, ReadCounter counter) {
+    try (DelimitedReader reader = new DelimitedReader(indexPath.toString(), 0, counter)) {
+      int size;
+      while ((size = reader.nextSize()) >= 0) {
+        SubmittedBallotIndex.Entry entry = SubmittedBallotFromProto.importIndexEntry(
+                reader.parse(CiphertextBallotProto.SubmittedBallotIndexEntry.parser(), size));
+        long end = entries.isEmpty() ? 0 : entries.get(entries.size() - 1).end();
+        if (entry.offset() != end || entry.end() > fileLength) {
+          return;
+        }
+        entries.add(entry);
+        indexEnds.add(reader.position());
+      }
+    } catch (IOException | RuntimeException e) {
+      // an incomplete entry at the end of the sidecar: keep the ones before it
+    }
+  }
+
+  // is what follows the complete records at start just the remains of a last record that was being written?
+  private static boolean isTornTail(FileChannel ballots, long start, long fileLength) throws IOException {
+    DelimitedReader reader = new DelimitedReader(ballots, start, new ReadCounter(), DelimitedReader.DEFAULT_BUFFER_SIZE);
+    try {
+      int size = reader.nextSize();
+      if (size < 0 || reader.position() + size >= fileLength) {
+        return true;
+      }
+    } catch (EOFException e) {
+      return true; // the size itself is cut off
+    } catch (IOException e) {
+      // a bad size, unless the tail is all zeros
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(DelimitedReader.DEFAULT_BUFFER_SIZE);
+    long position = start;
+    while (position < fileLength) {
+      buffer.clear();
+      int n = ballots.read(buffer, position);
+      if (n < 0) {
+        break;
+      }
+      for (int i = 0; i < n; i++) {
+        if (buffer.get(i) != 0) {
+          return false;
+        }
+      }
+      position += n;
+    }
+    return true;
+  }
+
+  /**
+   * Read the records of the ballots file in [start, end), adding their entries, up to the first record
+   * that is incomplete or unreadable.
+   * @return the offset just past the last complete record.
+   */
+  private static long readRecords(FileChannel ballots, long start, long end, List<SubmittedBallotIndex.Entry> entries,
+                                  ReadCounter counter) {
+    long valid = start;
+    DelimitedReader reader = new DelimitedReader(ballots, start, counter, DelimitedReader.DEFAULT_BUFFER_SIZE);
+    try {
+      while (reader.position() < end) {
+        int size = reader.nextSize();
+        if (size < 0 || reader.position() + size > end) {
+          break;
+        }
+        CiphertextBallotProto.SubmittedBallotCodes ballot =
+                reader.parse(CiphertextBallotProto.SubmittedBallotCodes.parser(), size, true);
+        if (ballot.getBallotId().isEmpty()) {
+          break; // eg a zero filled tail
+        }
+        entries.add(SubmittedBallotFromProto.importIndexEntry(ballot, valid, (int) (reader.position() - valid)));
+        valid = reader.position();
+      }
+    } catch (IOException | RuntimeException e) {
+      // an incomplete or unreadable record: the ballots file ends before it
+    }
+    return valid;
+  }
+}
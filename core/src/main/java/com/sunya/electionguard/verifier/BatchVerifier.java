@@ -0,0 +1,192 @@
+package com.sunya.electionguard.verifier;
+
+import com.google.common.base.Preconditions;
+import com.sunya.electionguard.Group;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static com.sunya.electionguard.Group.ElementModP;
+import static com.sunya.electionguard.Group.ElementModQ;
+
+/**
+ * Small-exponent batch verification of the proof equations of many items (selections, contests).
+ * Each equation prod(b_i^e_i) = prod(b'_j^e'_j) mod p is raised to a random 64 bit weight, and the weighted
+ * equations of the whole batch are multiplied together, so that each base is exponentiated once per batch:
+ * the generator and election key once for the whole batch, the ciphertext and commitment values once per item.
+ * If any equation is false, the combined equation fails except with probability 2^-64.
+ * A failing batch is bisected, and the items it narrows down to are checked individually.
+ * <p>
+ * All bases must be in the subgroup of order q, ie valid residues, since exponents are reduced mod q.
+ * Each item lists the values it needs to be valid residues, and these are checked together with
+ * Group.is_valid_residues as part of the batch. Bases that are combinations of those values, and the
+ * generator and election key, need not be listed.
+ *
+ * @see <a href="https://cseweb.ucsd.edu/~mihir/papers/batch.pdf">Bellare, Garay, Rabin, Fast Batch Verification
+ * for Modular Exponentiation and Digital Signatures</a>
+ */
+class BatchVerifier<T> {
+  static final int DEFAULT_BATCH_SIZE = 1000;
+  private static final int WEIGHT_BITS = 64;
+
+  /** One verification equation, the product of the left terms equals the product of the right terms. */
+  static class Equation {
+    private final List<ElementModP> leftBases = new ArrayList<>();
+    private final List<ElementModQ> leftExponents = new ArrayList<>();
+    private final List<ElementModP> rightBases = new ArrayList<>();
+    private final List<ElementModQ> rightExponents = new ArrayList<>();
+
+    Equation left(ElementModP base, ElementModQ exponent) {
+      leftBases.add(base);
+      leftExponents.add(exponent);
+      return this;
+    }
+
+    Equation right(ElementModP base, ElementModQ exponent) {
+      rightBases.add(base);
+      rightExponents.add(exponent);
+      return this;
+    }
+
+    /** Check the equation on its own. */
+    boolean is_valid() {
+      ElementModQ[] lefts = leftExponents.toArray(new ElementModQ[0]);
+      ElementModQ[] rights = rightExponents.toArray(new ElementModQ[0]);
+      return Group.multi_pow_p(leftBases.toArray(new ElementModP[0]), lefts)
+              .equals(Group.multi_pow_p(rightBases.toArray(new ElementModP[0]), rights));
+    }
+  }
+
+  private record Entry<T>(T item, List<Equation> equations, List<ElementModP> residues) {}
+
+  private final SecureRandom random = new SecureRandom();
+  private final int batchSize;
+  private final Function<T, List<Equation>> equations;
+  private final Function<T, List<ElementModP>> residues;
+  private final Predicate<T> verifyIndividually;
+  private final List<Entry<T>> pending = new ArrayList<>();
+  private boolean ok = true;
+  private int nfailedBatches = 0;
+
+  /**
+   * Constructor.
+   * @param batchSize number of items combined in one batch.
+   * @param equations the verification equations of an item.
+   * @param residues the values of an item that must be valid residues.
+   * @param verifyIndividually full verification of one item, used for items in a failing batch.
+   *                           It should report its own failures.
+   */
+  BatchVerifier(int batchSize, Function<T, List<Equation>> equations, Function<T, List<ElementModP>> residues,
+                Predicate<T> verifyIndividually) {
+    Preconditions.checkArgument(batchSize > 0);
+    this.batchSize = batchSize;
+    this.equations = equations;
+    this.residues = residues;
+    this.verifyIndividually = verifyIndividually;
+  }
+
+  /** Add an item to the batch, verifying the batch when it is full. */
+  void add(T item) {
+    pending.add(new Entry<>(item, equations.apply(item), residues.apply(item)));
+    if (pending.size() >= batchSize) {
+      flush();
+    }
+  }
+
+  /** Verify any remaining items, and return true if all items added so far are valid. */
+  boolean finish() {
+    flush();
+    return ok;
+  }
+
+  /** Number of batches that failed and had to be bisected. */
+  int nfailedBatches() {
+    return nfailedBatches;
+  }
+
+  private void flush() {
+    if (pending.isEmpty()) {
+      return;
+    }
+    boolean residuesOk = residuesValid(pending);
+    if (!residuesOk || !equationsValid(pending)) {
+      nfailedBatches++;
+      // once the residues are known to be valid, bisection need only check the equations
+      bisect(pending, !residuesOk);
+    }
+    pending.clear();
+  }
+
+  // entries are known to fail as a batch
+  private void bisect(List<Entry<T>> entries, boolean checkResidues) {
+    if (entries.size() == 1) {
+      if (!verifyIndividually.test(entries.get(0).item)) {
+        ok = false;
+      }
+      return;
+    }
+    int mid = entries.size() / 2;
+    List<Entry<T>> lower = entries.subList(0, mid);
+    List<Entry<T>> upper = entries.subList(mid, entries.size());
+    boolean lowerOk = verifyBatch(lower, checkResidues);
+    if (!lowerOk) {
+      bisect(lower, checkResidues);
+    }
+    // if the lower half is ok, the failure must be in the upper half
+    if (lowerOk || !verifyBatch(upper, checkResidues)) {
+      bisect(upper, checkResidues);
+    }
+  }
+
+  private boolean verifyBatch(List<Entry<T>> entries, boolean checkResidues) {
+    return (!checkResidues || residuesValid(entries)) && equationsValid(entries);
+  }
+
+  private boolean residuesValid(List<Entry<T>> entries) {
+    List<ElementModP> all = new ArrayList<>();
+    for (Entry<T> entry : entries) {
+      all.addAll(entry.residues);
+    }
+    return Group.is_valid_residues(all);
+  }
+
+  private boolean equationsValid(List<Entry<T>> entries) {
+    Map<BigInteger, BigInteger> left = new LinkedHashMap<>();
+    Map<BigInteger, BigInteger> right = new LinkedHashMap<>();
+    for (Entry<T> entry : entries) {
+      for (Equation equation : entry.equations) {
+        BigInteger weight = new BigInteger(WEIGHT_BITS, random).add(BigInteger.ONE);
+        accumulate(left, equation.leftBases, equation.leftExponents, weight);
+        accumulate(right, equation.rightBases, equation.rightExponents, weight);
+      }
+    }
+    return product(left).equals(product(right));
+  }
+
+  // terms with the same base are combined by adding their weighted exponents
+  private static void accumulate(Map<BigInteger, BigInteger> terms, List<ElementModP> bases,
+                                 List<ElementModQ> exponents, BigInteger weight) {
+    for (int i = 0; i < bases.size(); i++) {
+      terms.merge(bases.get(i).getBigInt(), exponents.get(i).getBigInt().multiply(weight), BigInteger::add);
+    }
+  }
+
+  private static ElementModP product(Map<BigInteger, BigInteger> terms) {
+    BigInteger q = Group.getPrimes().smallPrime;
+    ElementModP[] bases = new ElementModP[terms.size()];
+    ElementModQ[] exponents = new ElementModQ[terms.size()];
+    int count = 0;
+    for (Map.Entry<BigInteger, BigInteger> term : terms.entrySet()) {
+      bases[count] = Group.int_to_p_unchecked(term.getKey());
+      exponents[count] = Group.int_to_q_unchecked(term.getValue().mod(q));
+      count++;
+    }
+    return Group.multi_pow_p(bases, exponents);
+  }
+}
@@ -8,9 +8,11 @@ import com.sunya.electionguard.Group;
 import com.sunya.electionguard.Hash;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.sunya.electionguard.Manifest;
+import com.sunya.electionguard.PowRadixCache;
 import com.sunya.electionguard.SubmittedBallot;
 import com.sunya.electionguard.publish.ElectionRecord;
 
@@ -27,13 +29,28 @@ public class ContestVoteLimitsVerifier {
   private static final boolean show = false;
 
   private final ElectionRecord electionRecord;
+  private final int batchSize;
 
   ContestVoteLimitsVerifier(ElectionRecord electionRecord) {
+    this(electionRecord, BatchVerifier.DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Constructor.
+   * @param batchSize number of contest proofs to verify together, see BatchVerifier; 1 or less verifies each one separately.
+   */
+  ContestVoteLimitsVerifier(ElectionRecord electionRecord, int batchSize) {
     this.electionRecord = electionRecord;
+    // batching requires all bases to be valid residues
+    this.batchSize = electionRecord.electionPublicKey().is_valid_residue() ? batchSize : 1;
+    PowRadixCache.register(electionRecord.electionPublicKey());
   }
 
   boolean verify_all_accepted_ballots() {
     boolean error = false;
+    BatchVerifier<ContestVerifier> batch = (batchSize > 1) ?
+            new BatchVerifier<>(batchSize, ContestVerifier::equationsVer1, ContestVerifier::residuesVer1,
+                    ContestVerifier::verifyContest) : null;
 
     int nballots  = 0;
     int ncontests  = 0;
@@ -46,11 +63,21 @@ public class ContestVoteLimitsVerifier {
         nselections += contest.selections.size();
         if (show) System.out.printf(" Contest %s.%n", contest.contestId);
         ContestVerifier cv = new ContestVerifier(contest);
-        if (!cv.verifyContest()) {
+        if (batch != null && !cv.proof.name.endsWith("2")) {
+          // check everything but the residues and proof equations now, those are checked in batches
+          if (cv.verifyContest(false)) {
+            batch.add(cv);
+          } else {
+            error = true;
+          }
+        } else if (!cv.verifyContest()) {
           error = true;
         }
       }
     }
+    if (batch != null && !batch.finish()) {
+      error = true;
+    }
 
     if (error) {
       System.out.printf(" ***Adherence to Vote Limits failure.%n");
@@ -86,6 +113,14 @@ public class ContestVoteLimitsVerifier {
     }
 
     boolean verifyContest() {
+      return verifyContest(true);
+    }
+
+    /**
+     * @param checkEquations if false, skip the residue checks 5.D and the proof equations 5.F and 5.G,
+     *                       which are then checked in batches.
+     */
+    boolean verifyContest(boolean checkEquations) {
       boolean limit_error = false;
 
       // 5.C The given value V is in Z q
@@ -114,11 +149,11 @@ public class ContestVoteLimitsVerifier {
         }
 
         // 5.D The given values a and b are each in Zr_p.
-        if (!alpha.is_valid_residue()) {
+        if (checkEquations && !alpha.is_valid_residue()) {
           System.out.printf(" 5.D alpha not in Zr_p for selection %s.%n", selection.object_id());
           limit_error = true;
         }
-        if (!beta.is_valid_residue()) {
+        if (checkEquations && !beta.is_valid_residue()) {
           System.out.printf(" 5.D beta not in Zr_p for selection %s.%n", selection.object_id());
           limit_error = true;
         }
@@ -164,6 +199,13 @@ public class ContestVoteLimitsVerifier {
       } else {
         ElementModP a = proof.pad;
         ElementModP b = proof.data;
+
+        // 5.D The given values a and b are each in Zr_p.
+        if (checkEquations && (!a.is_valid_residue() || !b.is_valid_residue())) {
+          System.out.printf(" 5.D a or b not in Zr_p for contest %s.%n", contest.contestId);
+          proofOk = false;
+        }
+
         ElementModQ challenge_computed =
                 Hash.hash_elems(electionRecord.extendedHash(),
                         selection_alpha_product,
@@ -174,17 +216,50 @@ public class ContestVoteLimitsVerifier {
         }
 
         // check equations
-        boolean equ1_check = this.check_cp_proof_alpha(selection_alpha_product);
-        boolean equ2_check = this.check_cp_proof_beta(selection_beta_product, vote_limit);
+        if (checkEquations) {
+          boolean equ1_check = this.check_cp_proof_alpha(selection_alpha_product);
+          boolean equ2_check = this.check_cp_proof_beta(selection_beta_product, vote_limit);
 
-        if (!equ1_check || !equ2_check) {
-          proofOk = false;
+          if (!equ1_check || !equ2_check) {
+            proofOk = false;
+          }
         }
       }
 
       return !limit_error && proofOk;
     }
 
+    /** The values that 5.D requires to be in Zr_p, for batch verification. */
+    List<ElementModP> residuesVer1() {
+      List<ElementModP> result = new ArrayList<>();
+      for (Selection selection : contest.selections) {
+        result.add(selection.ciphertext().pad());
+        result.add(selection.ciphertext().data());
+      }
+      result.add(this.proof.pad);
+      result.add(this.proof.data);
+      return result;
+    }
+
+    /**
+     * The proof equations 5.F and 5.G, for batch verification.
+     * Only valid if verifyContest(false) succeeded, so that (A, B) is the product of the selection ciphertexts.
+     */
+    List<BatchVerifier.Equation> equationsVer1() {
+      ElementModP g = electionRecord.generatorP();
+      ElementModP K = electionRecord.electionPublicKey();
+      Integer vote_limit = electionRecord.manifest().findVoteLimit(contest.contestId);
+      Preconditions.checkNotNull(vote_limit);
+      ElementModQ votes_big = Group.int_to_q_unchecked(BigInteger.valueOf(vote_limit));
+      return List.of(
+              // 5.F g ^ v = a * A ^ c mod p
+              new BatchVerifier.Equation().left(g, this.contest_response)
+                      .right(this.proof.pad, Group.ONE_MOD_Q).right(this.contest_alpha, this.contest_challenge),
+              // 5.G g ^ (L * c) * K ^ v = b * B ^ c mod p
+              new BatchVerifier.Equation().left(g, Group.mult_q(votes_big, this.contest_challenge)).left(K, this.contest_response)
+                      .right(this.proof.data, Group.ONE_MOD_Q).right(this.contest_beta, this.contest_challenge));
+    }
+
     /**
      * 5.F check if equation g ^ v mod p = a * A ^ c mod p is satisfied,
      *
@@ -7,6 +7,7 @@ import com.sunya.electionguard.ElGamal;
 import com.sunya.electionguard.Group;
 import com.sunya.electionguard.Hash;
 import com.sunya.electionguard.PlaintextTally;
+import com.sunya.electionguard.PowRadixCache;
 import com.sunya.electionguard.publish.ElectionRecord;
 import electionguard.ballot.Guardian;
 
@@ -37,6 +38,10 @@ public class DecryptionVerifier {
   DecryptionVerifier(ElectionRecord electionRecord, PlaintextTally decryptedTally) {
     this.electionRecord = electionRecord;
     this.decryptedTally = decryptedTally;
+    // the guardian public keys are the base of an exponentiation in every partial decryption proof
+    for (Guardian guardian : electionRecord.guardians()) {
+      PowRadixCache.register(guardian.publicKey());
+    }
   }
 
   /**
@@ -3,6 +3,9 @@ package com.sunya.electionguard.verifier;
 import com.sunya.electionguard.*;
 import com.sunya.electionguard.publish.ElectionRecord;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static com.sunya.electionguard.Group.ElementModQ;
 import static com.sunya.electionguard.Group.ElementModP;
 
@@ -12,13 +15,28 @@ import static com.sunya.electionguard.Group.ElementModP;
  */
 public class SelectionEncryptionVerifier {
   private final ElectionRecord electionRecord;
+  private final int batchSize;
 
   SelectionEncryptionVerifier(ElectionRecord electionRecord) {
+    this(electionRecord, BatchVerifier.DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Constructor.
+   * @param batchSize number of selection proofs to verify together, see BatchVerifier; 1 or less verifies each one separately.
+   */
+  SelectionEncryptionVerifier(ElectionRecord electionRecord, int batchSize) {
     this.electionRecord = electionRecord;
+    // batching requires all bases to be valid residues
+    this.batchSize = electionRecord.electionPublicKey().is_valid_residue() ? batchSize : 1;
+    PowRadixCache.register(electionRecord.electionPublicKey());
   }
 
   boolean verify_all_selections() {
     boolean error = false;
+    BatchVerifier<SelectionVerifier> batch = (batchSize > 1) ?
+            new BatchVerifier<>(batchSize, SelectionVerifier::equationsVer1, SelectionVerifier::residuesVer1,
+                    SelectionVerifier::verifySelection) : null;
 
     int nballots  = 0;
     int ncontests  = 0;
@@ -30,13 +48,24 @@ public class SelectionEncryptionVerifier {
         for (CiphertextBallot.Selection selection : contest.selections) {
           nselections++;
           SelectionVerifier sv = new SelectionVerifier(selection);
-          // check validity of a selection
-          if (!sv.verifySelection()) {
+          ChaumPedersen.DisjunctiveChaumPedersenProof proof = selection.proof.orElseThrow();
+          if (batch != null && !proof.name.endsWith("2")) {
+            // check everything but the residues and proof equations now, those are checked in batches
+            if (sv.verifyParamsVer1(proof, false)) {
+              batch.add(sv);
+            } else {
+              error = true;
+            }
+          } else if (!sv.verifySelection()) {
+            // check validity of a selection
             error = true;
           }
         }
       }
     }
+    if (batch != null && !batch.finish()) {
+      error = true;
+    }
 
     if (error) {
       System.out.printf(" ***Selection Encryptions failure.%n");
@@ -68,7 +97,7 @@ public class SelectionEncryptionVerifier {
     }
 
     boolean verifySelectionVer1(ChaumPedersen.DisjunctiveChaumPedersenProof proof) {
-      boolean error = false;
+      boolean error = !verifyParamsVer1(proof, true);
 
       // get values
       String selection_id = this.selection.object_id();
@@ -80,32 +109,6 @@ public class SelectionEncryptionVerifier {
       ElementModQ c1 = proof.proof1.challenge; // c1
       ElementModQ v0 = proof.proof0.response; // v0
       ElementModQ v1 = proof.proof1.response; // v1
-      ElementModQ challenge = proof.challenge; // c
-
-      // 4.A: check alpha, beta, a0, b0, a1, b1 are all in set Zrp
-      if (!(this.check_params_within_zrp(alpha, beta, a0, a1, b0, b1))) {
-        error = true;
-      }
-
-      // 4.C: check if the given values, c0, c1, v0, v1 are each in the set zq
-      if (!this.check_params_within_zq(c0, c1, v0, v1)) {
-        error = true;
-      }
-
-      // 4.B: conduct hash computation, c = H(Q-bar, (alpha, beta), (a0, b0), (a1, b1))
-      ElementModQ computedChallenge = Hash.hash_elems(electionRecord.extendedHash(),
-              this.alpha, this.beta, a0, b0, a1, b1);
-      if (!challenge.equals(computedChallenge)) {
-        System.out.printf("4.B selection challenge failed for %s.%n", selection.object_id());
-        error = true;
-      }
-
-      // 4.D:  c = (c0 + c1) mod q
-      ElementModQ expected = Group.add_q(c0, c1);
-      if (!challenge.equals(expected)) {
-        System.out.printf("4.D c = (c0 + c1) mod q failed for %s.%n", selection.object_id());
-        error = true;
-      }
 
       // 4.E check chaum-pedersen zero proof: g ^ v0 = a0 * alpha ^ c0 mod p
       ElementModP equE_left = Group.pow_p(electionRecord.generatorP(), v0);
@@ -152,18 +155,83 @@ public class SelectionEncryptionVerifier {
     }
 
     /**
-     * check if the given values are each in set Zrp
+     * Check 4.A - 4.D, everything but the proof equations.
+     * @param checkResidues if false, skip the residue check in 4.A, which is then checked in batches.
      */
-    private boolean check_params_within_zrp(ElementModP... params) {
+    boolean verifyParamsVer1(ChaumPedersen.DisjunctiveChaumPedersenProof proof, boolean checkResidues) {
       boolean error = false;
-      for (ElementModP param : params) {
-        if (!param.is_valid_residue()) {
-          error = true;
-        }
+
+      // get values
+      ElementModP a0 = proof.proof0.pad; // a0
+      ElementModP a1 = proof.proof1.pad; // a1
+      ElementModP b0 = proof.proof0.data; // b0
+      ElementModP b1 = proof.proof1.data; // b1
+      ElementModQ c0 = proof.proof0.challenge; // c0
+      ElementModQ c1 = proof.proof1.challenge; // c1
+      ElementModQ v0 = proof.proof0.response; // v0
+      ElementModQ v1 = proof.proof1.response; // v1
+      ElementModQ challenge = proof.challenge; // c
+
+      // 4.A: check alpha, beta, a0, b0, a1, b1 are all in set Zrp
+      if (checkResidues && !(this.check_params_within_zrp(alpha, beta, a0, a1, b0, b1))) {
+        error = true;
+      }
+
+      // 4.C: check if the given values, c0, c1, v0, v1 are each in the set zq
+      if (!this.check_params_within_zq(c0, c1, v0, v1)) {
+        error = true;
+      }
+
+      // 4.B: conduct hash computation, c = H(Q-bar, (alpha, beta), (a0, b0), (a1, b1))
+      ElementModQ computedChallenge = Hash.hash_elems(electionRecord.extendedHash(),
+              this.alpha, this.beta, a0, b0, a1, b1);
+      if (!challenge.equals(computedChallenge)) {
+        System.out.printf("4.B selection challenge failed for %s.%n", selection.object_id());
+        error = true;
+      }
+
+      // 4.D:  c = (c0 + c1) mod q
+      ElementModQ expected = Group.add_q(c0, c1);
+      if (!challenge.equals(expected)) {
+        System.out.printf("4.D c = (c0 + c1) mod q failed for %s.%n", selection.object_id());
+        error = true;
       }
       return !error;
     }
 
+    /** The proof equations 4.E - 4.H, for batch verification. */
+    List<BatchVerifier.Equation> equationsVer1() {
+      ChaumPedersen.DisjunctiveChaumPedersenProof proof = this.selection.proof.orElseThrow();
+      ElementModP g = electionRecord.generatorP();
+      ElementModP K = electionRecord.electionPublicKey();
+      ElementModQ c0 = proof.proof0.challenge;
+      ElementModQ c1 = proof.proof1.challenge;
+      ElementModQ v0 = proof.proof0.response;
+      ElementModQ v1 = proof.proof1.response;
+      return List.of(
+              // 4.E g ^ v0 = a0 * alpha ^ c0 mod p
+              new BatchVerifier.Equation().left(g, v0).right(proof.proof0.pad, Group.ONE_MOD_Q).right(alpha, c0),
+              // 4.F g ^ v1 = a1 * alpha ^ c1 mod p
+              new BatchVerifier.Equation().left(g, v1).right(proof.proof1.pad, Group.ONE_MOD_Q).right(alpha, c1),
+              // 4.G K ^ v0 = b0 * beta ^ c0 mod p
+              new BatchVerifier.Equation().left(K, v0).right(proof.proof0.data, Group.ONE_MOD_Q).right(beta, c0),
+              // 4.H g ^ c1 * K ^ v1 = b1 * beta ^ c1 mod p
+              new BatchVerifier.Equation().left(g, c1).left(K, v1).right(proof.proof1.data, Group.ONE_MOD_Q).right(beta, c1));
+    }
+
+    /** The values that 4.A requires to be in Zrp, for batch verification. */
+    List<ElementModP> residuesVer1() {
+      ChaumPedersen.DisjunctiveChaumPedersenProof proof = this.selection.proof.orElseThrow();
+      return List.of(alpha, beta, proof.proof0.pad, proof.proof0.data, proof.proof1.pad, proof.proof1.data);
+    }
+
+    /**
+     * check if the given values are each in set Zrp
+     */
+    private boolean check_params_within_zrp(ElementModP... params) {
+      return Group.is_valid_residues(Arrays.asList(params));
+    }
+
     /**
      * check if the given values are each in the set zq
      */
@@ -4,6 +4,7 @@ import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 import com.sunya.electionguard.Group;
+import com.sunya.electionguard.Precomputed;
 import com.sunya.electionguard.input.ManifestInputValidation;
 import com.sunya.electionguard.input.PlaintextTallyInputValidation;
 import com.sunya.electionguard.publish.Consumer;
@@ -41,6 +42,13 @@ public class VerifyElectionRecord {
     @Parameter(names = {"-usePrimes"}, order = 2, description = "use constants as primes")
     boolean usePrimes = false;
 
+    @Parameter(names = {"-batchSize"}, order = 2, description = "Number of proofs verified together (box 4 and 5); 1 verifies each proof separately")
+    int batchSize = BatchVerifier.DEFAULT_BATCH_SIZE;
+
+    @Parameter(names = {"-precompute"}, order = 2,
+            description = "File of precomputed tables, written by RunPrecompute")
+    String precomputeFile;
+
     @Parameter(names = {"-h", "--help"}, order = 2, description = "Display this help and exit", help = true)
     boolean help = false;
 
@@ -88,7 +96,10 @@ public class VerifyElectionRecord {
       //    System.out.printf(" Use primes from electionRecord = %s%n", electionRecord.constants);
       //  }
       //}
-      boolean ok = verifyElectionRecord(electionRecord, cmdLine.skip10);
+      if (cmdLine.precomputeFile != null && !Precomputed.load(cmdLine.precomputeFile)) {
+        System.out.printf("*** Precomputed tables in %s were not used, see the log%n", cmdLine.precomputeFile);
+      }
+      boolean ok = verifyElectionRecord(electionRecord, cmdLine.skip10, cmdLine.batchSize);
     } catch (Throwable t) {
       t.printStackTrace();
       System.exit(2);
@@ -98,6 +109,10 @@ public class VerifyElectionRecord {
   }
 
   public static boolean verifyElectionRecord(ElectionRecord electionRecord, boolean skip10) {
+    return verifyElectionRecord(electionRecord, skip10, BatchVerifier.DEFAULT_BATCH_SIZE);
+  }
+
+  public static boolean verifyElectionRecord(ElectionRecord electionRecord, boolean skip10, int batchSize) {
     System.out.println("============ Ballot Verification =========================");
     System.out.println("------------ [box 1] Parameter Validation ------------");
     ParameterVerifier blv = new ParameterVerifier(electionRecord);
@@ -112,11 +127,11 @@ public class VerifyElectionRecord {
     boolean epkvOk = epkv.verify_public_keys();
 
     System.out.println("------------ [box 4] Selection Encryption Validation ------------");
-    SelectionEncryptionVerifier sev = new SelectionEncryptionVerifier(electionRecord);
+    SelectionEncryptionVerifier sev = new SelectionEncryptionVerifier(electionRecord, batchSize);
     boolean sevOk = sev.verify_all_selections();
 
     System.out.println("------------ [box 5] Contest Vote Limits Validation ------------");
-    ContestVoteLimitsVerifier cvlv = new ContestVoteLimitsVerifier(electionRecord);
+    ContestVoteLimitsVerifier cvlv = new ContestVoteLimitsVerifier(electionRecord, batchSize);
     boolean cvlvOk = cvlv.verify_all_accepted_ballots();
 
     System.out.println("------------ [box 6] Ballot Chaining Validation ------------");
@@ -0,0 +1,611 @@
+package com.sunya.electionguard.workflow;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.collect.Iterables;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sunya.electionguard.BallotBox;
+import com.sunya.electionguard.CiphertextBallot;
+import com.sunya.electionguard.Encrypt;
+import com.sunya.electionguard.Group;
+import com.sunya.electionguard.InternalManifest;
+import com.sunya.electionguard.PlaintextBallot;
+import com.sunya.electionguard.Precomputed;
+import com.sunya.electionguard.SubmittedBallot;
+import com.sunya.electionguard.VerificationPolicy;
+import com.sunya.electionguard.input.BallotInputValidation;
+import com.sunya.electionguard.input.ManifestInputValidation;
+import com.sunya.electionguard.protoconvert.PlaintextBallotFromProto;
+import com.sunya.electionguard.protoconvert.SubmittedBallotToProto;
+import com.sunya.electionguard.publish.BallotProjection;
+import com.sunya.electionguard.publish.Consumer;
+import com.sunya.electionguard.publish.ElectionRecord;
+import com.sunya.electionguard.publish.Publisher;
+import com.sunya.electionguard.publish.SubmittedBallotIndex;
+import com.sunya.electionguard.publish.SubmittedBallotWriter;
+import electionguard.ballot.ElectionInitialized;
+import electionguard.protogen.EncryptionProto;
+import electionguard.protogen.EncryptionServiceGrpc;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-running encryption server, communicating over gRpc. Keeps a warm EncryptionMediator for each device,
+ * so a device's ballots don't pay for starting up, and for building the tables of the public key, on each call.
+ * <p>
+ * Each device opens an encryptBallots stream, and sends its plaintext ballots. The ballots are encrypted in parallel
+ * on a shared pool of nthreads. Their codes are chained, and they are cast or spoiled, in the order they were sent,
+ * and one response is streamed back for each, in the same order. The accepted ballots are appended to the
+ * encrypted ballots file as they are accepted, as in RunEncryptBallots, and a ballot's response is sent only once
+ * it is on disk, so a device never hears that a ballot was cast that a crash could lose.
+ * <p>
+ * At most maxInFlight ballots of a stream are requested from the client before their responses are sent, so a fast
+ * device waits on the server rather than filling its memory.
+ * <p>
+ * For command line help:
+ * <strong>
+ * <pre>
+ *  java -classpath electionguard-java-all.jar com.sunya.electionguard.workflow.EncryptionRemoteService --help
+ * </pre>
+ * </strong>
+ */
+public class EncryptionRemoteService extends EncryptionServiceGrpc.EncryptionServiceImplBase implements Closeable {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static class CommandLine {
+    @Parameter(names = {"-in"}, order = 0,
+            description = "Directory containing input election record", required = true)
+    String inputDir;
+
+    @Parameter(names = {"-out"}, order = 1,
+            description = "Directory to write output election record", required = true)
+    String encryptDir;
+
+    @Parameter(names = {"-port"}, order = 2, description = "This EncryptionRemoteService port")
+    int port = 17811;
+
+    @Parameter(names = {"-precompute"}, order = 3,
+            description = "File of precomputed tables, written by RunPrecompute")
+    String precomputeFile;
+
+    @Parameter(names = {"-nthreads"}, order = 4,
+            description = "Number of threads to encrypt ballots in parallel")
+    int nthreads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = {"-maxInFlight"}, order = 4,
+            description = "Maximum number of ballots of one stream being encrypted at once")
+    int maxInFlight = 0;
+
+    @Parameter(names = {"-groupCommit"}, order = 4,
+            description = "Sync the encrypted ballots to disk after this many ballots")
+    int groupCommit = 100;
+
+    @Parameter(names = {"-groupCommitMillis"}, order = 4,
+            description = "Sync the encrypted ballots to disk at least this often")
+    long groupCommitMillis = 1000;
+
+    @Parameter(names = {"-resume"}, order = 4,
+            description = "Append to the encrypted ballots already in the output directory, instead of replacing them")
+    boolean resume = false;
+
+    @Parameter(names = {"-verify"}, order = 4,
+            description = "When to check the proofs of the encrypted ballots: SYNC, ASYNC or SAMPLED")
+    VerificationPolicy.Mode verify = VerificationPolicy.Mode.SYNC;
+
+    @Parameter(names = {"-verifyFraction"}, order = 4,
+            description = "Fraction of the ballots to check, when -verify SAMPLED")
+    double verifyFraction = 0.1;
+
+    @Parameter(names = {"-h", "--help"}, order = 9, description = "Display this help and exit", help = true)
+    boolean help = false;
+
+    private final JCommander jc;
+
+    CommandLine(String progName, String[] args) throws ParameterException {
+      this.jc = new JCommander(this);
+      this.jc.parse(args);
+      jc.setProgramName(String.format("java -classpath electionguard-java-all.jar %s", progName));
+    }
+
+    void printUsage() {
+      jc.usage();
+    }
+  }
+
+  public static void main(String[] args) {
+    String progName = EncryptionRemoteService.class.getName();
+    CommandLine cmdLine = null;
+
+    try {
+      cmdLine = new CommandLine(progName, args);
+      if (cmdLine.help) {
+        cmdLine.printUsage();
+        return;
+      }
+    } catch (ParameterException e) {
+      System.err.println(e.getMessage());
+      System.err.printf("Try '%s --help' for more information.%n", progName);
+      System.exit(1);
+    }
+
+    try {
+      if (cmdLine.precomputeFile != null && !Precomputed.load(cmdLine.precomputeFile)) {
+        System.out.printf("*** Precomputed tables in %s were not used, see the log%n", cmdLine.precomputeFile);
+      }
+      Consumer consumer = new Consumer(cmdLine.inputDir);
+      ElectionRecord electionRecord = consumer.readElectionRecord();
+      ElectionInitialized electionInit = consumer.readElectionInitialized();
+      ManifestInputValidation validator = new ManifestInputValidation(electionRecord.manifest());
+      Formatter errors = new Formatter();
+      if (!validator.validateElection(errors)) {
+        System.out.printf("*** ElectionInputValidation FAILED on %s%n%s", cmdLine.inputDir, errors);
+        System.exit(1);
+      }
+
+      Publisher publisher = new Publisher(cmdLine.encryptDir, Publisher.Mode.createIfMissing);
+      publisher.writeElectionInitialized(electionInit);
+      VerificationPolicy verification = switch (cmdLine.verify) {
+        case SYNC -> VerificationPolicy.sync();
+        case ASYNC -> VerificationPolicy.async(Math.max(1, cmdLine.nthreads / 2),
+                ballot -> System.out.printf("***Verification failed %s%n", ballot.object_id()));
+        case SAMPLED -> VerificationPolicy.sampled(cmdLine.verifyFraction);
+      };
+      SubmittedBallotWriter ballotWriter = publisher.openSubmittedBallotWriter(cmdLine.groupCommit, cmdLine.groupCommitMillis, cmdLine.resume);
+      int maxInFlight = cmdLine.maxInFlight > 0 ? cmdLine.maxInFlight : 2 * Math.max(1, cmdLine.nthreads);
+      System.out.printf("*** EncryptionRemoteService read context from %s, write to %s%n", cmdLine.inputDir, cmdLine.encryptDir);
+
+      // the devices continue their chains of ballot codes from the ballots already in the file
+      Map<Group.ElementModQ, Group.ElementModQ> chainTails = ballotWriter.recovered().size() == 0 ? Map.of() :
+              chainTails(new Consumer(cmdLine.encryptDir).iterateSubmittedBallots(BallotProjection.CODES));
+      EncryptionRemoteService service = new EncryptionRemoteService(electionRecord, ballotWriter, chainTails,
+              cmdLine.nthreads, maxInFlight, verification);
+      service.start(cmdLine.port);
+      service.blockUntilShutdown();
+      System.exit(0);
+
+    } catch (Throwable t) {
+      System.out.printf("*** EncryptionRemoteService FAILURE%n");
+      t.printStackTrace();
+      System.exit(3);
+    }
+  }
+
+  ///////////////////////////////////////////////////////////////////////////
+  private Server server;
+
+  private void start(int port) throws IOException {
+    server = ServerBuilder.forPort(port) //
+            .addService(this) //
+            .build().start();
+
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      // Use stderr here since the logger may have been reset by its JVM shutdown hook.
+      System.err.println("*** shutting down gRPC server since JVM is shutting down");
+      try {
+        stopit();
+      } catch (InterruptedException e) {
+        e.printStackTrace(System.err);
+      }
+      System.err.println("*** server shut down");
+    }));
+
+    System.out.printf("---- EncryptionRemoteService started, listening on %d ----%n", port);
+  }
+
+  // The accepted ballots must be synced to disk before the JVM exits.
+  private void stopit() throws InterruptedException {
+    if (server != null) {
+      server.shutdown().awaitTermination(30, TimeUnit.SECONDS);
+    }
+    close();
+    System.err.printf("*** %s%n", verification);
+  }
+
+  /** Await termination on the main thread since the grpc library uses daemon threads. */
+  private void blockUntilShutdown() throws InterruptedException {
+    if (server != null) {
+      server.awaitTermination();
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////
+  private final ElectionRecord electionRecord;
+  private final InternalManifest internalManifest;
+  private final BallotInputValidation ballotValidator;
+  private final SubmittedBallotWriter ballotWriter;
+  private final VerificationPolicy verification;
+  private final ListeningExecutorService encryptService;
+  // sends the responses of the ballots that the ballotWriter made durable, off the writer's thread
+  private final ExecutorService respondService;
+  private final int maxInFlight;
+  private final Map<String, Encrypt.EncryptionMediator> mediators = new ConcurrentHashMap<>();
+  private final Map<Group.ElementModQ, Group.ElementModQ> chainTails; // see chainTails()
+  private final Set<EncryptBallotsCall> calls = ConcurrentHashMap.newKeySet(); // the streams not yet finished
+
+  // The BallotBox and the ballotWriter are not thread-safe, and a ballot is chained only if it is accepted.
+  private final Object acceptLock = new Object();
+  private final BallotBox ballotBox;
+
+  /**
+   * @param ballotWriter the accepted ballots are appended to it. Closed by close().
+   * @param nthreads number of threads to encrypt ballots in parallel, shared by all the streams.
+   * @param maxInFlight maximum number of ballots of one stream being encrypted at once.
+   * @param verification when to check the proofs of the encrypted ballots. Closed by close().
+   */
+  EncryptionRemoteService(ElectionRecord electionRecord, SubmittedBallotWriter ballotWriter,
+                          int nthreads, int maxInFlight, VerificationPolicy verification) {
+    this(electionRecord, ballotWriter, Map.of(), nthreads, maxInFlight, verification);
+  }
+
+  /**
+   * @param chainTails the last ballot code of each chain in the ballots the ballotWriter recovered, see chainTails().
+   */
+  EncryptionRemoteService(ElectionRecord electionRecord, SubmittedBallotWriter ballotWriter,
+                          Map<Group.ElementModQ, Group.ElementModQ> chainTails,
+                          int nthreads, int maxInFlight, VerificationPolicy verification) {
+    this.electionRecord = electionRecord;
+    this.chainTails = Map.copyOf(chainTails);
+    this.internalManifest = new InternalManifest(electionRecord.manifest());
+    this.ballotValidator = new BallotInputValidation(electionRecord.manifest());
+    this.ballotWriter = ballotWriter;
+    this.verification = verification;
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.encryptService = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(Math.max(1, nthreads),
+            new ThreadFactoryBuilder().setNameFormat("encrypt-%d").setDaemon(true).build()));
+    this.respondService = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("encrypt-respond-%d").setDaemon(true).build());
+
+    // the accepted ballots go to the ballotWriter, the BallotBox only keeps their ids
+    this.ballotBox = new BallotBox(electionRecord.manifest(), electionRecord, this::appendBallot,
+            Iterables.transform(ballotWriter.recovered().entries(), SubmittedBallotIndex.Entry::ballotId));
+  }
+
+  private void appendBallot(SubmittedBallot ballot) {
+    try {
+      ballotWriter.append(ballot);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // Warm: made on the first stream of the device, and reused by its later streams.
+  private Encrypt.EncryptionMediator mediator(String deviceName) {
+    return mediators.computeIfAbsent(deviceName, name -> {
+      logger.atInfo().log("EncryptionRemoteService new device '%s'", name);
+      Encrypt.EncryptionDevice device = Encrypt.createDeviceForTest(name);
+      Encrypt.EncryptionMediator mediator = new Encrypt.EncryptionMediator(internalManifest, electionRecord, device,
+              false, verification);
+      Group.ElementModQ tail = chainTails.get(device.get_hash());
+      if (tail != null) { // the device has ballots from before a restart
+        mediator.continueChainFrom(tail);
+      }
+      return mediator;
+    });
+  }
+
+  /**
+   * Find where each chain of ballot codes ends. A device's chain starts with a ballot whose code_seed is the device
+   * hash, and each of its later ballots has the code of the one before as its code_seed. The ballots of a device are
+   * in the order they were chained, but may be mixed in with the ballots of other devices.
+   * Only the ends are kept, not the whole chains.
+   * @return map from the start of each chain, ie the device hash, to the code of its last ballot.
+   */
+  static Map<Group.ElementModQ, Group.ElementModQ> chainTails(Iterable<SubmittedBallot> ballots) {
+    Map<Group.ElementModQ, Group.ElementModQ> startOfTail = new HashMap<>(); // last code -> start of its chain
+    for (SubmittedBallot ballot : ballots) {
+      Group.ElementModQ start = startOfTail.remove(ballot.code_seed);
+      startOfTail.put(ballot.code, start != null ? start : ballot.code_seed);
+    }
+    Map<Group.ElementModQ, Group.ElementModQ> result = new HashMap<>();
+    startOfTail.forEach((tail, start) -> result.put(start, tail));
+    return result;
+  }
+
+  /**
+   * Stops encrypting, and gives the ballots not yet encrypted an error response. Then syncs and closes the
+   * ballotWriter, sends the responses of the ballots it made durable, which finishes the streams,
+   * and closes the VerificationPolicy.
+   */
+  @Override
+  public void close() {
+    // the futures of the encryptions that had not started are never completed, so fail them here
+    encryptService.shutdownNow();
+    for (EncryptBallotsCall call : calls) {
+      call.shutdown();
+    }
+    synchronized (acceptLock) {
+      try {
+        ballotWriter.close();
+      } catch (IOException e) {
+        logger.atSevere().withCause(e).log("EncryptionRemoteService close ballotWriter failed");
+      }
+    }
+    respondService.shutdown();
+    try {
+      if (!respondService.awaitTermination(30, TimeUnit.SECONDS)) {
+        logger.atWarning().log("EncryptionRemoteService close: responses not sent");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    verification.close();
+  }
+
+  @Override
+  public StreamObserver<EncryptionProto.EncryptBallotRequest> encryptBallots(
+          StreamObserver<EncryptionProto.EncryptBallotResponse> responseObserver) {
+    return new EncryptBallotsCall(responseObserver);
+  }
+
+  private record Pending(String ballotId, boolean spoil, Encrypt.EncryptionMediator mediator,
+                         ListenableFuture<Optional<CiphertextBallot>> encrypted) {}
+
+  // a ballot that was chained and cast or spoiled, or failed; its response waits until durable is done.
+  // durableCount is the ballotWriter.appended() count that makes it durable, 0 if it was not appended.
+  private record Ready(EncryptionProto.EncryptBallotResponse response, long durableCount, ListenableFuture<Void> durable) {}
+
+  /** One encryptBallots stream. The responses are sent in request order, from whichever thread completes them. */
+  private class EncryptBallotsCall implements StreamObserver<EncryptionProto.EncryptBallotRequest> {
+    private final StreamObserver<EncryptionProto.EncryptBallotResponse> responseObserver;
+    @Nullable private final ServerCallStreamObserver<EncryptionProto.EncryptBallotResponse> flowControl;
+
+    // guarded by this
+    private final Deque<Pending> pending = new ArrayDeque<>(); // being encrypted, in request order
+    private final Deque<Ready> ready = new ArrayDeque<>(); // waiting to be durable, in request order
+    private Encrypt.EncryptionMediator mediator;
+    private int requested = 0;
+    private long syncRequested = 0;
+    private boolean inputDone = false;
+    private boolean shutdown = false;
+    private boolean finished = false;
+
+    EncryptBallotsCall(StreamObserver<EncryptionProto.EncryptBallotResponse> responseObserver) {
+      this.responseObserver = responseObserver;
+      calls.add(this);
+      // Back-pressure: ask for more ballots only while there are fewer than maxInFlight without a response, and the
+      // client is reading the responses. Otherwise (eg in tests) gRPC asks for the ballots as they come.
+      if (responseObserver instanceof ServerCallStreamObserver<EncryptionProto.EncryptBallotResponse> call) {
+        this.flowControl = call;
+        call.disableAutoRequest();
+        call.setOnReadyHandler(this::requestMore);
+        call.setOnCancelHandler(() -> onError(new IllegalStateException("cancelled by client")));
+      } else {
+        this.flowControl = null;
+      }
+    }
+
+    private synchronized void requestMore() {
+      if (flowControl == null || finished || inputDone || !flowControl.isReady()) {
+        return;
+      }
+      int want = maxInFlight - pending.size() - ready.size() - requested;
+      if (want > 0) {
+        requested += want;
+        flowControl.request(want);
+      }
+    }
+
+    @Override
+    public void onNext(EncryptionProto.EncryptBallotRequest request) {
+      String ballotId = request.getBallot().getBallotId();
+      Encrypt.EncryptionMediator useMediator;
+      ListenableFuture<Optional<CiphertextBallot>> encrypted;
+      synchronized (this) {
+        if (mediator == null && !request.getDeviceName().isEmpty()) {
+          mediator = mediator(request.getDeviceName());
+        }
+        useMediator = mediator;
+      }
+      try {
+        if (useMediator == null) {
+          throw new IllegalArgumentException("device_name is required on the first request");
+        }
+        PlaintextBallot ballot = PlaintextBallotFromProto.translateFromProto(request.getBallot());
+        Formatter problems = new Formatter();
+        if (!ballotValidator.validateBallot(ballot, problems)) {
+          throw new IllegalArgumentException(String.format("Ballot %s failed validation: %s", ballotId, problems));
+        }
+        encrypted = encryptService.submit(() -> useMediator.encryptUnchained(ballot));
+      } catch (Throwable t) {
+        logger.atWarning().withCause(t).log("EncryptionRemoteService encryptBallots %s failed", ballotId);
+        encrypted = Futures.immediateFailedFuture(t);
+      }
+
+      // the ballot stops counting as requested only once it counts as pending, so requestMore() never sees too few
+      synchronized (this) {
+        requested = Math.max(0, requested - 1);
+        if (finished) {
+          encrypted.cancel(false);
+          return;
+        }
+        if (shutdown) {
+          encrypted.cancel(false);
+          encrypted = Futures.immediateFailedFuture(new IllegalStateException("EncryptionRemoteService is shutting down"));
+        }
+        pending.addLast(new Pending(ballotId, request.getSpoil(), useMediator, encrypted));
+      }
+      encrypted.addListener(this::drain, MoreExecutors.directExecutor());
+    }
+
+    // The service is closing: fail the ballots not yet encrypted, and take no more. The stream finishes
+    // when the ballots already accepted are durable.
+    private void shutdown() {
+      List<Pending> cancelled = new ArrayList<>();
+      synchronized (this) {
+        if (finished) {
+          return;
+        }
+        shutdown = true;
+        inputDone = true;
+        cancelled.addAll(pending);
+        pending.clear();
+        for (Pending p : cancelled) {
+          pending.addLast(new Pending(p.ballotId(), p.spoil(), p.mediator(),
+                  Futures.immediateFailedFuture(new IllegalStateException("EncryptionRemoteService is shutting down"))));
+        }
+      }
+      // their listeners call drain(), which no longer sees them
+      cancelled.forEach(p -> p.encrypted().cancel(false));
+      drain();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      synchronized (this) {
+        if (finished) {
+          return;
+        }
+        finished = true;
+        calls.remove(this);
+        logger.atWarning().withCause(t).log("EncryptionRemoteService encryptBallots stream failed, %d ballots not accepted" +
+                " and %d responses not sent", pending.size(), ready.size());
+        pending.forEach(p -> p.encrypted().cancel(false));
+        pending.clear();
+        ready.clear();
+      }
+    }
+
+    @Override
+    public void onCompleted() {
+      synchronized (this) {
+        inputDone = true;
+      }
+      drain();
+    }
+
+    // Chain and accept the encrypted ballots at the head of the queue, and send the responses of the ones that are
+    // durable; the rest wait for their turn. May be called again from inside itself, by a listener of a future that
+    // just completed, so the state is checked again at each step.
+    private synchronized void drain() {
+      try {
+        boolean progress = true;
+        while (progress && !finished) {
+          progress = false;
+          if (!pending.isEmpty() && pending.peekFirst().encrypted().isDone()) {
+            Ready next = chainAndCastOrSpoil(pending.removeFirst());
+            ready.addLast(next);
+            if (!next.durable().isDone()) {
+              next.durable().addListener(this::drain, respondService);
+            }
+            progress = true;
+          } else if (!ready.isEmpty() && ready.peekFirst().durable().isDone()) {
+            responseObserver.onNext(response(ready.removeFirst()));
+            progress = true;
+          }
+        }
+        if (finished) {
+          return;
+        }
+        if (inputDone && pending.isEmpty() && ready.isEmpty()) {
+          finished = true;
+          calls.remove(this);
+          responseObserver.onCompleted();
+          return;
+        }
+        // nothing more of this stream is being encrypted, so don't wait for the rest of the group to fill up
+        Ready last = ready.peekLast();
+        if (pending.isEmpty() && last != null && last.durableCount() > syncRequested) {
+          syncRequested = last.durableCount();
+          requestSync();
+        }
+      } catch (RuntimeException e) {
+        // eg the client went away
+        onError(e);
+        return;
+      }
+      requestMore();
+    }
+
+    private EncryptionProto.EncryptBallotResponse response(Ready ready) {
+      try {
+        Futures.getDone(ready.durable());
+        return ready.response();
+      } catch (ExecutionException e) {
+        logger.atSevere().withCause(e.getCause()).log("EncryptionRemoteService ballot %s was not saved",
+                ready.response().getBallotId());
+        return EncryptionProto.EncryptBallotResponse.newBuilder()
+                .setBallotId(ready.response().getBallotId())
+                .setError(String.format("Ballot %s was accepted but could not be saved", ready.response().getBallotId()))
+                .build();
+      }
+    }
+
+    private Ready chainAndCastOrSpoil(Pending pending) {
+      EncryptionProto.EncryptBallotResponse.Builder response = EncryptionProto.EncryptBallotResponse.newBuilder()
+              .setBallotId(pending.ballotId());
+      try {
+        Optional<CiphertextBallot> encrypted = Futures.getDone(pending.encrypted());
+        if (encrypted.isEmpty()) {
+          response.setError(String.format("Ballot %s failed encryption", pending.ballotId()));
+          return notAppended(response);
+        }
+        Optional<SubmittedBallot> accepted;
+        long durableCount = 0;
+        synchronized (acceptLock) {
+          CiphertextBallot chained = pending.mediator().chain(encrypted.get());
+          accepted = pending.spoil() ? ballotBox.spoil(chained) : ballotBox.cast(chained);
+          if (accepted.isEmpty()) {
+            // not in the election record, so the next ballot of the device chains to the one before
+            pending.mediator().continueChainFrom(chained.code_seed);
+          } else {
+            durableCount = ballotWriter.appended();
+          }
+        }
+        if (accepted.isEmpty()) {
+          response.setError(String.format("Ballot %s was not accepted, eg its id was already used", pending.ballotId()));
+          return notAppended(response);
+        }
+        response.setBallot(SubmittedBallotToProto.translateToProto(accepted.get()));
+        return new Ready(response.build(), durableCount, ballotWriter.whenDurable(durableCount));
+      } catch (Throwable t) {
+        Throwable cause = (t instanceof ExecutionException && t.getCause() != null) ? t.getCause() : t;
+        logger.atSevere().withCause(cause).log("EncryptionRemoteService encryptBallots %s failed", pending.ballotId());
+        String mess = cause.getMessage() != null ? cause.getMessage() : "Unknown";
+        response.setError(mess);
+        return notAppended(response);
+      }
+    }
+
+    private Ready notAppended(EncryptionProto.EncryptBallotResponse.Builder response) {
+      return new Ready(response.build(), 0, Futures.immediateVoidFuture());
+    }
+  }
+
+  private void requestSync() {
+    synchronized (acceptLock) {
+      try {
+        ballotWriter.requestSync();
+      } catch (IOException | IllegalStateException e) {
+        // the ballots waiting on it will fail, or be synced by close()
+        logger.atWarning().withCause(e).log("EncryptionRemoteService requestSync failed");
+      }
+    }
+  }
+}
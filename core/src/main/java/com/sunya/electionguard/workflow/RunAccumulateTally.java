@@ -3,26 +3,36 @@ package com.sunya.electionguard.workflow;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
+import com.google.common.collect.Iterators;
 import com.sunya.electionguard.CiphertextTally;
 import com.sunya.electionguard.CiphertextTallyBuilder;
 import com.sunya.electionguard.InternalManifest;
 import com.sunya.electionguard.Manifest;
+import com.sunya.electionguard.PartialTally;
 import com.sunya.electionguard.Scheduler;
+import com.sunya.electionguard.TallyCheckpoint;
 import com.sunya.electionguard.input.ManifestInputValidation;
+import com.sunya.electionguard.publish.BallotProjection;
 import com.sunya.electionguard.publish.Consumer;
 import com.sunya.electionguard.publish.Publisher;
 import com.sunya.electionguard.publish.ElectionRecord;
 import electionguard.ballot.ElectionInitialized;
 import electionguard.ballot.TallyResult;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.Formatter;
+import java.util.List;
+import java.util.Optional;
 
 import static java.util.Collections.emptyList;
 
 /**
  * A command line program to accumulate encrypted ballots.
  * Uses homomorphic encryption, does not use local Guardians.
+ * A checkpoint is written to the output directory periodically, and -resume continues from it.
+ * With -shard i/n, only every nth ballot is accumulated, and a partial tally is written, to be merged
+ * with the other shards by RunMergeTallies. The shards can share an output directory.
  * <p>
  * For command line help:
  * <strong>
@@ -32,6 +42,7 @@ import static java.util.Collections.emptyList;
  * </strong>
  */
 public class RunAccumulateTally {
+  private static final int DEFAULT_CHECKPOINT_EVERY = 10_000;
 
   private static class CommandLine {
     @Parameter(names = {"-in"}, order = 0,
@@ -42,7 +53,19 @@ public class RunAccumulateTally {
             description = "Directory where encrypted tally is published", required = true)
     String outputDir;
 
-    @Parameter(names = {"-h", "--help"},  order = 4, description = "Display this help and exit", help = true)
+    @Parameter(names = {"-resume"}, order = 4,
+            description = "Continue from the last checkpoint in the output directory")
+    boolean resume = false;
+
+    @Parameter(names = {"-checkpointEvery"}, order = 5,
+            description = "Write a checkpoint after every this many ballots, 0 for none")
+    int checkpointEvery = DEFAULT_CHECKPOINT_EVERY;
+
+    @Parameter(names = {"-shard"}, order = 6,
+            description = "Only accumulate shard i of n of the ballots, as i/n, and write a partial tally for RunMergeTallies")
+    String shard;
+
+    @Parameter(names = {"-h", "--help"},  order = 7, description = "Display this help and exit", help = true)
     boolean help = false;
 
     private final JCommander jc;
@@ -63,12 +86,16 @@ public class RunAccumulateTally {
     RunAccumulateTally decryptor;
     CommandLine cmdLine = null;
 
+    Shard shard = null;
     try {
       cmdLine = new CommandLine(progName, args);
       if (cmdLine.help) {
         cmdLine.printUsage();
         return;
       }
+      if (cmdLine.shard != null) {
+        shard = Shard.parse(cmdLine.shard);
+      }
     } catch (ParameterException e) {
       System.err.println(e.getMessage());
       System.err.printf("Try '%s --help' for more information.%n", progName);
@@ -92,8 +119,10 @@ public class RunAccumulateTally {
 
       System.out.printf(" AccumulateTally read from %s%n Write to %s%n", cmdLine.encryptDir, cmdLine.outputDir);
       decryptor = new RunAccumulateTally(consumer, electionRecord);
-      decryptor.accumulateTally();
-      boolean ok = decryptor.publish(cmdLine.encryptDir, cmdLine.outputDir, electionIntialized);
+      decryptor.accumulateTally(cmdLine.outputDir, cmdLine.resume, cmdLine.checkpointEvery, shard);
+      boolean ok = (shard == null) ?
+              decryptor.publish(cmdLine.encryptDir, cmdLine.outputDir, electionIntialized) :
+              decryptor.publishPartial(cmdLine.outputDir, shard);
       System.out.printf("*** AccumulateTally %s%n", ok ? "SUCCESS" : "FAILURE");
 
     } catch (Throwable t) {
@@ -106,12 +135,37 @@ public class RunAccumulateTally {
     }
   }
 
+  /** Shard i of n of the ballots, i in [1, n], has the ballots whose index in the ballot file is i-1 mod n. */
+  record Shard(int shard, int nshards) {
+    static Shard parse(String value) {
+      String[] tokens = value.split("/");
+      try {
+        if (tokens.length == 2) {
+          Shard result = new Shard(Integer.parseInt(tokens[0].trim()), Integer.parseInt(tokens[1].trim()));
+          if (result.nshards > 0 && result.shard > 0 && result.shard <= result.nshards) {
+            return result;
+          }
+        }
+      } catch (NumberFormatException e) {
+        // fall through
+      }
+      throw new ParameterException(String.format("-shard must be i/n with 1 <= i <= n, not '%s'", value));
+    }
+
+    boolean contains(long ballotIndex) {
+      return ballotIndex % nshards == shard - 1;
+    }
+  }
+
   ///////////////////////////////////////////////////////////////////////////
   final Consumer consumer;
   final ElectionRecord electionRecord;
   final Manifest election;
 
   CiphertextTally encryptedTally;
+  List<String> castBallotIds;
+  long ballotsFileLength;
+  long ballotsCount;
 
   public RunAccumulateTally(Consumer consumer, ElectionRecord electionRecord) {
     this.consumer = consumer;
@@ -120,13 +174,71 @@ public class RunAccumulateTally {
     System.out.printf("%nReady to accumulate%n");
   }
 
-  void accumulateTally() {
-    System.out.printf("%nAccumulate tally%n");
+  /**
+   * Accumulate the submitted ballots, writing a checkpoint to outputDir every checkpointEvery ballots.
+   * @param resume continue from the checkpoint in outputDir, if there is one.
+   * @param shard accumulate only this shard of the ballots, or all the ballots if null.
+   */
+  void accumulateTally(String outputDir, boolean resume, int checkpointEvery, @Nullable Shard shard) throws IOException {
+    System.out.printf("%nAccumulate tally%s%n", shard == null ? "" : String.format(" shard %d/%d", shard.shard, shard.nshards));
     InternalManifest manifest = new InternalManifest(electionRecord.manifest());
     CiphertextTallyBuilder ciphertextTally = new CiphertextTallyBuilder("accumulateTally", manifest, electionRecord);
-    int nballots = ciphertextTally.batch_append(electionRecord.submittedBallots());
+    Publisher publisher = new Publisher(outputDir, Publisher.Mode.createIfMissing);
+
+    long offset = 0;
+    long index = 0;
+    if (resume) {
+      Consumer checkpointConsumer = new Consumer(outputDir);
+      Optional<TallyCheckpoint> checkpoint = (shard == null) ? checkpointConsumer.readTallyCheckpoint() :
+              checkpointConsumer.readTallyCheckpoint(shard.shard, shard.nshards);
+      if (checkpoint.isPresent()) {
+        TallyCheckpoint last = checkpoint.get();
+        // seeking to its offset in some other ballots file would tally the wrong ballots
+        if (last.ballotsOffset() > 0 &&
+                !consumer.isSubmittedBallotRecord(last.lastBallotOffset(), last.ballotsOffset(), last.lastBallotId())) {
+          throw new IOException(String.format("The tally checkpoint in %s is not for these submitted ballots;" +
+                  " run without -resume to start over", outputDir));
+        }
+        ciphertextTally.resume(last);
+        offset = last.ballotsOffset();
+        index = last.ballotsIndex();
+        System.out.printf(" resume from checkpoint with %d ballots%n", last.castBallotIds().size());
+      } else {
+        System.out.printf(" no checkpoint in %s, start from the beginning%n", outputDir);
+      }
+    } else if (shard == null) {
+      publisher.deleteTallyCheckpoint(); // a checkpoint from an earlier run is not a start of this one
+    } else {
+      publisher.deleteTallyCheckpoint(shard.shard, shard.nshards);
+    }
+
+    // the ballots are appended in chunks, and a checkpoint is written after each chunk
+    int chunkSize = checkpointEvery > 0 ? checkpointEvery : Integer.MAX_VALUE;
+    int nballots = 0;
+    try (Consumer.SubmittedBallotIterator ballots = consumer.iterateSubmittedBallots(offset, index,
+            shard == null ? i -> true : shard::contains, BallotProjection.CIPHERTEXTS)) {
+      while (ballots.hasNext()) {
+        nballots += ciphertextTally.batch_append(() -> Iterators.limit(ballots, chunkSize));
+        if (checkpointEvery > 0 && ballots.hasNext()) {
+          TallyCheckpoint checkpoint = new TallyCheckpoint(ciphertextTally.build(),
+                  ciphertextTally.castBallotIdList(), ballots.offset(), ballots.index(),
+                  ballots.lastOffset(), ballots.lastBallotId());
+          if (shard == null) {
+            publisher.writeTallyCheckpoint(checkpoint);
+          } else {
+            publisher.writeTallyCheckpoint(checkpoint, shard.shard, shard.nshards);
+          }
+          System.out.printf(" checkpoint after %d ballots%n", ciphertextTally.castBallotIds().size());
+        }
+      }
+      // the whole file has been read, so that RunMergeTallies can check the shards all read the same one
+      this.ballotsFileLength = ballots.offset();
+      this.ballotsCount = ballots.index();
+    }
     this.encryptedTally = ciphertextTally.build();
+    this.castBallotIds = List.copyOf(ciphertextTally.castBallotIdList());
     System.out.printf(" done accumulating %d ballots in the tally%n", nballots);
+    System.out.printf(" %s%n", consumer.readCounter());
   }
 
   boolean publish(String inputDir, String publishDir, ElectionInitialized electionIntialized) throws IOException {
@@ -140,6 +252,15 @@ public class RunAccumulateTally {
     Publisher publisher = new Publisher(publishDir, Publisher.Mode.createIfMissing);
     publisher.writeTallyResult(tally);
     publisher.copyAcceptedBallots(inputDir);
+    publisher.deleteTallyCheckpoint();
+    return true;
+  }
+
+  boolean publishPartial(String publishDir, Shard shard) throws IOException {
+    Publisher publisher = new Publisher(publishDir, Publisher.Mode.createIfMissing);
+    publisher.writePartialTally(new PartialTally(this.encryptedTally, this.castBallotIds, shard.shard, shard.nshards,
+            this.ballotsFileLength, this.ballotsCount));
+    publisher.deleteTallyCheckpoint(shard.shard, shard.nshards);
     return true;
   }
 }
@@ -54,6 +54,10 @@ public class RunDecryptionRemote {
             description = "Directory where complete election record is published", required = true)
     String outputDir;
 
+    @Parameter(names = {"-precompute"}, order = 9,
+            description = "File of precomputed tables, written by RunPrecompute")
+    String precomputeFile;
+
     @Parameter(names = {"-h", "--help"}, order = 99, description = "Display this help and exit", help = true)
     boolean help = false;
 
@@ -95,14 +99,16 @@ public class RunDecryptionRemote {
     System.out.printf("%n4=============================================================%n");
     // DecryptBallots
     int navailable = cmdLine.navailable;
-    RunCommand decryptBallots = new RunCommand("DecryptingRemote", service,
+    List<String> precompute = (cmdLine.precomputeFile == null) ? List.of() : List.of("-precompute", cmdLine.precomputeFile);
+    List<String> mediatorArgs = new ArrayList<>(List.of(
             "java",
             "-classpath", classpath,
             "com.sunya.electionguard.decrypting.RunDecryptingMediator",
             "-in", cmdLine.encryptDir,
             "-out", cmdLine.outputDir,
-            "-navailable", Integer.toString(navailable)
-    );
+            "-navailable", Integer.toString(navailable)));
+    mediatorArgs.addAll(precompute);
+    RunCommand decryptBallots = new RunCommand("DecryptingRemote", service, mediatorArgs.toArray(new String[0]));
 
     running.add(decryptBallots);
     try {
@@ -119,11 +125,13 @@ public class RunDecryptionRemote {
       e.printStackTrace();
     }
     for (int i=1; i <= cmdLine.navailable; i++) {
-      RunCommand command = new RunCommand("DecryptingRemoteTrustee" + i, service,
+      List<String> trusteeArgs = new ArrayList<>(List.of(
               "java",
               "-classpath", classpath,
               "com.sunya.electionguard.decrypting.DecryptingRemoteTrustee",
-              "-trusteeFile", privatePublisher.trusteePath(REMOTE_TRUSTEE + i).toString() );
+              "-trusteeFile", privatePublisher.trusteePath(REMOTE_TRUSTEE + i).toString()));
+      trusteeArgs.addAll(precompute);
+      RunCommand command = new RunCommand("DecryptingRemoteTrustee" + i, service, trusteeArgs.toArray(new String[0]));
       running.add(command);
     }
 
@@ -3,6 +3,10 @@ package com.sunya.electionguard.workflow;
 import com.beust.jcommander.*;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sunya.electionguard.BallotBox;
 import com.sunya.electionguard.InternalManifest;
 import com.sunya.electionguard.SubmittedBallot;
@@ -11,20 +15,29 @@ import com.sunya.electionguard.CiphertextBallot;
 import com.sunya.electionguard.Manifest;
 import com.sunya.electionguard.Encrypt;
 import com.sunya.electionguard.PlaintextBallot;
+import com.sunya.electionguard.Precomputed;
+import com.sunya.electionguard.VerificationPolicy;
 import com.sunya.electionguard.input.ManifestInputValidation;
 import com.sunya.electionguard.publish.Consumer;
 import com.sunya.electionguard.publish.PrivateData;
 import com.sunya.electionguard.publish.Publisher;
+import com.sunya.electionguard.publish.SubmittedBallotIndex;
+import com.sunya.electionguard.publish.SubmittedBallotWriter;
 import com.sunya.electionguard.publish.ElectionRecord;
 import electionguard.ballot.ElectionInitialized;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Constructor;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Formatter;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -61,10 +74,38 @@ public class RunEncryptBallots {
             description = "Name of this device", required = true)
     String deviceName;
 
-    @Parameter(names = {"--save"}, order=6, description = "Save the original ballots for debugging", help = true)
+    @Parameter(names = {"-precompute"}, order=6,
+            description = "File of precomputed tables, written by RunPrecompute")
+    String precomputeFile;
+
+    @Parameter(names = {"-groupCommit"}, order=7,
+            description = "Sync the encrypted ballots to disk after this many ballots")
+    int groupCommit = 100;
+
+    @Parameter(names = {"-groupCommitMillis"}, order=8,
+            description = "Sync the encrypted ballots to disk at least this often")
+    long groupCommitMillis = 1000;
+
+    @Parameter(names = {"-resume"}, order=9,
+            description = "Append to the encrypted ballots already in the output directory, instead of replacing them")
+    boolean resume = false;
+
+    @Parameter(names = {"-nthreads"}, order=10,
+            description = "Number of threads to encrypt ballots in parallel")
+    int nthreads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = {"-verify"}, order=11,
+            description = "When to check the proofs of the encrypted ballots: SYNC, ASYNC or SAMPLED")
+    VerificationPolicy.Mode verify = VerificationPolicy.Mode.SYNC;
+
+    @Parameter(names = {"-verifyFraction"}, order=12,
+            description = "Fraction of the ballots to check, when -verify SAMPLED")
+    double verifyFraction = 0.1;
+
+    @Parameter(names = {"--save"}, order=13, description = "Save the original ballots for debugging", help = true)
     boolean save = false;
 
-    @Parameter(names = {"-h", "--help"}, order=7, description = "Display this help and exit", help = true)
+    @Parameter(names = {"-h", "--help"}, order=14, description = "Display this help and exit", help = true)
     boolean help = false;
 
     private final JCommander jc;
@@ -96,6 +137,9 @@ public class RunEncryptBallots {
       System.exit(1);
     }
 
+    if (cmdLine.precomputeFile != null && !Precomputed.load(cmdLine.precomputeFile)) {
+      System.out.printf("*** Precomputed tables in %s were not used, see the log%n", cmdLine.precomputeFile);
+    }
     Consumer consumer = new Consumer(cmdLine.inputDir);
     ElectionRecord electionRecord = consumer.readElectionRecord();
     ElectionInitialized electionInit = consumer.readElectionInitialized();
@@ -129,49 +173,72 @@ public class RunEncryptBallots {
       System.out.printf("   Generate %d random Ballots %n", cmdLine.nballots);
     }
     System.out.printf("   Write to %s%n", cmdLine.encryptDir);
-    RunEncryptBallots encryptor = new RunEncryptBallots(electionRecord, cmdLine.deviceName);
+    Publisher publisher = new Publisher(cmdLine.encryptDir, Publisher.Mode.createIfMissing);
     Stopwatch stopwatch = Stopwatch.createStarted();
 
+    // The ballots are appended to the encrypted ballots file as they are accepted. If the file exists, eg after a
+    // crash, it is appended to.
+    // The ballots are encrypted in parallel on nthreads. Their codes are chained, and they are cast or spoiled,
+    // in the order they are read, on this thread. At most 2 * nthreads ballots are waiting to be chained.
+    RunEncryptBallots encryptor = null;
+    VerificationPolicy verification = switch (cmdLine.verify) {
+      case SYNC -> VerificationPolicy.sync();
+      case ASYNC -> VerificationPolicy.async(Math.max(1, cmdLine.nthreads / 2),
+              ballot -> System.out.printf("***Verification failed %s%n", ballot.object_id()));
+      case SAMPLED -> VerificationPolicy.sampled(cmdLine.verifyFraction);
+    };
     BallotInputValidation ballotValidator = new BallotInputValidation(electionRecord.manifest());
     List<PlaintextBallot> originalBallots = new ArrayList<>();
     List<PlaintextBallot> invalidBallots = new ArrayList<>();
-    try {
+    try (SubmittedBallotWriter ballotWriter =
+                 publisher.openSubmittedBallotWriter(cmdLine.groupCommit, cmdLine.groupCommitMillis, cmdLine.resume)) {
+      encryptor = new RunEncryptBallots(electionRecord, cmdLine.deviceName, ballotWriter, cmdLine.nthreads, verification);
+      int maxPending = 2 * Math.max(1, cmdLine.nthreads);
+      Deque<ListenableFuture<Optional<CiphertextBallot>>> pending = new ArrayDeque<>();
       for (PlaintextBallot ballot : ballotProvider.ballots()) {
         Formatter problems = new Formatter();
         if (ballotValidator.validateBallot(ballot, problems)) {
-          Optional<CiphertextBallot> encrypted_ballot = encryptor.encryptBallot(ballot);
-          if (encrypted_ballot.isPresent()) {
-            Optional<SubmittedBallot> accepted = encryptor.castOrSpoil(encrypted_ballot.get(), random.nextBoolean());
-            if (accepted.isEmpty()) {
-              System.out.printf("***castOrSpoil failed%n");
-            } else {
-              System.out.printf("***castOrSpoil success %s%n", encrypted_ballot.get().ballotId);
-            }
-          } else {
-            System.out.printf("***Encryption failed%n");
+          if (pending.size() >= maxPending) {
+            encryptor.chainAndCastOrSpoil(pending.removeFirst());
+          }
+          pending.addLast(encryptor.encryptBallotAsync(ballot));
+          if (cmdLine.save) { // else dont hold every ballot in memory
+            originalBallots.add(ballot);
           }
-          originalBallots.add(ballot);
         } else {
           System.out.printf("Ballot %s failed validation%n   %s%n", ballot.object_id(), problems);
           invalidBallots.add(ballot);
         }
       }
+      while (!pending.isEmpty()) {
+        encryptor.chainAndCastOrSpoil(pending.removeFirst());
+      }
     } catch (Throwable t) {
       t.printStackTrace();
       System.exit(4);
+    } finally {
+      if (encryptor != null) {
+        encryptor.encryptService.shutdownNow();
+      }
+      verification.close();
     }
     long msecs = stopwatch.elapsed(TimeUnit.MILLISECONDS);
     double secsPer = (.001 * msecs) / cmdLine.nballots;
     System.out.printf("*** encryptBallots elapsed = %d sec %.3f per ballot%n", stopwatch.elapsed(TimeUnit.SECONDS), secsPer);
+    System.out.printf("   %s%n", verification);
 
     try {
       // publish
-      Publisher publish = encryptor.publish(cmdLine.encryptDir, electionInit);
+      encryptor.publish(publisher, electionInit);
       encryptor.saveInvalidBallots(cmdLine.encryptDir, invalidBallots);
       if (cmdLine.save) {
         encryptor.saveOriginalBallots(cmdLine.encryptDir, originalBallots);
       }
-      boolean ok = true;
+      // the ballots that failed the background check have already been written
+      boolean ok = verification.quarantined().isEmpty();
+      if (!ok) {
+        System.out.printf("*** %d ballots failed verification: %s%n", verification.quarantined().size(), verification.quarantined());
+      }
 
       System.out.printf("*** EncryptBallots %s%n", ok ? "SUCCESS" : "FAILURE");
 
@@ -200,49 +267,94 @@ public class RunEncryptBallots {
   final int quorum;
 
   int originalBallotsCount = 0;
+  int ncast = 0;
+  int nspoiled = 0;
   Encrypt.EncryptionDevice device;
   Encrypt.EncryptionMediator encryptor;
   BallotBox ballotBox;
+  final SubmittedBallotWriter ballotWriter;
+  final ListeningExecutorService encryptService;
 
-  public RunEncryptBallots(ElectionRecord electionRecord, String deviceName) {
+  public RunEncryptBallots(ElectionRecord electionRecord, String deviceName, SubmittedBallotWriter ballotWriter,
+                           int nthreads, VerificationPolicy verification) {
     this.electionRecord = electionRecord;
     this.quorum = electionRecord.quorum();
     this.numberOfGuardians = electionRecord.numberOfGuardians();
+    this.ballotWriter = ballotWriter;
+    // daemon threads, since main() may be called in-process, eg from RunRemoteWorkflowSimulated
+    this.encryptService = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(Math.max(1, nthreads),
+            new ThreadFactoryBuilder().setNameFormat("encrypt-%d").setDaemon(true).build()));
 
     // Configure the Encryption Device
     InternalManifest metadata = new InternalManifest(electionRecord.manifest());
     this.device = Encrypt.createDeviceForTest(deviceName);
-    this.encryptor = new Encrypt.EncryptionMediator(metadata, electionRecord, this.device);
-
-    this.ballotBox = new BallotBox(electionRecord.manifest(), electionRecord);
+    this.encryptor = new Encrypt.EncryptionMediator(metadata, electionRecord, this.device, false, verification);
+
+    // the accepted ballots go to the ballotWriter, the BallotBox only keeps their ids
+    List<SubmittedBallotIndex.Entry> recovered = ballotWriter.recovered().entries();
+    this.ballotBox = new BallotBox(electionRecord.manifest(), electionRecord, this::appendBallot,
+            Iterables.transform(recovered, SubmittedBallotIndex.Entry::ballotId));
+    if (!recovered.isEmpty()) {
+      this.encryptor.continueChainFrom(recovered.get(recovered.size() - 1).code());
+      System.out.printf(" Continue after %d ballots already in the encrypted ballots file%n", recovered.size());
+    }
     System.out.printf("%nReady to encrypt with device: '%s'%n", this.device.location());
   }
 
-  Optional<CiphertextBallot> encryptBallot(PlaintextBallot plaintextBallot) {
+  private void appendBallot(SubmittedBallot ballot) {
+    try {
+      ballotWriter.append(ballot);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // Encrypt on the encryptService; the code is chained later, by chainAndCastOrSpoil().
+  ListenableFuture<Optional<CiphertextBallot>> encryptBallotAsync(PlaintextBallot plaintextBallot) {
     originalBallotsCount++;
-    return this.encryptor.encrypt(plaintextBallot);
+    return encryptService.submit(() -> this.encryptor.encryptUnchained(plaintextBallot));
+  }
+
+  // Must be called in the order the ballots were submitted to encryptBallotAsync(), which is the order of the chain.
+  void chainAndCastOrSpoil(ListenableFuture<Optional<CiphertextBallot>> encrypted) throws InterruptedException {
+    Optional<CiphertextBallot> encrypted_ballot;
+    try {
+      encrypted_ballot = encrypted.get();
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+    if (encrypted_ballot.isPresent()) {
+      CiphertextBallot chained = this.encryptor.chain(encrypted_ballot.get());
+      Optional<SubmittedBallot> accepted = castOrSpoil(chained, random.nextBoolean());
+      if (accepted.isEmpty()) {
+        System.out.printf("***castOrSpoil failed%n");
+      } else {
+        System.out.printf("***castOrSpoil success %s%n", chained.ballotId);
+      }
+    } else {
+      System.out.printf("***Encryption failed%n");
+    }
   }
 
   // Accept each ballot by marking it as either cast or spoiled.
   Optional<SubmittedBallot> castOrSpoil(CiphertextBallot ballot, boolean spoil) {
-    if (spoil) {
-      return this.ballotBox.spoil(ballot);
-    } else {
-      return this.ballotBox.cast(ballot);
+    Optional<SubmittedBallot> result = spoil ? this.ballotBox.spoil(ballot) : this.ballotBox.cast(ballot);
+    if (result.isPresent()) {
+      if (spoil) {
+        nspoiled++;
+      } else {
+        ncast++;
+      }
     }
+    return result;
   }
 
-  Publisher publish(String publishDir, ElectionInitialized electionInit) throws IOException {
-    int ncast = Iterables.size(this.ballotBox.getCastBallots());
-    int nspoiled = Iterables.size(this.ballotBox.getSpoiledBallots());
+  // the ballots have already been written by the ballotWriter
+  void publish(Publisher publisher, ElectionInitialized electionInit) throws IOException {
     int failed = originalBallotsCount - ncast - nspoiled;
     System.out.printf("%nPublish cast = %d spoiled = %d failed = %d total = %d%n%n",
             ncast, nspoiled, failed, originalBallotsCount);
-
-    Publisher publisher = new Publisher(publishDir, Publisher.Mode.createIfMissing);
     publisher.writeElectionInitialized(electionInit);
-    publisher.writeSubmittedBallots(this.ballotBox.getAllBallots());
-    return publisher;
   }
 
   void saveOriginalBallots(String outputDir, List<PlaintextBallot> ballots) throws IOException {
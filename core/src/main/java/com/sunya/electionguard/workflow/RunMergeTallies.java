@@ -0,0 +1,189 @@
+package com.sunya.electionguard.workflow;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.sunya.electionguard.BallotBox;
+import com.sunya.electionguard.CiphertextTally;
+import com.sunya.electionguard.CiphertextTallyBuilder;
+import com.sunya.electionguard.InternalManifest;
+import com.sunya.electionguard.PartialTally;
+import com.sunya.electionguard.publish.Consumer;
+import com.sunya.electionguard.publish.ElectionRecord;
+import com.sunya.electionguard.publish.Publisher;
+import com.sunya.electionguard.publish.SubmittedBallotIndex;
+import electionguard.ballot.ElectionInitialized;
+import electionguard.ballot.TallyResult;
+
+import java.io.IOException;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+
+/**
+ * A command line program to merge the partial tallies written by RunAccumulateTally -shard i/n
+ * into the encrypted tally of all the ballots.
+ * <p>
+ * For command line help:
+ * <strong>
+ * <pre>
+ *  java -classpath electionguard-java-all.jar com.sunya.electionguard.workflow.RunMergeTallies --help
+ * </pre>
+ * </strong>
+ */
+public class RunMergeTallies {
+
+  private static class CommandLine {
+    @Parameter(names = {"-in"}, order = 0,
+            description = "Directory containing input election record and ballot encryptions", required = true)
+    String encryptDir;
+
+    @Parameter(names = {"-partials"}, order = 1,
+            description = "Directory containing the partial tallies of all the shards", required = true)
+    String partialsDir;
+
+    @Parameter(names = {"-out"}, order = 2,
+            description = "Directory where encrypted tally is published", required = true)
+    String outputDir;
+
+    @Parameter(names = {"-h", "--help"}, order = 3, description = "Display this help and exit", help = true)
+    boolean help = false;
+
+    private final JCommander jc;
+
+    public CommandLine(String progName, String[] args) throws ParameterException {
+      this.jc = new JCommander(this);
+      this.jc.parse(args);
+      jc.setProgramName(String.format("java -classpath electionguard-java-all.jar %s", progName));
+    }
+
+    public void printUsage() {
+      jc.usage();
+    }
+  }
+
+  public static void main(String[] args) {
+    String progName = RunMergeTallies.class.getName();
+    CommandLine cmdLine = null;
+
+    try {
+      cmdLine = new CommandLine(progName, args);
+      if (cmdLine.help) {
+        cmdLine.printUsage();
+        return;
+      }
+    } catch (ParameterException e) {
+      System.err.println(e.getMessage());
+      System.err.printf("Try '%s --help' for more information.%n", progName);
+      System.exit(1);
+    }
+
+    try {
+      Consumer consumer = new Consumer(cmdLine.encryptDir);
+      ElectionRecord electionRecord = consumer.readElectionRecord();
+      ElectionInitialized electionIntialized = consumer.readElectionInitialized();
+      List<PartialTally> partials = new Consumer(cmdLine.partialsDir).readPartialTallies();
+
+      Formatter errors = new Formatter();
+      if (!validatePartials(partials, consumer.readSubmittedBallotIndex(), errors)) {
+        System.out.printf("*** MergeTallies FAILED on %s%n%s", cmdLine.partialsDir, errors);
+        System.exit(1);
+      }
+
+      System.out.printf(" MergeTallies %d partial tallies from %s%n Write to %s%n",
+              partials.size(), cmdLine.partialsDir, cmdLine.outputDir);
+      CiphertextTally tally = merge(electionRecord, partials);
+      publish(cmdLine.encryptDir, cmdLine.outputDir, electionIntialized, tally);
+      System.out.printf("*** MergeTallies SUCCESS%n");
+
+    } catch (Throwable t) {
+      System.out.printf("*** MergeTallies FAILURE%n");
+      t.printStackTrace();
+      System.exit(4);
+    }
+  }
+
+  /**
+   * There must be exactly one partial tally for each of the shards 1..n, and no ballot may be in more than one of them.
+   * The shards must all have read the submitted ballots file in ballots, and between them have all of its cast ballots.
+   * partials is sorted by shard.
+   */
+  static boolean validatePartials(List<PartialTally> partials, SubmittedBallotIndex ballots, Formatter errors) {
+    if (partials.isEmpty()) {
+      errors.format("  No partial tallies found%n");
+      return false;
+    }
+    int nshards = partials.get(0).nshards();
+    boolean ok = true;
+    for (PartialTally partial : partials) {
+      if (partial.nshards() != nshards) {
+        errors.format("  Partial tally %d/%d does not have %d shards%n", partial.shard(), partial.nshards(), nshards);
+        ok = false;
+      }
+    }
+    if (ok && partials.size() != nshards) {
+      errors.format("  Have %d partial tallies, need %d%n", partials.size(), nshards);
+      ok = false;
+    }
+    for (int i = 0; ok && i < partials.size(); i++) {
+      if (partials.get(i).shard() != i + 1) {
+        errors.format("  Missing partial tally %d/%d%n", i + 1, nshards);
+        ok = false;
+      }
+    }
+    for (PartialTally partial : partials) {
+      if (partial.ballotsFileLength() != ballots.fileLength() || partial.ballotsCount() != ballots.size()) {
+        errors.format("  Partial tally %d/%d read %d ballots in %d bytes, the ballots file has %d in %d bytes%n",
+                partial.shard(), partial.nshards(), partial.ballotsCount(), partial.ballotsFileLength(),
+                ballots.size(), ballots.fileLength());
+        ok = false;
+      }
+    }
+    // merge() would fail on the first one, so report them all here
+    Map<String, Integer> shardOfBallot = new HashMap<>();
+    for (PartialTally partial : partials) {
+      for (String id : partial.castBallotIds()) {
+        Integer other = shardOfBallot.putIfAbsent(id, partial.shard());
+        if (other != null) {
+          errors.format("  Ballot %s is in partial tally %d and %d%n", id, other, partial.shard());
+          ok = false;
+        }
+      }
+    }
+    long ncast = ballots.entries().stream().filter(e -> e.state() == BallotBox.State.CAST).count();
+    if (ok && shardOfBallot.size() != ncast) {
+      errors.format("  The partial tallies have %d cast ballots, the ballots file has %d%n",
+              shardOfBallot.size(), ncast);
+      ok = false;
+    }
+    return ok;
+  }
+
+  /** Multiply the partial tallies together. A ballot that is in more than one partial tally is an error. */
+  static CiphertextTally merge(ElectionRecord electionRecord, List<PartialTally> partials) {
+    InternalManifest manifest = new InternalManifest(electionRecord.manifest());
+    CiphertextTallyBuilder ciphertextTally = new CiphertextTallyBuilder("accumulateTally", manifest, electionRecord);
+    for (PartialTally partial : partials) {
+      ciphertextTally.merge(partial.tally(), partial.castBallotIds());
+    }
+    System.out.printf(" done merging %d ballots in the tally%n", ciphertextTally.castBallotIds().size());
+    return ciphertextTally.build();
+  }
+
+  static void publish(String inputDir, String publishDir, ElectionInitialized electionIntialized,
+                      CiphertextTally encryptedTally) throws IOException {
+    TallyResult tally = new TallyResult(
+            electionIntialized,
+            encryptedTally,
+            emptyList(),
+            emptyList()
+    );
+
+    Publisher publisher = new Publisher(publishDir, Publisher.Mode.createIfMissing);
+    publisher.writeTallyResult(tally);
+    publisher.copyAcceptedBallots(inputDir);
+  }
+}
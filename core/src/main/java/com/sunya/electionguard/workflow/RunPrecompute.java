@@ -0,0 +1,89 @@
+package com.sunya.electionguard.workflow;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.base.Stopwatch;
+import com.sunya.electionguard.Dlog;
+import com.sunya.electionguard.Group;
+import com.sunya.electionguard.PowRadix;
+import com.sunya.electionguard.Precomputed;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A command line program to write the precomputed tables file, which other programs use with -precompute.
+ * <p>
+ * For command line help:
+ * <strong>
+ * <pre>
+ *  java -classpath electionguard-java-all.jar com.sunya.electionguard.workflow.RunPrecompute --help
+ * </pre>
+ * </strong>
+ */
+public class RunPrecompute {
+
+  private static class CommandLine {
+    @Parameter(names = {"-out"}, order = 0,
+            description = "File to write the precomputed tables to", required = true)
+    String outputFile;
+
+    @Parameter(names = {"-primes"}, order = 1,
+            description = "Name of the election constants, eg standard or smalltest")
+    String primes = "standard";
+
+    @Parameter(names = {"-dlogMax"}, order = 2,
+            description = "Maximum vote count of the discrete log table")
+    int dlogMax = Dlog.DEFAULT_MAX;
+
+    @Parameter(names = {"-powRadix"}, order = 3,
+            description = "Size of the generator table: LOW_MEMORY_USE, HIGH_MEMORY_USE or EXTREME_MEMORY_USE")
+    PowRadix.PowRadixOption powRadix = PowRadix.PowRadixOption.HIGH_MEMORY_USE;
+
+    @Parameter(names = {"-h", "--help"}, order = 9, description = "Display this help and exit", help = true)
+    boolean help = false;
+
+    private final JCommander jc;
+
+    public CommandLine(String progName, String[] args) throws ParameterException {
+      this.jc = new JCommander(this);
+      this.jc.parse(args);
+      jc.setProgramName(String.format("java -classpath electionguard-java-all.jar %s", progName));
+    }
+
+    public void printUsage() {
+      jc.usage();
+    }
+  }
+
+  public static void main(String[] args) {
+    String progName = RunPrecompute.class.getName();
+    CommandLine cmdLine = null;
+
+    try {
+      cmdLine = new CommandLine(progName, args);
+      if (cmdLine.help) {
+        cmdLine.printUsage();
+        return;
+      }
+    } catch (ParameterException e) {
+      System.err.println(e.getMessage());
+      System.err.printf("Try '%s --help' for more information.%n", progName);
+      System.exit(1);
+    }
+
+    try {
+      Group.setPrimesByName(cmdLine.primes);
+      System.out.printf(" Precompute tables for %s primes, dlog max %d, %s%n Write to %s%n",
+              Group.getPrimes().name, cmdLine.dlogMax, cmdLine.powRadix, cmdLine.outputFile);
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      Precomputed.write(cmdLine.outputFile, cmdLine.powRadix, cmdLine.dlogMax);
+      System.out.printf("*** Precompute SUCCESS took %d secs%n", stopwatch.elapsed(TimeUnit.SECONDS));
+
+    } catch (Throwable t) {
+      System.out.printf("*** Precompute FAILURE%n");
+      t.printStackTrace();
+      System.exit(4);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package com.sunya.electionguard;
+
+import net.jqwik.api.Example;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.sunya.electionguard.Group.*;
+
+public class TestBarrettReducer extends TestProperties {
+
+  @Property
+  public void testMultiply(@ForAll("elements_mod_p") ElementModP p1, @ForAll("elements_mod_p") ElementModP p2) {
+    BigInteger expected = p1.getBigInt().multiply(p2.getBigInt()).mod(getPrimes().largePrime);
+    assertThat(getPrimes().getReducerP().multiply(p1.getBigInt(), p2.getBigInt())).isEqualTo(expected);
+    assertThat(mult_p(p1, p2).getBigInt()).isEqualTo(expected);
+  }
+
+  @Example
+  public void testEdgeCases() {
+    BigInteger p = getPrimes().largePrime;
+    BarrettReducer reducer = getPrimes().getReducerP();
+    BigInteger pm1 = p.subtract(BigInteger.ONE);
+    BigInteger[] values = {
+            BigInteger.ZERO,
+            BigInteger.ONE,
+            pm1,
+            p,
+            pm1.multiply(pm1),
+            p.multiply(p),
+            p.multiply(p).multiply(p), // too big, falls back
+            BigInteger.valueOf(-5), // negative, falls back
+    };
+    for (BigInteger value : values) {
+      assertThat(reducer.reduce(value)).isEqualTo(value.mod(p));
+    }
+  }
+
+  @Example
+  public void testRandom() {
+    Random random = new Random(System.currentTimeMillis());
+    BigInteger p = getPrimes().largePrime;
+    BarrettReducer reducer = getPrimes().getReducerP();
+    for (int i = 0; i < 1000; i++) {
+      BigInteger value = new BigInteger(random.nextInt(2 * p.bitLength() + 1), random);
+      assertThat(reducer.reduce(value)).isEqualTo(value.mod(p));
+    }
+  }
+
+  @Example
+  public void testSmallModulus() {
+    BarrettReducer reducer = new BarrettReducer(BigInteger.valueOf(157));
+    for (int i = 0; i < 157 * 157; i++) {
+      BigInteger value = BigInteger.valueOf(i);
+      assertThat(reducer.reduce(value)).isEqualTo(value.mod(BigInteger.valueOf(157)));
+    }
+  }
+}
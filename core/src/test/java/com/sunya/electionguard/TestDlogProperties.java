@@ -1,10 +1,16 @@
 package com.sunya.electionguard;
 
+import net.jqwik.api.Example;
 import net.jqwik.api.ForAll;
 import net.jqwik.api.Property;
 import net.jqwik.api.constraints.IntRange;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.sunya.electionguard.Group.*;
@@ -21,4 +27,38 @@ public class TestDlogProperties {
     assertThat(exp).isEqualTo(plaintext_again);
   }
 
+  @Property
+  public void test_giant_steps(@ForAll @IntRange(min = 0, max = 200) int exp) {
+    // a small table, so most logs take several giant steps
+    Dlog dlog = new Dlog(getPrimes().generatorP, 200, 7);
+    assertThat(dlog.log(g_pow_p(int_to_q_unchecked(BigInteger.valueOf(exp))))).isEqualTo(exp);
+  }
+
+  @Example
+  public void test_exceeds_max() {
+    Dlog dlog = new Dlog(getPrimes().generatorP, 200, 7);
+    assertThat(dlog.log(g_pow_p(int_to_q_unchecked(BigInteger.valueOf(201))))).isNull();
+    assertThat(dlog.log(g_pow_p(rand_q()))).isNull();
+  }
+
+  @Example
+  public void test_other_base() {
+    ElementModP base = g_pow_p(rand_q());
+    Dlog dlog = new Dlog(base, 10_000);
+    assertThat(dlog.log(pow_p(base, int_to_q_unchecked(BigInteger.valueOf(9876))))).isEqualTo(9876);
+  }
+
+  @Example
+  public void test_concurrent() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Integer>> futures = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      BigInteger exp = BigInteger.valueOf(i * 250);
+      futures.add(executor.submit(() -> Dlog.discrete_log(g_pow_p(int_to_q_unchecked(exp)))));
+    }
+    for (int i = 0; i < 40; i++) {
+      assertThat(futures.get(i).get()).isEqualTo(i * 250);
+    }
+    executor.shutdown();
+  }
 }
@@ -393,6 +393,54 @@ public class TestEncryptProperties extends TestProperties {
     assertThat(result.get().is_valid_encryption(election.cryptoHash(), keypair.public_key(), context.cryptoExtendedBaseHash)).isTrue();
   }
 
+  @Example
+  public void test_encrypt_unchained_then_chain_succeeds() {
+    KeyPair keypair = elgamal_keypair_from_secret(int_to_q_unchecked(BigInteger.TWO)).orElseThrow();
+    Manifest election = ElectionFactory.get_fake_manifest();
+    ElectionBuilder.DescriptionAndContext tuple = ElectionFactory.get_fake_ciphertext_election(election, keypair.public_key()).orElseThrow();
+    ElectionCryptoContext context = tuple.context;
+
+    EncryptionDevice device = Encrypt.createDeviceForTest("Location");
+    EncryptionMediator subject = new EncryptionMediator(tuple.internalManifest, context, device);
+
+    // encrypt out of order, chain in order
+    Optional<CiphertextBallot> second = subject.encryptUnchained(ElectionFactory.get_fake_ballot(election, "second"));
+    Optional<CiphertextBallot> first = subject.encryptUnchained(ElectionFactory.get_fake_ballot(election, "first"));
+    assertThat(first).isPresent();
+    assertThat(second).isPresent();
+    CiphertextBallot chained1 = subject.chain(first.get());
+    CiphertextBallot chained2 = subject.chain(second.get());
+
+    assertThat(chained1.code_seed).isEqualTo(device.get_hash());
+    assertThat(chained2.code_seed).isEqualTo(chained1.code);
+    for (CiphertextBallot chained : List.of(chained1, chained2)) {
+      assertThat(chained.code).isEqualTo(
+              BallotCodes.get_rotating_ballot_code(chained.code_seed, chained.timestamp, chained.crypto_hash));
+      assertThat(chained.is_valid_encryption(election.cryptoHash(), keypair.public_key(), context.cryptoExtendedBaseHash)).isTrue();
+    }
+    assertThat(chained1.crypto_hash).isEqualTo(first.get().crypto_hash);
+    assertThat(chained1.contests).isEqualTo(first.get().contests);
+  }
+
+  @Example
+  public void test_encrypt_ballot_parallel_same_as_sequential() throws IOException {
+    KeyPair keypair = elgamal_keypair_from_secret(int_to_q_unchecked(BigInteger.TWO)).orElseThrow();
+    Manifest election = ElectionFactory.get_simple_election_from_file();
+    ElectionBuilder.DescriptionAndContext tuple = ElectionFactory.get_fake_ciphertext_election(election, keypair.public_key()).orElseThrow();
+    ElectionCryptoContext context = tuple.context;
+    PlaintextBallot data = ballot_factory.get_simple_ballot_from_file();
+
+    Optional<CiphertextBallot> sequential = encrypt_ballot(data, tuple.internalManifest, context, SEED_HASH, Optional.of(TWO_MOD_Q), true, false);
+    Optional<CiphertextBallot> parallel = encrypt_ballot(data, tuple.internalManifest, context, SEED_HASH, Optional.of(TWO_MOD_Q), true, true);
+    assertThat(sequential).isPresent();
+    assertThat(parallel).isPresent();
+
+    // the nonces are derived from the master nonce, so the encryptions are the same, in manifest order
+    assertThat(parallel.get().contests).containsExactlyElementsIn(sequential.get().contests).inOrder();
+    assertThat(parallel.get().crypto_hash).isEqualTo(sequential.get().crypto_hash);
+    assertThat(parallel.get().is_valid_encryption(election.cryptoHash(), keypair.public_key(), context.cryptoExtendedBaseHash, true)).isTrue();
+  }
+
   @Example
   public void test_encrypt_simple_ballot_from_files_succeeds() throws IOException {
     KeyPair keypair = elgamal_keypair_from_secret(int_to_q_unchecked(BigInteger.TWO)).orElseThrow();
@@ -3,6 +3,9 @@ package com.sunya.electionguard;
 import net.jqwik.api.*;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth8.assertThat;
@@ -34,6 +37,26 @@ public class TestGroupProperties extends TestProperties {
     }
   }
 
+  @Property
+  public void testEqualsAndHashCode(@ForAll("elements_mod_p") ElementModP p) {
+    ElementModP copy = int_to_p_unchecked(new BigInteger(p.getBigInt().toByteArray()));
+    assertThat(copy).isEqualTo(p);
+    assertThat(copy.hashCode()).isEqualTo(p.hashCode());
+    assertThat(copy.base16()).isEqualTo(p.base16());
+  }
+
+  @Property
+  public void testCanonicalBytes(@ForAll("elements_mod_q") ElementModQ q) {
+    byte[] allBytes = q.getBigInt().toByteArray();
+    byte[] expected = Arrays.copyOfRange(allBytes, allBytes[0] == 0 ? 1 : 0, allBytes.length);
+    assertThat(q.bytes().array()).isEqualTo(expected);
+    assertThat(q.base16()).isEqualTo(q.bytes().encodeHex(true));
+
+    // the returned bytes are a copy
+    q.bytes().array()[0] ^= 1;
+    assertThat(q.bytes().array()).isEqualTo(expected);
+  }
+
   //// TestModularArithmetic
   @Property
   public void test_add_q(@ForAll("elements_mod_q") ElementModQ q) {
@@ -124,6 +147,73 @@ public class TestGroupProperties extends TestProperties {
     assertThat(int_to_q(oversize)).isEmpty();
   }
 
+  //// multi_pow_p
+  @Property(tries = 20)
+  public void test_multi_pow_p(@ForAll("elements_mod_p") ElementModP p1, @ForAll("elements_mod_p") ElementModP p2,
+                               @ForAll("elements_mod_q") ElementModQ q1, @ForAll("elements_mod_q") ElementModQ q2) {
+    ElementModP expected = mult_p(g_pow_p(q1), pow_p(p1, q2), pow_p(p2, q1));
+    ElementModP[] bases = {getPrimes().generatorP, p1, p2};
+    ElementModQ[] exponents = {q1, q2, q1};
+    assertThat(multi_pow_p(bases, exponents)).isEqualTo(expected);
+  }
+
+  @Property(tries = 20)
+  public void test_multi_pow_p_zero_and_one(@ForAll("elements_mod_p") ElementModP p1, @ForAll("elements_mod_p") ElementModP p2,
+                                            @ForAll("elements_mod_q") ElementModQ q) {
+    assertThat(multi_pow_p(new ElementModP[] {p1, p2}, new ElementModQ[] {ONE_MOD_Q, q})).isEqualTo(mult_p(p1, pow_p(p2, q)));
+    assertThat(multi_pow_p(new ElementModP[] {p1, p2}, new ElementModQ[] {ZERO_MOD_Q, q})).isEqualTo(pow_p(p2, q));
+    assertThat(multi_pow_p(new ElementModP[] {p1}, new ElementModQ[] {ZERO_MOD_Q})).isEqualTo(ONE_MOD_P);
+    assertThat(multi_pow_p(new ElementModP[0], new ElementModQ[0])).isEqualTo(ONE_MOD_P);
+  }
+
+  @Example
+  public void test_multi_pow_p_mismatched_lengths() {
+    try {
+      multi_pow_p(new ElementModP[] {ONE_MOD_P, TWO_MOD_P}, new ElementModQ[] {ONE_MOD_Q});
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  //// is_valid_residues
+  @Example
+  public void test_is_valid_residues() {
+    List<ElementModP> residues = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      residues.add(g_pow_p(rand_q()));
+    }
+    assertThat(is_valid_residues(residues)).isTrue();
+    assertThat(invalid_residues(residues)).isEmpty();
+
+    // -x has order 2q, and 0 is out of bounds
+    ElementModP negated = int_to_p_unchecked(getPrimes().largePrime.subtract(residues.get(3).getBigInt()));
+    residues.set(3, negated);
+    residues.set(7, ZERO_MOD_P);
+    assertThat(is_valid_residues(residues)).isFalse();
+    assertThat(invalid_residues(residues)).containsExactly(negated, ZERO_MOD_P);
+  }
+
+  @Example
+  public void test_is_valid_residues_small() {
+    assertThat(is_valid_residues(List.of())).isTrue();
+    assertThat(is_valid_residues(List.of(g_pow_p(rand_q())))).isTrue();
+    assertThat(is_valid_residues(List.of(TWO_MOD_P))).isEqualTo(TWO_MOD_P.is_valid_residue());
+  }
+
+  @Example
+  public void test_jacobi() {
+    for (int n : new int[] {3, 5, 7, 11, 13, 157, 7919}) {
+      BigInteger bn = BigInteger.valueOf(n);
+      for (int a = 0; a < Math.min(n, 500); a++) {
+        // Euler's criterion for a prime n
+        BigInteger euler = BigInteger.valueOf(a).modPow(bn.subtract(BigInteger.ONE).shiftRight(1), bn);
+        int expected = euler.signum() == 0 ? 0 : euler.equals(BigInteger.ONE) ? 1 : -1;
+        assertThat(Utils.jacobi(BigInteger.valueOf(a), bn)).isEqualTo(expected);
+      }
+    }
+  }
+
   private boolean is_in_bounds_no_zero(ElementModP p) {
     return Group.between(BigInteger.ONE, p.elem, Group.getPrimes().largePrime);
   }
@@ -6,6 +6,8 @@ import net.jqwik.api.ForAll;
 import net.jqwik.api.Property;
 
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.List;
 import java.util.Optional;
 
@@ -81,6 +83,19 @@ public class TestHashProperties extends TestProperties {
     assertThat(h1).isNotEqualTo(h2);
   }
 
+  @Property(tries = 20)
+  public void test_hash_of_explicit_string(@ForAll("elements_mod_q") Group.ElementModQ q, @ForAll("elements_mod_p") Group.ElementModP p)
+          throws Exception {
+    String nested = Hash.hash_elems(q, "caf\u00e9").base16();
+    String hashAll = "|" + p.base16() + "|null|42|" + nested + "|null|";
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    BigInteger expected = new BigInteger(1, digest.digest(hashAll.getBytes(StandardCharsets.UTF_8)))
+            .mod(Group.getPrimes().smallPrime);
+
+    Group.ElementModQ hash = Hash.hash_elems(p, Optional.empty(), 42, List.of(q, "caf\u00e9"), List.of());
+    assertThat(hash.getBigInt()).isEqualTo(expected);
+  }
+
   @Example
   public void test_python_hash() {
     BigInteger bc = new BigInteger("456307447671777756516264348336497927238843602051346751575459074974301384166262514429149690566915978060486447070032990910712583572336622083032351729951048606771649542469023496667235836642139711235512741559721544287819964425149979339020727602556270801887613908010846402932303712072694690956440629767609197078644072805252764985336319844720473777347991151787926150472970654903090663653438785056840028559839707422529989465914151666532545416342804653990846676917164188539357052164158807234803567677447887320978408940131597189038730191564711633429090345245721289991680082007381028850457505918457557846207644308309844287273030886387852734231865260826619958504972588541549204640931013398853896977332299492018782892146827436446749316900004557719324866688568203426487110770548138445597631587221491552619514671748249136925562389016205764964327400538043849809385463974899721671875536784816124893672424200290614915221708728208000622838197198848547322365615576092323082001736300160716065631595608027231813877198585699764254372325111129867562297006067146594985395180878628936825710583932148925344393571929392413956759418131406483236320221958244269824985854388462575548025300803359492531181574497707262348175004765374794838655178400804449791397949594");
@@ -0,0 +1,80 @@
+package com.sunya.electionguard;
+
+import net.jqwik.api.Example;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.IntRange;
+
+import java.math.BigInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.sunya.electionguard.Group.*;
+
+public class TestPowRadix extends TestProperties {
+
+  @Property(tries = 20)
+  public void testGPowPMatchesModPow(@ForAll("elements_mod_q") ElementModQ e) {
+    BigInteger expected = getPrimes().generator.modPow(e.getBigInt(), getPrimes().largePrime);
+    assertThat(g_pow_p(e).getBigInt()).isEqualTo(expected);
+  }
+
+  @Property(tries = 20)
+  public void testPowPWithGeneratorBase(@ForAll("elements_mod_q") ElementModQ e) {
+    assertThat(pow_p(getPrimes().generatorP, e)).isEqualTo(g_pow_p(e));
+  }
+
+  @Property
+  public void testSmallExponents(@ForAll @IntRange(min = 0, max = 1000) int exp) {
+    BigInteger e = BigInteger.valueOf(exp);
+    BigInteger expected = getPrimes().generator.modPow(e, getPrimes().largePrime);
+    assertThat(getPrimes().getGeneratorPowRadix().pow(e)).isEqualTo(expected);
+  }
+
+  @Example
+  public void testAllOptions() {
+    ElectionConstants primes = getPrimes();
+    BigInteger base = rand_q().getBigInt().add(BigInteger.TWO);
+    for (PowRadix.PowRadixOption option : new PowRadix.PowRadixOption[] {
+            PowRadix.PowRadixOption.LOW_MEMORY_USE, PowRadix.PowRadixOption.HIGH_MEMORY_USE}) {
+      PowRadix powRadix = new PowRadix(base, primes.largePrime, primes.smallPrime.bitLength(), option);
+      for (int i = 0; i < 10; i++) {
+        BigInteger e = rand_q().getBigInt();
+        assertThat(powRadix.pow(e)).isEqualTo(base.modPow(e, primes.largePrime));
+      }
+    }
+  }
+
+  @Example
+  public void testExponentTooLarge() {
+    ElectionConstants primes = getPrimes();
+    PowRadix powRadix = primes.getGeneratorPowRadix();
+    // wider than the table, falls back to modPow
+    BigInteger e = primes.largePrime.subtract(BigInteger.TWO);
+    assertThat(powRadix.pow(e)).isEqualTo(primes.generator.modPow(e, primes.largePrime));
+    assertThat(powRadix.pow(BigInteger.ZERO)).isEqualTo(BigInteger.ONE);
+  }
+
+  @Example
+  public void testRegisteredBase() {
+    ElectionConstants primes = getPrimes();
+    ElementModP key = g_pow_p(rand_q());
+    PowRadixCache.register(key, PowRadix.PowRadixOption.LOW_MEMORY_USE);
+    assertThat(PowRadixCache.get(key.getBigInt())).isNotNull();
+    for (int i = 0; i < 10; i++) {
+      ElementModQ e = rand_q();
+      assertThat(pow_p(key, e).getBigInt()).isEqualTo(key.getBigInt().modPow(e.getBigInt(), primes.largePrime));
+    }
+    PowRadixCache.clear();
+    assertThat(PowRadixCache.get(key.getBigInt())).isNull();
+  }
+
+  @Example
+  public void testSmallPrimes() {
+    ElectionConstants primes = ElectionConstants.EXTRA_SMALL_TEST_CONSTANTS;
+    PowRadix powRadix = primes.getGeneratorPowRadix();
+    for (int exp = 0; exp < 100; exp++) {
+      BigInteger e = BigInteger.valueOf(exp);
+      assertThat(powRadix.pow(e)).isEqualTo(primes.generator.modPow(e, primes.largePrime));
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package com.sunya.electionguard;
+
+import net.jqwik.api.Example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.sunya.electionguard.Group.*;
+
+public class TestPrecomputed {
+
+  @Example
+  public void testRoundtrip() throws IOException {
+    File file = File.createTempFile("precomputed", null);
+    file.deleteOnExit();
+    Precomputed.write(file.getPath(), PowRadix.PowRadixOption.HIGH_MEMORY_USE, 5000);
+    try {
+      assertThat(Precomputed.load(file.getPath())).isTrue();
+
+      for (int i = 0; i < 10; i++) {
+        ElementModQ e = rand_q();
+        BigInteger expected = getPrimes().generator.modPow(e.getBigInt(), getPrimes().largePrime);
+        assertThat(g_pow_p(e).getBigInt()).isEqualTo(expected);
+      }
+      for (int exp : new int[] {0, 1, 70, 4999, 5000}) {
+        assertThat(Dlog.discrete_log(g_pow_p(int_to_q_unchecked(BigInteger.valueOf(exp))))).isEqualTo(exp);
+      }
+    } finally {
+      Dlog.setMax(Dlog.DEFAULT_MAX);
+    }
+  }
+
+  @Example
+  public void testDifferentPrimes() throws IOException {
+    File file = File.createTempFile("precomputed", null);
+    file.deleteOnExit();
+    Group.setPrimes(ElectionConstants.SMALL_TEST_CONSTANTS);
+    try {
+      Precomputed.write(file.getPath(), PowRadix.PowRadixOption.LOW_MEMORY_USE, 100);
+    } finally {
+      Group.reset();
+    }
+    assertThat(Precomputed.load(file.getPath())).isFalse();
+  }
+
+  @Example
+  public void testBadHeader() throws IOException {
+    File file = File.createTempFile("precomputed", null);
+    file.deleteOnExit();
+    Precomputed.write(file.getPath(), PowRadix.PowRadixOption.LOW_MEMORY_USE, 100);
+    // entrySize follows the magic, version and fingerprint
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.seek(8 + 4 + 32);
+      int entrySize = raf.readInt();
+      raf.seek(8 + 4 + 32);
+      raf.writeInt(entrySize - 1);
+    }
+    assertThat(Precomputed.load(file.getPath())).isFalse();
+  }
+
+  @Example
+  public void testDamagedTable() throws IOException {
+    File file = File.createTempFile("precomputed", null);
+    file.deleteOnExit();
+    Precomputed.write(file.getPath(), PowRadix.PowRadixOption.LOW_MEMORY_USE, 100);
+    // a byte of the first table entry, after the header and its digest of the table
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      long pos = 8 + 4 + 32 + 12 + 32 + 100;
+      raf.seek(pos);
+      int b = raf.read();
+      raf.seek(pos);
+      raf.write(b ^ 1);
+    }
+    assertThat(Precomputed.load(file.getPath())).isFalse();
+  }
+
+  @Example
+  public void testTruncatedDlog() throws IOException {
+    File file = File.createTempFile("precomputed", null);
+    file.deleteOnExit();
+    Precomputed.write(file.getPath(), PowRadix.PowRadixOption.LOW_MEMORY_USE, 5000);
+    // the dlog table is at the end of the file
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() - 1000);
+    }
+    assertThat(Precomputed.load(file.getPath())).isFalse();
+  }
+}
@@ -0,0 +1,60 @@
+package com.sunya.electionguard;
+
+import net.jqwik.api.Example;
+
+import java.math.BigInteger;
+import java.util.Optional;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static com.sunya.electionguard.ElGamal.elgamal_keypair_from_secret;
+import static com.sunya.electionguard.Group.int_to_q_unchecked;
+
+public class TestPreparedBallots {
+
+  @Example
+  public void testPrepareThenFinalize() {
+    ElGamal.KeyPair keypair = elgamal_keypair_from_secret(int_to_q_unchecked(BigInteger.TWO)).orElseThrow();
+    Manifest election = ElectionFactory.get_fake_manifest();
+    ElectionBuilder.DescriptionAndContext tuple = ElectionFactory.get_fake_ciphertext_election(election, keypair.public_key()).orElseThrow();
+    ElectionCryptoContext context = tuple.context;
+    PlaintextBallot ballot = ElectionFactory.get_fake_ballot(election, "prepared");
+
+    PreparedBallots store = new PreparedBallots(tuple.internalManifest, context, 10);
+    assertThat(store.prepare(ballot.object_id(), ballot.ballotStyleId)).isTrue();
+    assertThat(store.prepare("bad-style", "no-such-style")).isFalse();
+    assertThat(store.isPrepared(ballot.object_id())).isTrue();
+
+    Optional<CiphertextBallot> finalized = store.finalizeBallot(ballot, true);
+    assertThat(finalized).isPresent();
+    assertThat(store.isPrepared(ballot.object_id())).isFalse();
+    assertThat(finalized.get().is_valid_encryption(election.cryptoHash(), keypair.public_key(), context.cryptoExtendedBaseHash)).isTrue();
+
+    // the same as encrypting in one step with the same master nonce
+    Optional<CiphertextBallot> encrypted = Encrypt.encrypt_ballot(ballot, tuple.internalManifest, context,
+            Encrypt.UNCHAINED_SEED, finalized.get().nonce, true);
+    assertThat(encrypted).isPresent();
+    assertThat(finalized.get().contests).containsExactlyElementsIn(encrypted.get().contests).inOrder();
+    assertThat(finalized.get().crypto_hash).isEqualTo(encrypted.get().crypto_hash);
+
+    // not prepared, or already used: encrypted from scratch, with a new master nonce
+    Optional<CiphertextBallot> again = store.finalizeBallot(ballot, true);
+    assertThat(again).isPresent();
+    assertThat(again.get().nonce).isNotEqualTo(finalized.get().nonce);
+  }
+
+  @Example
+  public void testStoreIsBounded() {
+    ElGamal.KeyPair keypair = elgamal_keypair_from_secret(int_to_q_unchecked(BigInteger.TWO)).orElseThrow();
+    Manifest election = ElectionFactory.get_fake_manifest();
+    ElectionBuilder.DescriptionAndContext tuple = ElectionFactory.get_fake_ciphertext_election(election, keypair.public_key()).orElseThrow();
+    String styleId = election.ballotStyles().get(0).ballotStyleId();
+
+    PreparedBallots store = new PreparedBallots(tuple.internalManifest, tuple.context, 2);
+    for (int i = 0; i < 4; i++) {
+      assertThat(store.prepare("ballot" + i, styleId)).isTrue();
+    }
+    assertThat(store.size()).isAtMost(2);
+    assertThat(store.isPrepared("ballot3")).isTrue();
+  }
+}
@@ -0,0 +1,65 @@
+package com.sunya.electionguard;
+
+import net.jqwik.api.Example;
+
+import java.math.BigInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class TestTallyIndex {
+
+  @Example
+  public void testOrdinals() {
+    Manifest manifest = ElectionFactory.get_fake_manifest();
+    TallyIndex index = new TallyIndex(manifest);
+    assertThat(index.ncontests()).isEqualTo(manifest.contests().size());
+
+    int nselections = 0;
+    for (Manifest.ContestDescription contest : manifest.contests()) {
+      int c = index.contestOrdinal(contest.contestId());
+      assertThat(index.contest(c)).isEqualTo(contest);
+      assertThat(index.nselections(c)).isEqualTo(contest.selections().size());
+      for (int position = 0; position < contest.selections().size(); position++) {
+        Manifest.SelectionDescription selection = contest.selections().get(position);
+        int s = index.selectionOrdinal(c, position, selection.selectionId());
+        assertThat(index.selection(s)).isEqualTo(selection);
+        assertThat(index.contestOf(s)).isEqualTo(c);
+        // a wrong position falls back to the lookup
+        assertThat(index.selectionOrdinal(c, position + 1, selection.selectionId())).isEqualTo(s);
+        assertThat(index.selectionOrdinal(c, selection.selectionId())).isEqualTo(s);
+      }
+      nselections += contest.selections().size();
+    }
+    assertThat(index.nselections()).isEqualTo(nselections);
+
+    assertThat(index.contestOrdinal("bad")).isEqualTo(TallyIndex.NOT_FOUND);
+    assertThat(index.selectionOrdinal(0, 0, "bad")).isEqualTo(TallyIndex.NOT_FOUND);
+  }
+
+  @Example
+  public void testToCiphertextTally() {
+    Manifest manifest = ElectionFactory.get_fake_manifest();
+    TallyIndex index = new TallyIndex(manifest);
+    BigInteger[] pads = new BigInteger[index.nselections()];
+    BigInteger[] datas = new BigInteger[index.nselections()];
+    pads[0] = BigInteger.TWO;
+    datas[0] = BigInteger.TEN;
+
+    CiphertextTally tally = index.toCiphertextTally("tally", pads, datas);
+    assertThat(tally.object_id()).isEqualTo("tally");
+    assertThat(tally.contests).hasSize(index.ncontests());
+
+    Manifest.SelectionDescription first = index.selection(0);
+    CiphertextTally.Contest contest = tally.contests.get(index.contest(index.contestOf(0)).contestId());
+    CiphertextTally.Selection selection = contest.selections.get(first.selectionId());
+    assertThat(selection.description_hash()).isEqualTo(first.cryptoHash());
+    assertThat(selection.ciphertext().pad().getBigInt()).isEqualTo(BigInteger.TWO);
+    assertThat(selection.ciphertext().data().getBigInt()).isEqualTo(BigInteger.TEN);
+
+    // untouched selections are an encryption of zero
+    Manifest.SelectionDescription second = index.selection(1);
+    CiphertextTally.Selection zero = tally.contests.get(index.contest(index.contestOf(1)).contestId())
+            .selections.get(second.selectionId());
+    assertThat(zero.ciphertext()).isEqualTo(new ElGamal.Ciphertext(Group.ONE_MOD_P, Group.ONE_MOD_P));
+  }
+}
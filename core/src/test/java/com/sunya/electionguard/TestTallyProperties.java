@@ -1,15 +1,23 @@
 package com.sunya.electionguard;
 
+import com.sunya.electionguard.publish.CloseableIterableAdapter;
 import net.jqwik.api.ForAll;
 import net.jqwik.api.Property;
 import net.jqwik.api.ShrinkingMode;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth8.assertThat;
+import static org.junit.Assert.assertThrows;
 
 public class TestTallyProperties extends TestProperties {
 
@@ -76,6 +84,175 @@ public class TestTallyProperties extends TestProperties {
     }
   }
 
+  @Property(tries = 3, shrinking = ShrinkingMode.OFF)
+  public void test_batch_append_same_as_append(
+          @ForAll("elections_and_ballots") ElectionTestHelper.EverythingTuple everything) {
+
+    // encrypt each ballot, cast some and spoil some
+    Group.ElementModQ seed_hash = Encrypt.createDeviceForTest("Location").get_hash();
+    List<SubmittedBallot> ballots = new ArrayList<>();
+    int count = 0;
+    for (PlaintextBallot ballot : everything.ballots) {
+      Optional<CiphertextBallot> encrypted_ballotO = Encrypt.encrypt_ballot(
+              ballot, everything.metadata, everything.context, seed_hash, Optional.empty(), true);
+      assertThat(encrypted_ballotO).isPresent();
+      CiphertextBallot encrypted_ballot = encrypted_ballotO.get();
+      seed_hash = encrypted_ballot.code;
+      BallotBox.State state = (count++ % 3 == 0) ? BallotBox.State.SPOILED : BallotBox.State.CAST;
+      ballots.add(encrypted_ballot.acceptWithState(state));
+    }
+    // a ballot that is already tallied is skipped
+    ballots.add(ballots.get(ballots.size() - 1));
+
+    CiphertextTallyBuilder streamed = new CiphertextTallyBuilder("whatever", everything.metadata, everything.context);
+    int nadded = streamed.batch_append(CloseableIterableAdapter.wrap(ballots));
+
+    CiphertextTallyBuilder sequential = new CiphertextTallyBuilder("whatever", everything.metadata, everything.context);
+    int expected = 0;
+    for (SubmittedBallot ballot : ballots) {
+      if (ballot.state == BallotBox.State.CAST && sequential.append(ballot)) {
+        expected++;
+      }
+    }
+    assertThat(nadded).isEqualTo(expected);
+    assertThat(streamed.build()).isEqualTo(sequential.build());
+  }
+
+  @Property(tries = 1, shrinking = ShrinkingMode.OFF)
+  public void test_batch_append_busy_scheduler_and_failure(
+          @ForAll("elections_and_ballots") ElectionTestHelper.EverythingTuple everything) throws InterruptedException {
+
+    Group.ElementModQ seed_hash = Encrypt.createDeviceForTest("Location").get_hash();
+    List<SubmittedBallot> ballots = new ArrayList<>();
+    for (PlaintextBallot ballot : everything.ballots) {
+      Optional<CiphertextBallot> encrypted_ballotO = Encrypt.encrypt_ballot(
+              ballot, everything.metadata, everything.context, seed_hash, Optional.empty(), true);
+      assertThat(encrypted_ballotO).isPresent();
+      seed_hash = encrypted_ballotO.get().code;
+      ballots.add(encrypted_ballotO.get().acceptWithState(BallotBox.State.CAST));
+    }
+
+    // the ballots fail to read part way through: none of them are in the tally
+    CiphertextTallyBuilder builder = new CiphertextTallyBuilder("whatever", everything.metadata, everything.context);
+    Iterator<SubmittedBallot> all = ballots.iterator();
+    Iterator<SubmittedBallot> failing = new Iterator<>() {
+      int count = 0;
+      public boolean hasNext() {
+        return true;
+      }
+      public SubmittedBallot next() {
+        if (count++ == ballots.size() / 2 || !all.hasNext()) {
+          throw new IllegalStateException("read failed");
+        }
+        return all.next();
+      }
+    };
+    IllegalStateException failed = assertThrows(IllegalStateException.class, () -> builder.batch_append(() -> failing));
+    assertThat(failed).hasMessageThat().isEqualTo("read failed");
+    assertThat(builder.castBallotIds()).isEmpty();
+
+    // the failure is reported, not the interrupt that stops the workers
+    Iterator<SubmittedBallot> interrupted = new Iterator<>() {
+      public boolean hasNext() {
+        return true;
+      }
+      public SubmittedBallot next() {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted read");
+      }
+    };
+    failed = assertThrows(IllegalStateException.class, () -> builder.batch_append(() -> interrupted));
+    assertThat(Thread.interrupted()).isTrue();
+    assertThat(failed).hasMessageThat().isEqualTo("interrupted read");
+    assertThat(builder.castBallotIds()).isEmpty();
+
+    // the shared Scheduler is busy, which doesnt stop batch_append
+    CountDownLatch release = new CountDownLatch(1);
+    List<Callable<Boolean>> blockers = new ArrayList<>();
+    for (int i = 0; i < Scheduler.DEFAULT_NTHREADS; i++) {
+      blockers.add(() -> release.await(1, TimeUnit.MINUTES));
+    }
+    new Scheduler<Boolean>().submit(blockers);
+    try {
+      assertThat(builder.batch_append(ballots)).isEqualTo(ballots.size());
+      assertThat(builder.castBallotIds()).hasSize(ballots.size());
+    } finally {
+      release.countDown();
+    }
+
+    CiphertextTallyBuilder sequential = new CiphertextTallyBuilder("whatever", everything.metadata, everything.context);
+    ballots.forEach(sequential::append);
+    assertThat(builder.build()).isEqualTo(sequential.build());
+  }
+
+  @Property(tries = 3, shrinking = ShrinkingMode.OFF)
+  public void test_resume_from_checkpoint(
+          @ForAll("elections_and_ballots") ElectionTestHelper.EverythingTuple everything) {
+
+    Group.ElementModQ seed_hash = Encrypt.createDeviceForTest("Location").get_hash();
+    List<SubmittedBallot> ballots = new ArrayList<>();
+    for (PlaintextBallot ballot : everything.ballots) {
+      Optional<CiphertextBallot> encrypted_ballotO = Encrypt.encrypt_ballot(
+              ballot, everything.metadata, everything.context, seed_hash, Optional.empty(), true);
+      assertThat(encrypted_ballotO).isPresent();
+      CiphertextBallot encrypted_ballot = encrypted_ballotO.get();
+      seed_hash = encrypted_ballot.code;
+      ballots.add(encrypted_ballot.acceptWithState(BallotBox.State.CAST));
+    }
+    int half = ballots.size() / 2;
+
+    CiphertextTallyBuilder first = new CiphertextTallyBuilder("whatever", everything.metadata, everything.context);
+    first.batch_append(ballots.subList(0, half));
+    TallyCheckpoint checkpoint = new TallyCheckpoint(first.build(), first.castBallotIdList(), 0, 0, 0, "");
+
+    // the resumed tally skips the ballots already tallied
+    CiphertextTallyBuilder resumed = new CiphertextTallyBuilder("whatever", everything.metadata, everything.context);
+    resumed.resume(checkpoint);
+    assertThat(resumed.batch_append(ballots)).isEqualTo(ballots.size() - half);
+
+    CiphertextTallyBuilder all = new CiphertextTallyBuilder("whatever", everything.metadata, everything.context);
+    all.batch_append(ballots);
+    assertThat(resumed.build()).isEqualTo(all.build());
+    assertThat(resumed.castBallotIds()).isEqualTo(all.castBallotIds());
+  }
+
+  @Property(tries = 3, shrinking = ShrinkingMode.OFF)
+  public void test_merge_shards(
+          @ForAll("elections_and_ballots") ElectionTestHelper.EverythingTuple everything) {
+
+    Group.ElementModQ seed_hash = Encrypt.createDeviceForTest("Location").get_hash();
+    List<SubmittedBallot> ballots = new ArrayList<>();
+    for (PlaintextBallot ballot : everything.ballots) {
+      Optional<CiphertextBallot> encrypted_ballotO = Encrypt.encrypt_ballot(
+              ballot, everything.metadata, everything.context, seed_hash, Optional.empty(), true);
+      assertThat(encrypted_ballotO).isPresent();
+      CiphertextBallot encrypted_ballot = encrypted_ballotO.get();
+      seed_hash = encrypted_ballot.code;
+      ballots.add(encrypted_ballot.acceptWithState(BallotBox.State.CAST));
+    }
+
+    // tally every other ballot in each shard
+    CiphertextTallyBuilder merged = new CiphertextTallyBuilder("whatever", everything.metadata, everything.context);
+    List<CiphertextTallyBuilder> shards = new ArrayList<>();
+    for (int shard = 0; shard < 2; shard++) {
+      CiphertextTallyBuilder partial = new CiphertextTallyBuilder("whatever", everything.metadata, everything.context);
+      for (int i = shard; i < ballots.size(); i += 2) {
+        assertThat(partial.append(ballots.get(i))).isTrue();
+      }
+      merged.merge(partial.build(), partial.castBallotIds());
+      shards.add(partial);
+    }
+
+    CiphertextTallyBuilder all = new CiphertextTallyBuilder("whatever", everything.metadata, everything.context);
+    all.batch_append(ballots);
+    assertThat(merged.build()).isEqualTo(all.build());
+    assertThat(merged.castBallotIds()).isEqualTo(all.castBallotIds());
+
+    // a ballot cant be merged twice
+    CiphertextTallyBuilder shard0 = shards.get(0);
+    assertThrows(IllegalArgumentException.class, () -> merged.merge(shard0.build(), shard0.castBallotIds()));
+  }
+
   // LOOK this assumes mutability, must be rewritten
   @Property(tries = 3, shrinking = ShrinkingMode.OFF)
   public void test_tally_ballot_invalid_input_fails(
@@ -136,8 +313,8 @@ public class TestTallyProperties extends TestProperties {
   /** Demonstrates how to decrypt a tally with a known secret key. */
   private Map<String, Integer> decrypt_with_secret(CiphertextTallyBuilder tally, Group.ElementModQ secret_key) {
     Map<String, Integer> plaintext_selections = new HashMap<>();
-    for (CiphertextTallyBuilder.Contest contest : tally.contests.values()) {
-      for (Map.Entry<String, CiphertextTallyBuilder.Selection> entry : contest.selections.entrySet()) {
+    for (CiphertextTally.Contest contest : tally.build().contests.values()) {
+      for (Map.Entry<String, CiphertextTally.Selection> entry : contest.selections.entrySet()) {
         Integer plaintext_tally = entry.getValue().ciphertext().decrypt(secret_key);
         plaintext_selections.put(entry.getKey(), plaintext_tally);
       }
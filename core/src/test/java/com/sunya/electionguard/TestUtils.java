@@ -1,7 +1,16 @@
 package com.sunya.electionguard;
 
+import com.sunya.electionguard.publish.Consumer;
+
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Random;
+import java.util.stream.Stream;
 
 import static com.sunya.electionguard.ChaumPedersen.make_chaum_pedersen;
 import static com.sunya.electionguard.Group.*;
@@ -62,4 +71,32 @@ public class TestUtils {
   }
 
 
+
+  /** All the submitted ballots in the election record in dir, in the order they are in the ballots file. */
+  public static List<SubmittedBallot> readSubmittedBallots(String dir) throws IOException {
+    Consumer consumer = new Consumer(dir);
+    List<SubmittedBallot> ballots = new ArrayList<>();
+    consumer.iterateSubmittedBallots().forEach(ballots::add);
+    return ballots;
+  }
+
+  /**
+   * Make a temporary directory, which is deleted with everything in it when the JVM exits.
+   * File.deleteOnExit() would only delete it if it were empty.
+   */
+  public static Path createTempDirectory(String prefix) throws IOException {
+    Path dir = Files.createTempDirectory(prefix);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteRecursively(dir)));
+    return dir;
+  }
+
+  private static void deleteRecursively(Path dir) {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.deleteIfExists(path);
+      }
+    } catch (IOException e) {
+      // leave it for the OS to clean up
+    }
+  }
 }
@@ -0,0 +1,115 @@
+package com.sunya.electionguard;
+
+import net.jqwik.api.Example;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Predicate;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static com.sunya.electionguard.ElGamal.elgamal_keypair_from_secret;
+import static com.sunya.electionguard.Group.int_to_q_unchecked;
+
+public class TestVerificationPolicy {
+  private final ElGamal.KeyPair keypair = elgamal_keypair_from_secret(int_to_q_unchecked(BigInteger.TWO)).orElseThrow();
+  private final Manifest election = ElectionFactory.get_fake_manifest();
+  private final ElectionBuilder.DescriptionAndContext tuple =
+          ElectionFactory.get_fake_ciphertext_election(election, keypair.public_key()).orElseThrow();
+
+  private CiphertextBallot encrypt(String ballotId) {
+    PlaintextBallot ballot = ElectionFactory.get_fake_ballot(election, ballotId);
+    return Encrypt.encrypt_ballot(ballot, tuple.internalManifest, tuple.context, Encrypt.UNCHAINED_SEED,
+            Optional.empty(), false).orElseThrow();
+  }
+
+  @Example
+  public void testSampled() {
+    CiphertextBallot ballot = encrypt("sampled");
+    try (VerificationPolicy all = VerificationPolicy.sampled(1.0)) {
+      assertThat(all.verifyWhileEncrypting()).isFalse();
+      assertThat(all.accept(ballot, b -> true)).isTrue();
+      assertThat(all.accept(ballot, b -> false)).isFalse();
+      assertThat(all.verified()).isEqualTo(2);
+      assertThat(all.failed()).isEqualTo(1);
+      assertThat(all.skipped()).isEqualTo(0);
+    }
+    try (VerificationPolicy none = VerificationPolicy.sampled(0.0)) {
+      assertThat(none.accept(ballot, b -> false)).isTrue();
+      assertThat(none.verified()).isEqualTo(0);
+      assertThat(none.skipped()).isEqualTo(1);
+    }
+  }
+
+  @Example
+  public void testAsyncQuarantines() throws InterruptedException {
+    List<String> alerts = Collections.synchronizedList(new ArrayList<>());
+    VerificationPolicy async = VerificationPolicy.async(2, b -> alerts.add(b.object_id()));
+    assertThat(async.verifyWhileEncrypting()).isFalse();
+
+    // returned before it is checked, then quarantined when the check fails
+    assertThat(async.accept(encrypt("good"), b -> true)).isTrue();
+    assertThat(async.accept(encrypt("bad"), b -> false)).isTrue();
+    assertThat(async.accept(encrypt("throws"), b -> { throw new IllegalStateException(); })).isTrue();
+    async.close();
+
+    assertThat(async.pending()).isEqualTo(0);
+    assertThat(async.verified()).isEqualTo(3);
+    assertThat(async.failed()).isEqualTo(2);
+    assertThat(async.quarantined()).containsExactly("bad", "throws");
+    assertThat(alerts).containsExactly("bad", "throws");
+  }
+
+  @Example
+  public void testAsyncBacklogIsBounded() {
+    CountDownLatch release = new CountDownLatch(1);
+    Thread caller = Thread.currentThread();
+    List<String> checkedByCaller = Collections.synchronizedList(new ArrayList<>());
+    Predicate<CiphertextBallot> verifier = b -> {
+      if (Thread.currentThread() == caller) {
+        checkedByCaller.add(b.object_id());
+        return true;
+      }
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return true;
+    };
+
+    // the one thread is started with the first ballot, and waits; the backlog has room for the second,
+    // so the third is checked by the caller
+    VerificationPolicy async = VerificationPolicy.async(1, 1, null);
+    assertThat(async.accept(encrypt("first"), verifier)).isTrue();
+    assertThat(async.accept(encrypt("second"), verifier)).isTrue();
+    assertThat(async.accept(encrypt("third"), verifier)).isTrue();
+    assertThat(checkedByCaller).containsExactly("third");
+    assertThat(async.inline()).isEqualTo(1);
+
+    release.countDown();
+    async.close();
+    assertThat(async.pending()).isEqualTo(0);
+    assertThat(async.verified()).isEqualTo(3);
+    assertThat(async.toString()).contains("1 inline");
+  }
+
+  @Example
+  public void testMediatorWithPolicy() {
+    try (VerificationPolicy policy = VerificationPolicy.sampled(0.0)) {
+      Encrypt.EncryptionMediator mediator = new Encrypt.EncryptionMediator(tuple.internalManifest, tuple.context,
+              Encrypt.createDeviceForTest("Location"), false, policy);
+      Optional<CiphertextBallot> first = mediator.encrypt(ElectionFactory.get_fake_ballot(election, "first"));
+      Optional<CiphertextBallot> second = mediator.encrypt(ElectionFactory.get_fake_ballot(election, "second"));
+      assertThat(first).isPresent();
+      assertThat(second).isPresent();
+      assertThat(second.get().code_seed).isEqualTo(first.get().code);
+      assertThat(policy.ballots()).isEqualTo(2);
+      assertThat(policy.skipped()).isEqualTo(2);
+    }
+  }
+}
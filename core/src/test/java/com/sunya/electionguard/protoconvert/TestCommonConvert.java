@@ -0,0 +1,50 @@
+package com.sunya.electionguard.protoconvert;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.sunya.electionguard.ElGamal;
+import com.sunya.electionguard.Group;
+import com.sunya.electionguard.core.UInt256;
+import electionguard.protogen.CommonProto;
+import net.jqwik.api.Example;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class TestCommonConvert {
+
+  @Example
+  public void testElementModPRoundtrip() throws InvalidProtocolBufferException {
+    for (Group.ElementModP elem : List.of(Group.ZERO_MOD_P, Group.ONE_MOD_P, Group.g_pow_p(Group.rand_q()))) {
+      CommonProto.ElementModP proto = CommonConvert.publishElementModP(elem);
+      // the canonical bytes, without a sign byte, except zero which is one zero byte
+      assertThat(proto.getValue().size()).isEqualTo(Math.max(1, elem.bytes().length()));
+      CommonProto.ElementModP reread = CommonProto.ElementModP.parseFrom(proto.toByteArray());
+      assertThat(CommonConvert.importElementModP(reread)).isEqualTo(elem);
+    }
+  }
+
+  @Example
+  public void testElementModQRoundtrip() throws InvalidProtocolBufferException {
+    for (Group.ElementModQ elem : List.of(Group.ZERO_MOD_Q, Group.ONE_MOD_Q, Group.rand_q())) {
+      CommonProto.ElementModQ reread = CommonProto.ElementModQ.parseFrom(CommonConvert.publishElementModQ(elem).toByteArray());
+      assertThat(CommonConvert.importElementModQ(reread)).isEqualTo(elem);
+      CommonProto.UInt256 rereadUInt = CommonProto.UInt256.parseFrom(CommonConvert.publishUInt256fromQ(elem).toByteArray());
+      assertThat(CommonConvert.importUInt256toQ(rereadUInt)).isEqualTo(elem);
+    }
+    byte[] bytes = new byte[32];
+    Arrays.fill(bytes, (byte) 0xa5);
+    UInt256 uint = new UInt256(bytes);
+    CommonProto.UInt256 reread = CommonProto.UInt256.parseFrom(CommonConvert.publishUInt256(uint).toByteArray());
+    assertThat(CommonConvert.importUInt256(reread)).isEqualTo(uint);
+  }
+
+  @Example
+  public void testCiphertextRoundtrip() throws InvalidProtocolBufferException {
+    ElGamal.Ciphertext ciphertext = new ElGamal.Ciphertext(Group.g_pow_p(Group.rand_q()), Group.g_pow_p(Group.rand_q()));
+    CommonProto.ElGamalCiphertext reread = CommonProto.ElGamalCiphertext.parseFrom(
+            CommonConvert.publishCiphertext(ciphertext).toByteArray());
+    assertThat(CommonConvert.importCiphertext(reread)).isEqualTo(ciphertext);
+  }
+}
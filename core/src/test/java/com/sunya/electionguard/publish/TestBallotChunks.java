@@ -0,0 +1,136 @@
+package com.sunya.electionguard.publish;
+
+import com.sunya.electionguard.BallotBox;
+import com.sunya.electionguard.SubmittedBallot;
+import com.sunya.electionguard.TestUtils;
+import com.sunya.electionguard.protoconvert.SubmittedBallotToProto;
+import com.sunya.electionguard.verifier.TestParameterVerifier;
+import net.jqwik.api.Example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class TestBallotChunks {
+
+  @Example
+  public void testWriteAndReadChunks() throws IOException {
+    List<SubmittedBallot> ballots = TestUtils.readSubmittedBallots(TestParameterVerifier.topdirProto);
+    Path tempDir = TestUtils.createTempDirectory("testWriteAndReadChunks");
+    Publisher publisher = new Publisher(tempDir.toString(), Publisher.Mode.createIfMissing);
+    int nchunks = publisher.writeSubmittedBallotChunks(ballots, 4, 1);
+    assertThat(nchunks).isEqualTo((ballots.size() + 3) / 4);
+
+    Consumer consumer = new Consumer(tempDir.toString());
+    assertThat(consumer.submittedBallotChunks()).hasSize(nchunks);
+    List<SubmittedBallot> read = Collections.synchronizedList(new ArrayList<>());
+    List<BallotChunkStatus> status = consumer.readSubmittedBallotChunks(null, read::add);
+    assertThat(status).hasSize(nchunks);
+    for (BallotChunkStatus chunk : status) {
+      assertThat(chunk.isValid()).isTrue();
+    }
+    assertThat(read).containsExactlyElementsIn(ballots);
+
+    List<SubmittedBallot> cast = Collections.synchronizedList(new ArrayList<>());
+    consumer.readSubmittedBallotChunks(BallotBox.State.CAST, cast::add);
+    assertThat(cast).containsExactlyElementsIn(ballots.stream().filter(b -> b.state == BallotBox.State.CAST).toList());
+  }
+
+  @Example
+  public void testCorruptChunk() throws IOException {
+    List<SubmittedBallot> ballots = TestUtils.readSubmittedBallots(TestParameterVerifier.topdirProto);
+    Path tempDir = TestUtils.createTempDirectory("testCorruptChunk");
+    Publisher publisher = new Publisher(tempDir.toString(), Publisher.Mode.createIfMissing);
+    publisher.writeSubmittedBallotChunk(1, ballots.subList(0, 4));
+    publisher.writeSubmittedBallotChunk(2, ballots.subList(4, 8));
+    publisher.writeSubmittedBallotChunk(3, ballots.subList(8, ballots.size()));
+
+    // flip a byte in the records of chunk 2, and truncate chunk 3
+    Consumer consumer = new Consumer(tempDir.toString());
+    Path chunk2 = consumer.path.submittedBallotChunkPath(2);
+    byte[] bytes = Files.readAllBytes(chunk2);
+    bytes[BallotChunk.HEADER_SIZE + 100] ^= 1;
+    Files.write(chunk2, bytes);
+    Path chunk3 = consumer.path.submittedBallotChunkPath(3);
+    bytes = Files.readAllBytes(chunk3);
+    Files.write(chunk3, Arrays.copyOf(bytes, bytes.length - 10));
+
+    List<SubmittedBallot> read = Collections.synchronizedList(new ArrayList<>());
+    List<BallotChunkStatus> status = consumer.readSubmittedBallotChunks(null, read::add);
+    assertThat(status).hasSize(3);
+    assertThat(status.get(0).isValid()).isTrue();
+    assertThat(status.get(0).nballots()).isEqualTo(4);
+    assertThat(status.get(1).isValid()).isFalse();
+    assertThat(status.get(1).error()).contains("checksum");
+    assertThat(status.get(2).isValid()).isFalse();
+    assertThat(status.get(2).nballots()).isEqualTo(0);
+    assertThat(read).containsExactlyElementsIn(ballots.subList(0, 4));
+  }
+
+  @Example
+  public void testChunkFailsPartWay() throws IOException {
+    List<SubmittedBallot> ballots = TestUtils.readSubmittedBallots(TestParameterVerifier.topdirProto);
+    Path tempDir = TestUtils.createTempDirectory("testChunkFailsPartWay");
+    Consumer consumer = new Consumer(tempDir.toString());
+    Files.createDirectories(consumer.path.submittedBallotChunkDir());
+
+    // two good records and then one that does not parse, with a checksum that matches
+    ByteArrayOutputStream records = new ByteArrayOutputStream();
+    SubmittedBallotToProto.translateToProto(ballots.get(0)).writeDelimitedTo(records);
+    SubmittedBallotToProto.translateToProto(ballots.get(1)).writeDelimitedTo(records);
+    records.write(new byte[] {3, (byte) 0xff, (byte) 0xff, (byte) 0xff});
+    CRC32C crc = new CRC32C();
+    crc.update(records.toByteArray());
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.write("EGBCHUNK".getBytes(StandardCharsets.US_ASCII));
+    out.writeInt(1);
+    out.writeInt(1);
+    records.writeTo(out);
+    out.writeLong(records.size());
+    out.writeInt(3);
+    out.writeInt((int) crc.getValue());
+    out.write("EGBCHEND".getBytes(StandardCharsets.US_ASCII));
+    Files.write(consumer.path.submittedBallotChunkPath(1), bytes.toByteArray());
+
+    List<SubmittedBallot> read = Collections.synchronizedList(new ArrayList<>());
+    List<BallotChunkStatus> status = consumer.readSubmittedBallotChunks(null, read::add);
+    assertThat(status).hasSize(1);
+    assertThat(status.get(0).isValid()).isFalse();
+    assertThat(status.get(0).nballots()).isEqualTo(0);
+    assertThat(read).isEmpty();
+  }
+
+  @Example
+  public void testChunkNumberMismatch() throws IOException {
+    List<SubmittedBallot> ballots = TestUtils.readSubmittedBallots(TestParameterVerifier.topdirProto);
+    Path tempDir = TestUtils.createTempDirectory("testChunkNumberMismatch");
+    Publisher publisher = new Publisher(tempDir.toString(), Publisher.Mode.createIfMissing);
+    publisher.writeSubmittedBallotChunk(1, ballots.subList(0, 4));
+    publisher.writeSubmittedBallotChunk(2, ballots.subList(4, 8));
+
+    // chunk 1 copied over chunk 2
+    Consumer consumer = new Consumer(tempDir.toString());
+    Files.copy(consumer.path.submittedBallotChunkPath(1), consumer.path.submittedBallotChunkPath(2),
+            StandardCopyOption.REPLACE_EXISTING);
+
+    List<SubmittedBallot> read = Collections.synchronizedList(new ArrayList<>());
+    List<BallotChunkStatus> status = consumer.readSubmittedBallotChunks(null, read::add);
+    assertThat(status.get(0).isValid()).isTrue();
+    assertThat(status.get(1).isValid()).isFalse();
+    assertThat(status.get(1).error()).contains("chunk number 1");
+    assertThat(read).containsExactlyElementsIn(ballots.subList(0, 4));
+  }
+}
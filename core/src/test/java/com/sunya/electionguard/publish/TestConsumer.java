@@ -1,13 +1,33 @@
 package com.sunya.electionguard.publish;
 
+import com.sunya.electionguard.BallotBox;
+import com.sunya.electionguard.CiphertextBallot;
+import com.sunya.electionguard.Group;
+import com.sunya.electionguard.PartialTally;
+import com.sunya.electionguard.SubmittedBallot;
+import com.sunya.electionguard.TallyCheckpoint;
+import com.sunya.electionguard.TestUtils;
 import com.sunya.electionguard.json.ElectionRecordJson;
 import com.sunya.electionguard.json.JsonConsumer;
+import com.sunya.electionguard.protoconvert.CommonConvert;
+import com.sunya.electionguard.protoconvert.SubmittedBallotToProto;
 import com.sunya.electionguard.verifier.TestParameterVerifier;
+import electionguard.protogen.CiphertextBallotProto;
+import electionguard.protogen.CommonProto;
 import net.jqwik.api.Example;
 
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Stream;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static org.junit.Assert.fail;
 
 public class TestConsumer {
 
@@ -58,4 +78,302 @@ public class TestConsumer {
     assertThat(record.spoiledBallotTallies()).hasSize(0);
   }
 
+  @Example
+  public void testIterateFromOffset() throws IOException {
+    Consumer consumer = new Consumer(TestParameterVerifier.topdirProto);
+    List<String> ids = new ArrayList<>();
+    long offset = 0;
+    long lastOffset = 0;
+    try (Consumer.SubmittedBallotIterator ballots = consumer.iterateSubmittedBallots(0)) {
+      while (ballots.hasNext()) {
+        ids.add(ballots.next().object_id());
+        if (ids.size() == 4) {
+          offset = ballots.offset();
+          lastOffset = ballots.lastOffset();
+          assertThat(ballots.lastBallotId()).isEqualTo(ids.get(3));
+        }
+      }
+      assertThat(ballots.offset()).isEqualTo(Files.size(consumer.path.submittedBallotPath()));
+      assertThat(ballots.index()).isEqualTo(11);
+    }
+    assertThat(ids).hasSize(11);
+    assertThat(consumer.readCounter().records()).isEqualTo(11);
+    assertThat(consumer.readCounter().bytes()).isEqualTo(Files.size(consumer.path.submittedBallotPath()));
+
+    List<String> rest = new ArrayList<>();
+    try (Consumer.SubmittedBallotIterator ballots = consumer.iterateSubmittedBallots(offset)) {
+      while (ballots.hasNext()) {
+        rest.add(ballots.next().object_id());
+      }
+    }
+    assertThat(rest).containsExactlyElementsIn(ids.subList(4, ids.size())).inOrder();
+
+    // what a tally checkpoint uses to check that it is resumed on the same ballots file
+    assertThat(consumer.isSubmittedBallotRecord(lastOffset, offset, ids.get(3))).isTrue();
+    assertThat(consumer.isSubmittedBallotRecord(lastOffset, offset, ids.get(4))).isFalse();
+    assertThat(consumer.isSubmittedBallotRecord(lastOffset + 1, offset, ids.get(3))).isFalse();
+    assertThat(consumer.isSubmittedBallotRecord(lastOffset, offset + 1, ids.get(3))).isFalse();
+  }
+
+  @Example
+  public void testTallyCheckpoint() throws IOException {
+    Consumer consumer = new Consumer(TestParameterVerifier.topdirProto);
+    ElectionRecord record = consumer.readElectionRecord();
+    TallyCheckpoint checkpoint = new TallyCheckpoint(record.ciphertextTally(), List.of("ballot1", "ballot2"), 1234, 2, 1000, "ballot2");
+
+    Path tempDir = TestUtils.createTempDirectory("testTallyCheckpoint");
+    Publisher publisher = new Publisher(tempDir.toString(), Publisher.Mode.createIfMissing);
+    publisher.writeTallyCheckpoint(checkpoint);
+    Consumer checkpointConsumer = new Consumer(tempDir.toString());
+    assertThat(checkpointConsumer.readTallyCheckpoint()).hasValue(checkpoint);
+
+    publisher.deleteTallyCheckpoint();
+    assertThat(checkpointConsumer.readTallyCheckpoint()).isEmpty();
+  }
+
+  @Example
+  public void testTallyCheckpointAppendsIds() throws IOException {
+    Consumer consumer = new Consumer(TestParameterVerifier.topdirProto);
+    ElectionRecord record = consumer.readElectionRecord();
+
+    Path tempDir = TestUtils.createTempDirectory("testTallyCheckpointAppendsIds");
+    Path idsPath = new ElectionRecordPath(tempDir.toString()).tallyCheckpointIdsPath();
+    Publisher publisher = new Publisher(tempDir.toString(), Publisher.Mode.createIfMissing);
+    Consumer checkpointConsumer = new Consumer(tempDir.toString());
+
+    TallyCheckpoint first = new TallyCheckpoint(record.ciphertextTally(), List.of("ballot1", "ballot2"), 1234, 2, 1000, "ballot2");
+    publisher.writeTallyCheckpoint(first);
+    long firstSize = Files.size(idsPath);
+    assertThat(checkpointConsumer.readTallyCheckpoint()).hasValue(first);
+
+    // only the new ids are written
+    TallyCheckpoint second = new TallyCheckpoint(record.ciphertextTally(), List.of("ballot1", "ballot2", "ballot3"), 2345, 3,
+            2000, "ballot3");
+    publisher.writeTallyCheckpoint(second);
+    assertThat(Files.size(idsPath)).isEqualTo(firstSize + 1 + "ballot3".length());
+    assertThat(checkpointConsumer.readTallyCheckpoint()).hasValue(second);
+
+    // ids that don't continue the previous checkpoint are all rewritten
+    TallyCheckpoint other = new TallyCheckpoint(record.ciphertextTally(), List.of("ballot4"), 345, 1, 0, "ballot4");
+    publisher.writeTallyCheckpoint(other);
+    assertThat(Files.size(idsPath)).isEqualTo(1 + "ballot4".length());
+    assertThat(checkpointConsumer.readTallyCheckpoint()).hasValue(other);
+
+    publisher.deleteTallyCheckpoint();
+    assertThat(checkpointConsumer.readTallyCheckpoint()).isEmpty();
+    assertThat(Files.exists(idsPath)).isFalse();
+  }
+
+  @Example
+  public void testIterateShards() throws IOException {
+    Consumer consumer = new Consumer(TestParameterVerifier.topdirProto);
+    List<String> ids = new ArrayList<>();
+    for (SubmittedBallot ballot : consumer.iterateSubmittedBallots()) {
+      ids.add(ballot.object_id());
+    }
+
+    int nshards = 3;
+    List<String> sharded = new ArrayList<>();
+    for (int shard = 0; shard < nshards; shard++) {
+      final int want = shard;
+      try (Consumer.SubmittedBallotIterator ballots = consumer.iterateSubmittedBallots(0, 0, i -> i % nshards == want)) {
+        int count = 0;
+        while (ballots.hasNext()) {
+          String id = ballots.next().object_id();
+          assertThat(id).isEqualTo(ids.get(want + nshards * count));
+          assertThat(ballots.index()).isEqualTo(want + nshards * count + 1);
+          sharded.add(id);
+          count++;
+        }
+      }
+    }
+    assertThat(sharded).containsExactlyElementsIn(ids);
+  }
+
+  @Example
+  public void testPartialTallies() throws IOException {
+    Consumer consumer = new Consumer(TestParameterVerifier.topdirProto);
+    ElectionRecord record = consumer.readElectionRecord();
+    PartialTally partial1 = new PartialTally(record.ciphertextTally(), List.of("ballot1"), 1, 2, 1000, 2);
+    PartialTally partial2 = new PartialTally(record.ciphertextTally(), List.of("ballot2"), 2, 2, 1000, 2);
+
+    Path tempDir = TestUtils.createTempDirectory("testPartialTallies");
+    Publisher publisher = new Publisher(tempDir.toString(), Publisher.Mode.createIfMissing);
+    publisher.writePartialTally(partial2);
+    publisher.writePartialTally(partial1);
+    assertThat(new Consumer(tempDir.toString()).readPartialTallies()).containsExactly(partial1, partial2).inOrder();
+  }
+
+  @Example
+  public void testSubmittedBallotIndex() throws IOException {
+    Consumer consumer = new Consumer(TestParameterVerifier.topdirProto);
+    List<SubmittedBallot> ballots = TestUtils.readSubmittedBallots(TestParameterVerifier.topdirProto);
+
+    // the test record has no sidecar, so the index is made by reading the ballots
+    SubmittedBallotIndex scanned = consumer.readSubmittedBallotIndex();
+    assertThat(scanned.size()).isEqualTo(ballots.size());
+    assertThat(scanned.fileLength()).isEqualTo(Files.size(consumer.path.submittedBallotPath()));
+
+    Path tempDir = TestUtils.createTempDirectory("testSubmittedBallotIndex");
+    Publisher publisher = new Publisher(tempDir.toString(), Publisher.Mode.createIfMissing);
+    publisher.writeSubmittedBallots(ballots);
+    Consumer indexed = new Consumer(tempDir.toString());
+    assertThat(Files.exists(indexed.path.submittedBallotIndexPath())).isTrue();
+    SubmittedBallotIndex index = indexed.readSubmittedBallotIndex();
+    assertThat(index.entries()).containsExactlyElementsIn(scanned.entries()).inOrder();
+
+    for (int i = 0; i < ballots.size(); i++) {
+      SubmittedBallot ballot = ballots.get(i);
+      SubmittedBallotIndex.Entry entry = index.get(i);
+      assertThat(entry.ballotId()).isEqualTo(ballot.object_id());
+      assertThat(entry.state()).isEqualTo(ballot.state);
+      assertThat(entry.code()).isEqualTo(ballot.code);
+      assertThat(indexed.readSubmittedBallot(ballot.object_id())).hasValue(ballot);
+    }
+    assertThat(indexed.readSubmittedBallot("bad")).isEmpty();
+  }
+
+  @Example
+  public void testStaleSubmittedBallotIndex() throws IOException {
+    Consumer consumer = new Consumer(TestParameterVerifier.topdirProto);
+    List<SubmittedBallot> ballots = TestUtils.readSubmittedBallots(TestParameterVerifier.topdirProto);
+    assertThat(ballots.size()).isAtLeast(4);
+
+    // the same ballots in a different order: same file length, same first and last ballots
+    List<SubmittedBallot> reordered = new ArrayList<>(ballots);
+    reordered.set(1, ballots.get(2));
+    reordered.set(2, ballots.get(1));
+
+    Path tempDir = TestUtils.createTempDirectory("testStaleSubmittedBallotIndex");
+    Publisher publisher = new Publisher(tempDir.toString(), Publisher.Mode.createIfMissing);
+    publisher.writeSubmittedBallots(ballots);
+    Consumer indexed = new Consumer(tempDir.toString());
+    byte[] staleSidecar = Files.readAllBytes(indexed.path.submittedBallotIndexPath());
+    publisher.writeSubmittedBallots(reordered);
+    Files.write(indexed.path.submittedBallotIndexPath(), staleSidecar);
+
+    Consumer stale = new Consumer(tempDir.toString());
+    for (SubmittedBallot ballot : ballots) {
+      assertThat(stale.readSubmittedBallot(ballot.object_id())).hasValue(ballot);
+    }
+    assertThat(stale.readSubmittedBallotIndex().get(1).ballotId()).isEqualTo(ballots.get(2).object_id());
+
+    // a ballots file with a different first ballot is caught before the sidecar is used
+    reordered.set(0, ballots.get(3));
+    reordered.set(3, ballots.get(0));
+    publisher.writeSubmittedBallots(reordered);
+    Files.write(indexed.path.submittedBallotIndexPath(), staleSidecar);
+    assertThat(new Consumer(tempDir.toString()).readSubmittedBallotIndex().get(0).ballotId())
+            .isEqualTo(ballots.get(3).object_id());
+  }
+
+  @Example
+  public void testStreamSubmittedBallots() throws IOException {
+    Consumer consumer = new Consumer(TestParameterVerifier.topdirProto);
+    List<String> ids = new ArrayList<>();
+    consumer.iterateSubmittedBallots().forEach(b -> ids.add(b.object_id()));
+    List<String> castIds = new ArrayList<>();
+    consumer.iterateCastBallots().forEach(b -> castIds.add(b.object_id()));
+
+    try (Stream<SubmittedBallot> stream = consumer.streamSubmittedBallots(null)) {
+      assertThat(stream.parallel().map(SubmittedBallot::object_id).toList()).containsExactlyElementsIn(ids).inOrder();
+    }
+    try (Stream<SubmittedBallot> stream = consumer.streamSubmittedBallots(BallotBox.State.CAST)) {
+      assertThat(stream.parallel().map(SubmittedBallot::object_id).toList()).containsExactlyElementsIn(castIds).inOrder();
+    }
+
+    try (Stream<SubmittedBallot> stream = consumer.streamSubmittedBallots(null)) {
+      Spliterator<SubmittedBallot> all = stream.spliterator();
+      Spliterator<SubmittedBallot> prefix = all.trySplit();
+      assertThat(prefix).isNotNull();
+      assertThat(prefix.estimateSize() + all.estimateSize()).isEqualTo(ids.size());
+    }
+  }
+
+  @Example
+  public void testBallotProjections() throws IOException {
+    Consumer consumer = new Consumer(TestParameterVerifier.topdirProto);
+    List<SubmittedBallot> full = new ArrayList<>();
+    consumer.iterateCastBallots().forEach(full::add);
+    List<SubmittedBallot> ciphertexts = new ArrayList<>();
+    consumer.iterateCastBallots(BallotProjection.CIPHERTEXTS).forEach(ciphertexts::add);
+    List<SubmittedBallot> codes = new ArrayList<>();
+    consumer.iterateCastBallots(BallotProjection.CODES).forEach(codes::add);
+    assertThat(ciphertexts).hasSize(full.size());
+    assertThat(codes).hasSize(full.size());
+
+    for (int i = 0; i < full.size(); i++) {
+      SubmittedBallot want = full.get(i);
+      for (SubmittedBallot have : List.of(ciphertexts.get(i), codes.get(i))) {
+        assertThat(have.object_id()).isEqualTo(want.object_id());
+        assertThat(have.ballotStyleId).isEqualTo(want.ballotStyleId);
+        assertThat(have.state).isEqualTo(BallotBox.State.CAST);
+        assertThat(have.code_seed).isEqualTo(want.code_seed);
+        assertThat(have.code).isEqualTo(want.code);
+        assertThat(have.timestamp).isEqualTo(want.timestamp);
+        assertThat(have.crypto_hash).isEqualTo(want.crypto_hash);
+      }
+      assertThat(codes.get(i).contests).isEmpty();
+
+      SubmittedBallot have = ciphertexts.get(i);
+      assertThat(have.contests).hasSize(want.contests.size());
+      for (int c = 0; c < want.contests.size(); c++) {
+        CiphertextBallot.Contest wantContest = want.contests.get(c);
+        CiphertextBallot.Contest haveContest = have.contests.get(c);
+        assertThat(haveContest.contestId).isEqualTo(wantContest.contestId);
+        assertThat(haveContest.contestHash).isEqualTo(wantContest.contestHash);
+        assertThat(haveContest.crypto_hash).isEqualTo(wantContest.crypto_hash);
+        assertThat(haveContest.proof).isEmpty();
+        assertThat(haveContest.selections).hasSize(wantContest.selections.size());
+        for (int s = 0; s < wantContest.selections.size(); s++) {
+          CiphertextBallot.Selection wantSelection = wantContest.selections.get(s);
+          CiphertextBallot.Selection haveSelection = haveContest.selections.get(s);
+          assertThat(haveSelection.object_id()).isEqualTo(wantSelection.object_id());
+          assertThat(haveSelection.ciphertext()).isEqualTo(wantSelection.ciphertext());
+          assertThat(haveSelection.is_placeholder_selection).isEqualTo(wantSelection.is_placeholder_selection);
+          assertThat(haveSelection.proof).isEmpty();
+          assertThat(haveSelection.extended_data).isEmpty();
+        }
+      }
+    }
+  }
+
+  @Example
+  public void testResidueCheckedProjection() throws IOException {
+    Consumer consumer = new Consumer(TestParameterVerifier.topdirProto);
+    List<SubmittedBallot> ballots = TestUtils.readSubmittedBallots(TestParameterVerifier.topdirProto);
+    List<SubmittedBallot> checked = new ArrayList<>();
+    consumer.iterateSubmittedBallots(BallotProjection.FULL_CHECKED).forEach(checked::add);
+    assertThat(checked).containsExactlyElementsIn(ballots).inOrder();
+
+    // -pad has order 2q, so is not a residue
+    CiphertextBallotProto.SubmittedBallot.Builder bad = SubmittedBallotToProto.translateToProto(ballots.get(1)).toBuilder();
+    CommonProto.ElGamalCiphertext.Builder ciphertext =
+            bad.getContestsBuilder(0).getSelectionsBuilder(0).getCiphertextBuilder();
+    Group.ElementModP pad = ballots.get(1).contests.get(0).selections.get(0).ciphertext().pad();
+    ciphertext.setPad(CommonConvert.publishElementModP(
+            Group.int_to_p_unchecked(Group.getPrimes().largePrime.subtract(pad.getBigInt()))));
+
+    Path tempDir = TestUtils.createTempDirectory("testResidueCheckedProjection");
+    Consumer tampered = new Consumer(tempDir.toString());
+    try (FileOutputStream out = new FileOutputStream(tampered.path.submittedBallotPath().toFile())) {
+      SubmittedBallotToProto.translateToProto(ballots.get(0)).writeDelimitedTo(out);
+      bad.build().writeDelimitedTo(out);
+    }
+
+    // the default projection doesnt check
+    List<String> ids = new ArrayList<>();
+    tampered.iterateSubmittedBallots().forEach(b -> ids.add(b.object_id()));
+    assertThat(ids).containsExactly(ballots.get(0).object_id(), ballots.get(1).object_id()).inOrder();
+
+    List<String> checkedIds = new ArrayList<>();
+    try (CloseableIterator<SubmittedBallot> iter = tampered.iterateSubmittedBallots(BallotProjection.FULL_CHECKED).iterator()) {
+      checkedIds.add(iter.next().object_id());
+      iter.next();
+      fail("expected the ballot with a non-residue to be rejected");
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage()).contains(ballots.get(1).object_id());
+    }
+    assertThat(checkedIds).containsExactly(ballots.get(0).object_id());
+  }
 }
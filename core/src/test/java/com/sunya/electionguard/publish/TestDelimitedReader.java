@@ -0,0 +1,86 @@
+package com.sunya.electionguard.publish;
+
+import com.google.protobuf.StringValue;
+import net.jqwik.api.Example;
+
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+public class TestDelimitedReader {
+
+  /** Write n messages of varying length, some longer than the small buffers. Return the offset after each one. */
+  private List<Long> writeMessages(Path file, int n) throws IOException {
+    List<Long> ends = new ArrayList<>();
+    try (FileOutputStream out = new FileOutputStream(file.toFile())) {
+      for (int i = 0; i < n; i++) {
+        StringValue.of(message(i)).writeDelimitedTo(out);
+        ends.add(out.getChannel().position());
+      }
+    }
+    return ends;
+  }
+
+  private String message(int i) {
+    return "message " + i + "x".repeat((i * 37) % 300);
+  }
+
+  @Example
+  public void testReadAndSkip() throws IOException {
+    Path file = Files.createTempFile("testReadAndSkip", ".protobuf");
+    List<Long> ends = writeMessages(file, 100);
+
+    for (int bufferSize : new int[] {1, 16, 100, DelimitedReader.DEFAULT_BUFFER_SIZE}) {
+      ReadCounter counter = new ReadCounter();
+      int count = 0;
+      try (DelimitedReader reader = new DelimitedReader(file.toString(), 0, counter, bufferSize)) {
+        int size;
+        while ((size = reader.nextSize()) >= 0) {
+          if (count % 3 == 1) {
+            reader.skip(size);
+          } else {
+            assertThat(reader.parse(StringValue.parser(), size).getValue()).isEqualTo(message(count));
+          }
+          assertThat(reader.position()).isEqualTo(ends.get(count));
+          count++;
+        }
+      }
+      assertThat(count).isEqualTo(100);
+      assertThat(counter.records()).isEqualTo(67);
+      assertThat(counter.bytes()).isAtLeast(ends.get(99));
+    }
+  }
+
+  @Example
+  public void testStartOffset() throws IOException {
+    Path file = Files.createTempFile("testStartOffset", ".protobuf");
+    List<Long> ends = writeMessages(file, 10);
+
+    try (DelimitedReader reader = new DelimitedReader(file.toString(), ends.get(4), new ReadCounter(), 16)) {
+      assertThat(reader.position()).isEqualTo(ends.get(4));
+      assertThat(reader.parse(StringValue.parser(), reader.nextSize()).getValue()).isEqualTo(message(5));
+    }
+  }
+
+  @Example
+  public void testTruncated() throws IOException {
+    Path file = Files.createTempFile("testTruncated", ".protobuf");
+    List<Long> ends = writeMessages(file, 2);
+    byte[] bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, (int) (ends.get(0) + 5)));
+
+    try (DelimitedReader reader = new DelimitedReader(file.toString(), 0, new ReadCounter(), 16)) {
+      assertThat(reader.parse(StringValue.parser(), reader.nextSize()).getValue()).isEqualTo(message(0));
+      int size = reader.nextSize();
+      assertThrows(EOFException.class, () -> reader.parse(StringValue.parser(), size));
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package com.sunya.electionguard.publish;
+
+import com.sunya.electionguard.SubmittedBallot;
+import com.sunya.electionguard.TestUtils;
+import com.sunya.electionguard.verifier.TestParameterVerifier;
+import net.jqwik.api.Example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestSubmittedBallotWriter {
+
+  @Example
+  public void testAppendAndSync() throws IOException {
+    List<SubmittedBallot> ballots = TestUtils.readSubmittedBallots(TestParameterVerifier.topdirProto);
+    Path tempDir = TestUtils.createTempDirectory("testAppendAndSync");
+    Publisher publisher = new Publisher(tempDir.toString(), Publisher.Mode.createIfMissing);
+
+    try (SubmittedBallotWriter writer = publisher.openSubmittedBallotWriter(3, 1000, false)) {
+      assertThat(writer.recovered().size()).isEqualTo(0);
+      for (SubmittedBallot ballot : ballots.subList(0, 5)) {
+        writer.append(ballot);
+      }
+      writer.sync();
+      assertThat(TestUtils.readSubmittedBallots(tempDir.toString()))
+              .containsExactlyElementsIn(ballots.subList(0, 5)).inOrder();
+      for (SubmittedBallot ballot : ballots.subList(5, ballots.size())) {
+        writer.append(ballot);
+      }
+      assertThat(writer.appended()).isEqualTo(ballots.size());
+    }
+    assertThat(TestUtils.readSubmittedBallots(tempDir.toString())).containsExactlyElementsIn(ballots).inOrder();
+
+    // the sidecar matches the file, and is the same as for writeSubmittedBallots
+    Consumer consumer = new Consumer(tempDir.toString());
+    SubmittedBallotIndex index = consumer.readSubmittedBallotIndex();
+    Path otherDir = TestUtils.createTempDirectory("testAppendAndSyncOther");
+    new Publisher(otherDir.toString(), Publisher.Mode.createIfMissing).writeSubmittedBallots(ballots);
+    assertThat(index.entries()).containsExactlyElementsIn(
+            new Consumer(otherDir.toString()).readSubmittedBallotIndex().entries()).inOrder();
+    assertThat(Files.readAllBytes(consumer.path.submittedBallotPath())).isEqualTo(
+            Files.readAllBytes(new ElectionRecordPath(otherDir.toString()).submittedBallotPath()));
+  }
+
+  @Example
+  public void testReplaceWithoutResume() throws IOException {
+    List<SubmittedBallot> ballots = TestUtils.readSubmittedBallots(TestParameterVerifier.topdirProto);
+    Path tempDir = TestUtils.createTempDirectory("testReplaceWithoutResume");
+    Publisher publisher = new Publisher(tempDir.toString(), Publisher.Mode.createIfMissing);
+    try (SubmittedBallotWriter writer = publisher.openSubmittedBallotWriter(100, 1000, false)) {
+      for (SubmittedBallot ballot : ballots) {
+        writer.append(ballot);
+      }
+    }
+
+    // a rerun into the same directory starts over
+    try (SubmittedBallotWriter writer = publisher.openSubmittedBallotWriter(100, 1000, false)) {
+      assertThat(writer.recovered().size()).isEqualTo(0);
+      for (SubmittedBallot ballot : ballots.subList(0, 2)) {
+        writer.append(ballot);
+      }
+    }
+    assertThat(TestUtils.readSubmittedBallots(tempDir.toString()))
+            .containsExactlyElementsIn(ballots.subList(0, 2)).inOrder();
+    assertThat(new Consumer(tempDir.toString()).readSubmittedBallotIndex().size()).isEqualTo(2);
+
+    // resuming appends
+    try (SubmittedBallotWriter writer = publisher.openSubmittedBallotWriter(100, 1000, true)) {
+      assertThat(writer.recovered().size()).isEqualTo(2);
+      for (SubmittedBallot ballot : ballots.subList(2, ballots.size())) {
+        writer.append(ballot);
+      }
+    }
+    assertThat(TestUtils.readSubmittedBallots(tempDir.toString())).containsExactlyElementsIn(ballots).inOrder();
+  }
+
+  @Example
+  public void testGroupTimeUnderConstantLoad() throws IOException {
+    List<SubmittedBallot> ballots = TestUtils.readSubmittedBallots(TestParameterVerifier.topdirProto);
+    Path tempDir = TestUtils.createTempDirectory("testGroupTimeUnderConstantLoad");
+    Publisher publisher = new Publisher(tempDir.toString(), Publisher.Mode.createIfMissing);
+
+    // a group count that is never reached: only the group time makes the ballots durable,
+    // while append() keeps the writer's queue from ever being empty
+    try (SubmittedBallotWriter writer = publisher.openSubmittedBallotWriter(Integer.MAX_VALUE, 20, false)) {
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      int count = 0;
+      while (writer.durable() == 0 && System.nanoTime() < deadline) {
+        writer.append(ballots.get(count++ % ballots.size()));
+      }
+      assertThat(writer.durable()).isGreaterThan(0);
+    }
+  }
+
+  @Example
+  public void testRecoverTornRecord() throws IOException {
+    List<SubmittedBallot> ballots = TestUtils.readSubmittedBallots(TestParameterVerifier.topdirProto);
+    Path tempDir = TestUtils.createTempDirectory("testRecoverTornRecord");
+    Publisher publisher = new Publisher(tempDir.toString(), Publisher.Mode.createIfMissing);
+    try (SubmittedBallotWriter writer = publisher.openSubmittedBallotWriter(100, 1000, true)) {
+      for (SubmittedBallot ballot : ballots.subList(0, 4)) {
+        writer.append(ballot);
+      }
+    }
+    ElectionRecordPath path = new ElectionRecordPath(tempDir.toString());
+    long goodLength = Files.size(path.submittedBallotPath());
+
+    // a crash while writing the 5th ballot: half its record, and no sidecar entry
+    Path otherDir = TestUtils.createTempDirectory("testRecoverTornRecordOther");
+    new Publisher(otherDir.toString(), Publisher.Mode.createIfMissing).writeSubmittedBallots(ballots.subList(4, 5));
+    byte[] record = Files.readAllBytes(new ElectionRecordPath(otherDir.toString()).submittedBallotPath());
+    Files.write(path.submittedBallotPath(), Arrays.copyOf(record, record.length / 2), StandardOpenOption.APPEND);
+
+    try (SubmittedBallotWriter writer = publisher.openSubmittedBallotWriter(100, 1000, true)) {
+      assertThat(writer.recovered().size()).isEqualTo(4);
+      assertThat(writer.recovered().fileLength()).isEqualTo(goodLength);
+      assertThat(Files.size(path.submittedBallotPath())).isEqualTo(goodLength);
+      for (SubmittedBallot ballot : ballots.subList(4, ballots.size())) {
+        writer.append(ballot);
+      }
+    }
+    assertThat(TestUtils.readSubmittedBallots(tempDir.toString())).containsExactlyElementsIn(ballots).inOrder();
+    assertThat(new Consumer(tempDir.toString()).readSubmittedBallotIndex().size()).isEqualTo(ballots.size());
+
+    // a torn entry at the end of the sidecar, and a zero filled tail on the ballots file
+    Path indexPath = path.submittedBallotIndexPath();
+    byte[] index = Files.readAllBytes(indexPath);
+    Files.write(indexPath, Arrays.copyOf(index, index.length - 3));
+    Files.write(path.submittedBallotPath(), new byte[100], StandardOpenOption.APPEND);
+    SubmittedBallotIndex recovered = SubmittedBallotWriter.recover(path);
+    assertThat(recovered.size()).isEqualTo(ballots.size());
+    assertThat(new Consumer(tempDir.toString()).readSubmittedBallotIndex().entries())
+            .containsExactlyElementsIn(recovered.entries()).inOrder();
+    assertThat(TestUtils.readSubmittedBallots(tempDir.toString())).containsExactlyElementsIn(ballots).inOrder();
+  }
+
+  @Example
+  public void testRecoverLeavesDamagedFile() throws IOException {
+    List<SubmittedBallot> ballots = TestUtils.readSubmittedBallots(TestParameterVerifier.topdirProto);
+    Path tempDir = TestUtils.createTempDirectory("testRecoverLeavesDamagedFile");
+    Publisher publisher = new Publisher(tempDir.toString(), Publisher.Mode.createIfMissing);
+    try (SubmittedBallotWriter writer = publisher.openSubmittedBallotWriter(100, 1000, true)) {
+      for (SubmittedBallot ballot : ballots.subList(0, 4)) {
+        writer.append(ballot);
+      }
+    }
+    ElectionRecordPath path = new ElectionRecordPath(tempDir.toString());
+    long second = new Consumer(tempDir.toString()).readSubmittedBallotIndex().entries().get(1).offset();
+
+    // the second record is unreadable, and the records after it are not a crash while writing
+    Files.delete(path.submittedBallotIndexPath());
+    byte[] damaged = Files.readAllBytes(path.submittedBallotPath());
+    Arrays.fill(damaged, (int) second + 3, (int) second + 23, (byte) 0xff);
+    Files.write(path.submittedBallotPath(), damaged);
+
+    try {
+      SubmittedBallotWriter.recover(path);
+      fail();
+    } catch (IOException e) {
+      assertThat(e.getMessage()).contains("followed by more data");
+    }
+    assertThat(Files.readAllBytes(path.submittedBallotPath())).isEqualTo(damaged);
+  }
+}
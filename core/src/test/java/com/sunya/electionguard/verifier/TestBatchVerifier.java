@@ -0,0 +1,85 @@
+package com.sunya.electionguard.verifier;
+
+import net.jqwik.api.Example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.sunya.electionguard.Group.*;
+
+public class TestBatchVerifier {
+
+  // g^v = a * alpha^c, for a = g^w, alpha = g^x, v = w + x * c
+  private static List<BatchVerifier.Equation> makeEquations(boolean valid) {
+    ElementModP g = getPrimes().generatorP;
+    ElementModQ w = rand_q();
+    ElementModQ x = rand_q();
+    ElementModQ c = rand_q();
+    ElementModQ v = add_q(w, mult_q(x, c));
+    if (!valid) {
+      v = add_q(v, ONE_MOD_Q);
+    }
+    return List.of(new BatchVerifier.Equation().left(g, v).right(g_pow_p(w), ONE_MOD_Q).right(g_pow_p(x), c));
+  }
+
+  @Example
+  public void testAllValid() {
+    List<List<BatchVerifier.Equation>> items = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      items.add(makeEquations(true));
+      assertThat(items.get(i).get(0).is_valid()).isTrue();
+    }
+    BatchVerifier<Integer> batch = new BatchVerifier<>(8, items::get, i -> List.of(), i -> false);
+    for (int i = 0; i < items.size(); i++) {
+      batch.add(i);
+    }
+    assertThat(batch.finish()).isTrue();
+    assertThat(batch.nfailedBatches()).isEqualTo(0);
+  }
+
+  @Example
+  public void testFindsInvalid() {
+    Set<Integer> invalid = Set.of(0, 5, 11, 19);
+    List<List<BatchVerifier.Equation>> items = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      items.add(makeEquations(!invalid.contains(i)));
+    }
+    List<Integer> checked = new ArrayList<>();
+    BatchVerifier<Integer> batch = new BatchVerifier<>(8, items::get, i -> List.of(), i -> {
+      checked.add(i);
+      return items.get(i).get(0).is_valid();
+    });
+    for (int i = 0; i < items.size(); i++) {
+      batch.add(i);
+    }
+    assertThat(batch.finish()).isFalse();
+    assertThat(checked).containsExactlyElementsIn(invalid);
+    assertThat(batch.nfailedBatches()).isEqualTo(3);
+  }
+
+  @Example
+  public void testFindsInvalidResidue() {
+    List<List<BatchVerifier.Equation>> items = new ArrayList<>();
+    List<ElementModP> residues = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      items.add(makeEquations(true));
+      residues.add(g_pow_p(rand_q()));
+    }
+    // -x is not in the subgroup of order q
+    residues.set(3, int_to_p_unchecked(getPrimes().largePrime.subtract(residues.get(3).getBigInt())));
+
+    List<Integer> checked = new ArrayList<>();
+    BatchVerifier<Integer> batch = new BatchVerifier<>(8, items::get, i -> List.of(residues.get(i)), i -> {
+      checked.add(i);
+      return i != 3;
+    });
+    for (int i = 0; i < items.size(); i++) {
+      batch.add(i);
+    }
+    assertThat(batch.finish()).isFalse();
+    assertThat(checked).containsExactly(3);
+    assertThat(batch.nfailedBatches()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,287 @@
+package com.sunya.electionguard.workflow;
+
+import com.google.common.collect.Iterables;
+import com.sunya.electionguard.Group;
+import com.sunya.electionguard.PlaintextBallot;
+import com.sunya.electionguard.TestUtils;
+import com.sunya.electionguard.VerificationPolicy;
+import com.sunya.electionguard.decrypting.TestDecryptingMediator;
+import com.sunya.electionguard.protoconvert.PlaintextBallotToProto;
+import com.sunya.electionguard.publish.BallotProjection;
+import com.sunya.electionguard.publish.Consumer;
+import com.sunya.electionguard.publish.ElectionRecord;
+import com.sunya.electionguard.publish.Publisher;
+import com.sunya.electionguard.publish.SubmittedBallotWriter;
+import electionguard.protogen.EncryptionProto;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import net.jqwik.api.Example;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** Test EncryptionRemoteService, calling it directly, without a server. */
+public class TestEncryptionRemoteService {
+
+  @Mock
+  StreamObserver<EncryptionProto.EncryptBallotResponse> observeEncryptBallots;
+  @Captor
+  ArgumentCaptor<EncryptionProto.EncryptBallotResponse> captureEncryptBallots;
+
+  ElectionRecord electionRecord;
+
+  public TestEncryptionRemoteService() throws IOException {
+    MockitoAnnotations.openMocks(this);
+    Consumer consumer = new Consumer(TestDecryptingMediator.DECRYPTING_DATA_DIR);
+    this.electionRecord = consumer.readElectionRecord();
+  }
+
+  @Example
+  public void testEncryptBallots() throws IOException {
+    Path tmp = TestUtils.createTempDirectory("encryptionService");
+    Publisher publisher = new Publisher(tmp.toAbsolutePath().toString(), Publisher.Mode.createNew);
+
+    List<PlaintextBallot> ballots = List.copyOf(Iterables.limit(
+            new FakeBallotProvider(electionRecord.manifest(), 3).ballots(), 3));
+    try (EncryptionRemoteService service = new EncryptionRemoteService(electionRecord,
+            publisher.openSubmittedBallotWriter(100, 1000, false), 2, 2, VerificationPolicy.sync())) {
+
+      StreamObserver<EncryptionProto.EncryptBallotRequest> requests = service.encryptBallots(observeEncryptBallots);
+      for (PlaintextBallot ballot : ballots) {
+        requests.onNext(EncryptionProto.EncryptBallotRequest.newBuilder()
+                .setDeviceName("device")
+                .setBallot(PlaintextBallotToProto.publishPlaintextBallot(ballot))
+                .build());
+      }
+      // the same ballot id again is not accepted
+      requests.onNext(EncryptionProto.EncryptBallotRequest.newBuilder()
+              .setBallot(PlaintextBallotToProto.publishPlaintextBallot(ballots.get(0)))
+              .setSpoil(true)
+              .build());
+      requests.onCompleted();
+
+      verify(observeEncryptBallots, timeout(60_000)).onCompleted();
+      verify(observeEncryptBallots, never()).onError(any());
+      verify(observeEncryptBallots, times(4)).onNext(captureEncryptBallots.capture());
+    }
+
+    // in the order they were sent, chained to each other
+    List<EncryptionProto.EncryptBallotResponse> responses = captureEncryptBallots.getAllValues();
+    for (int i = 0; i < 3; i++) {
+      EncryptionProto.EncryptBallotResponse response = responses.get(i);
+      assertThat(response.getError()).isEmpty();
+      assertThat(response.getBallotId()).isEqualTo(ballots.get(i).object_id());
+      assertThat(response.getBallot().getBallotId()).isEqualTo(ballots.get(i).object_id());
+      if (i > 0) {
+        assertThat(response.getBallot().getCodeSeed()).isEqualTo(responses.get(i - 1).getBallot().getCode());
+      }
+    }
+    assertThat(responses.get(3).getBallotId()).isEqualTo(ballots.get(0).object_id());
+    assertThat(responses.get(3).getError()).isNotEmpty();
+    assertThat(responses.get(3).hasBallot()).isFalse();
+
+    Consumer consumer = new Consumer(tmp.toAbsolutePath().toString());
+    assertThat(consumer.readSubmittedBallotIndex().size()).isEqualTo(3);
+  }
+
+  // encrypt the ballots on one stream of the device, and return the responses
+  @SuppressWarnings("unchecked")
+  private List<EncryptionProto.EncryptBallotResponse> encrypt(EncryptionRemoteService service, String device,
+                                                              List<PlaintextBallot> ballots) {
+    StreamObserver<EncryptionProto.EncryptBallotResponse> observer = mock(StreamObserver.class);
+    StreamObserver<EncryptionProto.EncryptBallotRequest> requests = service.encryptBallots(observer);
+    for (PlaintextBallot ballot : ballots) {
+      requests.onNext(EncryptionProto.EncryptBallotRequest.newBuilder()
+              .setDeviceName(device)
+              .setBallot(PlaintextBallotToProto.publishPlaintextBallot(ballot))
+              .build());
+    }
+    requests.onCompleted();
+    verify(observer, timeout(60_000)).onCompleted();
+    ArgumentCaptor<EncryptionProto.EncryptBallotResponse> responses =
+            ArgumentCaptor.forClass(EncryptionProto.EncryptBallotResponse.class);
+    verify(observer, times(ballots.size())).onNext(responses.capture());
+    return responses.getAllValues();
+  }
+
+  @Example
+  public void testResumeContinuesDeviceChains() throws IOException {
+    Path tmp = TestUtils.createTempDirectory("encryptionServiceResume");
+    Publisher publisher = new Publisher(tmp.toAbsolutePath().toString(), Publisher.Mode.createNew);
+    List<PlaintextBallot> ballots = List.copyOf(Iterables.limit(
+            new FakeBallotProvider(electionRecord.manifest(), 6).ballots(), 6));
+
+    List<EncryptionProto.EncryptBallotResponse> firstA;
+    List<EncryptionProto.EncryptBallotResponse> firstB;
+    try (EncryptionRemoteService service = new EncryptionRemoteService(electionRecord,
+            publisher.openSubmittedBallotWriter(100, 1000, false), 2, 2, VerificationPolicy.sync())) {
+      firstA = encrypt(service, "deviceA", ballots.subList(0, 2));
+      firstB = encrypt(service, "deviceB", ballots.subList(2, 3));
+    }
+
+    // restart: each device continues its chain from its last ballot, not from the device hash
+    SubmittedBallotWriter writer = publisher.openSubmittedBallotWriter(100, 1000, true);
+    Map<Group.ElementModQ, Group.ElementModQ> chainTails = EncryptionRemoteService.chainTails(
+            new Consumer(tmp.toAbsolutePath().toString()).iterateSubmittedBallots(BallotProjection.CODES));
+    assertThat(chainTails).hasSize(2);
+    List<EncryptionProto.EncryptBallotResponse> secondA;
+    List<EncryptionProto.EncryptBallotResponse> secondB;
+    try (EncryptionRemoteService service = new EncryptionRemoteService(electionRecord, writer, chainTails,
+            2, 2, VerificationPolicy.sync())) {
+      secondB = encrypt(service, "deviceB", ballots.subList(3, 4));
+      secondA = encrypt(service, "deviceA", ballots.subList(4, 6));
+    }
+    for (EncryptionProto.EncryptBallotResponse response : Iterables.concat(firstA, firstB, secondA, secondB)) {
+      assertThat(response.getError()).isEmpty();
+    }
+    assertThat(secondA.get(0).getBallot().getCodeSeed()).isEqualTo(firstA.get(1).getBallot().getCode());
+    assertThat(secondB.get(0).getBallot().getCodeSeed()).isEqualTo(firstB.get(0).getBallot().getCode());
+    assertThat(new Consumer(tmp.toAbsolutePath().toString()).readSubmittedBallotIndex().size()).isEqualTo(6);
+  }
+
+  @Example
+  public void testRespondWhenDurable() throws IOException {
+    Path tmp = TestUtils.createTempDirectory("encryptionServiceDurable");
+    Publisher publisher = new Publisher(tmp.toAbsolutePath().toString(), Publisher.Mode.createNew);
+    int nballots = 7;
+    List<PlaintextBallot> ballots = List.copyOf(Iterables.limit(
+            new FakeBallotProvider(electionRecord.manifest(), nballots).ballots(), nballots));
+
+    // groups that never fill up or time out: a ballot is only durable when the service asks for a sync
+    SubmittedBallotWriter writer = publisher.openSubmittedBallotWriter(1000, 600_000, false);
+    List<String> notDurable = Collections.synchronizedList(new ArrayList<>());
+    AtomicInteger accepted = new AtomicInteger();
+    doAnswer(invocation -> {
+      EncryptionProto.EncryptBallotResponse response = invocation.getArgument(0);
+      if (response.hasBallot() && writer.durable() < accepted.incrementAndGet()) {
+        notDurable.add(response.getBallotId());
+      }
+      return null;
+    }).when(observeEncryptBallots).onNext(any());
+
+    try (EncryptionRemoteService service = new EncryptionRemoteService(electionRecord, writer, 2, 3,
+            VerificationPolicy.sync())) {
+      StreamObserver<EncryptionProto.EncryptBallotRequest> requests = service.encryptBallots(observeEncryptBallots);
+      for (PlaintextBallot ballot : ballots) {
+        requests.onNext(EncryptionProto.EncryptBallotRequest.newBuilder()
+                .setDeviceName("device")
+                .setBallot(PlaintextBallotToProto.publishPlaintextBallot(ballot))
+                .build());
+      }
+      requests.onCompleted();
+      verify(observeEncryptBallots, timeout(60_000)).onCompleted();
+    }
+    verify(observeEncryptBallots, times(nballots)).onNext(any());
+    assertThat(accepted.get()).isEqualTo(nballots);
+    assertThat(notDurable).isEmpty();
+  }
+
+  @Example
+  public void testBackPressure() throws Exception {
+    Path tmp = TestUtils.createTempDirectory("encryptionServiceBackPressure");
+    Publisher publisher = new Publisher(tmp.toAbsolutePath().toString(), Publisher.Mode.createNew);
+    int nballots = 10;
+    int maxInFlight = 3;
+    List<PlaintextBallot> ballots = List.copyOf(Iterables.limit(
+            new FakeBallotProvider(electionRecord.manifest(), nballots).ballots(), nballots));
+
+    // plays the part of gRPC: a ballot is sent only when the service has requested it
+    @SuppressWarnings("unchecked")
+    ServerCallStreamObserver<EncryptionProto.EncryptBallotResponse> call = mock(ServerCallStreamObserver.class);
+    when(call.isReady()).thenReturn(true);
+    AtomicInteger requested = new AtomicInteger();
+    AtomicInteger responded = new AtomicInteger();
+    List<String> violations = Collections.synchronizedList(new ArrayList<>());
+    BlockingQueue<Integer> credits = new LinkedBlockingQueue<>();
+    doAnswer(invocation -> {
+      int n = invocation.getArgument(0);
+      if (requested.addAndGet(n) > responded.get() + maxInFlight) {
+        violations.add(String.format("requested %d with %d responses", requested.get(), responded.get()));
+      }
+      for (int i = 0; i < n; i++) {
+        credits.add(1);
+      }
+      return null;
+    }).when(call).request(anyInt());
+    doAnswer(invocation -> {
+      responded.incrementAndGet();
+      return null;
+    }).when(call).onNext(any());
+
+    try (EncryptionRemoteService service = new EncryptionRemoteService(electionRecord,
+            publisher.openSubmittedBallotWriter(100, 1000, false), 2, maxInFlight, VerificationPolicy.sync())) {
+      StreamObserver<EncryptionProto.EncryptBallotRequest> requests = service.encryptBallots(call);
+      verify(call).disableAutoRequest();
+      ArgumentCaptor<Runnable> onReady = ArgumentCaptor.forClass(Runnable.class);
+      verify(call).setOnReadyHandler(onReady.capture());
+      onReady.getValue().run();
+
+      for (PlaintextBallot ballot : ballots) {
+        assertThat(credits.poll(60, TimeUnit.SECONDS)).isNotNull();
+        requests.onNext(EncryptionProto.EncryptBallotRequest.newBuilder()
+                .setDeviceName("device")
+                .setBallot(PlaintextBallotToProto.publishPlaintextBallot(ballot))
+                .build());
+      }
+      requests.onCompleted();
+      verify(call, timeout(60_000)).onCompleted();
+    }
+    assertThat(responded.get()).isEqualTo(nballots);
+    assertThat(violations).isEmpty();
+    assertThat(requested.get()).isAtMost(nballots + maxInFlight);
+  }
+
+  @Example
+  public void testCloseFinishesStreams() throws IOException {
+    Path tmp = TestUtils.createTempDirectory("encryptionServiceClose");
+    Publisher publisher = new Publisher(tmp.toAbsolutePath().toString(), Publisher.Mode.createNew);
+    int nballots = 6;
+    List<PlaintextBallot> ballots = List.copyOf(Iterables.limit(
+            new FakeBallotProvider(electionRecord.manifest(), nballots).ballots(), nballots));
+
+    // one thread, and closed right away: most of the ballots are still queued to be encrypted
+    EncryptionRemoteService service = new EncryptionRemoteService(electionRecord,
+            publisher.openSubmittedBallotWriter(100, 1000, false), 1, nballots, VerificationPolicy.sync());
+    StreamObserver<EncryptionProto.EncryptBallotRequest> requests = service.encryptBallots(observeEncryptBallots);
+    for (PlaintextBallot ballot : ballots) {
+      requests.onNext(EncryptionProto.EncryptBallotRequest.newBuilder()
+              .setDeviceName("device")
+              .setBallot(PlaintextBallotToProto.publishPlaintextBallot(ballot))
+              .build());
+    }
+    service.close();
+
+    // every ballot gets a response, and the stream finishes, without the client completing it
+    verify(observeEncryptBallots, timeout(60_000)).onCompleted();
+    verify(observeEncryptBallots, times(nballots)).onNext(captureEncryptBallots.capture());
+    List<EncryptionProto.EncryptBallotResponse> responses = captureEncryptBallots.getAllValues();
+    long accepted = responses.stream().filter(EncryptionProto.EncryptBallotResponse::hasBallot).count();
+    assertThat(responses.stream().filter(r -> !r.getError().isEmpty()).count()).isEqualTo(nballots - accepted);
+    assertThat(responses.stream().anyMatch(r -> r.getError().contains("shutting down"))).isTrue();
+    Consumer consumer = new Consumer(tmp.toAbsolutePath().toString());
+    assertThat(consumer.readSubmittedBallotIndex().size()).isEqualTo(accepted);
+  }
+}
@@ -0,0 +1,64 @@
+package com.sunya.electionguard.workflow;
+
+import com.sunya.electionguard.BallotBox;
+import com.sunya.electionguard.CiphertextTally;
+import com.sunya.electionguard.PartialTally;
+import com.sunya.electionguard.publish.Consumer;
+import com.sunya.electionguard.publish.SubmittedBallotIndex;
+import com.sunya.electionguard.verifier.TestParameterVerifier;
+import net.jqwik.api.Example;
+
+import java.io.IOException;
+import java.util.Formatter;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class TestRunMergeTallies {
+
+  @Example
+  public void testValidatePartials() throws IOException {
+    Consumer consumer = new Consumer(TestParameterVerifier.topdirProto);
+    CiphertextTally tally = consumer.readElectionRecord().ciphertextTally();
+    SubmittedBallotIndex ballots = consumer.readSubmittedBallotIndex();
+    List<String> cast = ballots.entries().stream()
+            .filter(e -> e.state() == BallotBox.State.CAST).map(SubmittedBallotIndex.Entry::ballotId).toList();
+    assertThat(cast.size()).isAtLeast(2);
+    List<String> first = cast.subList(0, 1);
+    List<String> rest = cast.subList(1, cast.size());
+    long length = ballots.fileLength();
+    int count = ballots.size();
+
+    Formatter errors = new Formatter();
+    assertThat(RunMergeTallies.validatePartials(List.of(
+            new PartialTally(tally, first, 1, 2, length, count),
+            new PartialTally(tally, rest, 2, 2, length, count)), ballots, errors)).isTrue();
+    assertThat(errors.toString()).isEmpty();
+
+    errors = new Formatter();
+    assertThat(RunMergeTallies.validatePartials(List.of(
+            new PartialTally(tally, first, 1, 2, length, count)), ballots, errors)).isFalse();
+    assertThat(errors.toString()).contains("need 2");
+
+    // a ballot in two shards is reported, instead of failing in merge()
+    errors = new Formatter();
+    assertThat(RunMergeTallies.validatePartials(List.of(
+            new PartialTally(tally, first, 1, 2, length, count),
+            new PartialTally(tally, cast, 2, 2, length, count)), ballots, errors)).isFalse();
+    assertThat(errors.toString()).contains(String.format("Ballot %s is in partial tally 1 and 2", first.get(0)));
+
+    // a shard that read a different ballots file
+    errors = new Formatter();
+    assertThat(RunMergeTallies.validatePartials(List.of(
+            new PartialTally(tally, first, 1, 2, length, count),
+            new PartialTally(tally, rest, 2, 2, length - 1, count - 1)), ballots, errors)).isFalse();
+    assertThat(errors.toString()).contains("Partial tally 2/2 read");
+
+    // a cast ballot that is in none of the shards
+    errors = new Formatter();
+    assertThat(RunMergeTallies.validatePartials(List.of(
+            new PartialTally(tally, first, 1, 2, length, count),
+            new PartialTally(tally, rest.subList(1, rest.size()), 2, 2, length, count)), ballots, errors)).isFalse();
+    assertThat(errors.toString()).contains(String.format("have %d cast ballots", cast.size() - 1));
+  }
+}